@@ -12,8 +12,11 @@
  *******************************************************************************/
 package org.eclipse.handly.internal.examples.adapter;
 
+import java.lang.ref.WeakReference;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
@@ -38,6 +41,14 @@ public class JavaElement
 {
     private static final IElement[] NO_CHILDREN = new IElement[0];
 
+    /*
+     * Caches the adapter for a JDT Java element as long as the adapter
+     * is in use. The adapter is only weakly referenced, so that it does not
+     * keep its JDT element (i.e. the key) strongly reachable.
+     */
+    private static final Map<IJavaElement, WeakReference<IElement>> CACHE =
+        new WeakHashMap<>();
+
     private final IJavaElement javaElement;
 
     /**
@@ -50,6 +61,23 @@ public class JavaElement
     {
         if (javaElement == null)
             return null;
+        synchronized (CACHE)
+        {
+            WeakReference<IElement> ref = CACHE.get(javaElement);
+            IElement element = ref != null ? ref.get() : null;
+            if (element == null)
+            {
+                element = newElement(javaElement);
+                // make sure the key is the element the adapter refers to
+                CACHE.remove(javaElement);
+                CACHE.put(javaElement, new WeakReference<>(element));
+            }
+            return element;
+        }
+    }
+
+    private static IElement newElement(IJavaElement javaElement)
+    {
         if (javaElement instanceof ICompilationUnit)
             return new JavaSourceFile((ICompilationUnit)javaElement);
         if (javaElement instanceof IClassFile)
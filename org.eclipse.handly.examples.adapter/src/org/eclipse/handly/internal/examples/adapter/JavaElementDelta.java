@@ -25,16 +25,25 @@ import static org.eclipse.handly.model.IElementDeltaConstants.F_UNDERLYING_RESOU
 import static org.eclipse.handly.model.IElementDeltaConstants.F_WORKING_COPY;
 import static org.eclipse.handly.model.IElementDeltaConstants.REMOVED;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.eclipse.core.resources.IMarkerDelta;
 import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.handly.context.IContext;
 import org.eclipse.handly.model.IElement;
 import org.eclipse.handly.model.IElementDelta;
 import org.eclipse.handly.model.impl.IElementDeltaImpl;
+import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IJavaElementDelta;
 
 /**
  * Adapts a JDT Java element delta to <code>IElementDelta</code>.
+ * <p>
+ * Child deltas are adapted lazily, when they are traversed for the first
+ * time, and then cached. {@link #findDelta_(IElement)} navigates the
+ * underlying JDT delta directly, without adapting the intermediate deltas.
+ * </p>
  */
 class JavaElementDelta
     implements IElementDeltaImpl
@@ -45,6 +54,8 @@ class JavaElementDelta
     private final IJavaElementDelta delta;
     private final int kind;
     private final long flags;
+    private volatile IElement element;
+    private volatile IElementDelta[] affectedChildren;
 
     /**
      * Constructs a <code>JavaElementDelta</code> for the given
@@ -64,7 +75,10 @@ class JavaElementDelta
     @Override
     public IElement getElement_()
     {
-        return JavaElement.create(delta.getElement());
+        IElement result = element;
+        if (result == null)
+            element = result = JavaElement.create(delta.getElement());
+        return result;
     }
 
     @Override
@@ -79,28 +93,60 @@ class JavaElementDelta
         return flags;
     }
 
+    @Override
+    public IElementDelta findDelta_(IElement element)
+    {
+        if (!(element instanceof JavaElement))
+            return null;
+        IJavaElement javaElement = ((JavaElement)element).getJavaElement();
+        IJavaElement rootElement = delta.getElement();
+        if (javaElement.equals(rootElement))
+            return this;
+
+        List<IJavaElement> path = new ArrayList<>();
+        IJavaElement e = javaElement;
+        while (!e.equals(rootElement))
+        {
+            path.add(e);
+            e = e.getParent();
+            if (e == null)
+                return null; // not a descendant of the root element
+        }
+
+        IJavaElementDelta result = delta;
+        for (int i = path.size() - 1; i >= 0 && result != null; i--)
+            result = findChild(result, path.get(i));
+        if (result == null)
+            return null;
+        return new JavaElementDelta(result);
+    }
+
     @Override
     public IElementDelta[] getAffectedChildren_()
     {
-        return toElementDeltas(delta.getAffectedChildren());
+        IElementDelta[] result = affectedChildren;
+        if (result == null)
+            affectedChildren = result = toElementDeltas(
+                delta.getAffectedChildren());
+        return result;
     }
 
     @Override
     public IElementDelta[] getAddedChildren_()
     {
-        return toElementDeltas(delta.getAddedChildren());
+        return getChildrenOfKind(ADDED);
     }
 
     @Override
     public IElementDelta[] getRemovedChildren_()
     {
-        return toElementDeltas(delta.getRemovedChildren());
+        return getChildrenOfKind(REMOVED);
     }
 
     @Override
     public IElementDelta[] getChangedChildren_()
     {
-        return toElementDeltas(delta.getChangedChildren());
+        return getChildrenOfKind(CHANGED);
     }
 
     @Override
@@ -182,6 +228,29 @@ class JavaElementDelta
         return result | ((long)flags << 32);
     }
 
+    private IElementDelta[] getChildrenOfKind(int kind)
+    {
+        IElementDelta[] children = getAffectedChildren_();
+        List<IElementDelta> result = new ArrayList<>(children.length);
+        for (IElementDelta child : children)
+        {
+            if (((JavaElementDelta)child).kind == kind)
+                result.add(child);
+        }
+        return result.toArray(new IElementDelta[result.size()]);
+    }
+
+    private static IJavaElementDelta findChild(IJavaElementDelta delta,
+        IJavaElement element)
+    {
+        for (IJavaElementDelta child : delta.getAffectedChildren())
+        {
+            if (child.getElement().equals(element))
+                return child;
+        }
+        return null;
+    }
+
     private static IElementDelta[] toElementDeltas(IJavaElementDelta[] array)
     {
         int length = array.length;
@@ -19,6 +19,7 @@ import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.ICoreRunnable;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.handly.ApiLevel;
 import org.eclipse.handly.context.IContext;
@@ -120,6 +121,13 @@ public class FooModel
         return ApiLevel.CURRENT;
     }
 
+    @Override
+    public void runInBatch_(ICoreRunnable action, IProgressMonitor monitor)
+        throws CoreException
+    {
+        FooModelManager.INSTANCE.runInBatch(action, monitor);
+    }
+
     @Override
     public IResource getResource_()
     {
@@ -108,6 +108,18 @@ class FooModelCache
             childrenCache.remove(element);
     }
 
+    @Override
+    public void beginBatch()
+    {
+        fileCache.deferEviction();
+    }
+
+    @Override
+    public void endBatch()
+    {
+        fileCache.resumeEviction();
+    }
+
     /*
      * Adapted from org.eclipse.jdt.internal.core.JavaModelCache#getMemoryRatio()
      */
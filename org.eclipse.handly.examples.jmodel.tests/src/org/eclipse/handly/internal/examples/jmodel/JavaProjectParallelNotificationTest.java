@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.internal.examples.jmodel;
+
+/**
+ * <code>JavaProject</code> notification tests with resource deltas
+ * translated in parallel. The expected deltas are exactly the same
+ * as with sequential translation.
+ */
+public class JavaProjectParallelNotificationTest
+    extends JavaProjectNotificationTest
+{
+    @Override
+    protected void setUp() throws Exception
+    {
+        JavaModelManager.INSTANCE.setDeltaProcessingParallelism(4);
+        super.setUp();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        try
+        {
+            super.tearDown();
+        }
+        finally
+        {
+            JavaModelManager.INSTANCE.setDeltaProcessingParallelism(1);
+        }
+    }
+}
@@ -40,7 +40,9 @@ import org.eclipse.jdt.core.IClasspathEntry;
  * <p>
  * This class is only used inside the dynamic scope of the resource POST_CHANGE
  * notification, which is guarded by the workspace lock. Hence, it doesn't need
- * to be thread-safe.
+ * to be thread-safe. However, a {@link #copy() copy} of the state may be
+ * shared between threads that translate parts of the resource delta in
+ * parallel, as long as none of them modifies it.
  * </p>
  */
 class DeltaProcessingState
@@ -82,6 +84,21 @@ class DeltaProcessingState
         }
     }
 
+    /**
+     * Returns a copy of this state. Subsequent changes to the classpath
+     * information kept by this state do not affect the copy.
+     *
+     * @return a copy of this state (never <code>null</code>)
+     */
+    DeltaProcessingState copy()
+    {
+        DeltaProcessingState copy = new DeltaProcessingState();
+        copy.classpaths = new HashMap<JavaProject, ClasspathInfo>(classpaths);
+        copy.oldClasspaths = oldClasspaths;
+        copy.oldJavaProjectNames = oldJavaProjectNames;
+        return copy;
+    }
+
     void reset()
     {
         oldClasspaths = null;
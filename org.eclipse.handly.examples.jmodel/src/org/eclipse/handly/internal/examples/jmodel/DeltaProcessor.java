@@ -13,10 +13,16 @@
 package org.eclipse.handly.internal.examples.jmodel;
 
 import java.lang.reflect.Array;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IMarkerDelta;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
@@ -29,6 +35,7 @@ import org.eclipse.core.runtime.Path;
 import org.eclipse.handly.examples.jmodel.ICompilationUnit;
 import org.eclipse.handly.examples.jmodel.IJavaElement;
 import org.eclipse.handly.examples.jmodel.IJavaElementDelta;
+import org.eclipse.handly.examples.jmodel.IJavaModel;
 import org.eclipse.handly.examples.jmodel.IJavaProject;
 import org.eclipse.handly.examples.jmodel.IPackageFragmentRoot;
 import org.eclipse.handly.examples.jmodel.JavaModelCore;
@@ -43,18 +50,31 @@ import org.eclipse.jdt.core.IClasspathEntry;
  * This class is used by the <code>JavaModelManager</code> to convert
  * resource deltas into Java element deltas. It also does some processing
  * on the Java elements involved (e.g. closing them).
+ * <p>
+ * Besides visiting the resource delta on the calling thread, the processor
+ * can {@link #processInParallel(IResourceDelta, Executor, int) translate}
+ * a large resource delta in parallel.
+ * </p>
  */
 class DeltaProcessor
     implements IResourceDeltaVisitor
 {
     private final DeltaProcessingState state;
     private final IElementDeltaBuilder builder;
+    private final List<Runnable> modelUpdates; // null if the model is to be updated immediately
 
     DeltaProcessor(DeltaProcessingState state)
+    {
+        this(state, new JavaElementDelta.Builder(new JavaElementDelta(
+            state.getJavaModel())), null);
+    }
+
+    private DeltaProcessor(DeltaProcessingState state,
+        IElementDeltaBuilder builder, List<Runnable> modelUpdates)
     {
         this.state = state;
-        this.builder = new JavaElementDelta.Builder(new JavaElementDelta(
-            state.getJavaModel()));
+        this.builder = builder;
+        this.modelUpdates = modelUpdates;
     }
 
     /**
@@ -67,6 +87,68 @@ class DeltaProcessor
         return builder.getDelta();
     }
 
+    /**
+     * Translates the given workspace root delta into the Java element delta
+     * using the given executor. The resource delta is partitioned into
+     * project deltas and, for the projects that need to be traversed further,
+     * into deltas of the project members. The member partitions are translated
+     * in parallel, each into its own partial delta builder that records
+     * the delta operations and defers the model updates. The partitions
+     * are then merged and the model updates are applied on the calling thread
+     * in exactly the same order as if the resource delta was visited by this
+     * processor. Therefore, the resulting Java element delta is the same.
+     *
+     * @param rootDelta the workspace root delta (not <code>null</code>)
+     * @param executor the executor for translating the partitions
+     *  (not <code>null</code>)
+     * @param maxPendingPartitions the maximum number of partitions
+     *  that can be translated ahead of merging, which bounds the memory
+     *  taken by partial results (must be positive)
+     * @throws CoreException if the resource delta could not be processed
+     */
+    void processInParallel(IResourceDelta rootDelta, Executor executor,
+        int maxPendingPartitions) throws CoreException
+    {
+        if (maxPendingPartitions < 1)
+            throw new IllegalArgumentException();
+
+        if (!visit(rootDelta))
+            return;
+
+        // Project deltas are processed on the calling thread, since this
+        // may update the processing state (e.g. the project's classpath).
+        // Members of a project are translated with a snapshot of the state
+        // taken right after the project has been processed, as would be
+        // the case when visiting sequentially.
+        List<Partition> partitions = new ArrayList<>();
+        for (IResourceDelta projectDelta : rootDelta.getAffectedChildren())
+        {
+            Partition partition = new Partition(state.getJavaModel(), null,
+                null);
+            partitions.add(partition);
+            if (!partition.translate(projectDelta, state))
+                break;
+            if (!partition.traverseMembers)
+                continue;
+            DeltaProcessingState stateSnapshot = state.copy();
+            for (IResourceDelta memberDelta : projectDelta.getAffectedChildren())
+                partitions.add(new Partition(state.getJavaModel(),
+                    memberDelta, stateSnapshot));
+        }
+
+        int submitted = 0;
+        for (int i = 0, n = partitions.size(); i < n; i++)
+        {
+            for (; submitted < n && submitted - i < maxPendingPartitions;
+                submitted++)
+            {
+                partitions.get(submitted).submit(executor);
+            }
+            Partition partition = partitions.set(i, null);
+            partition.mergeInto(builder);
+        }
+    }
+
     @Override
     public boolean visit(IResourceDelta delta) throws CoreException
     {
@@ -264,7 +346,7 @@ class DeltaProcessor
             {
                 builder.changed(javaProject,
                     IJavaElementDelta.F_CLASSPATH_CHANGED);
-                close(javaProject);
+                updateModel(() -> close(javaProject));
             }
         }
     }
@@ -426,7 +508,20 @@ class DeltaProcessor
         return state.getOldJavaProjectNames().contains(project.getName());
     }
 
+    private void updateModel(Runnable update)
+    {
+        if (modelUpdates == null)
+            update.run();
+        else
+            modelUpdates.add(update);
+    }
+
     private void addToModel(IJavaElement element)
+    {
+        updateModel(() -> doAddToModel(element));
+    }
+
+    private void doAddToModel(IJavaElement element)
     {
         Body parentBody = findBody(element.getParent());
         if (parentBody != null)
@@ -512,6 +607,11 @@ class DeltaProcessor
     }
 
     private void removeFromModel(IJavaElement element)
+    {
+        updateModel(() -> doRemoveFromModel(element));
+    }
+
+    private void doRemoveFromModel(IJavaElement element)
     {
         Body parentBody = findBody(element.getParent());
         if (parentBody != null)
@@ -567,7 +667,7 @@ class DeltaProcessor
             return;
         }
 
-        close(element);
+        updateModel(() -> close(element));
         builder.changed(element, IJavaElementDelta.F_CONTENT);
     }
 
@@ -577,6 +677,12 @@ class DeltaProcessor
         if (element == null)
             return;
 
+        updateModel(() -> resetNonJavaResources(element));
+        builder.addResourceDelta(element, resourceDelta);
+    }
+
+    private static void resetNonJavaResources(IJavaElement element)
+    {
         // reset non-Java resources if element was open
         Body body = findBody(element);
         if (body != null)
@@ -592,8 +698,6 @@ class DeltaProcessor
             else
                 throw new AssertionError();
         }
-
-        builder.addResourceDelta(element, resourceDelta);
     }
 
     private static Body findBody(IJavaElement element)
@@ -627,4 +731,161 @@ class DeltaProcessor
             return null;
         }
     }
+
+    /**
+     * A partition of the resource delta being processed in parallel.
+     * Records the delta operations and the model updates made while
+     * translating the partition, so that they can be replayed later
+     * in the original order.
+     */
+    private static class Partition
+        implements IElementDeltaBuilder
+    {
+        private final List<Consumer<IElementDeltaBuilder>> deltaOperations =
+            new ArrayList<>();
+        private final List<Runnable> modelUpdates = new ArrayList<>();
+        private final IJavaModel javaModel;
+        private IResourceDelta delta;
+        private DeltaProcessingState state;
+        private CompletableFuture<Void> translation;
+        private CoreException exception;
+        boolean traverseMembers;
+
+        Partition(IJavaModel javaModel, IResourceDelta delta,
+            DeltaProcessingState state)
+        {
+            this.javaModel = javaModel;
+            this.delta = delta;
+            this.state = state;
+        }
+
+        /*
+         * Translates the given resource delta on the calling thread.
+         * Returns false if the translation failed.
+         */
+        boolean translate(IResourceDelta delta, DeltaProcessingState state)
+        {
+            DeltaProcessor processor = new DeltaProcessor(state, this,
+                modelUpdates);
+            try
+            {
+                traverseMembers = processor.visit(delta);
+                return true;
+            }
+            catch (CoreException e)
+            {
+                exception = e;
+                return false;
+            }
+        }
+
+        void submit(Executor executor)
+        {
+            if (delta == null)
+                return; // already translated
+            IResourceDelta delta = this.delta;
+            DeltaProcessingState state = this.state;
+            this.delta = null;
+            this.state = null;
+            DeltaProcessor processor = new DeltaProcessor(state, this,
+                modelUpdates);
+            translation = CompletableFuture.runAsync(() ->
+            {
+                try
+                {
+                    delta.accept(processor);
+                }
+                catch (CoreException e)
+                {
+                    exception = e;
+                }
+            }, executor);
+        }
+
+        void mergeInto(IElementDeltaBuilder builder) throws CoreException
+        {
+            if (translation != null)
+                translation.join();
+            replayInto(builder);
+            for (Runnable update : modelUpdates)
+                update.run();
+            if (exception != null)
+                throw exception;
+        }
+
+        @Override
+        public IElementDeltaBuilder added(IElement element, long flags)
+        {
+            deltaOperations.add(builder -> builder.added(element, flags));
+            return this;
+        }
+
+        @Override
+        public IElementDeltaBuilder removed(IElement element, long flags)
+        {
+            deltaOperations.add(builder -> builder.removed(element, flags));
+            return this;
+        }
+
+        @Override
+        public IElementDeltaBuilder changed(IElement element, long flags)
+        {
+            deltaOperations.add(builder -> builder.changed(element, flags));
+            return this;
+        }
+
+        @Override
+        public IElementDeltaBuilder movedFrom(IElement movedFromElement,
+            IElement movedToElement)
+        {
+            deltaOperations.add(builder -> builder.movedFrom(movedFromElement,
+                movedToElement));
+            return this;
+        }
+
+        @Override
+        public IElementDeltaBuilder movedTo(IElement movedToElement,
+            IElement movedFromElement)
+        {
+            deltaOperations.add(builder -> builder.movedTo(movedToElement,
+                movedFromElement));
+            return this;
+        }
+
+        @Override
+        public IElementDeltaBuilder markersChanged(IElement element,
+            IMarkerDelta[] markerDeltas)
+        {
+            deltaOperations.add(builder -> builder.markersChanged(element,
+                markerDeltas));
+            return this;
+        }
+
+        @Override
+        public IElementDeltaBuilder addResourceDelta(IElement element,
+            IResourceDelta resourceDelta)
+        {
+            deltaOperations.add(builder -> builder.addResourceDelta(element,
+                resourceDelta));
+            return this;
+        }
+
+        /*
+         * Returns a delta built from the operations recorded so far.
+         */
+        @Override
+        public IElementDelta getDelta()
+        {
+            JavaElementDelta.Builder result = new JavaElementDelta.Builder(
+                new JavaElementDelta(javaModel));
+            replayInto(result);
+            return result.getDelta();
+        }
+
+        private void replayInto(IElementDeltaBuilder builder)
+        {
+            for (Consumer<IElementDeltaBuilder> operation : deltaOperations)
+                operation.accept(builder);
+        }
+    }
 }
@@ -146,6 +146,22 @@ class JavaModelCache
             childrenCache.remove(element);
     }
 
+    @Override
+    public void beginBatch()
+    {
+        rootCache.deferEviction();
+        pkgCache.deferEviction();
+        fileCache.deferEviction();
+    }
+
+    @Override
+    public void endBatch()
+    {
+        fileCache.resumeEviction();
+        pkgCache.resumeEviction();
+        rootCache.resumeEviction();
+    }
+
     private double getMemoryRatio()
     {
         long maxMemory = Runtime.getRuntime().maxMemory();
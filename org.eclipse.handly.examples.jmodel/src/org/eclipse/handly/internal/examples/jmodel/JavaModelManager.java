@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015, 2019 1C-Soft LLC.
+ * Copyright (c) 2015, 2020 1C-Soft LLC.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -16,6 +16,7 @@ import static org.eclipse.handly.context.Contexts.EMPTY_CONTEXT;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResourceChangeEvent;
@@ -55,6 +56,7 @@ public class JavaModelManager
     private NotificationManager notificationManager;
     private DeltaProcessingState deltaState;
     private Context modelContext;
+    private volatile DeltaProcessingPool deltaProcessingPool;
     private Map<IProject, PerProjectInfo> perProjectInfo =
         new HashMap<IProject, PerProjectInfo>(5); // NOTE: this object itself is used as a lock to synchronize creation/removal of per project info
 
@@ -93,6 +95,7 @@ public class JavaModelManager
     public void shutdown() throws Exception
     {
         ResourcesPlugin.getWorkspace().removeResourceChangeListener(this);
+        setDeltaProcessingParallelism(1);
         modelContext = null;
         deltaState = null;
         notificationManager = null;
@@ -104,9 +107,14 @@ public class JavaModelManager
     public void resourceChanged(IResourceChangeEvent event)
     {
         DeltaProcessor deltaProcessor = new DeltaProcessor(deltaState);
+        DeltaProcessingPool pool = acquireDeltaProcessingPool();
         try
         {
-            event.getDelta().accept(deltaProcessor);
+            if (pool == null)
+                event.getDelta().accept(deltaProcessor);
+            else
+                deltaProcessor.processInParallel(event.getDelta(), pool.pool,
+                    pool.pool.getParallelism() * 4);
         }
         catch (CoreException e)
         {
@@ -114,6 +122,8 @@ public class JavaModelManager
         }
         finally
         {
+            if (pool != null)
+                pool.release();
             deltaState.reset();
         }
         IElementDelta delta = deltaProcessor.getDelta();
@@ -124,6 +134,43 @@ public class JavaModelManager
         }
     }
 
+    /**
+     * Sets the number of threads used to translate resource deltas into
+     * Java element deltas. By default, resource deltas are translated
+     * sequentially in the thread that reports the resource change.
+     * Translating in parallel can significantly reduce the time
+     * the notification thread is blocked when a large number of files
+     * is changed at once (e.g. on switching to another branch), and yields
+     * the same Java element deltas. Translations that are already in progress
+     * complete using the previous setting.
+     *
+     * @param parallelism the number of threads to use; <code>1</code> means
+     *  the resource deltas will be translated sequentially
+     */
+    public synchronized void setDeltaProcessingParallelism(int parallelism)
+    {
+        if (parallelism < 1)
+            throw new IllegalArgumentException();
+        DeltaProcessingPool pool = deltaProcessingPool;
+        if (pool != null && pool.pool.getParallelism() == parallelism)
+            return;
+        deltaProcessingPool = parallelism > 1 ? new DeltaProcessingPool(
+            parallelism) : null;
+        if (pool != null)
+            pool.retire(); // shuts down the pool once it is no longer in use
+    }
+
+    private DeltaProcessingPool acquireDeltaProcessingPool()
+    {
+        for (;;)
+        {
+            DeltaProcessingPool pool = deltaProcessingPool;
+            if (pool == null || pool.acquire())
+                return pool;
+            // the pool has just been retired; a new one is already in place
+        }
+    }
+
     @Override
     public JavaModel getModel()
     {
@@ -213,4 +260,41 @@ public class JavaModelManager
     private JavaModelManager()
     {
     }
+
+    /*
+     * A pool for translating resource deltas in parallel. A retired pool
+     * is shut down when the last delta translation that uses it completes.
+     */
+    private static class DeltaProcessingPool
+    {
+        final ForkJoinPool pool;
+        private int useCount;
+        private boolean retired;
+
+        DeltaProcessingPool(int parallelism)
+        {
+            pool = new ForkJoinPool(parallelism);
+        }
+
+        synchronized boolean acquire()
+        {
+            if (retired)
+                return false;
+            useCount++;
+            return true;
+        }
+
+        synchronized void release()
+        {
+            if (--useCount == 0 && retired)
+                pool.shutdown();
+        }
+
+        synchronized void retire()
+        {
+            retired = true;
+            if (useCount == 0)
+                pool.shutdown();
+        }
+    }
 }
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.ReplaceEdit;
+
+import junit.framework.TestCase;
+
+/**
+ * A <code>BufferChangeBatch</code> benchmark: renames "foo" to "bar" across
+ * 5000 buffers sequentially and in parallel, and prints the timings.
+ * <p>
+ * Not a part of the regular test suite, since its name does not match
+ * the test class patterns; run it manually when assessing performance.
+ * </p>
+ */
+public class BufferChangeBatchBenchmark
+    extends TestCase
+{
+    private static final int BUFFER_COUNT = 5000;
+    private static final int LINE_COUNT = 100;
+    private static final int RUN_COUNT = 5;
+
+    public void testRename() throws Exception
+    {
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int run = 0; run < RUN_COUNT; run++)
+        {
+            long sequential = rename(1);
+            long parallel = rename(processors);
+            System.out.println(String.format(
+                "BufferChangeBatch rename across %d buffers: sequential %d ms, parallel (%d) %d ms",
+                BUFFER_COUNT, sequential, processors, parallel));
+        }
+    }
+
+    /*
+     * Returns the time taken to execute the batch, in milliseconds.
+     */
+    private static long rename(int parallelism) throws Exception
+    {
+        List<Buffer> buffers = new ArrayList<>(BUFFER_COUNT);
+        BufferChangeBatch batch = new BufferChangeBatch();
+        batch.setParallelism(parallelism);
+        for (int i = 0; i < BUFFER_COUNT; i++)
+        {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < LINE_COUNT; j++)
+                sb.append("int foo").append(j).append(" = foo();\n");
+            String contents = sb.toString();
+            Buffer buffer = new Buffer(contents);
+            buffers.add(buffer);
+            MultiTextEdit edit = new MultiTextEdit();
+            for (int offset = contents.indexOf("foo"); offset >= 0;
+                offset = contents.indexOf("foo", offset + 3))
+                edit.addChild(new ReplaceEdit(offset, 3, "bar"));
+            BufferChange change = new BufferChange(edit);
+            change.setBase(buffer.getSnapshot());
+            batch.add(buffer, change);
+        }
+        long start = System.nanoTime();
+        batch.execute(null);
+        long elapsed = System.nanoTime() - start;
+        for (Buffer buffer : buffers)
+        {
+            assertEquals(-1, buffer.getDocument().get().indexOf("foo"));
+            buffer.release();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(elapsed);
+    }
+}
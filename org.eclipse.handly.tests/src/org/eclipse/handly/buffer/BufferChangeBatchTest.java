@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.handly.snapshot.StaleSnapshotException;
+import org.eclipse.text.edits.InsertEdit;
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.ReplaceEdit;
+import org.eclipse.text.edits.TextEdit;
+
+import junit.framework.TestCase;
+
+/**
+ * <code>BufferChangeBatch</code> tests.
+ */
+public class BufferChangeBatchTest
+    extends TestCase
+{
+    public void test1() throws Exception
+    {
+        Buffer a = new Buffer("foo");
+        Buffer b = new Buffer("bar");
+        BufferChangeBatch batch = new BufferChangeBatch();
+        batch.add(a, newChange(a, new InsertEdit(0, "a")));
+        batch.add(b, newChange(b, new InsertEdit(0, "b")));
+        batch.add(a, new BufferChange(new InsertEdit(4, "!"))); // serialized
+        BufferChangeBatch undo = batch.execute(null);
+        assertEquals("afoo!", a.getDocument().get());
+        assertEquals("bbar", b.getDocument().get());
+        assertEquals(3, undo.size());
+        BufferChangeBatch redo = undo.execute(null);
+        assertEquals("foo", a.getDocument().get());
+        assertEquals("bar", b.getDocument().get());
+        redo.execute(null);
+        assertEquals("afoo!", a.getDocument().get());
+        assertEquals("bbar", b.getDocument().get());
+    }
+
+    public void test2() throws Exception
+    {
+        Buffer a = new Buffer("foo");
+        Buffer b = new Buffer("bar");
+        BufferChangeBatch batch = new BufferChangeBatch();
+        batch.add(a, newChange(a, new InsertEdit(0, "a")));
+        batch.add(b, newChange(b, new InsertEdit(0, "b")));
+        b.getDocument().set("baz");
+        try
+        {
+            batch.execute(null);
+            fail();
+        }
+        catch (StaleSnapshotException e)
+        {
+        }
+        assertEquals("foo", a.getDocument().get()); // nothing applied
+    }
+
+    public void test3() throws Exception
+    {
+        Buffer a = new Buffer("foo");
+        Buffer b = new Buffer("bar")
+        {
+            @Override
+            public IBufferChange applyChange(IBufferChange change,
+                IProgressMonitor monitor) throws CoreException
+            {
+                throw new CoreException(new Status(IStatus.ERROR,
+                    "org.eclipse.handly.tests", "failure"));
+            }
+        };
+        BufferChangeBatch batch = new BufferChangeBatch();
+        batch.setParallelism(1);
+        batch.add(a, newChange(a, new InsertEdit(0, "a")));
+        batch.add(b, newChange(b, new InsertEdit(0, "b")));
+        try
+        {
+            batch.execute(null);
+            fail();
+        }
+        catch (CoreException e)
+        {
+            assertEquals(1, e.getStatus().getChildren().length);
+        }
+        assertEquals("foo", a.getDocument().get()); // rolled back
+    }
+
+    public void test4() throws Exception
+    {
+        // changes applied in parallel go to the right buffers and are undone
+        List<Buffer> buffers = new ArrayList<>();
+        List<String> originals = new ArrayList<>();
+        BufferChangeBatch batch = new BufferChangeBatch();
+        batch.setParallelism(4);
+        for (int i = 0; i < 100; i++)
+        {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < 10; j++)
+                sb.append("int foo").append(i).append(" = foo();\n");
+            String contents = sb.toString();
+            Buffer buffer = new Buffer(contents);
+            buffers.add(buffer);
+            originals.add(contents);
+            MultiTextEdit edit = new MultiTextEdit();
+            for (int offset = contents.indexOf("foo"); offset >= 0;
+                offset = contents.indexOf("foo", offset + 3))
+                edit.addChild(new ReplaceEdit(offset, 3, "bar"));
+            batch.add(buffer, newChange(buffer, edit));
+        }
+        BufferChangeBatch undo = batch.execute(null);
+        for (int i = 0; i < buffers.size(); i++)
+        {
+            assertEquals(originals.get(i).replace("foo", "bar"),
+                buffers.get(i).getDocument().get());
+        }
+        undo.execute(null);
+        for (int i = 0; i < buffers.size(); i++)
+            assertEquals(originals.get(i), buffers.get(i).getDocument().get());
+    }
+
+    public void test5() throws Exception
+    {
+        // a subsequent change to a document cannot have a base snapshot
+        Buffer a = new Buffer("foo");
+        BufferChangeBatch batch = new BufferChangeBatch();
+        batch.add(a, newChange(a, new InsertEdit(0, "a")));
+        try
+        {
+            batch.add(a, newChange(a, new InsertEdit(3, "!")));
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+        assertEquals(1, batch.size());
+    }
+
+    private static BufferChange newChange(IBuffer buffer, TextEdit edit)
+    {
+        BufferChange change = new BufferChange(edit);
+        change.setBase(buffer.getSnapshot());
+        return change;
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2018 1C-Soft LLC.
+ * Copyright (c) 2018, 2020 1C-Soft LLC.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -16,6 +16,7 @@ import static org.eclipse.handly.context.Contexts.EMPTY_CONTEXT;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.handly.snapshot.StaleSnapshotException;
+import org.eclipse.jface.text.Position;
 
 import junit.framework.TestCase;
 
@@ -101,6 +102,22 @@ public class ChildBufferTest
         }
     }
 
+    public void test6() throws Exception
+    {
+        parent.getDocument().set("a\nb\nc\n");
+        parent.save(EMPTY_CONTEXT, null);
+        child = new ChildBuffer(parent);
+        Position position = new Position(4, 1); // "c"
+        parent.getDocument().addPosition(position);
+        child.getDocument().replace(2, 1, "B");
+        child.save(EMPTY_CONTEXT, null);
+        assertEquals("a\nB\nc\n", parent.getDocument().get());
+        // only the changed part of the parent has been replaced
+        assertFalse(position.isDeleted());
+        assertEquals(4, position.getOffset());
+        assertEquals(1, position.getLength());
+    }
+
     private static class TestBuffer
         extends Buffer
     {
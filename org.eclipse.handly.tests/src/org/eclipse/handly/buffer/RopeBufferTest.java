@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.buffer;
+
+import static org.eclipse.handly.context.Contexts.EMPTY_CONTEXT;
+
+import java.util.Random;
+
+import org.eclipse.handly.snapshot.ISnapshot;
+import org.eclipse.handly.snapshot.StaleSnapshotException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.text.edits.InsertEdit;
+import org.eclipse.text.edits.ReplaceEdit;
+
+import junit.framework.TestCase;
+
+/**
+ * <code>RopeBuffer</code> tests.
+ */
+public class RopeBufferTest
+    extends TestCase
+{
+    private RopeBuffer buffer;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        buffer = new RopeBuffer("foo\nbar");
+    }
+
+    public void test1() throws Exception
+    {
+        IDocument document = buffer.getDocument();
+        assertEquals("foo\nbar", document.get());
+        assertEquals(2, document.getNumberOfLines());
+        assertFalse(buffer.isDirty());
+        ISnapshot snapshot = buffer.getSnapshot();
+        assertTrue(snapshot.isEqualTo(buffer.getSnapshot()));
+        document.replace(3, 1, " ");
+        assertEquals("foo bar", document.get());
+        assertEquals(1, document.getNumberOfLines());
+        assertTrue(buffer.isDirty());
+        // snapshots never expire
+        assertEquals("foo\nbar", snapshot.getContents());
+        assertFalse(snapshot.isEqualTo(buffer.getSnapshot()));
+        buffer.save(EMPTY_CONTEXT, null);
+        assertFalse(buffer.isDirty());
+    }
+
+    public void test2() throws Exception
+    {
+        ISnapshot base = buffer.getSnapshot();
+        BufferChange change = new BufferChange(new InsertEdit(0, "baz"));
+        change.setBase(base);
+        IBufferChange undoChange = buffer.applyChange(change, null);
+        assertEquals("bazfoo\nbar", buffer.getDocument().get());
+        assertEquals("foo\nbar", base.getContents());
+        assertTrue(undoChange.getBase().isEqualTo(buffer.getSnapshot()));
+        buffer.applyChange(undoChange, null);
+        assertEquals("foo\nbar", buffer.getDocument().get());
+        assertTrue(base.isEqualTo(buffer.getSnapshot()));
+        assertFalse(buffer.isDirty());
+
+        buffer.getDocument().set("baz");
+        change = new BufferChange(new ReplaceEdit(0, 3, "foo"));
+        change.setBase(base);
+        try
+        {
+            buffer.applyChange(change, null);
+            fail();
+        }
+        catch (StaleSnapshotException e)
+        {
+        }
+    }
+
+    public void test3() throws Exception
+    {
+        Random random = new Random(42);
+        StringBuilder expected = new StringBuilder();
+        IDocument document = buffer.getDocument();
+        document.set("");
+        for (int i = 0; i < 2000; i++)
+        {
+            int length = expected.length();
+            int offset = random.nextInt(length + 1);
+            int replaced = random.nextInt(Math.min(length - offset, 20) + 1);
+            StringBuilder text = new StringBuilder();
+            for (int j = random.nextInt(i % 100 == 0 ? 3000 : 30); j > 0; j--)
+                text.append((char)('a' + random.nextInt(26)));
+            expected.replace(offset, offset + replaced, text.toString());
+            ISnapshot snapshot = buffer.getSnapshot();
+            String contents = document.get();
+            document.replace(offset, replaced, text.toString());
+            assertEquals(contents, snapshot.getContents());
+        }
+        assertEquals(expected.toString(), document.get());
+        assertEquals(expected.toString(), buffer.getSnapshot().getContents());
+        assertEquals(expected.substring(10, 500), document.get(10, 490));
+        assertEquals(expected.charAt(100), document.getChar(100));
+    }
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.buffer;
+
+import java.util.Random;
+
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.ReplaceEdit;
+import org.eclipse.text.edits.TextEdit;
+
+import junit.framework.TestCase;
+
+/**
+ * <code>TextDiff</code> tests.
+ */
+public class TextDiffTest
+    extends TestCase
+{
+    public void test1() throws Exception
+    {
+        assertEquals(0, TextDiff.computeEdit("", "").getChildren().length);
+        assertEquals(0,
+            TextDiff.computeEdit("abc\n", "abc\n").getChildren().length);
+        assertDiff("", "abc");
+        assertDiff("abc", "");
+        assertDiff("a\nb\nc\n", "a\nB\nc\n");
+        assertDiff("a\nb\nc\n", "x\nb\ny\n");
+        assertDiff("a\nb\nc", "a\nc\nb");
+    }
+
+    public void test2() throws Exception
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 50000; i++)
+            sb.append("line ").append(i).append('\n');
+        String oldText = sb.toString();
+        String newText = oldText.replace("line 25000\n", "line 25000!\n");
+        MultiTextEdit edit = assertDiff(oldText, newText);
+        TextEdit[] children = edit.getChildren();
+        assertEquals(1, children.length);
+        assertEquals(oldText.indexOf("line 25000\n") + 10,
+            children[0].getOffset());
+        assertEquals(0, children[0].getLength());
+        assertEquals("!", ((ReplaceEdit)children[0]).getText());
+    }
+
+    public void test3() throws Exception
+    {
+        Random random = new Random(7);
+        for (int n = 0; n < 1000; n++)
+        {
+            StringBuilder sb = new StringBuilder();
+            for (int i = random.nextInt(30); i > 0; i--)
+                sb.append("line").append(random.nextInt(5)).append('\n');
+            String oldText = sb.toString();
+            for (int i = random.nextInt(5); i > 0; i--)
+            {
+                int offset = random.nextInt(sb.length() + 1);
+                int length = random.nextInt(Math.min(6, sb.length() - offset)
+                    + 1);
+                sb.replace(offset, offset + length, random.nextBoolean()
+                    ? "x\n" : "line" + random.nextInt(5) + '\n');
+            }
+            assertDiff(oldText, sb.toString());
+        }
+    }
+
+    private static MultiTextEdit assertDiff(String oldText, String newText)
+        throws Exception
+    {
+        MultiTextEdit edit = TextDiff.computeEdit(oldText, newText);
+        IDocument document = new Document(oldText);
+        edit.copy().apply(document);
+        assertEquals(newText, document.get());
+        return edit;
+    }
+}
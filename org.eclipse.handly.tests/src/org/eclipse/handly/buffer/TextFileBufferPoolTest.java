@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.buffer;
+
+import org.eclipse.core.filebuffers.ITextFileBufferManager;
+import org.eclipse.core.filebuffers.LocationKind;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.handly.junit.WorkspaceTestCase;
+
+/**
+ * <code>TextFileBufferPool</code> tests.
+ */
+public class TextFileBufferPoolTest
+    extends WorkspaceTestCase
+{
+    private IPath a, b;
+    private TextFileBufferPool pool;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        IProject p = getProject("p");
+        p.create(null);
+        p.open(null);
+        a = p.getFile("a").getFullPath();
+        b = p.getFile("b").getFullPath();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        if (pool != null)
+            pool.clear();
+        super.tearDown();
+    }
+
+    public void test1() throws Exception
+    {
+        pool = new TextFileBufferPool(ITextFileBufferManager.DEFAULT, 10,
+            60000);
+        TextFileBuffer buffer = pool.acquire(a, LocationKind.IFILE, null);
+        TextFileBuffer buffer2 = pool.acquire(a, LocationKind.IFILE, null);
+        assertSame(buffer, buffer2);
+        buffer2.release();
+        buffer.release();
+        // kept connected while idle
+        assertEquals(1, pool.size());
+        assertTrue(isConnected(a));
+        try (TextFileBuffer buffer3 = pool.acquire(a, LocationKind.IFILE,
+            null))
+        {
+            assertSame(buffer, buffer3);
+        }
+        pool.clear();
+        assertEquals(0, pool.size());
+        assertFalse(isConnected(a));
+    }
+
+    public void test2() throws Exception
+    {
+        pool = new TextFileBufferPool(ITextFileBufferManager.DEFAULT, 1,
+            60000);
+        pool.acquire(a, LocationKind.IFILE, null).release();
+        assertTrue(isConnected(a));
+        pool.acquire(b, LocationKind.IFILE, null).release();
+        // the least recently used idle buffer is disconnected
+        assertEquals(1, pool.size());
+        assertFalse(isConnected(a));
+        assertTrue(isConnected(b));
+    }
+
+    public void test3() throws Exception
+    {
+        pool = new TextFileBufferPool(ITextFileBufferManager.DEFAULT, 1,
+            60000);
+        try (TextFileBuffer buffer = pool.acquire(a, LocationKind.IFILE,
+            null); TextFileBuffer buffer2 = pool.acquire(b, LocationKind.IFILE,
+                null))
+        {
+            // buffers in use are never disconnected
+            assertEquals(2, pool.size());
+            assertTrue(isConnected(a));
+            assertTrue(isConnected(b));
+        }
+        assertEquals(1, pool.size());
+    }
+
+    public void test4() throws Exception
+    {
+        pool = new TextFileBufferPool(ITextFileBufferManager.DEFAULT, 10, 0);
+        TextFileBuffer buffer = pool.acquire(a, LocationKind.IFILE, null);
+        buffer.release();
+        assertEquals(0, pool.size());
+        assertFalse(isConnected(a));
+        try
+        {
+            buffer.getDocument();
+            fail();
+        }
+        catch (IllegalStateException e)
+        {
+        }
+    }
+
+    public void test5() throws Exception
+    {
+        pool = new TextFileBufferPool(ITextFileBufferManager.DEFAULT, 10,
+            60000);
+        TextFileBuffer buffer = pool.acquire(a, LocationKind.IFILE, null);
+        buffer.getDocument().set("x"); //$NON-NLS-1$
+        assertTrue(buffer.isDirty());
+        buffer.release();
+        // dirty buffers are not pooled
+        assertEquals(0, pool.size());
+        assertFalse(isConnected(a));
+    }
+
+    public void test6() throws Exception
+    {
+        pool = new TextFileBufferPool(ITextFileBufferManager.DEFAULT, 10,
+            60000);
+        try (TextFileBuffer buffer = pool.acquire(a, LocationKind.IFILE,
+            null))
+        {
+            pool.evict(a, LocationKind.IFILE);
+            // buffers in use are not evicted
+            assertEquals(1, pool.size());
+            assertTrue(isConnected(a));
+        }
+        pool.evict(a, LocationKind.IFILE);
+        assertEquals(0, pool.size());
+        assertFalse(isConnected(a));
+    }
+
+    private static boolean isConnected(IPath location)
+    {
+        return ITextFileBufferManager.DEFAULT.getTextFileBuffer(location,
+            LocationKind.IFILE) != null;
+    }
+}
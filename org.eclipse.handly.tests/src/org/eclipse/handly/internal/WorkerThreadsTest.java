@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.internal;
+
+import java.util.concurrent.ThreadFactory;
+
+import junit.framework.TestCase;
+
+/**
+ * <code>WorkerThreads</code> tests.
+ */
+public class WorkerThreadsTest
+    extends TestCase
+{
+    public void test1()
+    {
+        ThreadFactory factory = WorkerThreads.newThreadFactory("Worker");
+        Thread thread1 = factory.newThread(() -> {});
+        Thread thread2 = factory.newThread(() -> {});
+        assertEquals("Worker 1", thread1.getName());
+        assertEquals("Worker 2", thread2.getName());
+        assertTrue(thread1.isDaemon());
+        assertTrue(thread2.isDaemon());
+    }
+
+    public void test2()
+    {
+        assertFalse(WorkerThreads.isUiThread());
+        assertEquals(4, WorkerThreads.getThreadCount(4));
+        assertEquals(1, WorkerThreads.getThreadCount(1));
+    }
+}
@@ -130,4 +130,70 @@ public class ElementCacheTest
         cache.put(new Element("E"), new Object());
         assertEquals(6, cache.size());
     }
+
+    public void test6()
+    {
+        class Element
+            extends SimpleElement
+        {
+            Element(String name)
+            {
+                super(null, name, null);
+            }
+
+            @Override
+            public void close_(IContext context)
+            {
+                cache.remove(this);
+            }
+        }
+        assertEquals(10, cache.maxSize());
+        assertFalse(cache.isEvictionDeferred());
+        cache.deferEviction();
+        cache.deferEviction();
+        assertTrue(cache.isEvictionDeferred());
+        for (int i = 0; i < 15; i++)
+            cache.put(new Element(Integer.toString(i)), new Object());
+        assertEquals(15, cache.size());
+        cache.resumeEviction();
+        assertTrue(cache.isEvictionDeferred());
+        assertEquals(15, cache.size());
+        cache.resumeEviction();
+        assertFalse(cache.isEvictionDeferred());
+        assertTrue(cache.size() <= cache.maxSize());
+        try
+        {
+            cache.resumeEviction();
+            fail();
+        }
+        catch (IllegalStateException e)
+        {
+        }
+    }
+
+    public void test7()
+    {
+        class Element
+            extends SimpleElement
+        {
+            Element(String name)
+            {
+                super(null, name, null);
+            }
+
+            @Override
+            public void close_(IContext context)
+            {
+                cache.remove(this);
+            }
+        }
+        cache.setDeferredSizeFactor(1.5);
+        cache.deferEviction();
+        for (int i = 0; i < 15; i++)
+            cache.put(new Element(Integer.toString(i)), new Object());
+        assertEquals(15, cache.size());
+        cache.put(new Element("E"), new Object());
+        assertTrue(cache.size() <= cache.maxSize());
+        cache.resumeEviction();
+    }
 }
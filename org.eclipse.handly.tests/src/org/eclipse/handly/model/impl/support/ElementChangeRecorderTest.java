@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2018 1C-Soft LLC.
+ * Copyright (c) 2018, 2020 1C-Soft LLC.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -16,6 +16,7 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.handly.context.IContext;
 import org.eclipse.handly.model.ElementDeltas;
+import org.eclipse.handly.model.IElement;
 import org.eclipse.handly.snapshot.DocumentSnapshot;
 import org.eclipse.handly.util.Property;
 import org.eclipse.handly.util.TextRange;
@@ -465,4 +466,50 @@ public class ElementChangeRecorderTest
             recorder.endRecording().getDelta().toString());
         //@formatter:on
     }
+
+    public void test36()
+    {
+        // no changes are reported for the children that have never been built
+        int[] buildCount = new int[1];
+        rootBody.addChild(b);
+        bBody.setDeferredChildren(newElements ->
+        {
+            buildCount[0]++;
+            newElements.put(c, cBody);
+            return new IElement[] { c };
+        });
+        recorder.beginRecording(root);
+        bBody = new SourceElementBody();
+        bBody.setDeferredChildren(newElements ->
+        {
+            buildCount[0]++;
+            return new IElement[0];
+        });
+        assertTrue(ElementDeltas.isNullOrEmpty(
+            recorder.endRecording().getDelta()));
+        assertEquals(0, buildCount[0]);
+        assertTrue(bBody.hasDeferredChildren());
+    }
+
+    public void test37()
+    {
+        // the children that have been built are compared with the new ones
+        int[] buildCount = new int[1];
+        rootBody.addChild(b);
+        bBody.addChild(c);
+        recorder.beginRecording(root);
+        bBody = new SourceElementBody();
+        bBody.setDeferredChildren(newElements ->
+        {
+            buildCount[0]++;
+            return new IElement[0];
+        });
+        //@formatter:off
+        assertEquals("root[*]: {CHILDREN | FINE GRAINED}\n" +
+            "  B[*]: {CHILDREN | FINE GRAINED}\n" +
+            "    C[-]: {}", recorder.endRecording().getDelta().toString());
+        //@formatter:on
+        assertEquals(1, buildCount[0]);
+        assertFalse(bBody.hasDeferredChildren());
+    }
 }
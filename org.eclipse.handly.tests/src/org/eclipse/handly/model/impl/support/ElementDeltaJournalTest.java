@@ -0,0 +1,240 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.model.impl.support;
+
+import static org.eclipse.handly.model.IElementDeltaConstants.ADDED;
+import static org.eclipse.handly.model.IElementDeltaConstants.CHANGED;
+import static org.eclipse.handly.model.IElementDeltaConstants.F_CHILDREN;
+import static org.eclipse.handly.model.IElementDeltaConstants.F_CONTENT;
+import static org.eclipse.handly.model.IElementDeltaConstants.REMOVED;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.handly.context.Context;
+import org.eclipse.handly.model.IElement;
+import org.eclipse.handly.model.IElementChangeEvent;
+import org.eclipse.handly.model.IElementHandleFactory;
+
+import junit.framework.TestCase;
+
+/**
+ * <code>ElementDeltaJournal</code> tests.
+ */
+public class ElementDeltaJournalTest
+    extends TestCase
+{
+    private Path directory;
+    private SimpleModelManager manager;
+    private JournalElement root, a, b;
+    private ElementDeltaJournal journal;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        directory = Files.createTempDirectory("journal"); //$NON-NLS-1$
+        manager = new SimpleModelManager();
+        Context context = new Context();
+        context.bind(IElementHandleFactory.class).to(new HandleFactory());
+        manager.model.context = context;
+        root = new JournalElement(null, "root");
+        a = root.getChild("A");
+        b = root.getChild("B");
+        journal = new ElementDeltaJournal(directory, context);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        journal.close();
+        File[] files = directory.toFile().listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+                file.delete();
+        }
+        directory.toFile().delete();
+        super.tearDown();
+    }
+
+    public void test1() throws Exception
+    {
+        assertEquals(0, journal.getLastSequence());
+        assertEquals(1, journal.getFirstSequence());
+
+        journal.elementChanged(newEvent(new ElementDelta.Builder(
+            new ElementDelta(root)).added(a).getDelta()));
+        journal.elementChanged(newEvent(new ElementDelta.Builder(
+            new ElementDelta(root)).changed(b, F_CONTENT).getDelta()));
+        journal.elementChanged(newEvent(new ElementDelta.Builder(
+            new ElementDelta(root)).removed(a).getDelta()));
+        assertEquals(3, journal.getLastSequence());
+
+        List<ElementDeltaJournal.Record> records = read(1);
+        assertEquals(2, records.size());
+        assertEquals(2, records.get(0).getSequence());
+        assertEquals(3, records.get(1).getSequence());
+
+        ElementDelta delta = (ElementDelta)records.get(0).getDeltas()[0];
+        assertEquals(root, delta.getElement_());
+        assertEquals(CHANGED, delta.getKind_());
+        assertEquals(F_CHILDREN, delta.getFlags_());
+        ElementDelta childDelta = delta.findDelta_(b);
+        assertEquals(CHANGED, childDelta.getKind_());
+        assertEquals(F_CONTENT, childDelta.getFlags_());
+
+        delta = (ElementDelta)records.get(1).getDeltas()[0];
+        assertEquals(REMOVED, delta.findDelta_(a).getKind_());
+
+        assertTrue(read(3).isEmpty());
+    }
+
+    public void test2() throws Exception
+    {
+        journal.elementChanged(newEvent(new ElementDelta.Builder(
+            new ElementDelta(root)).added(a).getDelta()));
+        journal.close();
+
+        journal = new ElementDeltaJournal(directory, manager.model.context);
+        assertEquals(1, journal.getLastSequence());
+        journal.elementChanged(newEvent(new ElementDelta.Builder(
+            new ElementDelta(root)).added(b).getDelta()));
+        assertEquals(2, journal.getLastSequence());
+
+        List<ElementDeltaJournal.Record> records = read(0);
+        assertEquals(2, records.size());
+        ElementDelta delta = (ElementDelta)records.get(0).getDeltas()[0];
+        assertEquals(ADDED, delta.findDelta_(a).getKind_());
+        delta = (ElementDelta)records.get(1).getDeltas()[0];
+        assertEquals(ADDED, delta.findDelta_(b).getKind_());
+    }
+
+    public void test3() throws Exception
+    {
+        journal.setMaxSegmentSize(1);
+        journal.setMaxSegmentCount(2);
+        for (int i = 0; i < 5; i++)
+        {
+            journal.elementChanged(newEvent(new ElementDelta.Builder(
+                new ElementDelta(root)).changed(a, F_CONTENT).getDelta()));
+        }
+        assertEquals(5, journal.getLastSequence());
+        assertEquals(4, journal.getFirstSequence());
+        assertFalse(journal.readSince(0, record -> fail()));
+        List<ElementDeltaJournal.Record> records = read(3);
+        assertEquals(2, records.size());
+        assertEquals(4, records.get(0).getSequence());
+        assertEquals(5, records.get(1).getSequence());
+    }
+
+    public void test4() throws Exception
+    {
+        for (int i = 0; i < 3; i++)
+        {
+            journal.elementChanged(newEvent(new ElementDelta.Builder(
+                new ElementDelta(root)).changed(a, F_CONTENT).getDelta()));
+        }
+        // corrupt the second record
+        Path segment;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+            directory))
+        {
+            segment = stream.iterator().next();
+        }
+        byte[] bytes = Files.readAllBytes(segment);
+        int length = ByteBuffer.wrap(bytes, 4, 4).getInt();
+        int offset = 4 + 4 + length + 4 + 4; // the second payload
+        bytes[offset + 1] ^= 0xff;
+        Files.write(segment, bytes);
+
+        List<ElementDeltaJournal.Record> records = new ArrayList<>();
+        try
+        {
+            journal.readSince(0, record -> records.add(record));
+            fail();
+        }
+        catch (CoreException e)
+        {
+        }
+        assertEquals(1, records.size());
+        assertEquals(1, records.get(0).getSequence());
+    }
+
+    private List<ElementDeltaJournal.Record> read(long sequence)
+        throws Exception
+    {
+        List<ElementDeltaJournal.Record> records = new ArrayList<>();
+        assertTrue(journal.readSince(sequence, record -> records.add(record)));
+        return records;
+    }
+
+    private static IElementChangeEvent newEvent(ElementDelta delta)
+    {
+        return new ElementChangeEvent(ElementChangeEvent.POST_CHANGE, delta);
+    }
+
+    private class JournalElement
+        extends SimpleElement
+    {
+        JournalElement(IElement parent, String name)
+        {
+            super(parent, name, manager);
+        }
+
+        @Override
+        public JournalElement getChild(String name)
+        {
+            return new JournalElement(this, name);
+        }
+
+        @Override
+        public String getHandleMemento_()
+        {
+            IElement parent = getParent_();
+            if (parent == null)
+                return getName_();
+            return ((JournalElement)parent).getHandleMemento_() + '/'
+                + getName_();
+        }
+    }
+
+    private class HandleFactory
+        implements IElementHandleFactory
+    {
+        @Override
+        public IElement createFromHandleMemento(String memento)
+        {
+            if (memento == null)
+                return null;
+            String[] names = memento.split("/"); //$NON-NLS-1$
+            JournalElement element = new JournalElement(null, names[0]);
+            for (int i = 1; i < names.length; i++)
+                element = element.getChild(names[i]);
+            return element;
+        }
+
+        @Override
+        public IElement createFromResourceHandle(IResource resource)
+        {
+            return null;
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2018 1C-Soft LLC.
+ * Copyright (c) 2018, 2020 1C-Soft LLC.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -18,6 +18,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.handly.buffer.Buffer;
@@ -139,7 +140,7 @@ public class ElementManagerTest
         //@formatter:on
         assertEquals(0, buffer.refCount);
         assertNull(manager.putWorkingCopyInfoIfAbsent(a, info));
-        assertEquals(1, info.refCount);
+        assertEquals(1, info.refCount.get());
         assertEquals(1, buffer.refCount);
 
         assertEquals(Collections.singletonList(a), Arrays.asList(
@@ -151,11 +152,11 @@ public class ElementManagerTest
         assertTrue(info.created);
 
         assertSame(info, manager.peekAtWorkingCopyInfo(a));
-        assertEquals(1, info.refCount);
+        assertEquals(1, info.refCount.get());
         assertEquals(1, buffer.refCount);
 
         assertSame(info, manager.getWorkingCopyInfo(a));
-        assertEquals(2, info.refCount);
+        assertEquals(2, info.refCount.get());
         assertEquals(1, buffer.refCount);
 
         //@formatter:off
@@ -165,16 +166,16 @@ public class ElementManagerTest
         //@formatter:on
         assertEquals(1, buffer.refCount);
         assertSame(info, manager.putWorkingCopyInfoIfAbsent(a, info2));
-        assertEquals(3, info.refCount);
-        assertEquals(0, info2.refCount);
+        assertEquals(3, info.refCount.get());
+        assertEquals(0, info2.refCount.get());
         assertEquals(1, buffer.refCount);
 
         assertSame(info, manager.releaseWorkingCopyInfo(a));
-        assertEquals(2, info.refCount);
+        assertEquals(2, info.refCount.get());
         assertEquals(1, buffer.refCount);
 
         assertSame(info, manager.releaseWorkingCopyInfo(a));
-        assertEquals(1, info.refCount);
+        assertEquals(1, info.refCount.get());
         assertEquals(1, buffer.refCount);
 
         assertSame(body, manager.peek(a));
@@ -190,6 +191,88 @@ public class ElementManagerTest
         assertNull(manager.releaseWorkingCopyInfo(a));
     }
 
+    public void test3() throws Exception
+    {
+        TestBuffer buffer = new TestBuffer();
+        //@formatter:off
+        WorkingCopyInfo info = new WorkingCopyInfo(buffer, EMPTY_CONTEXT,
+            (IContext context, IProgressMonitor monitor) -> {},
+            new DefaultWorkingCopyCallback());
+        //@formatter:on
+        assertNull(manager.putWorkingCopyInfoIfAbsent(a, info));
+        manager.put(a, Collections.singletonMap(a, new SourceElementBody()));
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++)
+        {
+            threads[i] = new Thread(() ->
+            {
+                try
+                {
+                    for (int j = 0; j < 10000; j++)
+                    {
+                        assertSame(info, manager.getWorkingCopyInfo(a));
+                        assertSame(info, manager.releaseWorkingCopyInfo(a));
+                    }
+                }
+                catch (Throwable e)
+                {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertNull(failure.get());
+
+        assertEquals(1, info.refCount.get());
+        assertFalse(info.isDisposed());
+        assertEquals(1, buffer.refCount);
+
+        assertSame(info, manager.releaseWorkingCopyInfo(a));
+        assertTrue(info.isDisposed());
+        assertEquals(0, buffer.refCount);
+        assertNull(manager.get(a));
+    }
+
+    public void test4() throws Exception
+    {
+        SimpleModelManager modelManager = new SimpleModelManager();
+        ElementManager manager = modelManager.elementManager;
+        boolean[] removed = new boolean[1];
+        SimpleSourceFile a = new SimpleSourceFile(null, "a.foo", null,
+            modelManager)
+        {
+            @Override
+            public void remove_(IContext context)
+            {
+                removed[0] = true;
+                // the working copy info has already been removed, and
+                // the source file is removed under the element manager lock
+                assertNull(manager.peekAtWorkingCopyInfo(this));
+                assertFalse(isWorkingCopy_());
+                assertTrue(Thread.holdsLock(manager));
+                super.remove_(context);
+            }
+        };
+        TestBuffer buffer = new TestBuffer();
+        //@formatter:off
+        WorkingCopyInfo info = new WorkingCopyInfo(buffer, EMPTY_CONTEXT,
+            (IContext context, IProgressMonitor monitor) -> {},
+            new DefaultWorkingCopyCallback());
+        //@formatter:on
+        assertNull(manager.putWorkingCopyInfoIfAbsent(a, info));
+        manager.put(a, Collections.singletonMap(a, new SourceElementBody()));
+        assertTrue(a.isWorkingCopy_());
+
+        assertSame(info, manager.releaseWorkingCopyInfo(a));
+        assertTrue(removed[0]);
+        assertTrue(info.isDisposed());
+        assertNull(manager.get(a));
+    }
+
     private static class TestBuffer
         extends Buffer
     {
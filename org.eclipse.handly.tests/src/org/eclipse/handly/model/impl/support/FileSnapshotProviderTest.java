@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.model.impl.support;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.handly.snapshot.Snapshot;
+
+import junit.framework.TestCase;
+
+/**
+ * <code>FileSnapshotProvider</code> tests.
+ */
+public class FileSnapshotProviderTest
+    extends TestCase
+{
+    public void test1()
+    {
+        IStatus error = new Status(IStatus.ERROR, "test", "I/O error");
+        int[] count = new int[1];
+        FileSnapshotProvider<Snapshot> provider = new FileSnapshotProvider<>(
+            () ->
+            {
+                count[0]++;
+                return new Snapshot()
+                {
+                    @Override
+                    public String getContents()
+                    {
+                        return null; // could not be read
+                    }
+                };
+            }, snapshot -> error);
+        try
+        {
+            provider.getNonExpiringSnapshot();
+            fail();
+        }
+        catch (IllegalStateException e)
+        {
+            assertSame(error, ((CoreException)e.getCause()).getStatus());
+        }
+        assertEquals(1, count[0]); // no retries
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2016, 2018 1C-Soft LLC.
+ * Copyright (c) 2016, 2020 1C-Soft LLC.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -12,6 +12,11 @@
  *******************************************************************************/
 package org.eclipse.handly.model.impl.support;
 
+import static org.eclipse.handly.model.IElementDeltaConstants.ADDED;
+import static org.eclipse.handly.model.IElementDeltaConstants.CHANGED;
+import static org.eclipse.handly.model.IElementDeltaConstants.F_CONTENT;
+import static org.eclipse.handly.model.IElementDeltaConstants.REMOVED;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -106,6 +111,120 @@ public class NotificationManagerTest
         manager.removeElementChangeListener(listener);
     }
 
+    public void test4()
+    {
+        SimpleModelManager modelManager = new SimpleModelManager();
+        SimpleElement root = new SimpleElement(null, "root", modelManager);
+        SimpleElement a = root.getChild("A");
+        SimpleElement b = root.getChild("B");
+        SimpleElement c = a.getChild("C");
+
+        List<IElementChangeEvent> events = new ArrayList<>();
+        manager.addElementChangeListener(event -> events.add(event));
+
+        assertFalse(manager.isBatching());
+        manager.beginBatch();
+        assertTrue(manager.isBatching());
+        manager.fireElementChangeEvent(new ElementChangeEvent(
+            ElementChangeEvent.POST_CHANGE, new ElementDelta.Builder(
+                new ElementDelta(a)).added(c).getDelta()));
+        manager.beginBatch();
+        manager.fireElementChangeEvent(new ElementChangeEvent(
+            ElementChangeEvent.POST_CHANGE, new ElementDelta.Builder(
+                new ElementDelta(root)).removed(b).getDelta()));
+        manager.fireElementChangeEvent(new ElementChangeEvent(
+            ElementChangeEvent.POST_RECONCILE, new ElementDelta.Builder(
+                new ElementDelta(a)).changed(a, F_CONTENT).getDelta()));
+        manager.endBatch();
+        assertTrue(manager.isBatching());
+        assertTrue(events.isEmpty());
+        manager.endBatch();
+        assertFalse(manager.isBatching());
+
+        assertEquals(2, events.size());
+
+        IElementChangeEvent event = events.get(0);
+        assertEquals(ElementChangeEvent.POST_CHANGE, event.getType());
+        assertEquals(1, event.getDeltas().length);
+        ElementDelta delta = (ElementDelta)event.getDeltas()[0];
+        assertEquals(root, delta.getElement_());
+        assertEquals(ADDED, delta.findDelta_(c).getKind_());
+        assertEquals(REMOVED, delta.findDelta_(b).getKind_());
+
+        event = events.get(1);
+        assertEquals(ElementChangeEvent.POST_RECONCILE, event.getType());
+        assertEquals(1, event.getDeltas().length);
+        delta = (ElementDelta)event.getDeltas()[0];
+        assertEquals(a, delta.getElement_());
+        assertEquals(CHANGED, delta.getKind_());
+    }
+
+    public void test5()
+    {
+        SimpleElement a = new SimpleElement(null, "A",
+            new SimpleModelManager());
+
+        List<IElementChangeEvent> events = new ArrayList<>();
+        manager.addElementChangeListener(event -> events.add(event));
+
+        manager.beginBatch();
+        manager.fireElementChangeEvent(new ElementChangeEvent(
+            ElementChangeEvent.POST_CHANGE, new ElementDelta.Builder(
+                new ElementDelta(a)).added(a).getDelta()));
+        manager.fireElementChangeEvent(new ElementChangeEvent(
+            ElementChangeEvent.POST_CHANGE, new ElementDelta.Builder(
+                new ElementDelta(a)).removed(a).getDelta()));
+        manager.endBatch();
+        assertTrue(events.isEmpty());
+
+        try
+        {
+            manager.endBatch();
+            fail();
+        }
+        catch (IllegalStateException e)
+        {
+        }
+    }
+
+    public void test6()
+    {
+        manager.addElementChangeListener(listener);
+        assertEquals(0, manager.getListenerStatistics().length);
+        manager.fireElementChangeEvent(POST_CHANGE);
+        manager.fireElementChangeEvent(POST_RECONCILE);
+        ListenerStatistics[] statistics = manager.getListenerStatistics();
+        assertEquals(1, statistics.length);
+        assertEquals(Listener.class.getName(),
+            statistics[0].getListenerClass());
+        assertEquals(2, statistics[0].getCount());
+        assertTrue(statistics[0].getMaxTime() <= statistics[0].getTotalTime());
+        assertTrue(statistics[0].getP99Time() <= statistics[0].getMaxTime());
+
+        manager.resetListenerStatistics();
+        assertEquals(0, manager.getListenerStatistics().length);
+
+        manager.fireElementChangeEvent(POST_CHANGE);
+        assertEquals(1, manager.getListenerStatistics()[0].getCount());
+        manager.removeElementChangeListener(listener);
+        assertEquals(0, manager.getListenerStatistics().length);
+    }
+
+    public void test7()
+    {
+        // a listener removed while being dispatched is not retained
+        manager.addElementChangeListener(new IElementChangeListener()
+        {
+            @Override
+            public void elementChanged(IElementChangeEvent event)
+            {
+                manager.removeElementChangeListener(this);
+            }
+        });
+        manager.fireElementChangeEvent(POST_CHANGE);
+        assertEquals(0, manager.getListenerStatistics().length);
+    }
+
     private static class Listener
         implements IElementChangeListener
     {
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.model.impl.support;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.handly.model.IElement;
+import org.eclipse.handly.snapshot.ContentDigest;
+
+import junit.framework.TestCase;
+
+/**
+ * <code>ReconcileCache</code> tests.
+ */
+public class ReconcileCacheTest
+    extends TestCase
+{
+    private static final long MILLIS = 1000000; // in nanoseconds
+
+    private final SimpleSourceFile sourceFile = new SimpleSourceFile(null,
+        "a.foo", null, new SimpleModelManager());
+
+    public void test1()
+    {
+        ReconcileCache cache = new ReconcileCache(2, 100);
+        ContentDigest a = ContentDigest.of("A");
+        ContentDigest b = ContentDigest.of("B");
+        ContentDigest c = ContentDigest.of("C");
+        assertNull(cache.get(a, 0));
+        Map<IElement, Object> elementsA = newElements();
+        cache.put(a, elementsA, 0);
+        cache.put(b, newElements(), 0);
+        assertEquals(elementsA, cache.get(a, 0)); // a is now MRU
+        cache.put(c, newElements(), 0); // evicts b
+        assertEquals(2, cache.size());
+        assertNull(cache.get(b, 0));
+        assertNotNull(cache.get(a, 0));
+        assertNotNull(cache.get(c, 0));
+    }
+
+    public void test2()
+    {
+        ReconcileCache cache = new ReconcileCache(2, 100);
+        ContentDigest a = ContentDigest.of("A");
+        ContentDigest b = ContentDigest.of("B");
+        cache.put(a, newElements(), 0);
+        assertNotNull(cache.get(a, 99 * MILLIS));
+        assertNull(cache.get(a, 100 * MILLIS)); // expired
+        assertEquals(0, cache.size());
+
+        cache.put(a, newElements(), 0);
+        cache.put(b, newElements(), 100 * MILLIS); // removes expired a
+        assertEquals(1, cache.size());
+    }
+
+    public void test3()
+    {
+        ReconcileCache cache = new ReconcileCache(1, 100);
+        ContentDigest a = ContentDigest.of("A");
+        Map<IElement, Object> elements = newElements();
+        cache.put(a, elements, 0);
+        elements.clear(); // the cache keeps its own copy
+        Map<IElement, Object> cached = cache.get(a, 0);
+        assertEquals(1, cached.size());
+        cached.clear(); // the caller gets its own copy
+        assertEquals(1, cache.get(a, 0).size());
+    }
+
+    private Map<IElement, Object> newElements()
+    {
+        return new HashMap<>(Collections.singletonMap(sourceFile,
+            new SourceElementBody()));
+    }
+}
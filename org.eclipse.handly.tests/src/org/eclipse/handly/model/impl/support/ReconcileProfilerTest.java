@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.model.impl.support;
+
+import static org.eclipse.handly.context.Contexts.EMPTY_CONTEXT;
+import static org.eclipse.handly.context.Contexts.of;
+
+import java.util.List;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.handly.buffer.Buffer;
+import org.eclipse.handly.context.IContext;
+import org.eclipse.handly.model.impl.IReconcileStrategy;
+import org.eclipse.handly.model.impl.ISourceFileImplExtension;
+import org.eclipse.handly.model.impl.support.ReconcileProfile.Phase;
+
+import junit.framework.TestCase;
+
+/**
+ * <code>ReconcileProfiler</code> tests.
+ */
+public class ReconcileProfilerTest
+    extends TestCase
+{
+    private ReconcileProfiler profiler;
+    private SimpleSourceFile sourceFile;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        profiler = new ReconcileProfiler(2);
+        SimpleModelManager modelManager = new SimpleModelManager();
+        modelManager.model.context = of(ReconcileProfiler.class, profiler);
+        sourceFile = new SimpleSourceFile(null, "a.foo", null, modelManager)
+        {
+            @Override
+            public void buildSourceStructure_(IContext context,
+                IProgressMonitor monitor) throws CoreException
+            {
+                try
+                {
+                    Thread.sleep(1);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                super.buildSourceStructure_(context, monitor);
+            }
+        };
+    }
+
+    public void test1() throws Exception
+    {
+        try (Buffer buffer = new Buffer("A"))
+        {
+            sourceFile.becomeWorkingCopy_(of(
+                ISourceFileImplExtension.WORKING_COPY_BUFFER, buffer), null);
+            try
+            {
+                assertEquals(1, profiler.getProfiles(sourceFile).size());
+
+                buffer.getDocument().set("B");
+                sourceFile.reconcile_(EMPTY_CONTEXT, null);
+                buffer.getDocument().set("C");
+                sourceFile.reconcile_(EMPTY_CONTEXT, null);
+
+                List<ReconcileProfile> profiles = profiler.getProfiles(
+                    sourceFile);
+                assertEquals(2, profiles.size()); // only the last two are kept
+                ReconcileProfile profile = profiles.get(1);
+                assertEquals(sourceFile, profile.getSourceFile());
+                long sum = 0;
+                for (Phase phase : Phase.values())
+                {
+                    assertTrue(profile.getDuration(phase) >= 0);
+                    sum += profile.getDuration(phase);
+                }
+                assertTrue(profile.getDuration(Phase.BUILD) >= 1000000);
+                assertEquals(0, profile.getDuration(Phase.NOTIFY)); // not notified
+                assertTrue(profile.getTotalDuration() >= sum);
+                assertTrue(profiles.get(0).getTimestamp() <=
+                    profile.getTimestamp());
+            }
+            finally
+            {
+                sourceFile.releaseWorkingCopy_();
+            }
+        }
+    }
+
+    public void test2() throws Exception
+    {
+        profiler.add(new ReconcileProfile(sourceFile, 1000, 10000, new long[] {
+            1000, 2000, 0, 3000, 4000, 0 }));
+        StringBuilder out = new StringBuilder();
+        profiler.exportCsv(out);
+        assertEquals(
+            "file,timestamp,total,snapshot,build,set_snapshot,put,diff,notify\n"
+                + "a.foo,1000,10,1,2,0,3,4,0\n", out.toString());
+
+        profiler.clear();
+        assertTrue(profiler.getProfiles().isEmpty());
+    }
+
+    public void test3() throws Exception
+    {
+        try (Buffer buffer = new Buffer("A"))
+        {
+            sourceFile.becomeWorkingCopy_(of(
+                ISourceFileImplExtension.WORKING_COPY_BUFFER, buffer), null);
+            try
+            {
+                // a custom working copy callback may not specify
+                // the snapshot duration
+                WorkingCopyInfo info =
+                    sourceFile.getElementManager_().peekAtWorkingCopyInfo(
+                        sourceFile);
+                info.getReconcileStrategy().reconcile(of(
+                    IReconcileStrategy.SOURCE_CONTENTS, "B"), null);
+
+                List<ReconcileProfile> profiles = profiler.getProfiles(
+                    sourceFile);
+                assertEquals(2, profiles.size());
+                assertEquals(0, profiles.get(1).getDuration(Phase.SNAPSHOT));
+            }
+            finally
+            {
+                sourceFile.releaseWorkingCopy_();
+            }
+        }
+        // the profiles are removed when the working copy is released
+        assertTrue(profiler.getProfiles(sourceFile).isEmpty());
+        assertTrue(profiler.getProfiles().isEmpty());
+    }
+}
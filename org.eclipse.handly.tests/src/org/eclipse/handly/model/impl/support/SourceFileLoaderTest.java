@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.model.impl.support;
+
+import static org.eclipse.handly.context.Contexts.EMPTY_CONTEXT;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.handly.junit.WorkspaceTestCase;
+
+/**
+ * <code>SourceFileLoader</code> tests.
+ */
+public class SourceFileLoaderTest
+    extends WorkspaceTestCase
+{
+    private SimpleModelManager manager;
+    private List<SimpleSourceFile> sourceFiles;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        IProject project = setUpProject("Test001");
+        manager = new SimpleModelManager();
+        sourceFiles = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+        {
+            IFile file = project.getFile("f" + i + ".foo");
+            file.create(new ByteArrayInputStream(("contents" + i).getBytes()),
+                true, null);
+            sourceFiles.add(newSourceFile(file));
+        }
+    }
+
+    public void test1() throws Exception
+    {
+        SourceFileLoader loader = new SourceFileLoader();
+        loader.setIoThreadCount(3);
+        loader.setParsingThreadCount(2);
+        loader.setMaxPendingSnapshots(4);
+        IStatus status = loader.load(sourceFiles, EMPTY_CONTEXT, null);
+        assertTrue(status.isOK());
+        for (int i = 0; i < sourceFiles.size(); i++)
+        {
+            SourceElementBody body =
+                (SourceElementBody)sourceFiles.get(i).peekAtBody_();
+            assertNotNull(body);
+            assertEquals("contents" + i, body.getSnapshot().getContents());
+        }
+    }
+
+    public void test2() throws Exception
+    {
+        SimpleSourceFile missing = newSourceFile(
+            sourceFiles.get(0).getFile_().getProject().getFile(
+                "missing.foo"));
+        sourceFiles.add(missing);
+        IStatus status = new SourceFileLoader().load(sourceFiles,
+            EMPTY_CONTEXT, null);
+        assertFalse(status.isOK());
+        assertEquals(1, status.getChildren().length);
+        assertNull(missing.peekAtBody_());
+        assertNotNull(sourceFiles.get(0).peekAtBody_());
+    }
+
+    private SimpleSourceFile newSourceFile(IFile file)
+    {
+        return new SimpleSourceFile(null, file.getName(), file, manager);
+    }
+}
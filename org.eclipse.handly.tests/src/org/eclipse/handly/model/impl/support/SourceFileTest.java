@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2018 1C-Soft LLC.
+ * Copyright (c) 2018, 2020 1C-Soft LLC.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -15,12 +15,17 @@ package org.eclipse.handly.model.impl.support;
 import static org.eclipse.handly.context.Contexts.EMPTY_CONTEXT;
 import static org.eclipse.handly.context.Contexts.of;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.handly.buffer.Buffer;
 import org.eclipse.handly.buffer.BufferChange;
 import org.eclipse.handly.buffer.IBuffer;
+import org.eclipse.handly.buffer.RopeBuffer;
 import org.eclipse.handly.context.IContext;
 import org.eclipse.handly.junit.WorkspaceTestCase;
 import org.eclipse.handly.model.ISourceConstruct;
@@ -28,8 +33,10 @@ import org.eclipse.handly.model.ISourceElementInfo;
 import org.eclipse.handly.model.impl.ISourceFileImplExtension;
 import org.eclipse.handly.snapshot.DocumentSnapshot;
 import org.eclipse.handly.snapshot.ISnapshot;
+import org.eclipse.handly.snapshot.NonExpiringSnapshot;
 import org.eclipse.handly.snapshot.TextFileSnapshot;
 import org.eclipse.handly.util.TextRange;
+import org.eclipse.handly.util.TextReplacement;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.text.edits.InsertEdit;
 
@@ -41,6 +48,7 @@ public class SourceFileTest
 {
     private SimpleSourceFile sourceFile;
     private SimpleSourceConstruct aChild;
+    private List<TextReplacement> sourceEdits;
 
     @Override
     protected void setUp() throws Exception
@@ -54,6 +62,7 @@ public class SourceFileTest
             public void buildSourceStructure_(IContext context,
                 IProgressMonitor monitor) throws CoreException
             {
+                sourceEdits = context.get(SOURCE_EDITS);
                 SourceElementBody body = new SourceElementBody();
                 if ("A".equals(context.get(SOURCE_CONTENTS)))
                 {
@@ -249,6 +258,98 @@ public class SourceFileTest
         assertNull(sourceFile.peekAtBody_());
     }
 
+    public void test10() throws Exception
+    {
+        RopeBuffer buffer = new RopeBuffer("A");
+        sourceFile.becomeWorkingCopy_(of(
+            ISourceFileImplExtension.WORKING_COPY_BUFFER, buffer), null);
+        try
+        {
+            ISourceElementInfo info = sourceFile.getSourceElementInfo_(
+                EMPTY_CONTEXT, null);
+            assertEquals(1, info.getChildren().length);
+            assertEquals(new TextRange(0, 1), info.getFullRange());
+            ISnapshot snapshot = info.getSnapshot();
+            assertTrue(buffer.getSnapshot().isEqualTo(snapshot));
+            // the snapshot provides its contents without a string copy
+            assertFalse(snapshot.getCharSequence() instanceof String);
+            assertEquals("A", snapshot.getCharSequence().toString());
+            assertChildInfo();
+        }
+        finally
+        {
+            sourceFile.releaseWorkingCopy_();
+        }
+    }
+
+    public void test11() throws Exception
+    {
+        RopeBuffer buffer = new RopeBuffer("A");
+        sourceFile.becomeWorkingCopy_(of(
+            ISourceFileImplExtension.WORKING_COPY_BUFFER, buffer), null);
+        try
+        {
+            assertNull(sourceEdits); // initial reconcile
+            IDocument document = buffer.getDocument();
+            document.replace(0, 1, "B");
+            document.replace(1, 0, "C");
+            sourceFile.reconcile_(EMPTY_CONTEXT, null);
+            assertEquals(Arrays.asList(new TextReplacement(0, 1, "B"),
+                new TextReplacement(1, 0, "C")), sourceEdits);
+            ISourceElementInfo info = sourceFile.getSourceElementInfo_(
+                EMPTY_CONTEXT, null);
+            assertEquals(0, info.getChildren().length);
+            assertEquals(new TextRange(0, 2), info.getFullRange());
+
+            document.replace(0, 2, "A");
+            sourceFile.reconcile_(EMPTY_CONTEXT, null);
+            assertEquals(Collections.singletonList(new TextReplacement(0, 2,
+                "A")), sourceEdits);
+            assertChildInfo();
+        }
+        finally
+        {
+            sourceFile.releaseWorkingCopy_();
+        }
+    }
+
+    public void test12() throws Exception
+    {
+        boolean[] edit = new boolean[1];
+        RopeBuffer buffer = new RopeBuffer("A")
+        {
+            @Override
+            public NonExpiringSnapshot getNonExpiringSnapshot()
+            {
+                if (edit[0])
+                {
+                    edit[0] = false;
+                    getDocument().set("CD"); // a concurrent change
+                }
+                return super.getNonExpiringSnapshot();
+            }
+        };
+        sourceFile.becomeWorkingCopy_(of(
+            ISourceFileImplExtension.WORKING_COPY_BUFFER, buffer), null);
+        try
+        {
+            buffer.getDocument().replace(0, 1, "B");
+            edit[0] = true;
+            sourceFile.reconcile_(EMPTY_CONTEXT, null);
+            // the edits correspond to the snapshot
+            assertEquals(Arrays.asList(new TextReplacement(0, 1, "B"),
+                new TextReplacement(0, 1, "CD")), sourceEdits);
+            ISourceElementInfo info = sourceFile.getSourceElementInfo_(
+                EMPTY_CONTEXT, null);
+            assertEquals(new TextRange(0, 2), info.getFullRange());
+            assertFalse(sourceFile.needsReconciling_());
+        }
+        finally
+        {
+            sourceFile.releaseWorkingCopy_();
+        }
+    }
+
     private void assertChildInfo() throws Exception
     {
         ISourceElementInfo info = aChild.getSourceElementInfo_(EMPTY_CONTEXT,
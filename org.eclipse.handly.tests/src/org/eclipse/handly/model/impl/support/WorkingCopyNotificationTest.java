@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2018 1C-Soft LLC.
+ * Copyright (c) 2018, 2020 1C-Soft LLC.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -18,10 +18,15 @@ import static org.eclipse.handly.model.IElementChangeEvent.POST_CHANGE;
 import static org.eclipse.handly.model.IElementChangeEvent.POST_RECONCILE;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.ICoreRunnable;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.handly.buffer.Buffer;
 import org.eclipse.handly.buffer.BufferChange;
@@ -30,6 +35,7 @@ import org.eclipse.handly.context.IContext;
 import org.eclipse.handly.junit.WorkspaceTestCase;
 import org.eclipse.handly.model.Elements;
 import org.eclipse.handly.model.IElementChangeEvent;
+import org.eclipse.handly.model.IElementDelta;
 import org.eclipse.handly.model.impl.ISourceFileImplExtension;
 import org.eclipse.text.edits.DeleteEdit;
 import org.eclipse.text.edits.InsertEdit;
@@ -40,6 +46,8 @@ import org.eclipse.text.edits.InsertEdit;
 public class WorkingCopyNotificationTest
     extends WorkspaceTestCase
 {
+    private SimpleModelManager modelManager;
+    private IProject project;
     private SimpleSourceFile sourceFile;
     private SimpleSourceConstruct aChild;
     private List<IElementChangeEvent> events;
@@ -51,28 +59,20 @@ public class WorkingCopyNotificationTest
         NotificationManager notificationManager = new NotificationManager();
         notificationManager.addElementChangeListener((event) -> events.add(
             event));
-        SimpleModelManager modelManager = new SimpleModelManager();
-        modelManager.model.context = of(INotificationManager.class,
-            notificationManager);
-        IFile file = setUpProject("Test001").getFile("a.foo");
-        sourceFile = new SimpleSourceFile(null, file.getName(), file,
-            modelManager)
+        modelManager = new SimpleModelManager();
+        modelManager.model = new SimpleModel()
         {
             @Override
-            public void buildSourceStructure_(IContext context,
+            public void runInBatch_(ICoreRunnable action,
                 IProgressMonitor monitor) throws CoreException
             {
-                SourceElementBody body = new SourceElementBody();
-                if ("A".equals(context.get(SOURCE_CONTENTS)))
-                {
-                    body.addChild(aChild);
-
-                    context.get(NEW_ELEMENTS).put(aChild,
-                        new SourceElementBody());
-                }
-                context.get(NEW_ELEMENTS).put(this, body);
-            };
+                modelManager.runInBatch(action, monitor);
+            }
         };
+        modelManager.model.context = of(INotificationManager.class,
+            notificationManager);
+        project = setUpProject("Test001");
+        sourceFile = newSourceFile(project.getFile("a.foo"));
         aChild = sourceFile.getChild("A");
         events = new ArrayList<>();
     }
@@ -170,6 +170,79 @@ public class WorkingCopyNotificationTest
         assertEvent(1, POST_CHANGE, "a.foo[-]: {WORKING COPY}");
     }
 
+    public void test5() throws Exception
+    {
+        SimpleSourceFile sourceFile2 = newSourceFile(project.getFile("b.foo"));
+        sourceFile.becomeWorkingCopy_(EMPTY_CONTEXT, null);
+        try
+        {
+            sourceFile2.becomeWorkingCopy_(of(
+                ISourceFileImplExtension.WORKING_COPY_BUFFER, new Buffer()),
+                null);
+            try
+            {
+                for (SimpleSourceFile f : Arrays.asList(sourceFile,
+                    sourceFile2))
+                {
+                    try (IBuffer buffer = f.getBuffer_(EMPTY_CONTEXT, null))
+                    {
+                        buffer.applyChange(new BufferChange(new InsertEdit(0,
+                            "A")), null);
+                    }
+                }
+                events.clear();
+
+                Elements.reconcileAll(Arrays.asList(sourceFile, sourceFile2),
+                    EMPTY_CONTEXT, null);
+                assertEquals(1, events.size()); // -> a single merged event
+                IElementChangeEvent event = events.get(0);
+                assertEquals(POST_RECONCILE, event.getType());
+                Set<String> deltas = new HashSet<>();
+                for (IElementDelta delta : event.getDeltas())
+                    deltas.add(delta.toString());
+                assertEquals(new HashSet<>(Arrays.asList(
+                    "[Working copy] a.foo[*]: {CHILDREN | CONTENT | FINE GRAINED}\n"
+                        + "  A[+]: {}",
+                    "[Working copy] b.foo[*]: {CHILDREN | CONTENT | FINE GRAINED}\n"
+                        + "  A[+]: {}")), deltas);
+
+                Elements.reconcileAll(Arrays.asList(sourceFile, sourceFile2),
+                    EMPTY_CONTEXT, null); // no changes
+                assertEquals(1, events.size()); // -> no effect
+            }
+            finally
+            {
+                sourceFile2.releaseWorkingCopy_();
+            }
+        }
+        finally
+        {
+            sourceFile.releaseWorkingCopy_();
+        }
+    }
+
+    private SimpleSourceFile newSourceFile(IFile file)
+    {
+        return new SimpleSourceFile(null, file.getName(), file, modelManager)
+        {
+            @Override
+            public void buildSourceStructure_(IContext context,
+                IProgressMonitor monitor) throws CoreException
+            {
+                SourceElementBody body = new SourceElementBody();
+                if ("A".equals(context.get(SOURCE_CONTENTS)))
+                {
+                    SimpleSourceConstruct child = getChild("A");
+                    body.addChild(child);
+
+                    context.get(NEW_ELEMENTS).put(child,
+                        new SourceElementBody());
+                }
+                context.get(NEW_ELEMENTS).put(this, body);
+            };
+        };
+    }
+
     private void assertEvent(int index, int type, String expectedDelta)
     {
         IElementChangeEvent event = events.get(index);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015, 2018 1C-Soft LLC.
+ * Copyright (c) 2015, 2020 1C-Soft LLC.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -12,12 +12,23 @@
  *******************************************************************************/
 package org.eclipse.handly.model.impl.support;
 
+import static org.eclipse.handly.context.Contexts.EMPTY_CONTEXT;
 import static org.eclipse.handly.context.Contexts.of;
 import static org.eclipse.handly.context.Contexts.with;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.handly.buffer.Buffer;
+import org.eclipse.handly.context.IContext;
+import org.eclipse.handly.model.Elements;
+import org.eclipse.handly.model.IElement;
 import org.eclipse.handly.model.impl.DefaultWorkingCopyCallback;
 import org.eclipse.handly.model.impl.ISourceFileImplExtension;
 import org.eclipse.handly.model.impl.IWorkingCopyInfo;
@@ -31,6 +42,8 @@ public class WorkingCopyTest
     extends TestCase
 {
     private SimpleSourceFile sourceFile;
+    private int buildCount; // see newSourceFile
+    private int deferredBuildCount; // see testDeferredChildren
 
     @Override
     protected void setUp() throws Exception
@@ -161,4 +174,177 @@ public class WorkingCopyTest
             assertTrue(callback3.onDispose);
         }
     }
+
+    public void testReconcileCache() throws Exception
+    {
+        sourceFile = newSourceFile(null);
+        inWorkingCopy(of(ISourceFileImplSupport.RECONCILE_CACHE_SIZE, 2),
+            buffer ->
+            {
+                assertEquals(1, buildCount);
+                Object body = sourceFile.peekAtBody_();
+
+                buffer.getDocument().set("B");
+                sourceFile.reconcile_(EMPTY_CONTEXT, null);
+                assertEquals(2, buildCount);
+                assertNotSame(body, sourceFile.peekAtBody_());
+
+                buffer.getDocument().set("A"); // e.g., undo
+                sourceFile.reconcile_(EMPTY_CONTEXT, null);
+                assertEquals(2, buildCount); // -> no rebuild
+                assertSame(body, sourceFile.peekAtBody_());
+                assertTrue(buffer.getSnapshot().isEqualTo(
+                    ((SourceElementBody)body).getSnapshot()));
+            });
+    }
+
+    public void testDeferredChildren() throws Exception
+    {
+        sourceFile = newSourceFile((file, newElements, context) ->
+        {
+            SimpleSourceConstruct a = file.getChild("A");
+            SourceElementBody body = new SourceElementBody();
+            body.addChild(a);
+            newElements.put(file, body);
+            SourceElementBody aBody = new SourceElementBody();
+            aBody.setDeferredChildren(elements ->
+            {
+                deferredBuildCount++;
+                SimpleSourceConstruct b = a.getChild("B");
+                elements.put(b, new SourceElementBody());
+                return new IElement[] { b };
+            });
+            newElements.put(a, aBody);
+        });
+        SimpleSourceConstruct a = sourceFile.getChild("A");
+        SimpleSourceConstruct b = a.getChild("B");
+        inWorkingCopy(EMPTY_CONTEXT, buffer ->
+        {
+            assertEquals(0, deferredBuildCount);
+            SourceElementBody aBody = (SourceElementBody)a.getBody_();
+            assertTrue(aBody.hasDeferredChildren());
+            assertEquals(0, aBody.getChildren().length); // incomplete
+
+            assertTrue(b.exists_()); // builds the children of A
+            assertEquals(1, deferredBuildCount);
+            assertFalse(aBody.hasDeferredChildren());
+            assertEquals(Arrays.asList(b), Arrays.asList(
+                aBody.getChildren()));
+            assertTrue(buffer.getSnapshot().isEqualTo(
+                ((SourceElementBody)b.getBody_()).getSnapshot()));
+            assertFalse(a.getChild("C").exists_());
+            assertEquals(Arrays.asList(b), Arrays.asList(
+                Elements.getChildren(a)));
+            assertEquals(1, deferredBuildCount);
+
+            buffer.getDocument().set("B");
+            sourceFile.reconcile_(EMPTY_CONTEXT, null);
+            assertEquals(1, deferredBuildCount);
+            assertEquals(Arrays.asList(b), Arrays.asList(
+                Elements.getChildren(a)));
+            assertEquals(2, deferredBuildCount);
+        });
+    }
+
+    public void testStructureConsumer() throws Exception
+    {
+        sourceFile = newSourceFile((file, newElements, context) ->
+        {
+            SourceElementBody body = new SourceElementBody();
+            newElements.put(file, body);
+            SimpleSourceConstruct a = file.getChild("A");
+            SourceElementBody aBody = new SourceElementBody();
+            aBody.addChild(a.getChild("A1"));
+            newElements.put(a, aBody);
+            newElements.put(a.getChild("A1"), new SourceElementBody());
+            body.addChild(a);
+            file.publishElement_(a, context);
+            SimpleSourceConstruct b = file.getChild("B");
+            newElements.put(b, new SourceElementBody());
+            body.addChild(b);
+            file.publishElement_(b, context);
+        });
+        List<IElement> elements = new ArrayList<>();
+        Map<IElement, Object> bodies = new HashMap<>();
+        IStructureConsumer consumer = (file, element, elementBodies) ->
+        {
+            assertSame(sourceFile, file);
+            elements.add(element);
+            bodies.putAll(elementBodies);
+        };
+        SimpleSourceConstruct a = sourceFile.getChild("A");
+        SimpleSourceConstruct b = sourceFile.getChild("B");
+        inWorkingCopy(EMPTY_CONTEXT, buffer ->
+        {
+            buffer.getDocument().set("B");
+            sourceFile.reconcile_(of(ISourceFileImplSupport.STRUCTURE_CONSUMER,
+                consumer), null);
+            assertEquals(Arrays.asList(a, b), elements);
+            assertEquals(3, bodies.size());
+            assertSame(a.getBody_(), bodies.get(a));
+            assertSame(a.getChild("A1").getBody_(), bodies.get(
+                a.getChild("A1")));
+            assertSame(b.getBody_(), bodies.get(b));
+            assertTrue(buffer.getSnapshot().isEqualTo(
+                ((SourceElementBody)bodies.get(b)).getSnapshot()));
+        });
+    }
+
+    /*
+     * Returns a new source file that counts its structure builds
+     * in buildCount and builds its structure with the given builder,
+     * or as a SimpleSourceFile if the builder is null.
+     */
+    private SimpleSourceFile newSourceFile(StructureBuilder builder)
+    {
+        return new SimpleSourceFile(null, null, null, new SimpleModelManager())
+        {
+            @Override
+            public void buildSourceStructure_(IContext context,
+                IProgressMonitor monitor) throws CoreException
+            {
+                buildCount++;
+                if (builder == null)
+                    super.buildSourceStructure_(context, monitor);
+                else
+                    builder.build(this, context.get(NEW_ELEMENTS), context);
+            }
+        };
+    }
+
+    /*
+     * Makes the source file a working copy on a new buffer with the contents
+     * "A", using the given context, runs the given task, and then releases
+     * the working copy.
+     */
+    private void inWorkingCopy(IContext context, WorkingCopyTask task)
+        throws Exception
+    {
+        try (Buffer buffer = new Buffer("A"))
+        {
+            sourceFile.becomeWorkingCopy_(with(of(
+                ISourceFileImplExtension.WORKING_COPY_BUFFER, buffer), context),
+                null);
+            try
+            {
+                task.run(buffer);
+            }
+            finally
+            {
+                sourceFile.releaseWorkingCopy_();
+            }
+        }
+    }
+
+    private interface StructureBuilder
+    {
+        void build(SimpleSourceFile sourceFile,
+            Map<IElement, Object> newElements, IContext context)
+            throws CoreException;
+    }
+
+    private interface WorkingCopyTask
+    {
+        void run(Buffer buffer) throws Exception;
+    }
 }
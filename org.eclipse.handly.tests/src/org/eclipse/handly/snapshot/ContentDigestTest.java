@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.snapshot;
+
+import junit.framework.TestCase;
+
+/**
+ * <code>ContentDigest</code> tests.
+ */
+public class ContentDigestTest
+    extends TestCase
+{
+    public void test1()
+    {
+        String[] contents = { "", "a", "abcdefg", "abcdefgh", "abcdefghi",
+            "hello world", "hello World" };
+        for (int i = 0; i < contents.length; i++)
+        {
+            ContentDigest digest = ContentDigest.of(contents[i]);
+            assertEquals(contents[i].length(), digest.getLength());
+            assertEquals(digest, ContentDigest.of(new StringBuilder(
+                contents[i])));
+            for (int j = i + 1; j < contents.length; j++)
+                assertFalse(digest.equals(ContentDigest.of(contents[j])));
+        }
+    }
+
+    public void test2()
+    {
+        TestSnapshot snapshot1 = new TestSnapshot("hello");
+        TestSnapshot snapshot2 = new TestSnapshot("hello");
+        TestSnapshot snapshot3 = new TestSnapshot("world");
+        assertTrue(snapshot1.isEqualTo(snapshot2));
+        assertFalse(snapshot1.isEqualTo(snapshot3));
+        assertEquals(snapshot1.getContentDigest(),
+            snapshot2.getContentDigest());
+
+        // the digest survives expiration
+        snapshot1.contents = null;
+        assertNotNull(snapshot1.getContentDigest());
+        assertFalse(snapshot1.isEqualTo(snapshot2));
+        assertFalse(snapshot1.isEqualTo(snapshot3));
+
+        snapshot3.contents = null;
+        assertNull(snapshot3.getContentDigest());
+        assertFalse(snapshot2.isEqualTo(snapshot3));
+    }
+
+    public void test3()
+    {
+        // equal snapshots with uncached digests
+        TestSnapshot snapshot1 = new TestSnapshot("hello");
+        TestSnapshot snapshot2 = new TestSnapshot("hello");
+        assertTrue(snapshot1.isEqualTo(snapshot2));
+        assertEquals(1, snapshot1.getContentsCount);
+        assertEquals(1, snapshot2.getContentsCount);
+
+        // the digests are not computed by isEqualTo
+        assertTrue(snapshot1.isEqualTo(snapshot2));
+        assertEquals(2, snapshot1.getContentsCount);
+        assertEquals(2, snapshot2.getContentsCount);
+    }
+
+    public void test4()
+    {
+        // unequal snapshots with cached digests
+        TestSnapshot snapshot1 = new TestSnapshot("hello");
+        TestSnapshot snapshot2 = new TestSnapshot("world");
+        snapshot1.getContentDigest();
+        snapshot2.getContentDigest();
+        snapshot1.getContentsCount = snapshot2.getContentsCount = 0;
+        assertFalse(snapshot1.isEqualTo(snapshot2));
+        assertEquals(0, snapshot1.getContentsCount);
+        assertEquals(0, snapshot2.getContentsCount);
+    }
+
+    public void test5()
+    {
+        // a non-expiring snapshot caches the digest on the wrapped snapshot
+        TestSnapshot snapshot1 = new TestSnapshot("hello");
+        NonExpiringSnapshot snapshot2 = new NonExpiringSnapshot(
+            () -> snapshot1);
+        TestSnapshot snapshot3 = new TestSnapshot("world");
+        snapshot3.getContentDigest();
+        snapshot1.contents = null; // expired
+        assertEquals(snapshot2.getContentDigest(),
+            snapshot1.getContentDigest());
+        snapshot1.getContentsCount = snapshot3.getContentsCount = 0;
+        assertFalse(snapshot1.isEqualTo(snapshot3));
+        assertFalse(snapshot3.isEqualTo(snapshot2));
+        assertEquals(0, snapshot1.getContentsCount);
+        assertEquals(0, snapshot3.getContentsCount);
+    }
+
+    private static class TestSnapshot
+        extends Snapshot
+    {
+        volatile String contents;
+        int getContentsCount;
+
+        TestSnapshot(String contents)
+        {
+            this.contents = contents;
+        }
+
+        @Override
+        public String getContents()
+        {
+            getContentsCount++;
+            return contents;
+        }
+    }
+}
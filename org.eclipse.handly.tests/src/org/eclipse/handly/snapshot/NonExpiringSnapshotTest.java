@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.snapshot;
+
+import org.eclipse.handly.buffer.Buffer;
+
+import junit.framework.TestCase;
+
+/**
+ * <code>NonExpiringSnapshot</code> tests.
+ */
+public class NonExpiringSnapshotTest
+    extends TestCase
+{
+    private final Object lock = new Object();
+    private int snapshotCount;
+
+    public void test1()
+    {
+        // snapshots of this provider expire unless the lock is held
+        ISnapshotProvider provider = () ->
+        {
+            snapshotCount++;
+            return new TestSnapshot(lock);
+        };
+        NonExpiringSnapshot snapshot = new NonExpiringSnapshot(provider, lock);
+        assertEquals("foo", snapshot.getContents());
+        assertEquals(1, snapshotCount);
+        try
+        {
+            new NonExpiringSnapshot(provider);
+            fail();
+        }
+        catch (IllegalStateException e)
+        {
+        }
+    }
+
+    public void test2()
+    {
+        // falls back to retrying if the lock does not prevent expiration
+        int[] count = new int[1];
+        ISnapshotProvider provider = () -> new TestSnapshot(null)
+        {
+            @Override
+            public String getContents()
+            {
+                return ++count[0] < 3 ? null : super.getContents();
+            }
+        };
+        NonExpiringSnapshot snapshot = new NonExpiringSnapshot(provider, lock);
+        assertEquals("foo", snapshot.getContents());
+        assertEquals(3, count[0]);
+    }
+
+    public void test3()
+    {
+        Buffer buffer = new Buffer("foo");
+        NonExpiringSnapshot snapshot = buffer.getNonExpiringSnapshot();
+        assertEquals("foo", snapshot.getContents());
+        assertTrue(snapshot.getWrappedSnapshot().isEqualTo(
+            buffer.getSnapshot()));
+        buffer.getDocument().set("bar");
+        assertNull(snapshot.getWrappedSnapshot().getContents());
+        assertEquals("foo", snapshot.getContents());
+    }
+
+    private static class TestSnapshot
+        extends Snapshot
+    {
+        private final Object lock;
+
+        TestSnapshot(Object lock)
+        {
+            this.lock = lock;
+        }
+
+        @Override
+        public String getContents()
+        {
+            if (lock != null && !Thread.holdsLock(lock))
+                return null; // expired
+            return "foo";
+        }
+    }
+}
@@ -12,7 +12,10 @@
  *******************************************************************************/
 package org.eclipse.handly.snapshot;
 
+import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileInfo;
@@ -49,4 +52,57 @@ public class TextFileStoreSnapshotTest
         fileStore.putInfo(info, EFS.SET_LAST_MODIFIED, null);
         assertNull(snapshot.getContents());
     }
+
+    public void test2() throws Exception
+    {
+        // a large file that starts with UTF-8 BOM
+        char[] chars = new char[2 << 20];
+        Arrays.fill(chars, '\u00e9');
+        String contents = new String(chars);
+        try (OutputStream out = fileStore.openOutputStream(EFS.NONE, null))
+        {
+            out.write(new byte[] { (byte)0xEF, (byte)0xBB, (byte)0xBF });
+            out.write(contents.getBytes(StandardCharsets.UTF_8));
+        }
+        snapshot = new TextFileStoreSnapshot(fileStore, StandardCharsets.UTF_8);
+        assertEquals(contents, snapshot.getContents());
+    }
+
+    public void test3() throws Exception
+    {
+        TextFileStoreSnapshot lazySnapshot =
+            TextFileStoreSnapshot.newLazySnapshot(fileStore,
+                StandardCharsets.UTF_8);
+        assertTrue(lazySnapshot.exists());
+        assertNull(lazySnapshot.predictEquality(snapshot));
+        assertNull(snapshot.predictEquality(lazySnapshot));
+        assertTrue(lazySnapshot.isEqualTo(snapshot));
+        assertEquals("hello", lazySnapshot.getContents());
+
+        lazySnapshot = TextFileStoreSnapshot.newLazySnapshot(fileStore,
+            StandardCharsets.UTF_8);
+        IFileInfo info = fileStore.fetchInfo();
+        info.setLastModified(info.getLastModified() + 1000);
+        fileStore.putInfo(info, EFS.SET_LAST_MODIFIED, null);
+        assertNull(lazySnapshot.getContents());
+        assertTrue(lazySnapshot.getStatus().isOK());
+        assertFalse(lazySnapshot.isEqualTo(snapshot));
+    }
+
+    public void test4() throws Exception
+    {
+        // equal modification times do not imply equal contents
+        long lastModified = fileStore.fetchInfo().getLastModified();
+        try (OutputStream out = fileStore.openOutputStream(EFS.NONE, null))
+        {
+            out.write("world".getBytes(StandardCharsets.UTF_8));
+        }
+        IFileInfo info = fileStore.fetchInfo();
+        info.setLastModified(lastModified);
+        fileStore.putInfo(info, EFS.SET_LAST_MODIFIED, null);
+        TextFileStoreSnapshot lazySnapshot =
+            TextFileStoreSnapshot.newLazySnapshot(fileStore,
+                StandardCharsets.UTF_8);
+        assertFalse(lazySnapshot.isEqualTo(snapshot));
+    }
 }
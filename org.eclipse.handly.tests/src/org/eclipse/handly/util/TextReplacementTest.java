@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.util;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * <code>TextReplacement</code> tests.
+ */
+public class TextReplacementTest
+    extends TestCase
+{
+    public void test1()
+    {
+        TextReplacement r = new TextReplacement(5, 2, "abcd");
+        assertEquals(new TextRange(5, 2), r.getRange());
+        assertEquals("abcd", r.getText());
+        assertEquals(new TextRange(0, 5), r.adjust(new TextRange(0, 5)));
+        assertEquals(new TextRange(9, 3), r.adjust(new TextRange(7, 3)));
+        assertNull(r.adjust(new TextRange(4, 2)));
+        assertNull(r.adjust(new TextRange(6, 3)));
+        assertNull(r.adjust(new TextRange(6, 0)));
+    }
+
+    public void test2()
+    {
+        TextReplacement r = new TextReplacement(5, 0, "a");
+        assertEquals(new TextRange(3, 2), r.adjust(new TextRange(3, 2)));
+        assertEquals(new TextRange(6, 2), r.adjust(new TextRange(5, 2)));
+        assertNull(r.adjust(new TextRange(4, 2)));
+    }
+
+    public void test3()
+    {
+        assertEquals(new TextRange(11, 2), TextReplacement.adjust(
+            new TextRange(10, 2), Arrays.asList(new TextReplacement(5, 2,
+                "abcd"), new TextReplacement(0, 1, ""))));
+        assertNull(TextReplacement.adjust(new TextRange(10, 2), Arrays.asList(
+            new TextReplacement(5, 2, "abcd"), new TextReplacement(12, 1,
+                ""))));
+    }
+
+    public void test4()
+    {
+        try
+        {
+            new TextReplacement(-1, 0, "");
+            fail();
+        }
+        catch (RuntimeException e)
+        {
+        }
+        try
+        {
+            new TextReplacement(0, -1, "");
+            fail();
+        }
+        catch (RuntimeException e)
+        {
+        }
+        try
+        {
+            new TextReplacement(0, 0, null);
+            fail();
+        }
+        catch (RuntimeException e)
+        {
+        }
+    }
+
+    public void test5()
+    {
+        TextReplacement r = new TextReplacement(3, 7, "a");
+        assertEquals(r, r);
+        assertEquals(new TextReplacement(3, 7, "a"), r);
+        assertFalse(r.equals(new TextReplacement(3, 7, "b")));
+        assertFalse(r.equals(new Object()));
+        assertFalse(r.equals(null));
+    }
+}
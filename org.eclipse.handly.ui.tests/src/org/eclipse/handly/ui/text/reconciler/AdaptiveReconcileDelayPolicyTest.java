@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.ui.text.reconciler;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * <code>AdaptiveReconcileDelayPolicy</code> tests.
+ */
+public class AdaptiveReconcileDelayPolicyTest
+    extends TestCase
+{
+    private AdaptiveReconcileDelayPolicy policy =
+        new AdaptiveReconcileDelayPolicy(100, 2000);
+
+    public void test1()
+    {
+        assertEquals(100, policy.getDelay());
+        policy.documentChanged(time(0));
+        assertEquals(100, policy.getDelay());
+    }
+
+    public void test2()
+    {
+        // typing every 200 ms
+        for (int i = 0; i < 5; i++)
+            policy.documentChanged(time(i * 200));
+        assertEquals(300, policy.getDelay());
+    }
+
+    public void test3()
+    {
+        // pauses longer than the maximum delay are ignored
+        policy.documentChanged(time(0));
+        policy.documentChanged(time(5000));
+        policy.documentChanged(time(10000));
+        assertEquals(100, policy.getDelay());
+    }
+
+    public void test4()
+    {
+        policy.reconciled(400);
+        assertEquals(800, policy.getDelay());
+        policy.reconciled(5000);
+        assertEquals(2000, policy.getDelay()); // clamped to the maximum
+        policy.reconciled(-1); // ignored
+        assertEquals(2000, policy.getDelay());
+    }
+
+    public void test5()
+    {
+        try
+        {
+            new AdaptiveReconcileDelayPolicy(-1, 100);
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+        try
+        {
+            new AdaptiveReconcileDelayPolicy(200, 100);
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    private static long time(long millis)
+    {
+        // nanoTime values may be negative
+        return TimeUnit.MILLISECONDS.toNanos(millis) - Long.MAX_VALUE / 2;
+    }
+}
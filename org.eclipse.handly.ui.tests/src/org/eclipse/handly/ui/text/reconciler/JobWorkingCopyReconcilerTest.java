@@ -0,0 +1,279 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.ui.text.reconciler;
+
+import static org.eclipse.handly.model.IElementDeltaConstants.F_CONTENT;
+import static org.eclipse.handly.model.IElementDeltaConstants.F_SYNC;
+import static org.eclipse.handly.ui.text.reconciler.WorkingCopyReconcilerTest.newDelta;
+import static org.eclipse.handly.ui.text.reconciler.WorkingCopyReconcilerTest.newEvent;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.handly.model.IElementChangeListener;
+import org.eclipse.handly.model.IElementDelta;
+import org.eclipse.handly.model.ISourceFile;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.TextViewer;
+import org.eclipse.jface.text.reconciler.DirtyRegion;
+import org.eclipse.jface.text.reconciler.IReconcilingStrategy;
+import org.eclipse.jface.text.reconciler.IReconcilingStrategyExtension;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+
+import junit.framework.TestCase;
+
+/**
+ * <code>JobWorkingCopyReconciler</code> tests.
+ */
+public class JobWorkingCopyReconcilerTest
+    extends TestCase
+{
+    private IElementDelta[] lastDeltas;
+    private JobWorkingCopyReconciler reconciler = new JobWorkingCopyReconciler(
+        new WorkingCopyReconcilerTest.NullWorkingCopyManager())
+    {
+        @Override
+        protected void addElementChangeListener(
+            IElementChangeListener listener)
+        {
+        }
+
+        @Override
+        protected void removeElementChangeListener(
+            IElementChangeListener listener)
+        {
+        }
+
+        @Override
+        protected boolean isAffectedBy(IElementDelta[] deltas,
+            ISourceFile workingCopy)
+        {
+            lastDeltas = deltas;
+            return super.isAffectedBy(deltas, workingCopy);
+        }
+    };
+
+    private static final long TIMEOUT = 5000;
+
+    private Display display;
+    private TextViewer viewer;
+    private final IDocument document = new Document();
+    private final CountDownLatch initialReconcile = new CountDownLatch(1);
+    private final AtomicInteger reconcileCount = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        display = new Display();
+        viewer = new TextViewer(new Shell(display), SWT.NONE);
+        viewer.setDocument(document);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        if (display != null)
+            display.dispose();
+        super.tearDown();
+    }
+
+    public void test1()
+    {
+        assertNull(reconciler.getDelayPolicy());
+
+        IReconcileDelayPolicy policy = new AdaptiveReconcileDelayPolicy();
+        reconciler.setDelayPolicy(policy);
+        assertSame(policy, reconciler.getDelayPolicy());
+
+        reconciler.setDelay(1000);
+        assertNull(reconciler.getDelayPolicy());
+
+        try
+        {
+            reconciler.setDelay(-1);
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+
+    public void test2()
+    {
+        IElementDelta syncDelta = newDelta(F_SYNC);
+        assertFalse(reconciler.isAffectedBy(newEvent(syncDelta)));
+        // the event goes through the protected hook for the delta array
+        assertEquals(1, lastDeltas.length);
+        assertSame(syncDelta, lastDeltas[0]);
+
+        assertTrue(reconciler.isAffectedBy(newEvent(syncDelta, newDelta(
+            F_CONTENT))));
+        assertEquals(2, lastDeltas.length);
+    }
+
+    public void test3() throws Exception
+    {
+        // a burst of document changes results in a single reconcile
+        JobWorkingCopyReconciler reconciler = newReconciler(
+            new ReconcileScheduler(1));
+        reconciler.setDelay(200);
+        reconciler.install(viewer);
+        try
+        {
+            assertTrue(initialReconcile.await(TIMEOUT, TimeUnit.MILLISECONDS));
+            for (int i = 0; i < 5; i++)
+                document.replace(document.getLength(), 0, "a");
+            waitFor(() -> reconcileCount.get() > 0);
+            Thread.sleep(500);
+            assertEquals(1, reconcileCount.get());
+
+            document.replace(0, 0, "b");
+            waitFor(() -> reconcileCount.get() > 1);
+            assertEquals(2, reconcileCount.get());
+        }
+        finally
+        {
+            reconciler.uninstall();
+        }
+    }
+
+    public void test4() throws Exception
+    {
+        // a reconcile waiting for the scheduler does not occupy a thread
+        ReconcileScheduler scheduler = new ReconcileScheduler(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch unblock = new CountDownLatch(1);
+        Thread blocker = new Thread(() -> scheduler.run("blocker",
+            () -> ReconcileScheduler.PRIORITY_ACTIVE,
+            new NullProgressMonitor(), () ->
+            {
+                started.countDown();
+                try
+                {
+                    unblock.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                }
+            }));
+        blocker.setDaemon(true);
+        blocker.start();
+        JobWorkingCopyReconciler reconciler = newReconciler(scheduler);
+        reconciler.setDelay(50);
+        reconciler.install(viewer);
+        try
+        {
+            assertTrue(initialReconcile.await(TIMEOUT, TimeUnit.MILLISECONDS));
+            assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+            document.replace(0, 0, "a");
+            Thread.sleep(500);
+            assertEquals(0, reconcileCount.get());
+            for (Job job : Job.getJobManager().find(null))
+            {
+                Class<?> owner = job.getClass().getEnclosingClass();
+                if (owner == JobWorkingCopyReconciler.class)
+                    assertTrue(job.getState() != Job.RUNNING);
+            }
+
+            unblock.countDown();
+            waitFor(() -> reconcileCount.get() > 0);
+            assertEquals(1, reconcileCount.get());
+        }
+        finally
+        {
+            unblock.countDown();
+            reconciler.uninstall();
+        }
+    }
+
+    private JobWorkingCopyReconciler newReconciler(
+        ReconcileScheduler scheduler)
+    {
+        JobWorkingCopyReconciler reconciler = new JobWorkingCopyReconciler(
+            new WorkingCopyReconcilerTest.NullWorkingCopyManager())
+        {
+            @Override
+            protected void addElementChangeListener(
+                IElementChangeListener listener)
+            {
+            }
+
+            @Override
+            protected void removeElementChangeListener(
+                IElementChangeListener listener)
+            {
+            }
+
+            @Override
+            protected ReconcileScheduler getReconcileScheduler()
+            {
+                return scheduler;
+            }
+        };
+        reconciler.setReconcilingStrategy(new CountingStrategy());
+        return reconciler;
+    }
+
+    private static void waitFor(BooleanSupplier condition)
+        throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!condition.getAsBoolean())
+        {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private class CountingStrategy
+        implements IReconcilingStrategy, IReconcilingStrategyExtension
+    {
+        @Override
+        public void setDocument(IDocument document)
+        {
+        }
+
+        @Override
+        public void reconcile(DirtyRegion dirtyRegion, IRegion subRegion)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void reconcile(IRegion partition)
+        {
+            reconcileCount.incrementAndGet();
+        }
+
+        @Override
+        public void setProgressMonitor(IProgressMonitor monitor)
+        {
+        }
+
+        @Override
+        public void initialReconcile()
+        {
+            initialReconcile.countDown();
+        }
+    }
+}
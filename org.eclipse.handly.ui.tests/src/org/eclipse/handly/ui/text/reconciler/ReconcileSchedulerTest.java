@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.ui.text.reconciler;
+
+import static org.eclipse.handly.ui.text.reconciler.ReconcileScheduler.PRIORITY_ACTIVE;
+import static org.eclipse.handly.ui.text.reconciler.ReconcileScheduler.PRIORITY_BACKGROUND;
+import static org.eclipse.handly.ui.text.reconciler.ReconcileScheduler.PRIORITY_VISIBLE;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import junit.framework.TestCase;
+
+/**
+ * <code>ReconcileScheduler</code> tests.
+ */
+public class ReconcileSchedulerTest
+    extends TestCase
+{
+    private static final long TIMEOUT = 5000;
+
+    private final List<String> log = Collections.synchronizedList(
+        new ArrayList<>());
+    private final CountDownLatch unblock = new CountDownLatch(1);
+
+    public void test1() throws Exception
+    {
+        // waiting reconciles are let through in the order of priority
+        ReconcileScheduler scheduler = new ReconcileScheduler(1);
+        Reconcile blocker = new Reconcile(scheduler, "blocker",
+            PRIORITY_ACTIVE, this::block);
+        blocker.start();
+        blocker.awaitStarted();
+        Reconcile background = new Reconcile(scheduler, "background",
+            PRIORITY_BACKGROUND);
+        background.start();
+        background.awaitWaiting();
+        Reconcile active = new Reconcile(scheduler, "active", PRIORITY_ACTIVE);
+        active.start();
+        active.awaitWaiting();
+        Reconcile visible = new Reconcile(scheduler, "visible",
+            PRIORITY_VISIBLE);
+        visible.start();
+        visible.awaitWaiting();
+        unblock.countDown();
+        for (Reconcile reconcile : Arrays.asList(blocker, background, active,
+            visible))
+        {
+            reconcile.join(TIMEOUT);
+            assertTrue(reconcile.result);
+        }
+        assertEquals(Arrays.asList("blocker", "active", "visible",
+            "background"), log);
+    }
+
+    public void test2() throws Exception
+    {
+        // a waiting reconcile is dropped when superseded
+        ReconcileScheduler scheduler = new ReconcileScheduler(1);
+        Reconcile blocker = new Reconcile(scheduler, "blocker",
+            PRIORITY_ACTIVE, this::block);
+        blocker.start();
+        blocker.awaitStarted();
+        Reconcile older = new Reconcile(scheduler, "a", PRIORITY_ACTIVE);
+        older.start();
+        older.awaitWaiting();
+        Reconcile newer = new Reconcile(scheduler, "a", PRIORITY_ACTIVE);
+        newer.start();
+        older.join(TIMEOUT);
+        assertFalse(older.isAlive());
+        assertFalse(older.result);
+        newer.awaitWaiting();
+        unblock.countDown();
+        newer.join(TIMEOUT);
+        assertTrue(newer.result);
+        blocker.join(TIMEOUT);
+        assertEquals(Arrays.asList("blocker", "a"), log);
+    }
+
+    public void test3() throws Exception
+    {
+        // a running reconcile is canceled when superseded
+        ReconcileScheduler scheduler = new ReconcileScheduler(2);
+        IProgressMonitor monitor = new NullProgressMonitor();
+        Reconcile older = new Reconcile(scheduler, "a", PRIORITY_ACTIVE,
+            monitor, () ->
+            {
+                long deadline = System.currentTimeMillis() + TIMEOUT;
+                while (!monitor.isCanceled()
+                    && System.currentTimeMillis() < deadline)
+                {
+                    Thread.yield();
+                }
+            });
+        older.start();
+        older.awaitStarted();
+        assertFalse(monitor.isCanceled());
+        assertTrue(scheduler.run("a", () -> PRIORITY_ACTIVE,
+            new NullProgressMonitor(), () -> log.add("newer")));
+        assertTrue(monitor.isCanceled());
+        older.join(TIMEOUT);
+        assertTrue(older.result);
+        assertEquals(Arrays.asList("a", "newer"), log);
+    }
+
+    public void test4() throws Exception
+    {
+        // a waiting reconcile is dropped when its monitor is canceled
+        ReconcileScheduler scheduler = new ReconcileScheduler(1);
+        Reconcile blocker = new Reconcile(scheduler, "blocker",
+            PRIORITY_ACTIVE, this::block);
+        blocker.start();
+        blocker.awaitStarted();
+        IProgressMonitor monitor = new NullProgressMonitor();
+        Reconcile reconcile = new Reconcile(scheduler, "a", PRIORITY_ACTIVE,
+            monitor, null);
+        reconcile.start();
+        reconcile.awaitWaiting();
+        monitor.setCanceled(true);
+        reconcile.join(TIMEOUT);
+        assertFalse(reconcile.isAlive());
+        assertFalse(reconcile.result);
+        unblock.countDown();
+        blocker.join(TIMEOUT);
+        assertEquals(Arrays.asList("blocker"), log);
+    }
+
+    public void test5()
+    {
+        // submitted requests do not block
+        ReconcileScheduler scheduler = new ReconcileScheduler(1);
+        ReconcileScheduler.Ticket a = scheduler.submit("a",
+            () -> PRIORITY_ACTIVE, new NullProgressMonitor(), () -> log.add(
+                "a"));
+        assertTrue(a.isGranted()); // granted immediately, no callback
+        ReconcileScheduler.Ticket b = scheduler.submit("b",
+            () -> PRIORITY_BACKGROUND, new NullProgressMonitor(),
+            () -> log.add("b"));
+        IProgressMonitor monitor = new NullProgressMonitor();
+        ReconcileScheduler.Ticket c = scheduler.submit("c",
+            () -> PRIORITY_ACTIVE, monitor, () -> log.add("c"));
+        assertFalse(b.isGranted());
+        assertFalse(c.isGranted());
+        monitor.setCanceled(true);
+        a.release();
+        assertFalse(a.isGranted());
+        assertTrue(b.isGranted()); // c has been dropped
+        assertFalse(c.isGranted());
+        assertEquals(Arrays.asList("b"), log);
+        b.release();
+        b.release(); // no effect
+        assertTrue(scheduler.submit("d", () -> PRIORITY_ACTIVE,
+            new NullProgressMonitor(), () -> log.add("d")).isGranted());
+        assertEquals(Arrays.asList("b"), log);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        unblock.countDown();
+        super.tearDown();
+    }
+
+    private void block()
+    {
+        try
+        {
+            unblock.await(TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e)
+        {
+        }
+    }
+
+    private class Reconcile
+        extends Thread
+    {
+        private final ReconcileScheduler scheduler;
+        private final String key;
+        private final int priority;
+        private final IProgressMonitor monitor;
+        private final Runnable task;
+        private final CountDownLatch started = new CountDownLatch(1);
+        volatile boolean result;
+
+        Reconcile(ReconcileScheduler scheduler, String key, int priority)
+        {
+            this(scheduler, key, priority, null);
+        }
+
+        Reconcile(ReconcileScheduler scheduler, String key, int priority,
+            Runnable task)
+        {
+            this(scheduler, key, priority, new NullProgressMonitor(), task);
+        }
+
+        Reconcile(ReconcileScheduler scheduler, String key, int priority,
+            IProgressMonitor monitor, Runnable task)
+        {
+            this.scheduler = scheduler;
+            this.key = key;
+            this.priority = priority;
+            this.monitor = monitor;
+            this.task = task;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run()
+        {
+            result = scheduler.run(key, () -> priority, monitor, () ->
+            {
+                log.add(key);
+                started.countDown();
+                if (task != null)
+                    task.run();
+            });
+        }
+
+        void awaitStarted() throws InterruptedException
+        {
+            assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        }
+
+        /*
+         * Waits until the reconcile is waiting to be let through.
+         */
+        void awaitWaiting() throws InterruptedException
+        {
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (getState() != State.TIMED_WAITING)
+            {
+                assertTrue(System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        }
+    }
+}
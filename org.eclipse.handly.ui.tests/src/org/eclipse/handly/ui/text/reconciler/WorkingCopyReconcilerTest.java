@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.ui.text.reconciler;
+
+import static org.eclipse.handly.model.IElementDeltaConstants.CHANGED;
+import static org.eclipse.handly.model.IElementDeltaConstants.F_CONTENT;
+import static org.eclipse.handly.model.IElementDeltaConstants.F_SYNC;
+
+import org.eclipse.handly.model.IElement;
+import org.eclipse.handly.model.IElementChangeEvent;
+import org.eclipse.handly.model.IElementChangeListener;
+import org.eclipse.handly.model.IElementDelta;
+import org.eclipse.handly.model.ISourceFile;
+import org.eclipse.handly.model.impl.support.ElementChangeEvent;
+import org.eclipse.handly.model.impl.support.ElementDelta;
+import org.eclipse.handly.ui.IWorkingCopyManager;
+import org.eclipse.jface.text.IDocument;
+
+import junit.framework.TestCase;
+
+/**
+ * <code>WorkingCopyReconciler</code> tests.
+ */
+public class WorkingCopyReconcilerTest
+    extends TestCase
+{
+    private WorkingCopyReconciler reconciler = new WorkingCopyReconciler(
+        new NullWorkingCopyManager())
+    {
+        @Override
+        protected void addElementChangeListener(
+            IElementChangeListener listener)
+        {
+        }
+
+        @Override
+        protected void removeElementChangeListener(
+            IElementChangeListener listener)
+        {
+        }
+    };
+
+    public void test1()
+    {
+        // the delay is fixed by default
+        assertNull(reconciler.getDelayPolicy());
+
+        IReconcileDelayPolicy policy = new AdaptiveReconcileDelayPolicy();
+        reconciler.setDelayPolicy(policy);
+        assertSame(policy, reconciler.getDelayPolicy());
+
+        // an explicit delay takes precedence over the policy
+        reconciler.setDelay(1000);
+        assertNull(reconciler.getDelayPolicy());
+    }
+
+    public void test2()
+    {
+        assertFalse(reconciler.isAffectedBy(newEvent(newDelta(F_SYNC))));
+        assertTrue(reconciler.isAffectedBy(newEvent(newDelta(F_SYNC),
+            newDelta(F_CONTENT))));
+    }
+
+    static IElementChangeEvent newEvent(IElementDelta... deltas)
+    {
+        return new ElementChangeEvent(IElementChangeEvent.POST_CHANGE, deltas);
+    }
+
+    static IElementDelta newDelta(long flags)
+    {
+        return new ElementDelta(new IElement()
+        {
+        })
+        {
+            {
+                setKind_(CHANGED);
+                setFlags_(flags);
+            }
+        };
+    }
+
+    static class NullWorkingCopyManager
+        implements IWorkingCopyManager
+    {
+        @Override
+        public void connect(Object element)
+        {
+        }
+
+        @Override
+        public void disconnect(Object element)
+        {
+        }
+
+        @Override
+        public ISourceFile getWorkingCopy(Object element)
+        {
+            return null;
+        }
+
+        @Override
+        public ISourceFile getWorkingCopy(IDocument document)
+        {
+            return null;
+        }
+
+        @Override
+        public ISourceFile[] getWorkingCopies()
+        {
+            return new ISourceFile[0];
+        }
+    }
+}
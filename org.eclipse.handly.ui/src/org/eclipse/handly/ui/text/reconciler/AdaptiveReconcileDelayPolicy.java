@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.ui.text.reconciler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A reconcile delay policy that adapts the delay to the measured cost
+ * of reconciling and to the typing cadence.
+ * <p>
+ * The policy keeps moving averages of the recent reconcile durations and
+ * of the intervals between consecutive document changes. Intervals longer
+ * than the maximum delay are considered pauses in typing and are ignored.
+ * The delay is chosen so that a reconcile is unlikely to start in the middle
+ * of a burst of typing and, for documents that are expensive to reconcile,
+ * so that reconciling does not take up most of the time. It is always kept
+ * within the bounds given to the policy: cheap documents are reconciled
+ * soon after the user stops typing, and expensive documents are reconciled
+ * less often.
+ * </p>
+ * <p>
+ * An instance of this class is safe for use by multiple threads.
+ * </p>
+ *
+ * @since 1.5
+ */
+public final class AdaptiveReconcileDelayPolicy
+    implements IReconcileDelayPolicy
+{
+    /**
+     * The default minimum delay in milliseconds.
+     */
+    public static final int DEFAULT_MIN_DELAY = 100;
+
+    /**
+     * The default maximum delay in milliseconds.
+     */
+    public static final int DEFAULT_MAX_DELAY = 2000;
+
+    private static final double WEIGHT = 0.3; // of a new sample in the averages
+    private static final double INTERVAL_FACTOR = 1.5;
+    private static final double COST_FACTOR = 2;
+
+    private final int minDelay, maxDelay;
+    private double averageInterval = -1; // in milliseconds; -1 if unknown
+    private double averageCost = -1; // in milliseconds; -1 if unknown
+    private long lastChangeTime; // in nanoseconds; 0 if none
+
+    /**
+     * Creates a new adaptive delay policy with the default bounds.
+     *
+     * @see #DEFAULT_MIN_DELAY
+     * @see #DEFAULT_MAX_DELAY
+     */
+    public AdaptiveReconcileDelayPolicy()
+    {
+        this(DEFAULT_MIN_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * Creates a new adaptive delay policy with the given bounds.
+     *
+     * @param minDelay the minimum delay in milliseconds (not negative)
+     * @param maxDelay the maximum delay in milliseconds
+     *  (not less than the minimum delay)
+     */
+    public AdaptiveReconcileDelayPolicy(int minDelay, int maxDelay)
+    {
+        if (minDelay < 0)
+            throw new IllegalArgumentException();
+        if (maxDelay < minDelay)
+            throw new IllegalArgumentException();
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Returns the minimum delay of this policy.
+     *
+     * @return the minimum delay in milliseconds
+     */
+    public int getMinDelay()
+    {
+        return minDelay;
+    }
+
+    /**
+     * Returns the maximum delay of this policy.
+     *
+     * @return the maximum delay in milliseconds
+     */
+    public int getMaxDelay()
+    {
+        return maxDelay;
+    }
+
+    @Override
+    public synchronized int getDelay()
+    {
+        double delay = minDelay;
+        if (averageInterval >= 0)
+            delay = Math.max(delay, INTERVAL_FACTOR * averageInterval);
+        if (averageCost >= 0)
+            delay = Math.max(delay, COST_FACTOR * averageCost);
+        return (int)Math.min(delay, maxDelay);
+    }
+
+    @Override
+    public void documentChanged()
+    {
+        documentChanged(System.nanoTime());
+    }
+
+    @Override
+    public synchronized void reconciled(long duration)
+    {
+        if (duration < 0)
+            return;
+        averageCost = average(averageCost, duration);
+    }
+
+    synchronized void documentChanged(long time)
+    {
+        if (lastChangeTime != 0)
+        {
+            long interval = TimeUnit.NANOSECONDS.toMillis(time
+                - lastChangeTime);
+            if (interval >= 0 && interval <= maxDelay)
+                averageInterval = average(averageInterval, interval);
+        }
+        lastChangeTime = time;
+    }
+
+    private static double average(double average, double sample)
+    {
+        if (average < 0)
+            return sample;
+        return average + WEIGHT * (sample - average);
+    }
+}
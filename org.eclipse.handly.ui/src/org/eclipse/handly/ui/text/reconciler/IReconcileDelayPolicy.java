@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.ui.text.reconciler;
+
+/**
+ * Determines how long a reconciler waits after a document change
+ * before reconciling.
+ * <p>
+ * A delay policy is notified of each change to the reconciler's document
+ * and of the duration of each completed reconcile, and may use this
+ * information to adjust the delay. A delay policy is stateful and must not
+ * be shared between reconcilers. Its methods may be called by different
+ * threads.
+ * </p>
+ *
+ * @see AdaptiveReconcileDelayPolicy
+ * @since 1.5
+ */
+public interface IReconcileDelayPolicy
+{
+    /**
+     * Returns the time to wait after the last document change before
+     * reconciling.
+     *
+     * @return the delay in milliseconds (not negative)
+     */
+    int getDelay();
+
+    /**
+     * Notifies this policy that the reconciler's document has changed.
+     */
+    void documentChanged();
+
+    /**
+     * Notifies this policy that a reconcile has completed.
+     *
+     * @param duration the time the reconcile took, in milliseconds
+     */
+    void reconciled(long duration);
+}
@@ -0,0 +1,661 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.ui.text.reconciler;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.handly.model.IElementChangeEvent;
+import org.eclipse.handly.model.IElementChangeListener;
+import org.eclipse.handly.model.IElementDelta;
+import org.eclipse.handly.model.ISourceFile;
+import org.eclipse.handly.ui.IWorkingCopyManager;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.ITextInputListener;
+import org.eclipse.jface.text.ITextViewer;
+import org.eclipse.jface.text.Region;
+import org.eclipse.jface.text.reconciler.IReconciler;
+import org.eclipse.jface.text.reconciler.IReconcilingStrategy;
+import org.eclipse.jface.text.reconciler.IReconcilingStrategyExtension;
+
+/**
+ * An abstract base class of a working copy reconciler that runs reconciles
+ * as {@link Job jobs} rather than in a background thread of its own.
+ * <p>
+ * This class is a counterpart of {@link WorkingCopyReconciler} that honors
+ * the same contract with regard to the reconciling strategy and the
+ * underlying model: it is activated on viewer activation, forces reconciling
+ * on a significant change in the underlying model, and supports
+ * {@link IReconcilingStrategyExtension}. However, unlike <code>
+ * WorkingCopyReconciler</code>, which is based on an {@link
+ * org.eclipse.jface.text.reconciler.AbstractReconciler AbstractReconciler}
+ * and hence keeps a dedicated thread for each installed reconciler, this
+ * reconciler does not own any thread: its reconciles run in the shared
+ * worker pool of the job manager. The number of threads used for reconciling
+ * therefore does not grow with the number of open editors. Neither does
+ * a reconcile that is waiting for the {@link #getReconcileScheduler()
+ * reconcile scheduler} occupy a worker thread: the job is scheduled
+ * again when the scheduler lets the reconcile through.
+ * </p>
+ * <p>
+ * The reconciler is not incremental: the reconciling strategy is always
+ * asked to reconcile the whole document.
+ * </p>
+ *
+ * @since 1.5
+ */
+public abstract class JobWorkingCopyReconciler
+    implements IReconciler
+{
+    private final IWorkingCopyManager workingCopyManager;
+    private IReconcilingStrategy strategy;
+    private final IProgressMonitor progressMonitor = new NullProgressMonitor();
+    private final ReconcileJob job = new ReconcileJob();
+    private final AtomicReference<ReconcileScheduler.Ticket> ticket =
+        new AtomicReference<>();
+    private ITextViewer textViewer;
+    private volatile IDocument document;
+    private volatile ISourceFile workingCopy;
+    private volatile boolean initialProcessDone = false;
+    private volatile int delay = 500;
+    private final Support support = new Support();
+    private final IDocumentListener documentListener = new IDocumentListener()
+    {
+        @Override
+        public void documentAboutToBeChanged(DocumentEvent event)
+        {
+        }
+
+        @Override
+        public void documentChanged(DocumentEvent event)
+        {
+            support.documentChanged();
+            reschedule();
+        }
+    };
+    private final ITextInputListener textInputListener =
+        new ITextInputListener()
+        {
+            @Override
+            public void inputDocumentAboutToBeChanged(IDocument oldInput,
+                IDocument newInput)
+            {
+                setInputDocument(null);
+            }
+
+            @Override
+            public void inputDocumentChanged(IDocument oldInput,
+                IDocument newInput)
+            {
+                setInputDocument(newInput);
+            }
+        };
+
+    /**
+     * Creates a new working copy reconciler with the given working copy manager.
+     * The working copy manager is used to determine the working copy for
+     * the reconciler's document. The reconciler is configured with a single
+     * reconciling strategy (by default, a {@link WorkingCopyReconcilingStrategy})
+     * that is used irrespective of where a dirty region is located in the
+     * reconciler's document.
+     *
+     * @param workingCopyManager not <code>null</code>
+     */
+    public JobWorkingCopyReconciler(IWorkingCopyManager workingCopyManager)
+    {
+        if (workingCopyManager == null)
+            throw new IllegalArgumentException();
+        this.workingCopyManager = workingCopyManager;
+        setReconcilingStrategy(new WorkingCopyReconcilingStrategy(
+            workingCopyManager));
+    }
+
+    /**
+     * Sets the reconciling strategy that is to be used by this reconciler.
+     *
+     * @param strategy not <code>null</code>
+     */
+    public void setReconcilingStrategy(IReconcilingStrategy strategy)
+    {
+        if (strategy == null)
+            throw new IllegalArgumentException();
+        this.strategy = strategy;
+        if (strategy instanceof IReconcilingStrategyExtension)
+        {
+            IReconcilingStrategyExtension extension =
+                (IReconcilingStrategyExtension)strategy;
+            extension.setProgressMonitor(progressMonitor);
+        }
+    }
+
+    /**
+     * Sets the time this reconciler waits after a document change before
+     * reconciling. The default delay is 500 milliseconds. This method
+     * clears the {@link #setDelayPolicy(IReconcileDelayPolicy) delay policy},
+     * if any.
+     *
+     * @param delay the delay in milliseconds (not negative)
+     */
+    public void setDelay(int delay)
+    {
+        if (delay < 0)
+            throw new IllegalArgumentException();
+        this.delay = delay;
+        support.setDelayPolicy(null);
+    }
+
+    /**
+     * Sets the policy that determines how long this reconciler waits after
+     * a document change before reconciling. The policy is notified of each
+     * change to the reconciler's document and of the duration of each
+     * reconcile. By default, the reconciler has no delay policy and uses
+     * the fixed delay set with {@link #setDelay(int)}; an {@link
+     * AdaptiveReconcileDelayPolicy} may be set to adapt the delay to the cost
+     * of reconciling and to the typing cadence.
+     * <p>
+     * If <code>null</code> is given, the reconciler uses the fixed delay.
+     * A subsequent call to {@link #setDelay(int)} also clears the policy.
+     * </p>
+     *
+     * @param policy a delay policy that is not shared with other
+     *  reconcilers, or <code>null</code>
+     */
+    public void setDelayPolicy(IReconcileDelayPolicy policy)
+    {
+        support.setDelayPolicy(policy);
+    }
+
+    /**
+     * Returns the policy that determines how long this reconciler waits
+     * after a document change before reconciling.
+     *
+     * @return the delay policy, or <code>null</code> if the delay is fixed
+     */
+    public IReconcileDelayPolicy getDelayPolicy()
+    {
+        return support.getDelayPolicy();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * <code>JobWorkingCopyReconciler</code> implements this method to
+     * start listening to the viewer's document, {@link
+     * #addElementChangeListener(IElementChangeListener) register} an
+     * element change listener that {@link #elementChanged(IElementChangeEvent)
+     * notifies} when a change in the underlying model {@link #isAffectedBy(
+     * IElementChangeEvent) affects} the reconciler in some way, and also
+     * to register a shell listener that {@link #setActive(boolean) sets}
+     * the active state of the reconciler when the reconciler's text viewer
+     * is activated or deactivated.
+     * </p>
+     */
+    @Override
+    public void install(ITextViewer textViewer)
+    {
+        if (textViewer == null)
+            throw new IllegalArgumentException();
+        this.textViewer = textViewer;
+
+        addElementChangeListener(support.getElementChangeListener());
+
+        support.install(textViewer.getTextWidget());
+
+        textViewer.addTextInputListener(textInputListener);
+        setInputDocument(textViewer.getDocument());
+    }
+
+    @Override
+    public void uninstall()
+    {
+        textViewer.removeTextInputListener(textInputListener);
+        setInputDocument(null);
+
+        support.uninstall(textViewer.getTextWidget());
+
+        removeElementChangeListener(support.getElementChangeListener());
+
+        textViewer = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation always returns the single strategy of this reconciler.
+     * </p>
+     */
+    @Override
+    public IReconcilingStrategy getReconcilingStrategy(String contentType)
+    {
+        return strategy;
+    }
+
+    /**
+     * Returns the text viewer this reconciler is installed on.
+     *
+     * @return the text viewer, or <code>null</code> if this reconciler
+     *  is not installed
+     */
+    protected ITextViewer getTextViewer()
+    {
+        return textViewer;
+    }
+
+    /**
+     * Returns the document this reconciler is working on.
+     *
+     * @return the reconciler's document, or <code>null</code> if none
+     */
+    protected IDocument getDocument()
+    {
+        return document;
+    }
+
+    /**
+     * Returns the progress monitor this reconciler passes to the reconciling
+     * strategy. The monitor is canceled when the document is changed.
+     *
+     * @return the progress monitor (never <code>null</code>)
+     */
+    protected IProgressMonitor getProgressMonitor()
+    {
+        return progressMonitor;
+    }
+
+    /**
+     * Called once in the reconciler's job when the reconciler starts working
+     * on its first document.
+     * <p>
+     * If the reconciling strategy of this reconciler supports
+     * {@link IReconcilingStrategyExtension}, this implementation
+     * invokes {@link IReconcilingStrategyExtension#initialReconcile()
+     * initialReconcile()} on the strategy under the reconciler's
+     * {@link #getReconcilerLock() lock}.
+     * </p>
+     */
+    protected void initialProcess()
+    {
+        synchronized (getReconcilerLock())
+        {
+            if (strategy instanceof IReconcilingStrategyExtension)
+            {
+                IReconcilingStrategyExtension extension =
+                    (IReconcilingStrategyExtension)strategy;
+                extension.initialReconcile();
+            }
+        }
+    }
+
+    /**
+     * Called in the reconciler's job to reconcile the document. The job
+     * calls this method only when the {@link #getReconcileScheduler()
+     * reconcile scheduler}, if any, has let the reconcile through, using
+     * the working copy for the reconciler's document as the scheduling key.
+     * <p>
+     * This implementation asks the reconciling strategy to reconcile the whole
+     * document.
+     * </p>
+     */
+    protected void process()
+    {
+        IDocument document = getDocument();
+        if (document == null)
+            return;
+        support.reconcile(() -> strategy.reconcile(new Region(0,
+            document.getLength())), progressMonitor);
+    }
+
+    /**
+     * Forces the reconciler to reconcile the document after the current delay.
+     */
+    protected void forceReconciling()
+    {
+        if (!initialProcessDone || getDocument() == null)
+            return;
+
+        reschedule();
+    }
+
+    /**
+     * Returns whether the current thread is running the reconciler's job.
+     *
+     * @return <code>true</code> if the current thread is running the
+     *  reconciler's job, and <code>false</code> otherwise
+     */
+    protected boolean isRunningInReconcilerThread()
+    {
+        return Job.getJobManager().currentJob() == job;
+    }
+
+    /**
+     * Returns the mutex for this reconciler. See <a
+     * href="https://bugs.eclipse.org/bugs/show_bug.cgi?id=66176">Bug 66176</a>
+     * for a description of the underlying problem.
+     * <p>
+     * Default implementation returns <code>this</code>. Subclasses may override.
+     * </p>
+     *
+     * @return the mutex for the reconciler (never <code>null</code>)
+     */
+    protected Object getReconcilerLock()
+    {
+        return this;
+    }
+
+    /**
+     * Returns the scheduler that limits the number of concurrent reconciles
+     * across reconcilers, or <code>null</code> if this reconciler is not
+     * to be limited.
+     * <p>
+     * Default implementation returns the {@link ReconcileScheduler#getDefault()
+     * default} scheduler. Subclasses may override.
+     * </p>
+     *
+     * @return the reconcile scheduler, or <code>null</code>
+     */
+    protected ReconcileScheduler getReconcileScheduler()
+    {
+        return ReconcileScheduler.getDefault();
+    }
+
+    /**
+     * Registers the given element change listener with the underlying model.
+     *
+     * @param listener never <code>null</code>
+     */
+    protected abstract void addElementChangeListener(
+        IElementChangeListener listener);
+
+    /**
+     * Removes the given element change listener from the underlying model.
+     *
+     * @param listener never <code>null</code>
+     */
+    protected abstract void removeElementChangeListener(
+        IElementChangeListener listener);
+
+    /**
+     * Returns whether this reconciler is affected in some way
+     * by the given element change event.
+     * <p>
+     * This implementation delegates to {@link #isAffectedBy(IElementDelta[],
+     * ISourceFile)}, passing the deltas of the event and the working copy
+     * for the reconciler's document.
+     * </p>
+     *
+     * @param event never <code>null</code>
+     * @return <code>true</code> if the reconciler is affected
+     *  by the given element change event, and <code>false</code> otherwise
+     */
+    protected boolean isAffectedBy(IElementChangeEvent event)
+    {
+        return isAffectedBy(event.getDeltas(), getWorkingCopy());
+    }
+
+    /**
+     * Returns whether this reconciler is affected by the given element deltas
+     * with regard to the given working copy.
+     * <p>
+     * This implementation delegates to {@link #isAffectedBy(IElementDelta,
+     * ISourceFile)} for each of the given deltas.
+     * </p>
+     *
+     * @param deltas never <code>null</code>
+     * @param workingCopy may be <code>null</code>
+     * @return <code>true</code> if the reconciler is affected
+     *  by the given deltas, and <code>false</code> otherwise
+     */
+    protected boolean isAffectedBy(IElementDelta[] deltas,
+        ISourceFile workingCopy)
+    {
+        return support.defaultIsAffectedBy(deltas, workingCopy);
+    }
+
+    /**
+     * Returns whether this reconciler is affected by the given element delta
+     * with regard to the given working copy.
+     *
+     * @param delta never <code>null</code>
+     * @param workingCopy may be <code>null</code>
+     * @return <code>true</code> if the reconciler is affected
+     *  by the given delta, and <code>false</code> otherwise
+     */
+    protected boolean isAffectedBy(IElementDelta delta, ISourceFile workingCopy)
+    {
+        return support.defaultIsAffectedBy(delta, workingCopy);
+    }
+
+    /**
+     * Notifies that this reconciler is affected in some way
+     * by the given element change event.
+     * <p>
+     * <b>Note:</b> This method may be called in any thread.
+     * The event object (and the deltas within it) is valid only
+     * for the duration of the invocation of this method.
+     * </p>
+     * <p>
+     * This implementation schedules a runnable to execute on the UI thread,
+     * to synchronize with {@link #setActive(boolean)}. The runnable will force
+     * reconciling if the reconciler is active at that time; it will also record
+     * the fact that a significant change occurred in the underlying model.
+     * </p>
+     *
+     * @param event never <code>null</code>
+     */
+    protected void elementChanged(IElementChangeEvent event)
+    {
+        support.defaultElementChanged();
+    }
+
+    /**
+     * Returns whether this reconciler is currently active.
+     *
+     * @return <code>true</code> if this reconciler is currently active,
+     *  and <code>false</code> otherwise
+     */
+    protected boolean isActive()
+    {
+        return support.defaultIsActive();
+    }
+
+    /**
+     * Indicates a change in the active state of this reconciler.
+     * This method can only be executed by the UI thread.
+     * <p>
+     * This implementation sets the active state of the reconciler to the
+     * given value. Also, it forces reconciling if a significant model change
+     * occurred while the reconciler was not active.
+     * </p>
+     *
+     * @param active the boolean value to set for the reconciler active state
+     */
+    protected void setActive(boolean active)
+    {
+        support.defaultSetActive(active);
+    }
+
+    private ISourceFile getWorkingCopy()
+    {
+        return workingCopy;
+    }
+
+    private void setInputDocument(IDocument newDocument)
+    {
+        IDocument oldDocument = document;
+        if (oldDocument != null)
+        {
+            oldDocument.removeDocumentListener(documentListener);
+            cancelJob();
+        }
+        document = newDocument;
+        if (newDocument != null)
+        {
+            workingCopy = workingCopyManager.getWorkingCopy(newDocument);
+            strategy.setDocument(newDocument);
+            newDocument.addDocumentListener(documentListener);
+            if (initialProcessDone)
+                reschedule();
+            else
+                job.schedule();
+        }
+        else
+            workingCopy = null;
+    }
+
+    private void reschedule()
+    {
+        cancelJob();
+        IReconcileDelayPolicy policy = support.getDelayPolicy();
+        job.schedule(policy != null ? policy.getDelay() : delay);
+    }
+
+    private void cancelJob()
+    {
+        progressMonitor.setCanceled(true);
+        if (job.cancel()) // the job is not running
+            releaseTicket(); // don't hold up other reconciles during the delay
+    }
+
+    /*
+     * Returns whether the reconcile scheduler has let the reconcile through.
+     * Otherwise, the job will be scheduled again when it does.
+     */
+    private boolean acquireTicket(ReconcileScheduler scheduler)
+    {
+        ReconcileScheduler.Ticket current = ticket.get();
+        if (current != null && current.isGranted())
+            return true;
+        Object key = getWorkingCopy();
+        if (key == null)
+            key = this;
+        ReconcileScheduler.Ticket newTicket = scheduler.submit(key,
+            support::getPriority, progressMonitor, () -> job.schedule());
+        ReconcileScheduler.Ticket oldTicket = ticket.getAndSet(newTicket);
+        if (oldTicket != null)
+            oldTicket.release();
+        return newTicket.isGranted();
+    }
+
+    private void releaseTicket()
+    {
+        ReconcileScheduler.Ticket current = ticket.getAndSet(null);
+        if (current != null)
+            current.release();
+    }
+
+    private class ReconcileJob
+        extends Job
+    {
+        ReconcileJob()
+        {
+            super(""); //$NON-NLS-1$
+            setSystem(true);
+            setPriority(Job.SHORT);
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor)
+        {
+            if (monitor.isCanceled() || getDocument() == null)
+            {
+                releaseTicket();
+                return Status.CANCEL_STATUS;
+            }
+            progressMonitor.setCanceled(false);
+            if (!initialProcessDone)
+            {
+                initialProcess();
+                initialProcessDone = true;
+                return Status.OK_STATUS;
+            }
+            ReconcileScheduler scheduler = getReconcileScheduler();
+            if (scheduler != null && !acquireTicket(scheduler))
+                return Status.OK_STATUS; // to be scheduled when let through
+            try
+            {
+                process();
+            }
+            finally
+            {
+                releaseTicket();
+            }
+            return Status.OK_STATUS;
+        }
+    }
+
+    private class Support
+        extends WorkingCopyReconcilerSupport
+    {
+        @Override
+        ITextViewer getTextViewer()
+        {
+            return JobWorkingCopyReconciler.this.getTextViewer();
+        }
+
+        @Override
+        boolean isRunningInReconcilerThread()
+        {
+            return JobWorkingCopyReconciler.this.isRunningInReconcilerThread();
+        }
+
+        @Override
+        boolean isAffectedBy(IElementChangeEvent event)
+        {
+            return JobWorkingCopyReconciler.this.isAffectedBy(event);
+        }
+
+        @Override
+        boolean isAffectedBy(IElementDelta[] deltas, ISourceFile workingCopy)
+        {
+            return JobWorkingCopyReconciler.this.isAffectedBy(deltas,
+                workingCopy);
+        }
+
+        @Override
+        boolean isAffectedBy(IElementDelta delta, ISourceFile workingCopy)
+        {
+            return JobWorkingCopyReconciler.this.isAffectedBy(delta,
+                workingCopy);
+        }
+
+        @Override
+        void elementChanged(IElementChangeEvent event)
+        {
+            JobWorkingCopyReconciler.this.elementChanged(event);
+        }
+
+        @Override
+        boolean isActive()
+        {
+            return JobWorkingCopyReconciler.this.isActive();
+        }
+
+        @Override
+        void setActive(boolean active)
+        {
+            JobWorkingCopyReconciler.this.setActive(active);
+        }
+
+        @Override
+        void forceReconciling()
+        {
+            JobWorkingCopyReconciler.this.forceReconciling();
+        }
+    }
+}
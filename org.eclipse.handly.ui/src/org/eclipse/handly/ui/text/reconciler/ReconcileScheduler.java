@@ -0,0 +1,387 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.ui.text.reconciler;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.swt.widgets.Control;
+
+/**
+ * Limits the number of reconciles that may run concurrently across
+ * all of the reconcilers that share this scheduler, e.g. across all of
+ * the open editors.
+ * <p>
+ * A reconciler {@link #run(Object, IntSupplier, IProgressMonitor, Runnable)
+ * runs} each reconcile through the scheduler, or {@link #submit(Object,
+ * IntSupplier, IProgressMonitor, Runnable) submits} a request to run it
+ * without blocking. If the maximum number of reconciles are already running,
+ * the reconcile waits until it can proceed. Waiting reconciles are let through in the order of their
+ * priority (e.g., the reconciles for the active editor go first, then
+ * for the visible editors, then for the others) and, within the same
+ * priority, in the order of arrival.
+ * </p>
+ * <p>
+ * Each reconcile is associated with a key that identifies what is being
+ * reconciled, e.g. a working copy. A newer reconcile request with the same
+ * key supersedes the older one: if the older reconcile is still waiting,
+ * it is dropped; if it is running, its progress monitor is canceled.
+ * A waiting reconcile is also dropped as soon as its progress monitor
+ * is canceled, e.g. when the document is changed again.
+ * </p>
+ * <p>
+ * An instance of this class is safe for use by multiple threads.
+ * </p>
+ *
+ * @since 1.5
+ */
+public final class ReconcileScheduler
+{
+    /**
+     * Priority of a reconcile for an editor that is neither active
+     * nor visible.
+     */
+    public static final int PRIORITY_BACKGROUND = 0;
+
+    /**
+     * Priority of a reconcile for a visible editor.
+     */
+    public static final int PRIORITY_VISIBLE = 1;
+
+    /**
+     * Priority of a reconcile for the active editor.
+     */
+    public static final int PRIORITY_ACTIVE = 2;
+
+    /*
+     * The interval for checking whether a waiting reconcile is canceled.
+     */
+    private static final long CANCEL_CHECK_INTERVAL = 100; // in milliseconds
+
+    private final int maxConcurrency;
+    private final List<Ticket> waiting = new ArrayList<>();
+    private final List<Ticket> running = new ArrayList<>();
+
+    /**
+     * Returns the scheduler shared by Handly reconcilers by default.
+     * It lets through as many concurrent reconciles as half the number
+     * of available processors, but at least one.
+     *
+     * @return the default scheduler (never <code>null</code>)
+     */
+    public static ReconcileScheduler getDefault()
+    {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Returns the priority of a reconcile for an editor with the given
+     * text control. This method can only be executed by the UI thread.
+     *
+     * @param control may be <code>null</code>
+     * @param active whether the editor is active. An editor whose control
+     *  has focus is always considered active
+     * @return one of the <code>PRIORITY_*</code> constants
+     */
+    public static int getPriority(Control control, boolean active)
+    {
+        if (control == null || control.isDisposed())
+            return PRIORITY_BACKGROUND;
+        if (control.isFocusControl())
+            return PRIORITY_ACTIVE;
+        if (!control.isVisible())
+            return PRIORITY_BACKGROUND;
+        return active ? PRIORITY_ACTIVE : PRIORITY_VISIBLE;
+    }
+
+    /**
+     * Creates a new scheduler that lets through the given number
+     * of concurrent reconciles.
+     *
+     * @param maxConcurrency a positive number
+     */
+    public ReconcileScheduler(int maxConcurrency)
+    {
+        if (maxConcurrency < 1)
+            throw new IllegalArgumentException();
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Runs the given reconcile task in the calling thread as soon as the
+     * scheduler lets it through. Returns without running the task if the
+     * given progress monitor is canceled or a newer request with the same
+     * key arrives while waiting.
+     * <p>
+     * The priority of the reconcile is requested from the given supplier
+     * each time the scheduler decides which of the waiting reconciles
+     * to let through; it may be called in any thread while holding the
+     * scheduler lock, so it must be fast and must not block.
+     * </p>
+     * <p>
+     * This method blocks the calling thread while the reconcile is waiting.
+     * Reconcilers that run reconciles in a shared pool of threads, such as
+     * {@link org.eclipse.core.runtime.jobs.Job jobs}, should rather {@link
+     * #submit(Object, IntSupplier, IProgressMonitor, Runnable) submit}
+     * a request, so that a waiting reconcile does not occupy a thread
+     * of the pool.
+     * </p>
+     *
+     * @param key identifies what is being reconciled (not <code>null</code>)
+     * @param priority supplies the priority of the reconcile
+     *  (not <code>null</code>). See the <code>PRIORITY_*</code> constants
+     * @param monitor the progress monitor of the reconcile
+     *  (not <code>null</code>)
+     * @param task the reconcile task (not <code>null</code>)
+     * @return <code>true</code> if the task has been run,
+     *  and <code>false</code> otherwise
+     */
+    public boolean run(Object key, IntSupplier priority,
+        IProgressMonitor monitor, Runnable task)
+    {
+        if (task == null)
+            throw new IllegalArgumentException();
+
+        Ticket ticket;
+        synchronized (this)
+        {
+            ticket = enqueue(key, priority, monitor);
+            boolean interrupted = false;
+            try
+            {
+                while (!ticket.started)
+                {
+                    if (ticket.dropped || monitor.isCanceled())
+                    {
+                        ticket.release();
+                        return false;
+                    }
+                    try
+                    {
+                        wait(CANCEL_CHECK_INTERVAL);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        interrupted = true;
+                    }
+                    dispatch();
+                }
+            }
+            finally
+            {
+                if (interrupted)
+                    Thread.currentThread().interrupt();
+            }
+        }
+        try
+        {
+            task.run();
+        }
+        finally
+        {
+            ticket.release();
+        }
+        return true;
+    }
+
+    /**
+     * Submits a request to run a reconcile without blocking the calling
+     * thread. Returns a ticket that is {@link Ticket#isGranted() granted}
+     * when the scheduler lets the reconcile through. If the reconcile cannot
+     * be let through immediately, the ticket is not granted on return; the
+     * given callback is then invoked as soon as the ticket is granted,
+     * e.g. to schedule a job that will run the reconcile. The callback is
+     * not invoked if the ticket is granted immediately or if the request
+     * is dropped, i.e. when the given progress monitor is canceled or a newer
+     * request with the same key arrives while waiting.
+     * <p>
+     * The holder of a granted ticket is expected to run the reconcile and then
+     * {@link Ticket#release() release} the ticket. A ticket that is no longer
+     * needed must be released too, whether it has been granted or not.
+     * </p>
+     * <p>
+     * Both the priority supplier and the callback may be called in any thread
+     * while holding the scheduler lock, so they must be fast and must not
+     * block.
+     * </p>
+     *
+     * @param key identifies what is being reconciled (not <code>null</code>)
+     * @param priority supplies the priority of the reconcile
+     *  (not <code>null</code>). See the <code>PRIORITY_*</code> constants
+     * @param monitor the progress monitor of the reconcile
+     *  (not <code>null</code>)
+     * @param callback invoked when the ticket is granted after this method
+     *  has returned (not <code>null</code>)
+     * @return the ticket for the reconcile (never <code>null</code>)
+     */
+    public Ticket submit(Object key, IntSupplier priority,
+        IProgressMonitor monitor, Runnable callback)
+    {
+        if (callback == null)
+            throw new IllegalArgumentException();
+
+        synchronized (this)
+        {
+            Ticket ticket = enqueue(key, priority, monitor);
+            ticket.callback = callback;
+            return ticket;
+        }
+    }
+
+    /*
+     * Adds a new request to the waiting list, dropping or canceling
+     * the older requests with the same key, and dispatches the waiting
+     * requests. Must be called while holding the scheduler lock.
+     */
+    private Ticket enqueue(Object key, IntSupplier priority,
+        IProgressMonitor monitor)
+    {
+        if (key == null)
+            throw new IllegalArgumentException();
+        if (priority == null)
+            throw new IllegalArgumentException();
+        if (monitor == null)
+            throw new IllegalArgumentException();
+
+        Ticket ticket = new Ticket(key, priority, monitor);
+        for (Iterator<Ticket> it = waiting.iterator(); it.hasNext();)
+        {
+            Ticket other = it.next();
+            if (other.key.equals(key))
+            {
+                other.dropped = true;
+                it.remove();
+            }
+        }
+        for (Ticket other : running)
+        {
+            if (other.key.equals(key))
+                other.monitor.setCanceled(true);
+        }
+        waiting.add(ticket);
+        dispatch();
+        return ticket;
+    }
+
+    /*
+     * Drops the waiting requests whose monitor is canceled and lets through
+     * the waiting requests with the highest priority while the maximum
+     * concurrency is not reached. Must be called while holding the scheduler
+     * lock.
+     */
+    private void dispatch()
+    {
+        for (Iterator<Ticket> it = waiting.iterator(); it.hasNext();)
+        {
+            Ticket ticket = it.next();
+            if (ticket.monitor.isCanceled())
+            {
+                ticket.dropped = true;
+                it.remove();
+            }
+        }
+        boolean dispatched = false;
+        while (running.size() < maxConcurrency)
+        {
+            Ticket next = null;
+            int nextPriority = 0;
+            for (Ticket ticket : waiting) // in order of arrival
+            {
+                int priority = ticket.priority.getAsInt();
+                if (next == null || priority > nextPriority)
+                {
+                    next = ticket;
+                    nextPriority = priority;
+                }
+            }
+            if (next == null)
+                break;
+            waiting.remove(next);
+            running.add(next);
+            next.started = true;
+            if (next.callback != null)
+                next.callback.run();
+            dispatched = true;
+        }
+        if (dispatched)
+            notifyAll();
+    }
+
+    /**
+     * Represents a reconcile request {@link ReconcileScheduler#submit(Object,
+     * IntSupplier, IProgressMonitor, Runnable) submitted} to the scheduler.
+     * <p>
+     * An instance of this class is safe for use by multiple threads.
+     * </p>
+     */
+    public final class Ticket
+    {
+        private final Object key;
+        private final IntSupplier priority;
+        private final IProgressMonitor monitor;
+        // guarded by the scheduler lock
+        private Runnable callback;
+        private boolean started, dropped;
+
+        private Ticket(Object key, IntSupplier priority,
+            IProgressMonitor monitor)
+        {
+            this.key = key;
+            this.priority = priority;
+            this.monitor = monitor;
+        }
+
+        /**
+         * Returns whether the scheduler has let the reconcile through
+         * and the ticket has not been released yet.
+         *
+         * @return <code>true</code> if the ticket is granted,
+         *  and <code>false</code> otherwise
+         */
+        public boolean isGranted()
+        {
+            synchronized (ReconcileScheduler.this)
+            {
+                return started && !dropped;
+            }
+        }
+
+        /**
+         * Releases this ticket. If the ticket is granted, lets through
+         * the next waiting reconcile; otherwise, withdraws the request.
+         * Has no effect if the ticket has already been released or dropped.
+         */
+        public void release()
+        {
+            synchronized (ReconcileScheduler.this)
+            {
+                if (dropped)
+                    return;
+                dropped = true;
+                if (running.remove(this))
+                    dispatch();
+                else
+                    waiting.remove(this);
+            }
+        }
+    }
+
+    private static class DefaultHolder
+    {
+        static final ReconcileScheduler INSTANCE = new ReconcileScheduler(
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+}
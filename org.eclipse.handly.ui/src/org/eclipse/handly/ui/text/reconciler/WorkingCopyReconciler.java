@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015, 2018 1C-Soft LLC.
+ * Copyright (c) 2015, 2020 1C-Soft LLC.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -12,35 +12,21 @@
  *******************************************************************************/
 package org.eclipse.handly.ui.text.reconciler;
 
-import static org.eclipse.handly.model.IElementDeltaConstants.F_CHILDREN;
-import static org.eclipse.handly.model.IElementDeltaConstants.F_MARKERS;
-import static org.eclipse.handly.model.IElementDeltaConstants.F_SYNC;
-import static org.eclipse.handly.model.IElementDeltaConstants.F_UNDERLYING_RESOURCE;
-import static org.eclipse.handly.model.IElementDeltaConstants.F_WORKING_COPY;
-
-import org.eclipse.core.resources.IMarker;
-import org.eclipse.core.resources.IMarkerDelta;
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.handly.model.ElementDeltas;
-import org.eclipse.handly.model.IElement;
 import org.eclipse.handly.model.IElementChangeEvent;
 import org.eclipse.handly.model.IElementChangeListener;
 import org.eclipse.handly.model.IElementDelta;
 import org.eclipse.handly.model.ISourceFile;
 import org.eclipse.handly.ui.IWorkingCopyManager;
+import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
 import org.eclipse.jface.text.ITextViewer;
 import org.eclipse.jface.text.Region;
 import org.eclipse.jface.text.reconciler.AbstractReconciler;
 import org.eclipse.jface.text.reconciler.DirtyRegion;
 import org.eclipse.jface.text.reconciler.IReconcilingStrategy;
 import org.eclipse.jface.text.reconciler.IReconcilingStrategyExtension;
-import org.eclipse.swt.events.ShellAdapter;
-import org.eclipse.swt.events.ShellEvent;
-import org.eclipse.swt.events.ShellListener;
-import org.eclipse.swt.widgets.Control;
-import org.eclipse.swt.widgets.Display;
-import org.eclipse.ui.PlatformUI;
 
 /**
  * An abstract base class of a working copy reconciler that is activated on
@@ -53,23 +39,24 @@ public abstract class WorkingCopyReconciler
     private IWorkingCopyManager workingCopyManager;
     private IReconcilingStrategy strategy;
     private volatile ISourceFile workingCopy;
-    private volatile boolean active = true;
-    private volatile boolean modelChanged = false;
     private volatile boolean initialProcessDone = false;
-    private final IElementChangeListener elementChangeListener =
-        new IElementChangeListener()
+    private final Support support = new Support();
+    private IDocument listenedDocument;
+    private final IDocumentListener documentListener = new IDocumentListener()
+    {
+        @Override
+        public void documentAboutToBeChanged(DocumentEvent event)
         {
-            @Override
-            public void elementChanged(IElementChangeEvent event)
-            {
-                if (isRunningInReconcilerThread())
-                    return;
+        }
 
-                if (isAffectedBy(event))
-                    WorkingCopyReconciler.this.elementChanged(event);
-            }
-        };
-    private ShellListener activationListener;
+        @Override
+        public void documentChanged(DocumentEvent event)
+        {
+            int delay = support.documentChanged();
+            if (delay >= 0)
+                WorkingCopyReconciler.super.setDelay(delay);
+        }
+    };
 
     /**
      * Creates a new working copy reconciler with the given working copy manager.
@@ -111,6 +98,58 @@ public abstract class WorkingCopyReconciler
         }
     }
 
+    /**
+     * Sets the policy that determines how long this reconciler waits after
+     * a document change before reconciling. The policy is notified of each
+     * change to the reconciler's document and of the duration of each
+     * reconcile, and the {@link #setDelay(int) delay} of the reconciler is
+     * updated on each document change. By default, the reconciler has
+     * no delay policy and uses the fixed delay set with {@link #setDelay(int)};
+     * an {@link AdaptiveReconcileDelayPolicy} may be set to adapt the delay
+     * to the cost of reconciling and to the typing cadence.
+     * <p>
+     * If <code>null</code> is given, the delay is no longer adjusted.
+     * A subsequent call to {@link #setDelay(int)} also clears the policy.
+     * </p>
+     *
+     * @param policy a delay policy that is not shared with other
+     *  reconcilers, or <code>null</code>
+     * @since 1.5
+     */
+    public void setDelayPolicy(IReconcileDelayPolicy policy)
+    {
+        support.setDelayPolicy(policy);
+        if (policy != null)
+            super.setDelay(policy.getDelay());
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Since 1.5, this implementation also clears the {@link
+     * #setDelayPolicy(IReconcileDelayPolicy) delay policy}, if any,
+     * so that the given delay is not overwritten on a document change.
+     * </p>
+     */
+    @Override
+    public void setDelay(int delay)
+    {
+        support.setDelayPolicy(null);
+        super.setDelay(delay);
+    }
+
+    /**
+     * Returns the policy that determines how long this reconciler waits
+     * after a document change before reconciling.
+     *
+     * @return the delay policy, or <code>null</code> if the delay is fixed
+     * @since 1.5
+     */
+    public IReconcileDelayPolicy getDelayPolicy()
+    {
+        return support.getDelayPolicy();
+    }
+
     @Override
     public void setProgressMonitor(IProgressMonitor monitor)
     {
@@ -144,23 +183,19 @@ public abstract class WorkingCopyReconciler
         setWorkingCopy(workingCopyManager.getWorkingCopy(
             textViewer.getDocument()));
 
-        addElementChangeListener(elementChangeListener);
+        addElementChangeListener(support.getElementChangeListener());
 
-        Control control = textViewer.getTextWidget();
-        activationListener = new ActivationListener(control);
-        control.getShell().addShellListener(activationListener);
+        support.install(textViewer.getTextWidget());
     }
 
     @Override
     public void uninstall()
     {
-        Control control = getTextViewer().getTextWidget();
-        if (!control.isDisposed())
-            control.getShell().removeShellListener(activationListener);
-        activationListener = null;
+        support.uninstall(getTextViewer().getTextWidget());
 
-        removeElementChangeListener(elementChangeListener);
+        removeElementChangeListener(support.getElementChangeListener());
 
+        setListenedDocument(null);
         setWorkingCopy(null);
 
         super.uninstall();
@@ -203,19 +238,47 @@ public abstract class WorkingCopyReconciler
         initialProcessDone = true;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Since 1.5, this implementation reconciles through the {@link
+     * #getReconcileScheduler() reconcile scheduler}, if any, using the
+     * working copy for the reconciler's document as the scheduling key.
+     * If the scheduler drops the reconcile, e.g., because it has been
+     * superseded or canceled, the dirty region is not processed.
+     * </p>
+     */
     @Override
     protected void process(DirtyRegion dirtyRegion)
     {
-        if (dirtyRegion != null)
-            strategy.reconcile(dirtyRegion, dirtyRegion);
+        ReconcileScheduler scheduler = getReconcileScheduler();
+        if (scheduler == null)
+            doProcess(dirtyRegion);
         else
         {
-            IDocument document = getDocument();
-            if (document != null)
-                strategy.reconcile(new Region(0, document.getLength()));
+            Object key = getWorkingCopy();
+            if (key == null)
+                key = this;
+            scheduler.run(key, support::getPriority, getProgressMonitor(),
+                () -> doProcess(dirtyRegion));
         }
     }
 
+    private void doProcess(DirtyRegion dirtyRegion)
+    {
+        support.reconcile(() ->
+        {
+            if (dirtyRegion != null)
+                strategy.reconcile(dirtyRegion, dirtyRegion);
+            else
+            {
+                IDocument document = getDocument();
+                if (document != null)
+                    strategy.reconcile(new Region(0, document.getLength()));
+            }
+        }, getProgressMonitor());
+    }
+
     @Override
     protected void forceReconciling()
     {
@@ -230,6 +293,7 @@ public abstract class WorkingCopyReconciler
     {
         setWorkingCopy(workingCopyManager.getWorkingCopy(newDocument));
         strategy.setDocument(newDocument);
+        setListenedDocument(newDocument);
     }
 
     /**
@@ -247,6 +311,23 @@ public abstract class WorkingCopyReconciler
         return this;
     }
 
+    /**
+     * Returns the scheduler that limits the number of concurrent reconciles
+     * across reconcilers, or <code>null</code> if this reconciler is not
+     * to be limited.
+     * <p>
+     * Default implementation returns the {@link ReconcileScheduler#getDefault()
+     * default} scheduler. Subclasses may override.
+     * </p>
+     *
+     * @return the reconcile scheduler, or <code>null</code>
+     * @since 1.5
+     */
+    protected ReconcileScheduler getReconcileScheduler()
+    {
+        return ReconcileScheduler.getDefault();
+    }
+
     /**
      * Registers the given element change listener with the underlying model.
      *
@@ -267,8 +348,9 @@ public abstract class WorkingCopyReconciler
      * Returns whether this reconciler is affected in some way
      * by the given element change event.
      * <p>
-     * This implementation delegates to {@link #isAffectedBy(IElementDelta,
-     * ISourceFile)}, passing the working copy for the reconciler's document.
+     * This implementation delegates to {@link #isAffectedBy(IElementDelta[],
+     * ISourceFile)}, passing the deltas of the event and the working copy
+     * for the reconciler's document.
      * </p>
      *
      * @param event never <code>null</code>
@@ -280,15 +362,24 @@ public abstract class WorkingCopyReconciler
         return isAffectedBy(event.getDeltas(), getWorkingCopy());
     }
 
-    private boolean isAffectedBy(IElementDelta[] deltas,
+    /**
+     * Returns whether this reconciler is affected by the given element deltas
+     * with regard to the given working copy.
+     * <p>
+     * This implementation delegates to {@link #isAffectedBy(IElementDelta,
+     * ISourceFile)} for each of the given deltas.
+     * </p>
+     *
+     * @param deltas never <code>null</code>
+     * @param workingCopy may be <code>null</code>
+     * @return <code>true</code> if the reconciler is affected
+     *  by the given deltas, and <code>false</code> otherwise
+     * @since 1.5
+     */
+    protected boolean isAffectedBy(IElementDelta[] deltas,
         ISourceFile workingCopy)
     {
-        for (IElementDelta delta : deltas)
-        {
-            if (isAffectedBy(delta, workingCopy))
-                return true;
-        }
-        return false;
+        return support.defaultIsAffectedBy(deltas, workingCopy);
     }
 
     /**
@@ -302,33 +393,7 @@ public abstract class WorkingCopyReconciler
      */
     protected boolean isAffectedBy(IElementDelta delta, ISourceFile workingCopy)
     {
-        long flags = ElementDeltas.getFlags(delta);
-        if (flags == F_SYNC || flags == F_WORKING_COPY)
-            return false;
-        IElement element = ElementDeltas.getElement(delta);
-        if (flags == F_UNDERLYING_RESOURCE && element.equals(workingCopy))
-            return false; // saving this reconciler's working copy
-        if (flags == F_MARKERS)
-        {
-            if (element.equals(workingCopy))
-            {
-                for (IMarkerDelta markerDelta : ElementDeltas.getMarkerDeltas(
-                    delta))
-                {
-                    if (markerDelta.isSubtypeOf(IMarker.PROBLEM))
-                        return true;
-                }
-            }
-            return false;
-        }
-        if (flags != F_CHILDREN)
-            return true;
-        for (IElementDelta child : ElementDeltas.getAffectedChildren(delta))
-        {
-            if (isAffectedBy(child, workingCopy))
-                return true;
-        }
-        return false;
+        return support.defaultIsAffectedBy(delta, workingCopy);
     }
 
     /**
@@ -350,16 +415,7 @@ public abstract class WorkingCopyReconciler
      */
     protected void elementChanged(IElementChangeEvent event)
     {
-        // run on the UI thread to synchronize with #setActive
-        PlatformUI.getWorkbench().getDisplay().asyncExec(new Runnable()
-        {
-            public void run()
-            {
-                setModelChanged(true);
-                if (isActive())
-                    forceReconciling();
-            }
-        });
+        support.defaultElementChanged();
     }
 
     /**
@@ -370,7 +426,7 @@ public abstract class WorkingCopyReconciler
      */
     protected boolean isActive()
     {
-        return active;
+        return support.defaultIsActive();
     }
 
     /**
@@ -386,14 +442,7 @@ public abstract class WorkingCopyReconciler
      */
     protected void setActive(boolean active)
     {
-        this.active = active;
-        if (Display.getCurrent() == null)
-            throw new AssertionError(
-                "This method may only be executed by the user-interface thread"); //$NON-NLS-1$
-        if (!active)
-            setModelChanged(false);
-        else if (hasModelChanged())
-            forceReconciling();
+        support.defaultSetActive(active);
     }
 
     private ISourceFile getWorkingCopy()
@@ -406,44 +455,72 @@ public abstract class WorkingCopyReconciler
         this.workingCopy = workingCopy;
     }
 
-    private boolean hasModelChanged()
+    private void setListenedDocument(IDocument document)
     {
-        return modelChanged;
+        if (listenedDocument != null)
+            listenedDocument.removeDocumentListener(documentListener);
+        listenedDocument = document;
+        if (document != null)
+            document.addDocumentListener(documentListener);
     }
 
-    private void setModelChanged(boolean modelChanged)
+    private class Support
+        extends WorkingCopyReconcilerSupport
     {
-        this.modelChanged = modelChanged;
-    }
+        @Override
+        ITextViewer getTextViewer()
+        {
+            return WorkingCopyReconciler.this.getTextViewer();
+        }
 
-    private class ActivationListener
-        extends ShellAdapter
-    {
-        private final Control control;
+        @Override
+        boolean isRunningInReconcilerThread()
+        {
+            return WorkingCopyReconciler.this.isRunningInReconcilerThread();
+        }
 
-        ActivationListener(Control control)
+        @Override
+        boolean isAffectedBy(IElementChangeEvent event)
         {
-            if (control == null)
-                throw new IllegalArgumentException();
-            this.control = control;
+            return WorkingCopyReconciler.this.isAffectedBy(event);
         }
 
         @Override
-        public void shellActivated(ShellEvent e)
+        boolean isAffectedBy(IElementDelta[] deltas, ISourceFile workingCopy)
         {
-            if (!control.isDisposed() && control.isVisible())
-            {
-                setActive(true);
-            }
-        };
+            return WorkingCopyReconciler.this.isAffectedBy(deltas,
+                workingCopy);
+        }
 
         @Override
-        public void shellDeactivated(ShellEvent e)
+        boolean isAffectedBy(IElementDelta delta, ISourceFile workingCopy)
         {
-            if (!control.isDisposed() && control.getShell() == e.getSource())
-            {
-                setActive(false);
-            }
-        };
+            return WorkingCopyReconciler.this.isAffectedBy(delta,
+                workingCopy);
+        }
+
+        @Override
+        void elementChanged(IElementChangeEvent event)
+        {
+            WorkingCopyReconciler.this.elementChanged(event);
+        }
+
+        @Override
+        boolean isActive()
+        {
+            return WorkingCopyReconciler.this.isActive();
+        }
+
+        @Override
+        void setActive(boolean active)
+        {
+            WorkingCopyReconciler.this.setActive(active);
+        }
+
+        @Override
+        void forceReconciling()
+        {
+            WorkingCopyReconciler.this.forceReconciling();
+        }
     }
 }
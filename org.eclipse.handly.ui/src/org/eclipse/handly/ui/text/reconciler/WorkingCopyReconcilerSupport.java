@@ -0,0 +1,310 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.ui.text.reconciler;
+
+import static org.eclipse.handly.model.IElementDeltaConstants.F_CHILDREN;
+import static org.eclipse.handly.model.IElementDeltaConstants.F_MARKERS;
+import static org.eclipse.handly.model.IElementDeltaConstants.F_SYNC;
+import static org.eclipse.handly.model.IElementDeltaConstants.F_UNDERLYING_RESOURCE;
+import static org.eclipse.handly.model.IElementDeltaConstants.F_WORKING_COPY;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IMarkerDelta;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.handly.model.ElementDeltas;
+import org.eclipse.handly.model.IElement;
+import org.eclipse.handly.model.IElementChangeEvent;
+import org.eclipse.handly.model.IElementChangeListener;
+import org.eclipse.handly.model.IElementDelta;
+import org.eclipse.handly.model.ISourceFile;
+import org.eclipse.jface.text.ITextViewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.FocusEvent;
+import org.eclipse.swt.events.FocusListener;
+import org.eclipse.swt.events.ShellAdapter;
+import org.eclipse.swt.events.ShellEvent;
+import org.eclipse.swt.events.ShellListener;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.ui.PlatformUI;
+
+/**
+ * Implements the behavior shared by {@link WorkingCopyReconciler} and
+ * {@link JobWorkingCopyReconciler}: tracking the active state and priority
+ * of the reconciler, reacting to changes in the underlying model, and
+ * keeping the delay policy. The abstract methods are implemented by the
+ * reconciler, usually by delegating to its overridable methods; the
+ * <code>default*</code> methods provide the default implementations
+ * of those methods.
+ */
+abstract class WorkingCopyReconcilerSupport
+{
+    private volatile boolean active = true;
+    private volatile boolean modelChanged;
+    private volatile int priority = ReconcileScheduler.PRIORITY_BACKGROUND;
+    private volatile IReconcileDelayPolicy delayPolicy;
+    private final IElementChangeListener elementChangeListener =
+        new IElementChangeListener()
+        {
+            @Override
+            public void elementChanged(IElementChangeEvent event)
+            {
+                if (isRunningInReconcilerThread())
+                    return;
+
+                if (isAffectedBy(event))
+                    WorkingCopyReconcilerSupport.this.elementChanged(event);
+            }
+        };
+    private final FocusListener focusListener = new FocusListener()
+    {
+        @Override
+        public void focusGained(FocusEvent e)
+        {
+            updatePriority();
+        }
+
+        @Override
+        public void focusLost(FocusEvent e)
+        {
+            updatePriority();
+        }
+    };
+    private final Listener visibilityListener = e ->
+    {
+        // the event may be sent before the visibility changes
+        e.display.asyncExec(this::updatePriority);
+    };
+    private ShellListener activationListener;
+
+    abstract ITextViewer getTextViewer();
+
+    abstract boolean isRunningInReconcilerThread();
+
+    abstract boolean isAffectedBy(IElementChangeEvent event);
+
+    abstract boolean isAffectedBy(IElementDelta[] deltas,
+        ISourceFile workingCopy);
+
+    abstract boolean isAffectedBy(IElementDelta delta,
+        ISourceFile workingCopy);
+
+    abstract void elementChanged(IElementChangeEvent event);
+
+    abstract boolean isActive();
+
+    abstract void setActive(boolean active);
+
+    abstract void forceReconciling();
+
+    IElementChangeListener getElementChangeListener()
+    {
+        return elementChangeListener;
+    }
+
+    /*
+     * Starts tracking the activation, focus and visibility of the given
+     * control. The visibility of the control also depends on its ancestors,
+     * e.g. when the editor is brought to top in its part stack.
+     * Must be called in the UI thread.
+     */
+    void install(Control control)
+    {
+        activationListener = new ActivationListener(control);
+        control.getShell().addShellListener(activationListener);
+        control.addFocusListener(focusListener);
+        for (Control c = control; !(c instanceof Shell); c = c.getParent())
+        {
+            c.addListener(SWT.Show, visibilityListener);
+            c.addListener(SWT.Hide, visibilityListener);
+        }
+        updatePriority();
+    }
+
+    /*
+     * Must be called in the UI thread.
+     */
+    void uninstall(Control control)
+    {
+        if (!control.isDisposed())
+        {
+            control.getShell().removeShellListener(activationListener);
+            control.removeFocusListener(focusListener);
+            for (Control c = control; !(c instanceof Shell); c = c.getParent())
+            {
+                c.removeListener(SWT.Show, visibilityListener);
+                c.removeListener(SWT.Hide, visibilityListener);
+            }
+        }
+        activationListener = null;
+    }
+
+    int getPriority()
+    {
+        return priority;
+    }
+
+    IReconcileDelayPolicy getDelayPolicy()
+    {
+        return delayPolicy;
+    }
+
+    void setDelayPolicy(IReconcileDelayPolicy policy)
+    {
+        this.delayPolicy = policy;
+    }
+
+    /*
+     * Notifies the delay policy, if any, of a document change.
+     * Returns the new delay, or -1 if there is no delay policy.
+     */
+    int documentChanged()
+    {
+        IReconcileDelayPolicy policy = delayPolicy;
+        if (policy == null)
+            return -1;
+        policy.documentChanged();
+        return policy.getDelay();
+    }
+
+    /*
+     * Runs the given reconcile and notifies the delay policy, if any,
+     * of its duration unless the reconcile has been canceled.
+     */
+    void reconcile(Runnable reconcile, IProgressMonitor monitor)
+    {
+        long start = System.nanoTime();
+        reconcile.run();
+        IReconcileDelayPolicy policy = delayPolicy;
+        if (policy != null && !monitor.isCanceled())
+            policy.reconciled(TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+                - start));
+    }
+
+    boolean defaultIsAffectedBy(IElementDelta[] deltas,
+        ISourceFile workingCopy)
+    {
+        for (IElementDelta delta : deltas)
+        {
+            if (isAffectedBy(delta, workingCopy))
+                return true;
+        }
+        return false;
+    }
+
+    boolean defaultIsAffectedBy(IElementDelta delta, ISourceFile workingCopy)
+    {
+        long flags = ElementDeltas.getFlags(delta);
+        if (flags == F_SYNC || flags == F_WORKING_COPY)
+            return false;
+        IElement element = ElementDeltas.getElement(delta);
+        if (flags == F_UNDERLYING_RESOURCE && element.equals(workingCopy))
+            return false; // saving this reconciler's working copy
+        if (flags == F_MARKERS)
+        {
+            if (element.equals(workingCopy))
+            {
+                for (IMarkerDelta markerDelta : ElementDeltas.getMarkerDeltas(
+                    delta))
+                {
+                    if (markerDelta.isSubtypeOf(IMarker.PROBLEM))
+                        return true;
+                }
+            }
+            return false;
+        }
+        if (flags != F_CHILDREN)
+            return true;
+        for (IElementDelta child : ElementDeltas.getAffectedChildren(delta))
+        {
+            if (isAffectedBy(child, workingCopy))
+                return true;
+        }
+        return false;
+    }
+
+    void defaultElementChanged()
+    {
+        // run on the UI thread to synchronize with #setActive
+        PlatformUI.getWorkbench().getDisplay().asyncExec(() ->
+        {
+            updatePriority();
+            modelChanged = true;
+            if (isActive())
+                forceReconciling();
+        });
+    }
+
+    boolean defaultIsActive()
+    {
+        return active;
+    }
+
+    void defaultSetActive(boolean active)
+    {
+        this.active = active;
+        if (Display.getCurrent() == null)
+            throw new AssertionError(
+                "This method may only be executed by the user-interface thread"); //$NON-NLS-1$
+        updatePriority();
+        if (!active)
+            modelChanged = false;
+        else if (modelChanged)
+            forceReconciling();
+    }
+
+    /*
+     * Must be called in the UI thread.
+     */
+    private void updatePriority()
+    {
+        ITextViewer viewer = getTextViewer();
+        priority = ReconcileScheduler.getPriority(viewer == null ? null
+            : viewer.getTextWidget(), isActive());
+    }
+
+    private class ActivationListener
+        extends ShellAdapter
+    {
+        private final Control control;
+
+        ActivationListener(Control control)
+        {
+            if (control == null)
+                throw new IllegalArgumentException();
+            this.control = control;
+        }
+
+        @Override
+        public void shellActivated(ShellEvent e)
+        {
+            if (!control.isDisposed() && control.isVisible())
+            {
+                setActive(true);
+            }
+        }
+
+        @Override
+        public void shellDeactivated(ShellEvent e)
+        {
+            if (!control.isDisposed() && control.getShell() == e.getSource())
+            {
+                setActive(false);
+            }
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014, 2019 1C-Soft LLC and others.
+ * Copyright (c) 2014, 2020 1C-Soft LLC and others.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -255,7 +255,8 @@ public class HandlyXtextDocument
 
     private NonExpiringSnapshot getNonExpiringSnapshot()
     {
-        return new NonExpiringSnapshot(this::getSnapshot);
+        // take the snapshot and its contents atomically, if possible
+        return new NonExpiringSnapshot(this::getSnapshot, getLockObject());
     }
 
     /*
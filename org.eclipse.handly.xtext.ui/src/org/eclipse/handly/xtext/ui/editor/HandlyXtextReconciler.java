@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2019 itemis AG (http://www.itemis.eu) and others.
+ * Copyright (c) 2008, 2020 itemis AG (http://www.itemis.eu) and others.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -15,7 +15,9 @@ package org.eclipse.handly.xtext.ui.editor;
 import static org.eclipse.xtext.ui.editor.XtextSourceViewerConfiguration.XTEXT_TEMPLATE_POS_CATEGORY;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -23,6 +25,9 @@ import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.handly.internal.xtext.ui.Activator;
+import org.eclipse.handly.ui.text.reconciler.AdaptiveReconcileDelayPolicy;
+import org.eclipse.handly.ui.text.reconciler.IReconcileDelayPolicy;
+import org.eclipse.handly.ui.text.reconciler.ReconcileScheduler;
 import org.eclipse.jface.text.BadPositionCategoryException;
 import org.eclipse.jface.text.DefaultPositionUpdater;
 import org.eclipse.jface.text.DocumentEvent;
@@ -37,6 +42,13 @@ import org.eclipse.jface.text.reconciler.IReconciler;
 import org.eclipse.jface.text.reconciler.IReconcilingStrategy;
 import org.eclipse.jface.text.source.ContentAssistantFacade;
 import org.eclipse.jface.text.source.ISourceViewerExtension4;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.StyledText;
+import org.eclipse.swt.events.FocusEvent;
+import org.eclipse.swt.events.FocusListener;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.Shell;
 import org.eclipse.xtext.ui.editor.IXtextEditorCallback;
 import org.eclipse.xtext.ui.editor.XtextEditor;
 import org.eclipse.xtext.ui.editor.model.IXtextDocumentContentObserver;
@@ -111,6 +123,28 @@ public class HandlyXtextReconciler
         delegate.setDelay(delay);
     }
 
+    /**
+     * Sets the policy that determines how long this reconciler waits after
+     * a document change before reconciling. The policy is notified of each
+     * change to the reconciler's document and of the duration of each
+     * reconcile. By default, the reconciler has no delay policy and uses
+     * the fixed delay set with {@link #setDelay(int)}; an {@link
+     * AdaptiveReconcileDelayPolicy} may be set to adapt the delay to the cost
+     * of reconciling and to the typing cadence.
+     * <p>
+     * If <code>null</code> is given, the reconciler uses the fixed delay.
+     * A subsequent call to {@link #setDelay(int)} also clears the policy.
+     * </p>
+     *
+     * @param policy a delay policy that is not shared with other
+     *  reconcilers, or <code>null</code>
+     * @since 1.5
+     */
+    public void setDelayPolicy(IReconcileDelayPolicy policy)
+    {
+        delegate.setDelayPolicy(policy);
+    }
+
     @Override
     public void forceReconcile()
     {
@@ -139,7 +173,31 @@ public class HandlyXtextReconciler
             new TextInputListener();
         private final DocumentListener documentListener =
             new DocumentListener();
+        private final FocusListener focusListener = new FocusListener()
+        {
+            @Override
+            public void focusGained(FocusEvent e)
+            {
+                updatePriority();
+            }
+
+            @Override
+            public void focusLost(FocusEvent e)
+            {
+                updatePriority();
+            }
+        };
+        private final Listener visibilityListener = e ->
+        {
+            // the event may be sent before the visibility changes
+            e.display.asyncExec(this::updatePriority);
+        };
+        private volatile int priority =
+            ReconcileScheduler.PRIORITY_BACKGROUND;
+        private final AtomicReference<ReconcileScheduler.Ticket> ticket =
+            new AtomicReference<>();
         private int delay = 500;
+        private volatile IReconcileDelayPolicy delayPolicy;
 
         public InternalReconciler(Injector injector)
         {
@@ -152,6 +210,20 @@ public class HandlyXtextReconciler
         public void setDelay(int delay)
         {
             this.delay = delay;
+            this.delayPolicy = null;
+        }
+
+        public void setDelayPolicy(IReconcileDelayPolicy policy)
+        {
+            this.delayPolicy = policy;
+        }
+
+        private int getDelay()
+        {
+            IReconcileDelayPolicy policy = delayPolicy;
+            if (policy == null)
+                return delay;
+            return policy.getDelay();
         }
 
         public void forceReconcile()
@@ -161,9 +233,9 @@ public class HandlyXtextReconciler
             if (initialForce.compareAndSet(true, false)
                 && isHandlyXtextEditorCallbackInstalled())
                 return; // ignore call from XtextEditor#createPartControl; see bug 507162 for details
-            cancel();
+            cancelJob();
             forced.set(true);
-            schedule(delay);
+            schedule(getDelay());
         }
 
         @Override
@@ -190,6 +262,19 @@ public class HandlyXtextReconciler
                     else
                         facade.addCompletionListener(documentListener);
                 }
+                StyledText textWidget = viewer.getTextWidget();
+                if (textWidget != null)
+                {
+                    textWidget.addFocusListener(focusListener);
+                    // the widget is also hidden when one of its ancestors is
+                    for (Control c = textWidget; !(c instanceof Shell);
+                        c = c.getParent())
+                    {
+                        c.addListener(SWT.Show, visibilityListener);
+                        c.addListener(SWT.Hide, visibilityListener);
+                    }
+                }
+                updatePriority();
                 isInstalled = true;
             }
         }
@@ -212,7 +297,18 @@ public class HandlyXtextReconciler
                         ((ISourceViewerExtension4)viewer).getContentAssistantFacade();
                     facade.removeCompletionListener(documentListener);
                 }
-                cancel();
+                StyledText textWidget = viewer.getTextWidget();
+                if (textWidget != null && !textWidget.isDisposed())
+                {
+                    textWidget.removeFocusListener(focusListener);
+                    for (Control c = textWidget; !(c instanceof Shell);
+                        c = c.getParent())
+                    {
+                        c.removeListener(SWT.Show, visibilityListener);
+                        c.removeListener(SWT.Hide, visibilityListener);
+                    }
+                }
+                cancelJob();
                 isInstalled = false;
             }
         }
@@ -233,7 +329,10 @@ public class HandlyXtextReconciler
         protected IStatus run(final IProgressMonitor monitor)
         {
             if (monitor.isCanceled() || paused)
+            {
+                releaseTicket();
                 return Status.CANCEL_STATUS;
+            }
 
             IDocument document = viewer.getDocument();
             if (document instanceof HandlyXtextDocument)
@@ -242,9 +341,21 @@ public class HandlyXtextReconciler
                 final boolean forced = this.forced.compareAndSet(true, false);
                 if (forced || doc.needsReconciling())
                 {
+                    // limit concurrent reconciles across all editors
+                    if (!acquireTicket(doc, monitor))
+                    {
+                        if (forced)
+                            this.forced.set(true);
+                        return Status.OK_STATUS; // rescheduled when let through
+                    }
                     try
                     {
+                        long start = System.nanoTime();
                         doc.reconcile(forced, monitor);
+                        IReconcileDelayPolicy policy = delayPolicy;
+                        if (policy != null && !monitor.isCanceled())
+                            policy.reconciled(TimeUnit.NANOSECONDS.toMillis(
+                                System.nanoTime() - start));
                     }
                     catch (OperationCanceledException e)
                     {
@@ -256,15 +367,65 @@ public class HandlyXtextReconciler
                     {
                         // document has no resource -- nothing to do
                     }
+                    finally
+                    {
+                        releaseTicket();
+                    }
                 }
             }
+            releaseTicket(); // in case the reconcile is no longer needed
             return Status.OK_STATUS;
         }
 
         private void handleDocumentChanged(DocumentEvent event)
         {
-            cancel();
-            schedule(delay);
+            IReconcileDelayPolicy policy = delayPolicy;
+            if (policy != null)
+                policy.documentChanged();
+            cancelJob();
+            schedule(getDelay());
+        }
+
+        private void cancelJob()
+        {
+            // don't hold up other reconciles while the job is not running
+            if (cancel())
+                releaseTicket();
+        }
+
+        /*
+         * Returns whether the reconcile scheduler has let the reconcile
+         * through. Otherwise, the job will be scheduled again when it does.
+         */
+        private boolean acquireTicket(HandlyXtextDocument doc,
+            IProgressMonitor monitor)
+        {
+            ReconcileScheduler.Ticket current = ticket.get();
+            if (current != null && current.isGranted())
+                return true;
+            ReconcileScheduler.Ticket newTicket =
+                ReconcileScheduler.getDefault().submit(doc, () -> priority,
+                    monitor, () -> schedule());
+            ReconcileScheduler.Ticket oldTicket = ticket.getAndSet(newTicket);
+            if (oldTicket != null)
+                oldTicket.release();
+            return newTicket.isGranted();
+        }
+
+        private void releaseTicket()
+        {
+            ReconcileScheduler.Ticket current = ticket.getAndSet(null);
+            if (current != null)
+                current.release();
+        }
+
+        /*
+         * Must be called in the UI thread.
+         */
+        private void updatePriority()
+        {
+            priority = ReconcileScheduler.getPriority(viewer.getTextWidget(),
+                false);
         }
 
         private void pause()
@@ -275,7 +436,7 @@ public class HandlyXtextReconciler
         private void resume()
         {
             paused = false;
-            schedule(delay);
+            schedule(getDelay());
         }
 
         private boolean isHandlyXtextEditorCallbackInstalled()
@@ -401,7 +562,7 @@ public class HandlyXtextReconciler
                 {
                     ((HandlyXtextDocument)oldInput).removeXtextDocumentContentObserver(
                         documentListener);
-                    cancel();
+                    cancelJob();
                 }
             }
 
@@ -413,7 +574,7 @@ public class HandlyXtextReconciler
                 {
                     ((HandlyXtextDocument)newInput).addXtextDocumentContentObserver(
                         documentListener);
-                    schedule(delay);
+                    schedule(getDelay());
                 }
 
                 if (shouldInstallCompletionListener)
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014, 2018 1C-Soft LLC and others.
+ * Copyright (c) 2014, 2020 1C-Soft LLC and others.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -15,6 +15,7 @@ package org.eclipse.handly.xtext.ui.editor;
 import static org.eclipse.handly.model.Elements.FORCE_RECONCILING;
 import static org.eclipse.handly.model.impl.IReconcileStrategy.RECONCILING_FORCED;
 import static org.eclipse.handly.model.impl.IReconcileStrategy.SOURCE_AST;
+import static org.eclipse.handly.model.impl.IReconcileStrategy.SOURCE_CHARS;
 import static org.eclipse.handly.model.impl.IReconcileStrategy.SOURCE_CONTENTS;
 import static org.eclipse.handly.model.impl.IReconcileStrategy.SOURCE_SNAPSHOT;
 
@@ -48,6 +49,7 @@ public class XtextWorkingCopyCallback
                 Context context = new Context();
                 context.bind(SOURCE_AST).to(resource);
                 context.bind(SOURCE_CONTENTS).to(snapshot.getContents());
+                context.bind(SOURCE_CHARS).to(snapshot.getCharSequence());
                 context.bind(SOURCE_SNAPSHOT).to(snapshot.getWrappedSnapshot());
                 context.bind(RECONCILING_FORCED).to(forced);
                 getWorkingCopyInfo().getReconcileStrategy().reconcile(context,
@@ -0,0 +1,357 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.buffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.handly.internal.Activator;
+import org.eclipse.handly.internal.WorkerThreads;
+import org.eclipse.handly.snapshot.ISnapshot;
+import org.eclipse.handly.snapshot.StaleSnapshotException;
+import org.eclipse.jface.text.IDocument;
+
+/**
+ * A batch of changes to a number of buffers that are applied together,
+ * e.g. the changes produced by a refactoring across many files.
+ * <p>
+ * When the batch is executed, the base snapshots of the changes are first
+ * validated in parallel. If any of them is stale, no change is applied.
+ * Then, the changes are applied to their buffers concurrently, which
+ * includes saving the buffers as requested by the changes. Changes to
+ * buffers that share the same underlying document are applied sequentially,
+ * in the order they were added to the batch; only the first of them may
+ * have a base snapshot, since the base of a subsequent change could only
+ * be validated after the preceding changes have been applied. If some of
+ * the changes could not be applied, the changes that have been applied are
+ * undone, if possible. Execution of the batch returns an undo batch, which
+ * undoes all of the changes when executed.
+ * </p>
+ * <p>
+ * The batch does not take ownership of the buffers: it is the client
+ * responsibility to keep the buffers open while the batch or its undo batch
+ * is in use.
+ * </p>
+ * <p>
+ * An instance of this class is not safe for use by multiple threads.
+ * </p>
+ *
+ * @since 1.5
+ */
+public final class BufferChangeBatch
+{
+    private final List<Entry> entries = new ArrayList<>();
+    private final Set<IDocument> documents = Collections.newSetFromMap(
+        new IdentityHashMap<>());
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Adds a change to the given buffer to this batch.
+     *
+     * @param buffer not <code>null</code>
+     * @param change not <code>null</code>
+     * @throws IllegalArgumentException if the change has a {@link
+     *  IBufferChange#getBase() base snapshot} and this batch already contains
+     *  a change to a buffer that shares the same underlying document
+     */
+    public void add(IBuffer buffer, IBufferChange change)
+    {
+        if (buffer == null)
+            throw new IllegalArgumentException();
+        if (change == null)
+            throw new IllegalArgumentException();
+        if (change.getBase() != null && documents.contains(
+            buffer.getDocument()))
+            throw new IllegalArgumentException(
+                "Only the first change to a document may have a base snapshot"); //$NON-NLS-1$
+        addEntry(new Entry(buffer, change));
+    }
+
+    /**
+     * Returns the number of changes in this batch.
+     *
+     * @return the number of changes
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Returns the maximum number of buffers the changes are applied to
+     * concurrently.
+     *
+     * @return the parallelism level
+     */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * Sets the maximum number of buffers the changes are applied to
+     * concurrently. A value of 1 means that the changes are applied
+     * sequentially in the calling thread.
+     *
+     * @param parallelism a positive number
+     */
+    public void setParallelism(int parallelism)
+    {
+        if (parallelism < 1)
+            throw new IllegalArgumentException();
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Applies the changes in this batch to their buffers.
+     * <p>
+     * If some of the buffers require changes to be applied in the UI thread
+     * and this method is called in the UI thread, the changes are applied
+     * sequentially.
+     * </p>
+     *
+     * @param monitor a progress monitor, or <code>null</code>
+     *  if progress reporting is not desired. The caller must not rely on
+     *  {@link IProgressMonitor#done()} having been called by the receiver
+     * @return the undo batch (never <code>null</code>). The undo batch
+     *  contains the undo changes returned by the buffers, in reverse order
+     * @throws StaleSnapshotException if the contents of a buffer has changed
+     *  since the inception of the snapshot on which the corresponding change
+     *  is based. No change has been applied in this case. Since only the first
+     *  change to each document may have a base snapshot, all base snapshots
+     *  are validated before any change is applied
+     * @throws CoreException if some of the changes could not be applied.
+     *  The changes that have been applied are undone, if possible
+     * @throws OperationCanceledException if this method is canceled
+     *  before any change has been applied
+     */
+    public BufferChangeBatch execute(IProgressMonitor monitor)
+        throws CoreException
+    {
+        List<List<Entry>> groups = groupByDocument();
+        SubMonitor subMonitor = SubMonitor.convert(monitor, 2
+            * groups.size());
+
+        int threadCount = WorkerThreads.getThreadCount(Math.min(parallelism,
+            groups.size()));
+        ExecutorService executor = null;
+        if (threadCount > 1)
+            executor = Executors.newFixedThreadPool(threadCount,
+                WorkerThreads.newThreadFactory("Handly Buffer Change Batch")); //$NON-NLS-1$
+        try
+        {
+            // validate; the subsequent entries in a group either have no base
+            // (see add) or are undo entries, whose bases are the results
+            // of applying the preceding entries
+            List<CompletableFuture<Boolean>> validations = new ArrayList<>(
+                groups.size());
+            for (List<Entry> group : groups)
+            {
+                Entry first = group.get(0);
+                validations.add(supply(first::isValid, executor));
+            }
+            boolean valid = true;
+            for (CompletableFuture<Boolean> validation : validations)
+            {
+                try
+                {
+                    valid &= validation.join();
+                }
+                catch (CompletionException e)
+                {
+                    throw new CoreException(toStatus(e.getCause()));
+                }
+                subMonitor.split(1);
+            }
+            if (!valid)
+                throw new StaleSnapshotException();
+
+            // apply
+            List<CompletableFuture<List<Entry>>> applications =
+                new ArrayList<>(groups.size());
+            for (List<Entry> group : groups)
+                applications.add(supply(() -> apply(group), executor));
+            List<List<Entry>> undoGroups = new ArrayList<>(groups.size());
+            MultiStatus status = new MultiStatus(Activator.PLUGIN_ID, 0,
+                Messages.BufferChangeBatch_Problems_applying_changes, null);
+            for (CompletableFuture<List<Entry>> application : applications)
+            {
+                try
+                {
+                    undoGroups.add(application.join());
+                }
+                catch (CompletionException e)
+                {
+                    status.add(toStatus(e.getCause()));
+                    if (e.getCause() instanceof PartialFailure)
+                        undoGroups.add(
+                            ((PartialFailure)e.getCause()).undoEntries);
+                }
+                subMonitor.worked(1);
+            }
+
+            BufferChangeBatch result = new BufferChangeBatch();
+            result.parallelism = parallelism;
+            for (int i = undoGroups.size() - 1; i >= 0; i--)
+            {
+                for (Entry entry : undoGroups.get(i))
+                    result.addEntry(entry);
+            }
+            if (!status.isOK())
+            {
+                try
+                {
+                    result.execute(null); // roll back
+                }
+                catch (CoreException | RuntimeException e)
+                {
+                    status.add(toStatus(e));
+                }
+                throw new CoreException(status);
+            }
+            return result;
+        }
+        finally
+        {
+            if (executor != null)
+                executor.shutdownNow();
+        }
+    }
+
+    private void addEntry(Entry entry)
+    {
+        entries.add(entry);
+        documents.add(entry.buffer.getDocument());
+    }
+
+    private List<List<Entry>> groupByDocument()
+    {
+        Map<IDocument, List<Entry>> groups = new IdentityHashMap<>();
+        List<List<Entry>> result = new ArrayList<>();
+        for (Entry entry : entries)
+        {
+            List<Entry> group = groups.computeIfAbsent(
+                entry.buffer.getDocument(), k ->
+                {
+                    List<Entry> list = new ArrayList<>();
+                    result.add(list);
+                    return list;
+                });
+            group.add(entry);
+        }
+        return result;
+    }
+
+    /*
+     * Returns the undo entries for the given group in reverse order.
+     */
+    private static List<Entry> apply(List<Entry> group)
+    {
+        List<Entry> undoEntries = new ArrayList<>(group.size());
+        for (Entry entry : group)
+        {
+            IBufferChange undoChange;
+            try
+            {
+                undoChange = entry.buffer.applyChange(entry.change, null);
+            }
+            catch (CoreException | RuntimeException e)
+            {
+                throw new CompletionException(new PartialFailure(e,
+                    undoEntries));
+            }
+            if (undoChange != null)
+                undoEntries.add(0, new Entry(entry.buffer, undoChange));
+        }
+        return undoEntries;
+    }
+
+    private static <T> CompletableFuture<T> supply(
+        Supplier<T> supplier, ExecutorService executor)
+    {
+        if (executor == null)
+        {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            try
+            {
+                future.complete(supplier.get());
+            }
+            catch (CompletionException e)
+            {
+                future.completeExceptionally(e.getCause());
+            }
+            catch (RuntimeException e)
+            {
+                future.completeExceptionally(e);
+            }
+            return future;
+        }
+        return CompletableFuture.supplyAsync(supplier, executor);
+    }
+
+    private static IStatus toStatus(Throwable e)
+    {
+        if (e instanceof PartialFailure)
+            e = e.getCause();
+        if (e instanceof CoreException)
+            return ((CoreException)e).getStatus();
+        return Activator.createErrorStatus(e.getMessage(), e);
+    }
+
+    private static class Entry
+    {
+        final IBuffer buffer;
+        final IBufferChange change;
+
+        Entry(IBuffer buffer, IBufferChange change)
+        {
+            this.buffer = buffer;
+            this.change = change;
+        }
+
+        boolean isValid()
+        {
+            ISnapshot base = change.getBase();
+            return base == null || base.isEqualTo(buffer.getSnapshot());
+        }
+    }
+
+    private static class PartialFailure
+        extends Exception
+    {
+        private static final long serialVersionUID = 1L;
+
+        final transient List<Entry> undoEntries;
+
+        PartialFailure(Throwable cause, List<Entry> undoEntries)
+        {
+            super(cause);
+            this.undoEntries = undoEntries;
+        }
+    }
+}
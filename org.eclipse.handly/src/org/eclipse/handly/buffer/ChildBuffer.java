@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2015, 2018 1C-Soft LLC.
+ * Copyright (c) 2015, 2020 1C-Soft LLC.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -19,7 +19,6 @@ import org.eclipse.handly.internal.Activator;
 import org.eclipse.handly.snapshot.ISnapshot;
 import org.eclipse.handly.snapshot.NonExpiringSnapshot;
 import org.eclipse.handly.snapshot.StaleSnapshotException;
-import org.eclipse.text.edits.ReplaceEdit;
 
 /**
  * A child buffer is created on top of a parent {@link IBuffer} and inherits
@@ -57,7 +56,7 @@ public final class ChildBuffer
     {
         if ((this.parent = parent) == null)
             throw new IllegalArgumentException();
-        NonExpiringSnapshot snapshot = new NonExpiringSnapshot(parent);
+        NonExpiringSnapshot snapshot = parent.getNonExpiringSnapshot();
         initWithContents(snapshot.getContents());
         base = snapshot.getWrappedSnapshot();
         parent.addRef(); // should always be the last statement in the constructor
@@ -84,8 +83,10 @@ public final class ChildBuffer
             String baseContents = base.getContents();
             if (baseContents == null)
                 throw new StaleSnapshotException();
-            BufferChange change = new BufferChange(new ReplaceEdit(0,
-                baseContents.length(), getDocument().get()));
+            // propagate only the actual changes rather than replacing
+            // the whole contents of the parent buffer
+            BufferChange change = new BufferChange(TextDiff.computeEdit(
+                baseContents, getDocument().get()));
             change.setBase(base);
             IBufferChange undoChange = parent.applyChange(change, monitor);
             base = undoChange.getBase();
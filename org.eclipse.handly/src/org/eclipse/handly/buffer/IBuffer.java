@@ -21,6 +21,7 @@ import org.eclipse.handly.snapshot.NonExpiringSnapshot;
 import org.eclipse.handly.snapshot.StaleSnapshotException;
 import org.eclipse.handly.util.IReferenceCountable;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.ISynchronizable;
 import org.eclipse.jface.text.source.IAnnotationModel;
 
 /**
@@ -51,11 +52,10 @@ public interface IBuffer
      * Returns the current snapshot of this buffer.
      * The returned snapshot may immediately become stale or expire.
      * <p>
-     * Note that it is possible to obtain a {@link
-     * NonExpiringSnapshot#NonExpiringSnapshot(ISnapshotProvider) non-expiring}
-     * snapshot from the buffer, although protractedly holding on non-expiring
-     * snapshots is not recommended as they may potentially consume large amount
-     * of space.
+     * Note that it is possible to obtain a {@link #getNonExpiringSnapshot()
+     * non-expiring} snapshot from the buffer, although protractedly holding
+     * on non-expiring snapshots is not recommended as they may potentially
+     * consume large amount of space.
      * </p>
      *
      * @return the buffer's current snapshot (never <code>null</code>)
@@ -63,6 +63,26 @@ public interface IBuffer
     @Override
     ISnapshot getSnapshot();
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation takes the snapshot and its contents while holding
+     * the {@link ISynchronizable#getLockObject() lock object} of the buffer's
+     * document, if any.
+     * </p>
+     *
+     * @since 1.5
+     */
+    @Override
+    default NonExpiringSnapshot getNonExpiringSnapshot()
+    {
+        IDocument document = getDocument();
+        Object lock = null;
+        if (document instanceof ISynchronizable)
+            lock = ((ISynchronizable)document).getLockObject();
+        return new NonExpiringSnapshot(this, lock);
+    }
+
     /**
      * Applies the given change to this buffer.
      * <p>
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2016 1C-Soft LLC.
+ * Copyright (c) 2016, 2020 1C-Soft LLC.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -20,6 +20,7 @@ class Messages
     private static final String BUNDLE_NAME =
         "org.eclipse.handly.buffer.messages"; //$NON-NLS-1$
 
+    public static String BufferChangeBatch_Problems_applying_changes;
     public static String ChildBuffer_Parent_has_been_modified_and_may_not_be_overwritten;
 
     static
@@ -0,0 +1,320 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.buffer;
+
+/**
+ * An immutable sequence of characters represented as a height-balanced
+ * binary tree of string chunks. Replacing a range of characters creates
+ * a new rope in O(log n) time, sharing all of the unaffected chunks with
+ * the original rope.
+ */
+abstract class Rope
+    implements CharSequence
+{
+    static final Rope EMPTY = new Leaf(""); //$NON-NLS-1$
+
+    static final int MAX_LEAF_LENGTH = 1024;
+
+    /**
+     * Returns a rope with the given contents.
+     *
+     * @param text not <code>null</code>
+     * @return a rope (never <code>null</code>)
+     */
+    static Rope of(String text)
+    {
+        if (text.isEmpty())
+            return EMPTY;
+        return build(text, 0, text.length());
+    }
+
+    /**
+     * Returns the height of this rope's tree. The height of a leaf is 0.
+     *
+     * @return the height of the tree
+     */
+    abstract int height();
+
+    /**
+     * Copies the characters in the given range of this rope into the given
+     * array.
+     *
+     * @param start the start index, inclusive
+     * @param end the end index, exclusive
+     * @param dst the destination array
+     * @param dstBegin the start index in the destination array
+     */
+    abstract void getChars(int start, int end, char[] dst, int dstBegin);
+
+    /**
+     * Returns a rope whose contents is the result of replacing the given
+     * range of this rope's contents with the given text. This rope is not
+     * modified.
+     *
+     * @param offset the start of the range
+     * @param length the length of the range
+     * @param text the replacement text (not <code>null</code>)
+     * @return the resulting rope (never <code>null</code>)
+     * @throws IndexOutOfBoundsException if the range is invalid
+     */
+    Rope replace(int offset, int length, String text)
+    {
+        int end = offset + length;
+        if (offset < 0 || length < 0 || end > length())
+            throw new IndexOutOfBoundsException();
+        if (length == 0 && text.isEmpty())
+            return this;
+        return concat(concat(head(offset), of(text)), tail(end));
+    }
+
+    /**
+     * Returns a rope that contains the first <code>end</code> characters
+     * of this rope.
+     *
+     * @param end the end index, exclusive
+     * @return the resulting rope (never <code>null</code>)
+     */
+    abstract Rope head(int end);
+
+    /**
+     * Returns a rope that contains the characters of this rope starting at
+     * the given index.
+     *
+     * @param start the start index, inclusive
+     * @return the resulting rope (never <code>null</code>)
+     */
+    abstract Rope tail(int start);
+
+    @Override
+    public CharSequence subSequence(int start, int end)
+    {
+        return substring(start, end);
+    }
+
+    /**
+     * Returns the characters in the given range of this rope as a string.
+     *
+     * @param start the start index, inclusive
+     * @param end the end index, exclusive
+     * @return the characters in the range (never <code>null</code>)
+     * @throws IndexOutOfBoundsException if the range is invalid
+     */
+    String substring(int start, int end)
+    {
+        if (start < 0 || start > end || end > length())
+            throw new IndexOutOfBoundsException();
+        char[] chars = new char[end - start];
+        getChars(start, end, chars, 0);
+        return new String(chars);
+    }
+
+    @Override
+    public String toString()
+    {
+        return substring(0, length());
+    }
+
+    static Rope concat(Rope left, Rope right)
+    {
+        if (left.length() == 0)
+            return right;
+        if (right.length() == 0)
+            return left;
+        if (left instanceof Leaf && right instanceof Leaf && left.length()
+            + right.length() <= MAX_LEAF_LENGTH)
+        {
+            return new Leaf(((Leaf)left).text + ((Leaf)right).text);
+        }
+        int leftHeight = left.height(), rightHeight = right.height();
+        if (leftHeight > rightHeight + 1)
+        {
+            Node node = (Node)left;
+            return balance(node.left, concat(node.right, right));
+        }
+        if (rightHeight > leftHeight + 1)
+        {
+            Node node = (Node)right;
+            return balance(concat(left, node.left), node.right);
+        }
+        return new Node(left, right);
+    }
+
+    private static Rope balance(Rope left, Rope right)
+    {
+        // the heights of the given ropes differ by at most 2
+        if (left.height() > right.height() + 1)
+        {
+            Node node = (Node)left;
+            if (node.left.height() >= node.right.height())
+                return new Node(node.left, new Node(node.right, right));
+            Node inner = (Node)node.right;
+            return new Node(new Node(node.left, inner.left), new Node(
+                inner.right, right));
+        }
+        if (right.height() > left.height() + 1)
+        {
+            Node node = (Node)right;
+            if (node.right.height() >= node.left.height())
+                return new Node(new Node(left, node.left), node.right);
+            Node inner = (Node)node.left;
+            return new Node(new Node(left, inner.left), new Node(inner.right,
+                node.right));
+        }
+        return new Node(left, right);
+    }
+
+    private static Rope build(String text, int start, int end)
+    {
+        if (end - start <= MAX_LEAF_LENGTH)
+            return new Leaf(text.substring(start, end));
+        int middle = (start + end) >>> 1;
+        return new Node(build(text, start, middle), build(text, middle, end));
+    }
+
+    private static final class Leaf
+        extends Rope
+    {
+        final String text;
+
+        Leaf(String text)
+        {
+            this.text = text;
+        }
+
+        @Override
+        public int length()
+        {
+            return text.length();
+        }
+
+        @Override
+        public char charAt(int index)
+        {
+            return text.charAt(index);
+        }
+
+        @Override
+        int height()
+        {
+            return 0;
+        }
+
+        @Override
+        void getChars(int start, int end, char[] dst, int dstBegin)
+        {
+            text.getChars(start, end, dst, dstBegin);
+        }
+
+        @Override
+        Rope head(int end)
+        {
+            if (end == text.length())
+                return this;
+            return end == 0 ? EMPTY : new Leaf(text.substring(0, end));
+        }
+
+        @Override
+        Rope tail(int start)
+        {
+            if (start == 0)
+                return this;
+            return start == text.length() ? EMPTY : new Leaf(text.substring(
+                start));
+        }
+    }
+
+    private static final class Node
+        extends Rope
+    {
+        final Rope left, right;
+        private final int length, height;
+
+        Node(Rope left, Rope right)
+        {
+            this.left = left;
+            this.right = right;
+            this.length = left.length() + right.length();
+            this.height = Math.max(left.height(), right.height()) + 1;
+        }
+
+        @Override
+        public int length()
+        {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index)
+        {
+            Rope rope = this;
+            while (rope instanceof Node)
+            {
+                Node node = (Node)rope;
+                int leftLength = node.left.length();
+                if (index < leftLength)
+                    rope = node.left;
+                else
+                {
+                    rope = node.right;
+                    index -= leftLength;
+                }
+            }
+            return rope.charAt(index);
+        }
+
+        @Override
+        int height()
+        {
+            return height;
+        }
+
+        @Override
+        void getChars(int start, int end, char[] dst, int dstBegin)
+        {
+            int leftLength = left.length();
+            if (start < leftLength)
+            {
+                int leftEnd = Math.min(end, leftLength);
+                left.getChars(start, leftEnd, dst, dstBegin);
+                dstBegin += leftEnd - start;
+            }
+            if (end > leftLength)
+            {
+                right.getChars(Math.max(start - leftLength, 0), end
+                    - leftLength, dst, dstBegin);
+            }
+        }
+
+        @Override
+        Rope head(int end)
+        {
+            if (end == length)
+                return this;
+            int leftLength = left.length();
+            if (end <= leftLength)
+                return left.head(end);
+            return concat(left, right.head(end - leftLength));
+        }
+
+        @Override
+        Rope tail(int start)
+        {
+            if (start == 0)
+                return this;
+            int leftLength = left.length();
+            if (start >= leftLength)
+                return right.tail(start - leftLength);
+            return concat(left.tail(start), right);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.buffer;
+
+import org.eclipse.handly.snapshot.ISnapshot;
+import org.eclipse.handly.snapshot.NonExpiringSnapshot;
+import org.eclipse.handly.snapshot.Snapshot;
+import org.eclipse.jface.text.AbstractDocument;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.BadPositionCategoryException;
+import org.eclipse.jface.text.DefaultLineTracker;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.ISynchronizable;
+import org.eclipse.jface.text.ITextStore;
+import org.eclipse.jface.text.Position;
+
+/**
+ * A {@link Buffer} whose document is backed by a persistent rope, i.e.
+ * an immutable balanced tree of text chunks. Each modification of the
+ * document creates a new rope that shares the unaffected chunks with
+ * the previous one, in O(log n) time.
+ * <p>
+ * As a consequence, taking a snapshot of the buffer is an O(1) operation,
+ * and the snapshots of this buffer never expire: the contents of a snapshot
+ * remain available after subsequent modifications of the buffer. This makes
+ * the buffer well suited for large documents that are reconciled often.
+ * Note that {@link ISnapshot#getContents()} creates a string copy of the
+ * contents each time it is called, while {@link ISnapshot#getCharSequence()}
+ * returns the contents without copying.
+ * </p>
+ * <p>
+ * An instance of this class is safe for use by multiple threads. Clients can
+ * use this class as it stands or subclass it as circumstances warrant.
+ * </p>
+ *
+ * @since 1.5
+ */
+public class RopeBuffer
+    extends Buffer
+{
+    /**
+     * Creates a new buffer instance that is initially empty.
+     * <p>
+     * It is the client responsibility to {@link IBuffer#release() release}
+     * the created buffer after it is no longer needed.
+     * </p>
+     */
+    public RopeBuffer()
+    {
+        super();
+    }
+
+    /**
+     * Creates a new buffer instance and initializes it with the given contents.
+     * <p>
+     * It is the client responsibility to {@link IBuffer#release() release}
+     * the created buffer after it is no longer needed.
+     * </p>
+     *
+     * @param contents initial contents
+     */
+    public RopeBuffer(String contents)
+    {
+        super(contents);
+    }
+
+    @Override
+    public ISnapshot getSnapshot()
+    {
+        return new RopeSnapshot(((RopeDocument)getDocument()).store.rope);
+    }
+
+    @Override
+    public NonExpiringSnapshot getNonExpiringSnapshot()
+    {
+        // snapshots of this buffer never expire:
+        // no need to hold the document lock
+        return new NonExpiringSnapshot(this);
+    }
+
+    @Override
+    protected IDocument createEmptyDocument()
+    {
+        RopeDocument document = new RopeDocument();
+        document.setLockObject(new Object());
+        return document;
+    }
+
+    private static final class RopeSnapshot
+        extends Snapshot
+    {
+        private final Rope rope;
+
+        RopeSnapshot(Rope rope)
+        {
+            this.rope = rope;
+        }
+
+        @Override
+        public String getContents()
+        {
+            return rope.toString();
+        }
+
+        @Override
+        public CharSequence getCharSequence()
+        {
+            return rope;
+        }
+
+        @Override
+        protected Boolean predictEquality(Snapshot other)
+        {
+            if (other instanceof RopeSnapshot
+                && rope == ((RopeSnapshot)other).rope)
+                return true;
+
+            return null;
+        }
+    }
+
+    private static final class RopeTextStore
+        implements ITextStore
+    {
+        volatile Rope rope = Rope.EMPTY;
+
+        @Override
+        public char get(int offset)
+        {
+            return rope.charAt(offset);
+        }
+
+        @Override
+        public String get(int offset, int length)
+        {
+            return rope.substring(offset, offset + length);
+        }
+
+        @Override
+        public int getLength()
+        {
+            return rope.length();
+        }
+
+        @Override
+        public void replace(int offset, int length, String text)
+        {
+            rope = rope.replace(offset, length, text == null ? "" : text); //$NON-NLS-1$
+        }
+
+        @Override
+        public void set(String text)
+        {
+            rope = text == null ? Rope.EMPTY : Rope.of(text);
+        }
+    }
+
+    /*
+     * Similar to the document created by the file buffer manager,
+     * access to this document is synchronized on its lock object, if any.
+     */
+    private static final class RopeDocument
+        extends AbstractDocument
+        implements ISynchronizable
+    {
+        final RopeTextStore store = new RopeTextStore();
+        private Object lockObject;
+
+        RopeDocument()
+        {
+            setTextStore(store);
+            setLineTracker(new DefaultLineTracker());
+            completeInitialization();
+        }
+
+        @Override
+        public synchronized void setLockObject(Object lockObject)
+        {
+            this.lockObject = lockObject;
+        }
+
+        @Override
+        public synchronized Object getLockObject()
+        {
+            return lockObject;
+        }
+
+        @Override
+        public String get()
+        {
+            Object lock = getLockObject();
+            if (lock == null)
+                return super.get();
+            synchronized (lock)
+            {
+                return super.get();
+            }
+        }
+
+        @Override
+        public String get(int offset, int length) throws BadLocationException
+        {
+            Object lock = getLockObject();
+            if (lock == null)
+                return super.get(offset, length);
+            synchronized (lock)
+            {
+                return super.get(offset, length);
+            }
+        }
+
+        @Override
+        public char getChar(int offset) throws BadLocationException
+        {
+            Object lock = getLockObject();
+            if (lock == null)
+                return super.getChar(offset);
+            synchronized (lock)
+            {
+                return super.getChar(offset);
+            }
+        }
+
+        @Override
+        public long getModificationStamp()
+        {
+            Object lock = getLockObject();
+            if (lock == null)
+                return super.getModificationStamp();
+            synchronized (lock)
+            {
+                return super.getModificationStamp();
+            }
+        }
+
+        @Override
+        public void replace(int offset, int length, String text,
+            long modificationStamp) throws BadLocationException
+        {
+            Object lock = getLockObject();
+            if (lock == null)
+            {
+                super.replace(offset, length, text, modificationStamp);
+                return;
+            }
+            synchronized (lock)
+            {
+                super.replace(offset, length, text, modificationStamp);
+            }
+        }
+
+        @Override
+        public void replace(int offset, int length, String text)
+            throws BadLocationException
+        {
+            Object lock = getLockObject();
+            if (lock == null)
+            {
+                super.replace(offset, length, text);
+                return;
+            }
+            synchronized (lock)
+            {
+                super.replace(offset, length, text);
+            }
+        }
+
+        @Override
+        public void set(String text, long modificationStamp)
+        {
+            Object lock = getLockObject();
+            if (lock == null)
+            {
+                super.set(text, modificationStamp);
+                return;
+            }
+            synchronized (lock)
+            {
+                super.set(text, modificationStamp);
+            }
+        }
+
+        @Override
+        public void set(String text)
+        {
+            Object lock = getLockObject();
+            if (lock == null)
+            {
+                super.set(text);
+                return;
+            }
+            synchronized (lock)
+            {
+                super.set(text);
+            }
+        }
+
+        @Override
+        public void addPosition(String category, Position position)
+            throws BadLocationException, BadPositionCategoryException
+        {
+            Object lock = getLockObject();
+            if (lock == null)
+            {
+                super.addPosition(category, position);
+                return;
+            }
+            synchronized (lock)
+            {
+                super.addPosition(category, position);
+            }
+        }
+
+        @Override
+        public void removePosition(String category, Position position)
+            throws BadPositionCategoryException
+        {
+            Object lock = getLockObject();
+            if (lock == null)
+            {
+                super.removePosition(category, position);
+                return;
+            }
+            synchronized (lock)
+            {
+                super.removePosition(category, position);
+            }
+        }
+
+        @Override
+        public Position[] getPositions(String category)
+            throws BadPositionCategoryException
+        {
+            Object lock = getLockObject();
+            if (lock == null)
+                return super.getPositions(category);
+            synchronized (lock)
+            {
+                return super.getPositions(category);
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.buffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.ReplaceEdit;
+
+/**
+ * Computes a small edit script that transforms one text into another.
+ * <p>
+ * The common prefix and suffix of the texts are stripped first, so that
+ * a localized change in a large text is processed in time proportional
+ * to the size of the text plus the size of the change. The remaining
+ * texts are compared line by line using Myers' O(ND) difference algorithm,
+ * with lines compared by their hash codes first. Each run of differing
+ * lines results in a replace edit, which is further narrowed down to the
+ * characters that actually differ.
+ * </p>
+ * <p>
+ * If the texts differ in too many lines, a single replace edit
+ * for the differing region is produced instead.
+ * </p>
+ */
+final class TextDiff
+{
+    /**
+     * The maximum number of differing lines for which a line diff
+     * is computed.
+     */
+    static final int MAX_LINE_DIFFERENCES = 1000;
+
+    private final String oldText, newText;
+    private final int oldStart, newStart, oldEnd, newEnd;
+
+    /**
+     * Returns an edit that transforms the given old text into the given
+     * new text. The edit is a {@link MultiTextEdit} whose children are
+     * non-overlapping {@link ReplaceEdit}s; it has no children if the
+     * texts are equal.
+     *
+     * @param oldText not <code>null</code>
+     * @param newText not <code>null</code>
+     * @return the edit (never <code>null</code>)
+     */
+    static MultiTextEdit computeEdit(String oldText, String newText)
+    {
+        return new TextDiff(oldText, newText).computeEdit();
+    }
+
+    private TextDiff(String oldText, String newText)
+    {
+        this.oldText = oldText;
+        this.newText = newText;
+        int oldLength = oldText.length(), newLength = newText.length();
+        int prefix = 0, max = Math.min(oldLength, newLength);
+        while (prefix < max && oldText.charAt(prefix) == newText.charAt(
+            prefix))
+            prefix++;
+        int suffix = 0;
+        max -= prefix;
+        while (suffix < max && oldText.charAt(oldLength - suffix
+            - 1) == newText.charAt(newLength - suffix - 1))
+            suffix++;
+        this.oldStart = this.newStart = prefix;
+        this.oldEnd = oldLength - suffix;
+        this.newEnd = newLength - suffix;
+    }
+
+    private MultiTextEdit computeEdit()
+    {
+        MultiTextEdit result = new MultiTextEdit();
+        if (oldStart == oldEnd && newStart == newEnd)
+            return result; // equal texts
+        if (oldStart == oldEnd || newStart == newEnd)
+        {
+            addEdit(result, oldStart, oldEnd, newStart, newEnd);
+            return result;
+        }
+
+        int[] oldLines = lineOffsets(oldText, oldStart, oldEnd);
+        int[] newLines = lineOffsets(newText, newStart, newEnd);
+        int[] oldHashes = lineHashes(oldText, oldLines);
+        int[] newHashes = lineHashes(newText, newLines);
+        int n = oldHashes.length, m = newHashes.length;
+
+        int[] oldMatches = new int[n], newMatches = new int[m];
+        if (!matchLines(oldLines, newLines, oldHashes, newHashes, oldMatches,
+            newMatches))
+        {
+            addEdit(result, oldStart, oldEnd, newStart, newEnd);
+            return result;
+        }
+
+        int i = 0, j = 0;
+        while (i < n || j < m)
+        {
+            if (i < n && j < m && oldMatches[i] == j)
+            {
+                i++;
+                j++;
+                continue;
+            }
+            int i0 = i, j0 = j;
+            while (i < n && oldMatches[i] < 0)
+                i++;
+            while (j < m && newMatches[j] < 0)
+                j++;
+            addEdit(result, oldLines[i0], oldLines[i], newLines[j0],
+                newLines[j]);
+        }
+        return result;
+    }
+
+    private void addEdit(MultiTextEdit parent, int oldFrom, int oldTo,
+        int newFrom, int newTo)
+    {
+        while (oldFrom < oldTo && newFrom < newTo && oldText.charAt(
+            oldFrom) == newText.charAt(newFrom))
+        {
+            oldFrom++;
+            newFrom++;
+        }
+        while (oldFrom < oldTo && newFrom < newTo && oldText.charAt(oldTo
+            - 1) == newText.charAt(newTo - 1))
+        {
+            oldTo--;
+            newTo--;
+        }
+        parent.addChild(new ReplaceEdit(oldFrom, oldTo - oldFrom,
+            newText.substring(newFrom, newTo)));
+    }
+
+    /*
+     * Finds a longest common subsequence of the lines and records it
+     * in the given arrays: oldMatches[i] == j and newMatches[j] == i
+     * if the i-th old line matches the j-th new line, and -1 for lines
+     * that do not match. Returns false if the number of differing lines
+     * exceeds MAX_LINE_DIFFERENCES.
+     */
+    private boolean matchLines(int[] oldLines, int[] newLines, int[] oldHashes,
+        int[] newHashes, int[] oldMatches, int[] newMatches)
+    {
+        int n = oldHashes.length, m = newHashes.length;
+        int max = Math.min(n + m, MAX_LINE_DIFFERENCES);
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        List<int[]> trace = new ArrayList<>();
+        int d = 0;
+        found: for (;; d++)
+        {
+            if (d > max)
+                return false;
+            int[] copy = new int[2 * d + 3];
+            System.arraycopy(v, offset - d - 1, copy, 0, copy.length);
+            trace.add(copy);
+            for (int k = -d; k <= d; k += 2)
+            {
+                int x;
+                if (k == -d || (k != d && v[offset + k - 1] < v[offset + k
+                    + 1]))
+                    x = v[offset + k + 1];
+                else
+                    x = v[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && linesEqual(x, y, oldLines, newLines,
+                    oldHashes, newHashes))
+                {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m)
+                    break found;
+            }
+        }
+
+        Arrays.fill(oldMatches, -1);
+        Arrays.fill(newMatches, -1);
+        int x = n, y = m;
+        for (; d >= 0; d--)
+        {
+            int[] prev = trace.get(d); // v before step d, for k in [-d-1, d+1]
+            int k = x - y;
+            int prevK;
+            if (k == -d || (k != d && prev[k - 1 + d + 1] < prev[k + 1 + d
+                + 1]))
+                prevK = k + 1;
+            else
+                prevK = k - 1;
+            int prevX = prev[prevK + d + 1];
+            int prevY = prevX - prevK;
+            while (x > prevX && y > prevY && x > 0 && y > 0)
+            {
+                x--;
+                y--;
+                oldMatches[x] = y;
+                newMatches[y] = x;
+            }
+            x = prevX;
+            y = prevY;
+        }
+        return true;
+    }
+
+    private boolean linesEqual(int i, int j, int[] oldLines, int[] newLines,
+        int[] oldHashes, int[] newHashes)
+    {
+        if (oldHashes[i] != newHashes[j])
+            return false;
+        int length = oldLines[i + 1] - oldLines[i];
+        if (length != newLines[j + 1] - newLines[j])
+            return false;
+        return oldText.regionMatches(oldLines[i], newText, newLines[j],
+            length);
+    }
+
+    /*
+     * Returns the start offsets of the lines in the given range of the text,
+     * followed by the end offset of the range.
+     */
+    private static int[] lineOffsets(String text, int start, int end)
+    {
+        int count = 1;
+        for (int i = start; i < end - 1; i++)
+        {
+            if (text.charAt(i) == '\n')
+                count++;
+        }
+        int[] result = new int[count + 1];
+        int line = 0;
+        result[line++] = start;
+        for (int i = start; i < end - 1; i++)
+        {
+            if (text.charAt(i) == '\n')
+                result[line++] = i + 1;
+        }
+        result[line] = end;
+        return result;
+    }
+
+    private static int[] lineHashes(String text, int[] lineOffsets)
+    {
+        int[] result = new int[lineOffsets.length - 1];
+        for (int i = 0; i < result.length; i++)
+        {
+            int hash = 0;
+            for (int j = lineOffsets[i], end = lineOffsets[i + 1]; j < end;
+                j++)
+                hash = 31 * hash + text.charAt(j);
+            result[i] = hash;
+        }
+        return result;
+    }
+}
@@ -30,6 +30,7 @@ import org.eclipse.core.runtime.SafeRunner;
 import org.eclipse.handly.context.IContext;
 import org.eclipse.handly.internal.Activator;
 import org.eclipse.handly.snapshot.ISnapshot;
+import org.eclipse.handly.snapshot.NonExpiringSnapshot;
 import org.eclipse.handly.snapshot.TextFileBufferSnapshot;
 import org.eclipse.handly.util.UiSynchronizer;
 import org.eclipse.jface.text.BadLocationException;
@@ -47,6 +48,8 @@ import org.eclipse.text.edits.MalformedTreeException;
  * This class has an optional dependency on {@link IFile} and can safely be used
  * even when <code>org.eclipse.core.resources</code> bundle is not available.
  * </p>
+ *
+ * @see TextFileBufferPool
  */
 public final class TextFileBuffer
     implements IBuffer
@@ -56,6 +59,7 @@ public final class TextFileBuffer
     private int refCount = 1;
     private ListenerList<IBufferListener> listeners;
     private FileBufferListener fileBufferListener;
+    private TextFileBufferPool.Entry poolEntry;
 
     /**
      * Returns a {@link TextFileBuffer} for the given file location.
@@ -190,6 +194,19 @@ public final class TextFileBuffer
             provider.getBufferManager());
     }
 
+    @Override
+    public NonExpiringSnapshot getNonExpiringSnapshot()
+    {
+        ITextFileBuffer buffer = getCoreTextFileBufferProvider().getBuffer();
+        if (!buffer.isDirty() && buffer.isSynchronized())
+        {
+            // the snapshot will be based on the underlying file:
+            // don't hold the document lock while reading the file
+            return new NonExpiringSnapshot(this);
+        }
+        return IBuffer.super.getNonExpiringSnapshot();
+    }
+
     @Override
     public IBufferChange applyChange(IBufferChange change,
         IProgressMonitor monitor) throws CoreException
@@ -288,6 +305,8 @@ public final class TextFileBuffer
     public void release()
     {
         ICoreTextFileBufferProvider provider;
+        FileBufferListener fileBufferListener;
+        TextFileBufferPool.Entry poolEntry;
         synchronized (this)
         {
             if (--refCount != 0)
@@ -295,7 +314,11 @@ public final class TextFileBuffer
             if (coreTextFileBufferProvider == null)
                 return;
             provider = coreTextFileBufferProvider;
-            coreTextFileBufferProvider = null;
+            poolEntry = this.poolEntry;
+            if (poolEntry == null)
+                coreTextFileBufferProvider = null;
+            fileBufferListener = this.fileBufferListener;
+            this.fileBufferListener = null;
             listeners = null;
         }
         try
@@ -304,22 +327,59 @@ public final class TextFileBuffer
             {
                 provider.getBufferManager().removeFileBufferListener(
                     fileBufferListener);
-                fileBufferListener = null;
             }
         }
         finally
         {
-            try
+            if (poolEntry != null)
             {
-                provider.disconnect(null);
+                // the pool will disconnect the buffer when it is evicted
+                poolEntry.bufferIdle();
             }
-            catch (CoreException e)
+            else
             {
-                Activator.logError(e);
+                try
+                {
+                    provider.disconnect(null);
+                }
+                catch (CoreException e)
+                {
+                    Activator.logError(e);
+                }
             }
         }
     }
 
+    synchronized void setPoolEntry(TextFileBufferPool.Entry poolEntry)
+    {
+        this.poolEntry = poolEntry;
+    }
+
+    /*
+     * Called by the pool to hand out this buffer again.
+     * Returns false if the buffer has been disconnected.
+     */
+    synchronized boolean reacquire()
+    {
+        if (coreTextFileBufferProvider == null)
+            return false;
+        ++refCount;
+        return true;
+    }
+
+    /*
+     * Called by the pool to evict this buffer. Returns the provider
+     * to be disconnected, or null if the buffer is in use.
+     */
+    synchronized ICoreTextFileBufferProvider detach()
+    {
+        if (refCount != 0)
+            return null;
+        ICoreTextFileBufferProvider provider = coreTextFileBufferProvider;
+        coreTextFileBufferProvider = null;
+        return provider;
+    }
+
     private void fireBufferSaved()
     {
         ListenerList<IBufferListener> listeners;
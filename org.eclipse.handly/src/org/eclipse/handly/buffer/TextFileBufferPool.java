@@ -0,0 +1,449 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.buffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.filebuffers.ITextFileBufferManager;
+import org.eclipse.core.filebuffers.LocationKind;
+import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.handly.internal.Activator;
+
+/**
+ * A pool of {@link TextFileBuffer}s keyed by file location.
+ * <p>
+ * The pool hands out a shared, reference-counted buffer for each location.
+ * When the last reference to a buffer is {@link IBuffer#release() released},
+ * the buffer is not disconnected from the underlying {@link
+ * ITextFileBufferManager} immediately; instead, it is kept connected for
+ * the idle timeout of the pool, so that a subsequent request for the same
+ * location does not have to connect to the buffer manager again. This
+ * reduces the connect/disconnect churn for operations that read a large
+ * number of files, possibly more than once. Only clean buffers are pooled:
+ * if a buffer is {@link IBuffer#isDirty() dirty} when its last reference
+ * is released, it is disconnected immediately and its unsaved changes
+ * are discarded, just as for a buffer that is not pooled.
+ * </p>
+ * <p>
+ * The pool keeps at most the given number of buffers connected at once.
+ * When this limit is reached, the least recently used idle buffers are
+ * disconnected. Note that buffers that are in use are never disconnected by
+ * the pool; if all of the buffers are in use, the limit may be exceeded.
+ * </p>
+ * <p>
+ * An instance of this class is safe for use by multiple threads.
+ * </p>
+ *
+ * @since 1.5
+ */
+public final class TextFileBufferPool
+{
+    private static final int DEFAULT_MAX_SIZE = 64;
+    private static final long DEFAULT_IDLE_TIMEOUT = 5000;
+
+    private final ITextFileBufferManager bufferManager;
+    private final int maxSize;
+    private final long idleTimeout; // in milliseconds
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(
+        16, 0.75f, true); // in access order
+    private final EvictionJob evictionJob = new EvictionJob();
+
+    /**
+     * Returns the shared pool of buffers managed by the {@link
+     * ITextFileBufferManager#DEFAULT default} text file buffer manager.
+     *
+     * @return the shared pool (never <code>null</code>)
+     */
+    public static TextFileBufferPool getDefault()
+    {
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * Creates a new pool of buffers managed by the given text file buffer
+     * manager.
+     *
+     * @param bufferManager not <code>null</code>
+     * @param maxSize the maximum number of buffers the pool keeps connected
+     *  at once (not negative)
+     * @param idleTimeout the time in milliseconds an idle buffer is kept
+     *  connected (not negative)
+     */
+    public TextFileBufferPool(ITextFileBufferManager bufferManager,
+        int maxSize, long idleTimeout)
+    {
+        if (bufferManager == null)
+            throw new IllegalArgumentException();
+        if (maxSize < 0)
+            throw new IllegalArgumentException();
+        if (idleTimeout < 0)
+            throw new IllegalArgumentException();
+        this.bufferManager = bufferManager;
+        this.maxSize = maxSize;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Returns a buffer for the given file location. If the pool already
+     * has a buffer for the location, that buffer is returned; otherwise,
+     * a new buffer is created and added to the pool.
+     * <p>
+     * It is the client responsibility to {@link IBuffer#release() release}
+     * the buffer after it is no longer needed.
+     * </p>
+     *
+     * @param location not <code>null</code>
+     * @param locationKind not <code>null</code>
+     * @param monitor a progress monitor, or <code>null</code>
+     *  if progress reporting is not desired. The caller must not rely on
+     *  {@link IProgressMonitor#done()} having been called by the receiver
+     * @return a buffer for the given file location (never <code>null</code>)
+     * @throws CoreException if the buffer could not be created
+     * @throws OperationCanceledException if this method is canceled
+     */
+    public TextFileBuffer acquire(IPath location, LocationKind locationKind,
+        IProgressMonitor monitor) throws CoreException
+    {
+        if (location == null)
+            throw new IllegalArgumentException();
+        if (locationKind == null)
+            throw new IllegalArgumentException();
+        return acquire(new LocationKey(location, locationKind),
+            ICoreTextFileBufferProvider.forLocation(location, locationKind,
+                bufferManager), monitor);
+    }
+
+    /**
+     * Returns a buffer for the given file store. If the pool already
+     * has a buffer for the file store, that buffer is returned; otherwise,
+     * a new buffer is created and added to the pool.
+     * <p>
+     * It is the client responsibility to {@link IBuffer#release() release}
+     * the buffer after it is no longer needed.
+     * </p>
+     *
+     * @param fileStore not <code>null</code>
+     * @param monitor a progress monitor, or <code>null</code>
+     *  if progress reporting is not desired. The caller must not rely on
+     *  {@link IProgressMonitor#done()} having been called by the receiver
+     * @return a buffer for the given file store (never <code>null</code>)
+     * @throws CoreException if the buffer could not be created
+     * @throws OperationCanceledException if this method is canceled
+     */
+    public TextFileBuffer acquire(IFileStore fileStore,
+        IProgressMonitor monitor) throws CoreException
+    {
+        if (fileStore == null)
+            throw new IllegalArgumentException();
+        return acquire(fileStore, ICoreTextFileBufferProvider.forFileStore(
+            fileStore, bufferManager), monitor);
+    }
+
+    /**
+     * Returns the number of buffers the pool currently keeps connected,
+     * including the buffers that are in use.
+     *
+     * @return the number of connected buffers
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Disconnects the idle buffer for the given file location, if any.
+     * A buffer for the location that is in use is not affected.
+     *
+     * @param location not <code>null</code>
+     * @param locationKind not <code>null</code>
+     */
+    public void evict(IPath location, LocationKind locationKind)
+    {
+        if (location == null)
+            throw new IllegalArgumentException();
+        if (locationKind == null)
+            throw new IllegalArgumentException();
+        evict(new LocationKey(location, locationKind));
+    }
+
+    /**
+     * Disconnects the idle buffer for the given file store, if any.
+     * A buffer for the file store that is in use is not affected.
+     *
+     * @param fileStore not <code>null</code>
+     */
+    public void evict(IFileStore fileStore)
+    {
+        if (fileStore == null)
+            throw new IllegalArgumentException();
+        evict((Object)fileStore);
+    }
+
+    /**
+     * Disconnects all of the idle buffers in this pool. Buffers that are
+     * in use are not affected.
+     */
+    public void clear()
+    {
+        evictionJob.cancel();
+        List<ICoreTextFileBufferProvider> evicted;
+        synchronized (this)
+        {
+            evicted = evict(Long.MIN_VALUE, true);
+        }
+        disconnect(evicted);
+    }
+
+    private TextFileBuffer acquire(Object key,
+        ICoreTextFileBufferProvider provider, IProgressMonitor monitor)
+        throws CoreException
+    {
+        TextFileBuffer buffer = reacquire(key);
+        if (buffer != null)
+            return buffer;
+
+        // connect outside the lock
+        buffer = new TextFileBuffer(provider, monitor);
+
+        TextFileBuffer existing;
+        List<ICoreTextFileBufferProvider> evicted = null;
+        synchronized (this)
+        {
+            existing = reacquire(key);
+            if (existing == null)
+            {
+                Entry entry = new Entry(key, buffer);
+                buffer.setPoolEntry(entry);
+                entries.put(key, entry);
+                evicted = evict(System.nanoTime(), false);
+            }
+        }
+        if (existing != null)
+        {
+            buffer.release(); // lost the race; the buffer is not pooled
+            return existing;
+        }
+        disconnect(evicted);
+        return buffer;
+    }
+
+    private synchronized TextFileBuffer reacquire(Object key)
+    {
+        Entry entry = entries.get(key);
+        if (entry == null)
+            return null;
+        if (entry.buffer.reacquire())
+        {
+            entry.idle = false;
+            return entry.buffer;
+        }
+        entries.remove(key); // has been disconnected
+        return null;
+    }
+
+    private void evict(Object key)
+    {
+        ICoreTextFileBufferProvider provider = null;
+        synchronized (this)
+        {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.idle)
+            {
+                provider = entry.buffer.detach();
+                if (provider != null)
+                    entries.remove(key);
+            }
+        }
+        if (provider != null)
+            disconnect(Collections.singletonList(provider));
+    }
+
+    private void bufferIdle(Entry entry)
+    {
+        List<ICoreTextFileBufferProvider> evicted;
+        synchronized (this)
+        {
+            if (entries.get(entry.key) != entry) // also updates the LRU order
+                return;
+            if (entry.buffer.isDirty())
+            {
+                // don't keep unsaved changes around: disconnect right away
+                ICoreTextFileBufferProvider provider = entry.buffer.detach();
+                if (provider == null) // has been reacquired
+                    return;
+                entries.remove(entry.key);
+                evicted = Collections.singletonList(provider);
+            }
+            else
+            {
+                entry.idle = true;
+                entry.idleSince = System.nanoTime();
+                evicted = evict(entry.idleSince, false);
+                if (entry.idle && entries.containsKey(entry.key))
+                    evictionJob.schedule(idleTimeout);
+            }
+        }
+        disconnect(evicted);
+    }
+
+    /*
+     * Detaches the idle buffers that have expired by the given time
+     * or exceed the maximum size of the pool, in LRU order. Must be called
+     * while holding the pool lock. The returned providers are to be
+     * disconnected outside the lock.
+     */
+    private List<ICoreTextFileBufferProvider> evict(long now, boolean all)
+    {
+        List<ICoreTextFileBufferProvider> result = new ArrayList<>();
+        int excess = entries.size() - maxSize;
+        long timeout = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext())
+        {
+            Entry entry = it.next();
+            if (!entry.idle)
+                continue;
+            if (!all && excess <= 0 && now - entry.idleSince < timeout)
+                continue;
+            ICoreTextFileBufferProvider provider = entry.buffer.detach();
+            if (provider != null)
+            {
+                it.remove();
+                result.add(provider);
+                excess--;
+            }
+        }
+        return result;
+    }
+
+    private synchronized boolean hasIdleEntries()
+    {
+        for (Entry entry : entries.values())
+        {
+            if (entry.idle)
+                return true;
+        }
+        return false;
+    }
+
+    private static void disconnect(List<ICoreTextFileBufferProvider> providers)
+    {
+        for (ICoreTextFileBufferProvider provider : providers)
+        {
+            try
+            {
+                provider.disconnect(null);
+            }
+            catch (CoreException e)
+            {
+                Activator.logError(e);
+            }
+        }
+    }
+
+    /**
+     * A pool entry for a buffer. Notified by the buffer when its last
+     * reference is released.
+     */
+    final class Entry
+    {
+        final Object key;
+        final TextFileBuffer buffer;
+        boolean idle; // guarded by the pool lock
+        long idleSince; // guarded by the pool lock
+
+        Entry(Object key, TextFileBuffer buffer)
+        {
+            this.key = key;
+            this.buffer = buffer;
+        }
+
+        void bufferIdle()
+        {
+            TextFileBufferPool.this.bufferIdle(this);
+        }
+    }
+
+    private static final class LocationKey
+    {
+        private final IPath location;
+        private final LocationKind locationKind;
+
+        LocationKey(IPath location, LocationKind locationKind)
+        {
+            this.location = location;
+            this.locationKind = locationKind;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * location.hashCode() + locationKind.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof LocationKey))
+                return false;
+            LocationKey other = (LocationKey)obj;
+            return location.equals(other.location)
+                && locationKind == other.locationKind;
+        }
+    }
+
+    private class EvictionJob
+        extends Job
+    {
+        EvictionJob()
+        {
+            super(""); //$NON-NLS-1$
+            setSystem(true);
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor)
+        {
+            List<ICoreTextFileBufferProvider> evicted;
+            synchronized (TextFileBufferPool.this)
+            {
+                evicted = evict(System.nanoTime(), false);
+            }
+            disconnect(evicted);
+            if (hasIdleEntries())
+                schedule(idleTimeout);
+            return Status.OK_STATUS;
+        }
+    }
+
+    private static class DefaultHolder
+    {
+        static final TextFileBufferPool INSTANCE = new TextFileBufferPool(
+            ITextFileBufferManager.DEFAULT, DEFAULT_MAX_SIZE,
+            DEFAULT_IDLE_TIMEOUT);
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014, 2019 1C-Soft LLC and others.
+ * Copyright (c) 2014, 2020 1C-Soft LLC and others.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -16,6 +16,7 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Plugin;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.handly.buffer.TextFileBufferPool;
 import org.osgi.framework.BundleContext;
 
 /**
@@ -51,6 +52,11 @@ public class Activator
         logError(e.getMessage(), e);
     }
 
+    public static void logWarning(String msg)
+    {
+        plugin.getLog().log(createWarningStatus(msg));
+    }
+
     public static IStatus createErrorStatus(String msg, Throwable e)
     {
         return new Status(IStatus.ERROR, PLUGIN_ID, 0, msg, e);
@@ -69,6 +75,7 @@ public class Activator
     @Override
     public void stop(BundleContext context) throws Exception
     {
+        TextFileBufferPool.getDefault().clear();
         super.stop(context);
         plugin = null;
     }
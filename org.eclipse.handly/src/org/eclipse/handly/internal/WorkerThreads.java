@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.internal;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.handly.util.UiSynchronizer;
+
+/**
+ * Helps to run work in a number of threads of its own.
+ */
+public final class WorkerThreads
+{
+    /**
+     * Returns the number of worker threads to use for the given number
+     * of threads requested by the calling thread. The work is to be done
+     * in the calling thread if 1 is returned.
+     * <p>
+     * If the calling thread is the UI thread, this method always returns 1:
+     * the worker threads might need to synchronize with the UI thread, which
+     * would be blocked waiting for them.
+     * </p>
+     *
+     * @param threadCount the requested number of threads
+     * @return the number of worker threads to use
+     */
+    public static int getThreadCount(int threadCount)
+    {
+        if (threadCount > 1 && isUiThread())
+            return 1; // avoid deadlock on the UI synchronizer
+        return threadCount;
+    }
+
+    /**
+     * Returns whether the calling thread is the UI thread.
+     *
+     * @return <code>true</code> if the calling thread is the UI thread,
+     *  and <code>false</code> otherwise
+     * @see UiSynchronizer#getDefault()
+     */
+    public static boolean isUiThread()
+    {
+        UiSynchronizer synchronizer = UiSynchronizer.getDefault();
+        return synchronizer != null
+            && synchronizer.getThread() == Thread.currentThread();
+    }
+
+    /**
+     * Returns a new factory of daemon threads. The threads are named
+     * after the given name, followed by a sequence number.
+     *
+     * @param name not <code>null</code>
+     * @return a new thread factory (never <code>null</code>)
+     */
+    public static ThreadFactory newThreadFactory(String name)
+    {
+        if (name == null)
+            throw new IllegalArgumentException();
+        AtomicInteger count = new AtomicInteger();
+        return r ->
+        {
+            Thread thread = new Thread(r, name + ' ' + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private WorkerThreads()
+    {
+    }
+}
@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.model;
+
+import static org.eclipse.handly.context.Contexts.of;
+import static org.eclipse.handly.context.Contexts.with;
+import static org.eclipse.handly.model.Elements.NOTIFICATION_EXECUTOR;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.handly.context.IContext;
+import org.eclipse.handly.internal.Activator;
+import org.eclipse.handly.internal.WorkerThreads;
+
+/**
+ * Reconciles a number of source files in parallel and sends out the resulting
+ * notifications in the calling thread.
+ *
+ * @see Elements#reconcileAll(Collection, IContext, IProgressMonitor)
+ */
+final class BatchReconcile
+{
+    private final List<ISourceFile> sourceFiles;
+    private final IContext context;
+    private final Queue<Runnable> notifications = new ConcurrentLinkedQueue<>();
+
+    BatchReconcile(Collection<? extends ISourceFile> sourceFiles,
+        IContext context)
+    {
+        if (context == null)
+            throw new IllegalArgumentException();
+        this.sourceFiles = new ArrayList<>(new LinkedHashSet<>(sourceFiles));
+        if (this.sourceFiles.contains(null))
+            throw new IllegalArgumentException();
+        this.context = context;
+    }
+
+    void run(IProgressMonitor monitor) throws CoreException
+    {
+        SubMonitor subMonitor = SubMonitor.convert(monitor,
+            sourceFiles.size());
+        IContext reconcileContext = with(of(NOTIFICATION_EXECUTOR,
+            notifications::add), context);
+        // progress is reported by the calling thread; the workers only need
+        // to check for cancellation
+        IProgressMonitor workerMonitor = new NullProgressMonitor()
+        {
+            @Override
+            public boolean isCanceled()
+            {
+                return subMonitor.isCanceled();
+            }
+        };
+
+        int threadCount = WorkerThreads.getThreadCount(Math.min(
+            Runtime.getRuntime().availableProcessors(), sourceFiles.size()));
+        ExecutorService executor = null;
+        if (threadCount > 1)
+            executor = Executors.newFixedThreadPool(threadCount,
+                WorkerThreads.newThreadFactory("Handly Batch Reconcile")); //$NON-NLS-1$
+        MultiStatus status = new MultiStatus(Activator.PLUGIN_ID, 0,
+            Messages.BatchReconcile_Problems_reconciling, null);
+        boolean canceled = false;
+        try
+        {
+            List<FutureTask<IStatus>> tasks = new ArrayList<>(
+                sourceFiles.size());
+            for (ISourceFile sourceFile : sourceFiles)
+            {
+                FutureTask<IStatus> task = new FutureTask<>(() -> reconcile(
+                    sourceFile, reconcileContext, workerMonitor));
+                if (executor != null)
+                    executor.execute(task);
+                tasks.add(task);
+            }
+            for (FutureTask<IStatus> task : tasks)
+            {
+                if (executor == null)
+                    task.run();
+                IStatus result = await(task);
+                if (result.getSeverity() == IStatus.CANCEL)
+                    canceled = true;
+                else if (!result.isOK())
+                    status.add(result);
+                subMonitor.worked(1);
+            }
+        }
+        finally
+        {
+            if (executor != null)
+                executor.shutdown();
+            sendNotifications(status);
+        }
+        if (canceled)
+            throw new OperationCanceledException();
+        if (!status.isOK())
+            throw new CoreException(status);
+    }
+
+    private static IStatus reconcile(ISourceFile sourceFile, IContext context,
+        IProgressMonitor monitor)
+    {
+        if (monitor.isCanceled())
+            return Status.CANCEL_STATUS;
+        try
+        {
+            Elements.reconcile(sourceFile, context, monitor);
+            return Status.OK_STATUS;
+        }
+        catch (CoreException e)
+        {
+            return e.getStatus();
+        }
+        catch (OperationCanceledException e)
+        {
+            return Status.CANCEL_STATUS;
+        }
+        catch (RuntimeException e)
+        {
+            return Activator.createErrorStatus(e.getMessage(), e);
+        }
+    }
+
+    private static IStatus await(Future<IStatus> future)
+    {
+        boolean interrupted = false;
+        try
+        {
+            for (;;)
+            {
+                try
+                {
+                    return future.get();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+                catch (ExecutionException e)
+                {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Error)
+                        throw (Error)cause;
+                    return Activator.createErrorStatus(cause.getMessage(),
+                        cause);
+                }
+            }
+        }
+        finally
+        {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sendNotifications(MultiStatus status)
+    {
+        Executor executor = context.get(NOTIFICATION_EXECUTOR);
+        if (executor != null)
+        {
+            Runnable notification;
+            while ((notification = notifications.poll()) != null)
+                executor.execute(notification);
+            return;
+        }
+        if (notifications.isEmpty())
+            return;
+        Set<IModel> models = new LinkedHashSet<>();
+        for (ISourceFile sourceFile : sourceFiles)
+            models.add(Elements.getModel(sourceFile));
+        try
+        {
+            // merge the notifications within a batch for each model
+            runInBatches(models.iterator(), () ->
+            {
+                Runnable notification;
+                while ((notification = notifications.poll()) != null)
+                    notification.run();
+            });
+        }
+        catch (CoreException e)
+        {
+            status.add(e.getStatus());
+        }
+    }
+
+    private static void runInBatches(Iterator<IModel> models, Runnable action)
+        throws CoreException
+    {
+        if (!models.hasNext())
+            action.run();
+        else
+            Models.runInBatch(models.next(), monitor -> runInBatches(models,
+                action), null);
+    }
+}
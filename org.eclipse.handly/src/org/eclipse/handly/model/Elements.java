@@ -26,6 +26,7 @@ import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.concurrent.Executor;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
@@ -34,6 +35,7 @@ import org.eclipse.core.filesystem.IFileStore;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.ICoreRunnable;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.handly.buffer.IBuffer;
@@ -1406,6 +1408,10 @@ public class Elements
      *  performed even if the working copy buffer has not been modified since
      *  the last time the working copy was reconciled.
      * </li>
+     * <li>
+     * {@link #NOTIFICATION_EXECUTOR} - Specifies the executor to use for
+     *  sending out the element change notifications resulting from reconciling.
+     * </li>
      * </ul>
      *
      * @param sourceFile not <code>null</code>
@@ -1433,6 +1439,68 @@ public class Elements
         Elements.class.getName() + ".forceReconciling", //$NON-NLS-1$
         Boolean.class).withDefault(false);
 
+    /**
+     * Specifies the executor to use for sending out the element change
+     * notifications resulting from reconciling. The executor is passed
+     * a runnable that sends out the notifications; it may run the runnable
+     * at a later time and in another thread. Default value: <code>null</code>,
+     * which means that the notifications are sent out immediately in the
+     * reconciling thread.
+     *
+     * @see #reconcile(ISourceFile, IContext, IProgressMonitor)
+     * @see #reconcileAll(Collection, IContext, IProgressMonitor)
+     * @since 1.5
+     */
+    public static final Property<Executor> NOTIFICATION_EXECUTOR = Property.get(
+        Elements.class.getName() + ".notificationExecutor", //$NON-NLS-1$
+        Executor.class);
+
+    /**
+     * Reconciles the given source files. Source files that are not in working
+     * copy mode are ignored. Reconciling of independent working copies is done
+     * in parallel, using a bounded number of threads.
+     * <p>
+     * The element change notifications resulting from reconciling are sent
+     * out in the calling thread after all of the working copies have been
+     * reconciled (or reconciling has been canceled), in a {@link
+     * Models#runInBatch(IModel, ICoreRunnable, IProgressMonitor) batch}
+     * for each model involved. Thus, models that merge notifications within
+     * a batch send out a single <code>POST_RECONCILE</code> event with
+     * the merged deltas. If the given context specifies a {@link
+     * #NOTIFICATION_EXECUTOR}, the notifications are passed to that executor
+     * instead. This method relies on the model implementations to support
+     * the <code>NOTIFICATION_EXECUTOR</code> option; otherwise, notifications
+     * are sent out by the reconciling threads as usual.
+     * </p>
+     * <p>
+     * If some of the working copies could not be reconciled, the other working
+     * copies are still reconciled, and a <code>CoreException</code> is thrown
+     * after all of the notifications have been sent out.
+     * </p>
+     * <p>
+     * The given context is passed to each reconcile; model implementations
+     * are encouraged to support the standard options described in {@link
+     * #reconcile(ISourceFile, IContext, IProgressMonitor)}.
+     * </p>
+     *
+     * @param sourceFiles not <code>null</code>, must not contain
+     *  <code>null</code>s
+     * @param context the operation context (not <code>null</code>)
+     * @param monitor a progress monitor, or <code>null</code>
+     *  if progress reporting is not desired. The caller must not rely on
+     *  {@link IProgressMonitor#done()} having been called by the receiver
+     * @throws CoreException if some of the working copies could not be
+     *  reconciled
+     * @throws OperationCanceledException if this method is canceled
+     * @since 1.5
+     */
+    public static void reconcileAll(
+        Collection<? extends ISourceFile> sourceFiles, IContext context,
+        IProgressMonitor monitor) throws CoreException
+    {
+        new BatchReconcile(sourceFiles, context).run(monitor);
+    }
+
     /**
      * Returns a buffer opened for the source file. Note that buffers may
      * be shared by multiple clients, so the returned buffer may have unsaved
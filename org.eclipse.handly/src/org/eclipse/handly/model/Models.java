@@ -12,6 +12,10 @@
  *******************************************************************************/
 package org.eclipse.handly.model;
 
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.ICoreRunnable;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.handly.context.IContext;
 import org.eclipse.handly.model.impl.IModelImpl;
 
@@ -46,6 +50,27 @@ public class Models
         return ((IModelImpl)model).getModelApiLevel_();
     }
 
+    /**
+     * Runs the given action as a batch of operations on the model.
+     * Within the batch, the model may merge element change notifications
+     * and defer cache maintenance until the end of the outermost batch,
+     * so that listeners are notified once per batch. Batches may be nested.
+     *
+     * @param model not <code>null</code>
+     * @param action not <code>null</code>
+     * @param monitor a progress monitor, or <code>null</code>
+     *  if progress reporting is not desired. The caller must not rely on
+     *  {@link IProgressMonitor#done()} having been called by the receiver
+     * @throws CoreException if the action fails
+     * @throws OperationCanceledException if the action is canceled
+     * @since 1.5
+     */
+    public static void runInBatch(IModel model, ICoreRunnable action,
+        IProgressMonitor monitor) throws CoreException
+    {
+        ((IModelImpl)model).runInBatch_(action, monitor);
+    }
+
     private Models()
     {
     }
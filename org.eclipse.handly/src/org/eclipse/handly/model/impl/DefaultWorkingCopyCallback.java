@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014, 2017 1C-Soft LLC and others.
+ * Copyright (c) 2014, 2020 1C-Soft LLC and others.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -12,23 +12,43 @@
  *******************************************************************************/
 package org.eclipse.handly.model.impl;
 
-import static org.eclipse.handly.context.Contexts.of;
 import static org.eclipse.handly.context.Contexts.with;
 import static org.eclipse.handly.model.Elements.FORCE_RECONCILING;
 import static org.eclipse.handly.model.impl.IReconcileStrategy.RECONCILING_FORCED;
+import static org.eclipse.handly.model.impl.IReconcileStrategy.SNAPSHOT_DURATION;
 import static org.eclipse.handly.model.impl.IReconcileStrategy.SOURCE_AST;
+import static org.eclipse.handly.model.impl.IReconcileStrategy.SOURCE_CHARS;
 import static org.eclipse.handly.model.impl.IReconcileStrategy.SOURCE_CONTENTS;
+import static org.eclipse.handly.model.impl.IReconcileStrategy.SOURCE_EDITS;
 import static org.eclipse.handly.model.impl.IReconcileStrategy.SOURCE_SNAPSHOT;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.handly.context.Context;
 import org.eclipse.handly.context.IContext;
 import org.eclipse.handly.snapshot.ISnapshot;
 import org.eclipse.handly.snapshot.NonExpiringSnapshot;
+import org.eclipse.handly.util.TextReplacement;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.ISynchronizable;
 
 /**
  * Default implementation of {@link IWorkingCopyCallback}.
  * <p>
+ * Since 1.5, this implementation keeps track of the changes made to the
+ * working copy buffer's document and passes them to the reconcile strategy
+ * as {@link IReconcileStrategy#SOURCE_EDITS SOURCE_EDITS}, provided that
+ * the document is {@link ISynchronizable synchronized} and implements
+ * {@link IDocumentExtension4}.
+ * </p>
+ * <p>
  * Clients can use this class as it stands or subclass it
  * as circumstances warrant.
  * </p>
@@ -36,8 +56,56 @@ import org.eclipse.handly.snapshot.NonExpiringSnapshot;
 public class DefaultWorkingCopyCallback
     extends WorkingCopyCallback
 {
+    /*
+     * The maximum number of text replacements to keep track of between
+     * reconciles. When exceeded, SOURCE_EDITS will not be passed to
+     * the reconcile strategy on the next reconcile.
+     */
+    private static final int MAX_EDITS = 1000;
+
     private final Object reconcilingLock = new Object();
     private volatile ISnapshot reconciledSnapshot;
+    private volatile IDocument document; // null if edits are not tracked
+    private final EditTracker editTracker = new EditTracker();
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Subclasses may override this method, but must make sure
+     * to call the <b>super</b> implementation.
+     * </p>
+     */
+    @Override
+    public void onInit(IWorkingCopyInfo info) throws CoreException
+    {
+        super.onInit(info);
+        IDocument document = info.getBuffer().getDocument();
+        if (document instanceof ISynchronizable
+            && ((ISynchronizable)document).getLockObject() != null
+            && document instanceof IDocumentExtension4)
+        {
+            this.document = document;
+            document.addDocumentListener(editTracker);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Subclasses may override this method, but must make sure
+     * to call the <b>super</b> implementation.
+     * </p>
+     */
+    @Override
+    public void onDispose()
+    {
+        if (document != null)
+        {
+            document.removeDocumentListener(editTracker);
+            document = null;
+        }
+        super.onDispose();
+    }
 
     @Override
     public final boolean needsReconciling()
@@ -59,15 +127,140 @@ public class DefaultWorkingCopyCallback
             if (needsReconciling || context.getOrDefault(FORCE_RECONCILING))
             {
                 IWorkingCopyInfo info = getWorkingCopyInfo();
-                NonExpiringSnapshot snapshot = new NonExpiringSnapshot(
-                    info.getBuffer());
-                info.getReconcileStrategy().reconcile(with(of(//
-                    SOURCE_CONTENTS, snapshot.getContents()), of(
-                        SOURCE_SNAPSHOT, snapshot.getWrappedSnapshot()), of(
-                            RECONCILING_FORCED, !needsReconciling), context),
-                    monitor);
+                IDocument document = this.document;
+                NonExpiringSnapshot snapshot;
+                List<TextReplacement> edits = null;
+                long startTime = System.nanoTime();
+                if (document == null)
+                    snapshot = info.getBuffer().getNonExpiringSnapshot();
+                else
+                {
+                    // the snapshot must correspond to the tracked edits,
+                    // but it is taken outside the document lock, since it may
+                    // be read from the underlying file; if the document has
+                    // changed meanwhile, the snapshot is taken once again
+                    Object lock = ((ISynchronizable)document).getLockObject();
+                    long stamp;
+                    synchronized (lock)
+                    {
+                        edits = editTracker.reset();
+                        stamp = getModificationStamp(document);
+                    }
+                    for (;;)
+                    {
+                        snapshot = info.getBuffer().getNonExpiringSnapshot();
+                        List<TextReplacement> moreEdits;
+                        synchronized (lock)
+                        {
+                            long currentStamp = getModificationStamp(document);
+                            if (currentStamp == stamp)
+                                break;
+                            moreEdits = editTracker.reset();
+                            stamp = currentStamp;
+                        }
+                        edits = concat(edits, moreEdits);
+                    }
+                }
+                Context context2 = new Context();
+                context2.bind(SOURCE_CHARS).to(snapshot.getCharSequence());
+                context2.bind(SOURCE_CONTENTS).toSupplier(
+                    snapshot::getContents);
+                context2.bind(SOURCE_SNAPSHOT).to(snapshot.getWrappedSnapshot());
+                context2.bind(RECONCILING_FORCED).to(!needsReconciling);
+                context2.bind(SNAPSHOT_DURATION).to(System.nanoTime()
+                    - startTime);
+                if (edits != null)
+                    context2.bind(SOURCE_EDITS).to(edits);
+                boolean success = false;
+                try
+                {
+                    info.getReconcileStrategy().reconcile(with(context2,
+                        context), monitor);
+                    success = true;
+                }
+                finally
+                {
+                    if (!success && document != null)
+                        editTracker.invalidate();
+                }
                 reconciledSnapshot = snapshot.getWrappedSnapshot();
             }
         }
     }
+
+    private static long getModificationStamp(IDocument document)
+    {
+        return ((IDocumentExtension4)document).getModificationStamp();
+    }
+
+    /*
+     * Returns the given sequences of edits one after another, or null
+     * if not all of the edits are known.
+     */
+    private static List<TextReplacement> concat(List<TextReplacement> edits,
+        List<TextReplacement> moreEdits)
+    {
+        if (edits == null || moreEdits == null)
+            return null;
+        if (moreEdits.isEmpty())
+            return edits;
+        List<TextReplacement> result = new ArrayList<>(edits.size()
+            + moreEdits.size());
+        result.addAll(edits);
+        result.addAll(moreEdits);
+        return Collections.unmodifiableList(result);
+    }
+
+    /*
+     * Keeps track of the edits made to the document since the last reconcile.
+     * The document listener is called while holding the document lock.
+     */
+    private static class EditTracker
+        implements IDocumentListener
+    {
+        private List<TextReplacement> edits; // null if not known
+
+        @Override
+        public void documentAboutToBeChanged(DocumentEvent event)
+        {
+        }
+
+        @Override
+        public synchronized void documentChanged(DocumentEvent event)
+        {
+            if (edits == null)
+                return;
+            if (edits.size() == MAX_EDITS)
+            {
+                edits = null;
+                return;
+            }
+            String text = event.getText();
+            edits.add(new TextReplacement(event.getOffset(), event.getLength(),
+                text == null ? "" : text)); //$NON-NLS-1$
+        }
+
+        /*
+         * Returns the edits made since the previous reset, or null if not all
+         * of them are known, and starts tracking the edits afresh. Must be
+         * called while holding the document lock.
+         */
+        synchronized List<TextReplacement> reset()
+        {
+            List<TextReplacement> result = edits;
+            edits = new ArrayList<>();
+            if (result == null)
+                return null;
+            return Collections.unmodifiableList(result);
+        }
+
+        /*
+         * Marks the edits made since the previous reset as not known,
+         * e.g. when the reconcile that followed the reset has failed.
+         */
+        synchronized void invalidate()
+        {
+            edits = null;
+        }
+    }
 }
@@ -12,6 +12,10 @@
  *******************************************************************************/
 package org.eclipse.handly.model.impl;
 
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.ICoreRunnable;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.handly.context.IContext;
 import org.eclipse.handly.model.IModel;
 
@@ -44,4 +48,27 @@ public interface IModelImpl
      * @return the Handly API level supported by this model
      */
     int getModelApiLevel_();
+
+    /**
+     * Runs the given action as a batch of operations on this model.
+     * Within the batch, models are encouraged to merge element change
+     * notifications and defer cache maintenance until the end of the
+     * outermost batch. Batches may be nested.
+     * <p>
+     * This implementation simply runs the given action.
+     * </p>
+     *
+     * @param action the action to run (not <code>null</code>)
+     * @param monitor a progress monitor, or <code>null</code>
+     *  if progress reporting is not desired. The caller must not rely on
+     *  {@link IProgressMonitor#done()} having been called by the receiver
+     * @throws CoreException if the action fails
+     * @throws OperationCanceledException if the action is canceled
+     * @since 1.5
+     */
+    default void runInBatch_(ICoreRunnable action, IProgressMonitor monitor)
+        throws CoreException
+    {
+        action.run(monitor);
+    }
 }
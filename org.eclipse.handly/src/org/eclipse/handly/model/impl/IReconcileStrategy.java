@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2017, 2018 1C-Soft LLC.
+ * Copyright (c) 2017, 2020 1C-Soft LLC.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -12,12 +12,15 @@
  *******************************************************************************/
 package org.eclipse.handly.model.impl;
 
+import java.util.List;
+
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.handly.context.IContext;
 import org.eclipse.handly.snapshot.ISnapshot;
 import org.eclipse.handly.util.Property;
+import org.eclipse.handly.util.TextReplacement;
 
 /**
  * Reconciles a model based on text of a particular content type.
@@ -51,6 +54,18 @@ public interface IReconcileStrategy
     Property<String> SOURCE_CONTENTS = Property.get(
         IReconcileStrategy.class.getName() + ".sourceContents", String.class); //$NON-NLS-1$
 
+    /**
+     * Specifies the source text for reconciling as a character sequence.
+     * Unlike {@link #SOURCE_CONTENTS}, this option allows to pass the source
+     * text without creating a string copy of it.
+     *
+     * @see #reconcile(IContext, IProgressMonitor)
+     * @since 1.5
+     */
+    Property<CharSequence> SOURCE_CHARS = Property.get(
+        IReconcileStrategy.class.getName() + ".sourceChars", //$NON-NLS-1$
+        CharSequence.class);
+
     /**
      * Specifies the source snapshot for reconciling.
      *
@@ -60,6 +75,31 @@ public interface IReconcileStrategy
         IReconcileStrategy.class.getName() + ".sourceSnapshot", //$NON-NLS-1$
         ISnapshot.class);
 
+    /**
+     * Specifies the text replacements that have transformed the source text
+     * the model was last reconciled with into the source text for reconciling,
+     * in the order they were made.
+     *
+     * @see #reconcile(IContext, IProgressMonitor)
+     * @since 1.5
+     */
+    Property<List<TextReplacement>> SOURCE_EDITS =
+        new Property<List<TextReplacement>>(IReconcileStrategy.class.getName()
+            + ".sourceEdits") //$NON-NLS-1$
+        {
+        };
+
+    /**
+     * Specifies the time, in nanoseconds, it took to take the source snapshot
+     * for reconciling. Intended for profiling. Default value: <code>0</code>.
+     *
+     * @see #reconcile(IContext, IProgressMonitor)
+     * @since 1.5
+     */
+    Property<Long> SNAPSHOT_DURATION = Property.get(
+        IReconcileStrategy.class.getName() + ".snapshotDuration", //$NON-NLS-1$
+        Long.class).withDefault(0L);
+
     /**
      * Reconciles a model according to options specified in the given context.
      * <p>
@@ -76,10 +116,15 @@ public interface IReconcileStrategy
      * {@link #SOURCE_CONTENTS} - Specifies the source string to use when
      * reconciling.
      * </li>
+     * <li>
+     * {@link #SOURCE_CHARS} - Specifies the source text to use when
+     * reconciling as a character sequence.
+     * </li>
      * </ul>
      * <p>
-     * At least one of <code>SOURCE_AST</code> or <code>SOURCE_CONTENTS</code>
-     * must have a non-null value in the given context.
+     * At least one of <code>SOURCE_AST</code>, <code>SOURCE_CONTENTS</code>
+     * or <code>SOURCE_CHARS</code> must have a non-null value in the given
+     * context.
      * </p>
      * <p>
      * The given context may provide additional data that this method can use,
@@ -94,7 +139,19 @@ public interface IReconcileStrategy
      * <li>
      * {@link #SOURCE_SNAPSHOT} - Specifies the source snapshot from which
      * <code>SOURCE_AST</code> was created or <code>SOURCE_CONTENTS</code>
-     * was obtained. The snapshot may expire.
+     * or <code>SOURCE_CHARS</code> was obtained. The snapshot may expire.
+     * </li>
+     * <li>
+     * {@link #SOURCE_EDITS} - Specifies the text replacements that have
+     * transformed the source text the model was last reconciled with into
+     * the source text for reconciling, in the order they were made. The model
+     * may use them to reconcile incrementally, e.g., by re-parsing only the
+     * affected parts of the source text; reconciling the model as if this
+     * option was not specified is always a valid fallback.
+     * </li>
+     * <li>
+     * {@link #SNAPSHOT_DURATION} - Specifies the time it took to take
+     * the source snapshot.
      * </li>
      * </ul>
      * <p>
@@ -109,6 +109,11 @@ public interface ISourceFileImpl
      *  even if the working copy buffer has not been modified since the last time
      *  the working copy was reconciled.
      * </li>
+     * <li>
+     * {@link org.eclipse.handly.model.Elements#NOTIFICATION_EXECUTOR
+     * NOTIFICATION_EXECUTOR} - Specifies the executor to use for sending out
+     *  the element change notifications resulting from reconciling.
+     * </li>
      * </ul>
      *
      * @param context the operation context (not <code>null</code>)
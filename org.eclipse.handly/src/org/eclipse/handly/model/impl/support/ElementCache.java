@@ -42,6 +42,8 @@ public class ElementCache
 {
     private double loadFactor = 1.0 / 3;
     private IElement maxSizeParent;
+    private double deferredSizeFactor = 2.0;
+    private int evictionDeferrals;
 
     /**
      * Constructs an empty <code>ElementCache</code> with the given maximum size
@@ -94,6 +96,75 @@ public class ElementCache
         this.loadFactor = loadFactor;
     }
 
+    /**
+     * Returns the deferred size factor of this cache. While eviction is
+     * {@link #deferEviction() deferred}, the cache is allowed to grow up to
+     * <code>maxSize() * getDeferredSizeFactor()</code> entries before
+     * stale entries get evicted regardless of the deferral.
+     *
+     * @return the deferred size factor of the cache (a value &gt;= 1)
+     */
+    public double getDeferredSizeFactor()
+    {
+        return deferredSizeFactor;
+    }
+
+    /**
+     * Changes the deferred size factor for this cache. The deferred size factor
+     * determines the hard limit for the cache size while eviction is {@link
+     * #deferEviction() deferred}.
+     *
+     * @param deferredSizeFactor a new value for deferred size factor
+     * @throws IllegalArgumentException if <code>deferredSizeFactor &lt; 1</code>
+     */
+    public void setDeferredSizeFactor(double deferredSizeFactor)
+    {
+        if (deferredSizeFactor < 1.0)
+            throw new IllegalArgumentException();
+        this.deferredSizeFactor = deferredSizeFactor;
+    }
+
+    /**
+     * Defers eviction of stale entries until a matching call to {@link
+     * #resumeEviction()}. While eviction is deferred, the cache can overflow,
+     * but only up to the hard limit determined by the {@link
+     * #getDeferredSizeFactor() deferred size factor}. Calls to this method
+     * may be nested.
+     *
+     * @see #isEvictionDeferred()
+     */
+    public void deferEviction()
+    {
+        evictionDeferrals++;
+    }
+
+    /**
+     * Resumes eviction of stale entries deferred by a matching call to
+     * {@link #deferEviction()}. When the outermost deferral is ended and
+     * the cache has overflowed, makes space in a single eviction pass.
+     *
+     * @throws IllegalStateException if eviction is not deferred
+     */
+    public void resumeEviction()
+    {
+        if (evictionDeferrals == 0)
+            throw new IllegalStateException();
+        if (--evictionDeferrals == 0 && size() > maxSize())
+            makeSpace(0);
+    }
+
+    /**
+     * Returns whether eviction of stale entries is currently deferred.
+     *
+     * @return <code>true</code> if eviction is deferred,
+     *  and <code>false</code> otherwise
+     * @see #deferEviction()
+     */
+    public boolean isEvictionDeferred()
+    {
+        return evictionDeferrals > 0;
+    }
+
     /**
      * Ensures that there is enough room for adding the given number of child
      * elements. If the maximum size of the cache must be increased, records
@@ -157,9 +228,17 @@ public class ElementCache
     @Override
     protected void makeSpace(int sizeNeeded)
     {
+        if (isEvictionDeferred() && size() + sizeNeeded <= maxDeferredSize())
+            return;
         super.makeSpace(applyLoadFactor(sizeNeeded));
     }
 
+    private int maxDeferredSize()
+    {
+        return (int)Math.min(Integer.MAX_VALUE, maxSize()
+            * getDeferredSizeFactor());
+    }
+
     private int applyLoadFactor(int sizeNeeded)
     {
         return Math.max(sizeNeeded, (int)((1 - getLoadFactor()) * maxSize()));
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2018 IBM Corporation and others.
+ * Copyright (c) 2000, 2020 IBM Corporation and others.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -37,6 +37,12 @@ import org.eclipse.handly.model.impl.IElementImplExtension;
  * creates a delta tree over the cached state and the new state.
  * </p>
  * <p>
+ * The recorder does not look into an element whose children had not yet been
+ * {@link SourceElementBody#hasDeferredChildren() built} at the time the
+ * recording began: none of its descendants could have been observed, so
+ * there are no changes to report for them.
+ * </p>
+ * <p>
  * Clients can use this class as it stands or subclass it as circumstances
  * warrant.
  * </p>
@@ -52,6 +58,7 @@ public class ElementChangeRecorder
     private Map<IElement, ListItem> newPositions;
     private Set<IElement> added;
     private Set<IElement> removed;
+    private Set<IElement> deferred;
 
     private boolean recording;
 
@@ -251,6 +258,7 @@ public class ElementChangeRecorder
         newPositions.put(inputElement, new ListItem(null, null));
         added = new HashSet<IElement>(5);
         removed = new HashSet<IElement>(5);
+        deferred = new HashSet<IElement>(5);
     }
 
     /*
@@ -273,6 +281,14 @@ public class ElementChangeRecorder
         if (depth == maxDepth)
             return;
 
+        if (body instanceof SourceElementBody
+            && ((SourceElementBody)body).hasDeferredChildren())
+        {
+            // the children have not been built, so no one has seen them
+            deferred.add(element);
+            return;
+        }
+
         IElement[] children =
             ((IElementImplExtension)element).getChildrenFromBody_(body);
 
@@ -289,7 +305,7 @@ public class ElementChangeRecorder
      */
     private void recordNewPositions(IElement newElement, int depth)
     {
-        if (depth == maxDepth)
+        if (depth == maxDepth || deferred.contains(newElement))
             return;
 
         IElement[] children;
@@ -365,6 +381,9 @@ public class ElementChangeRecorder
             if (oldBody != newBody)
                 findContentChange(oldBody, newBody, element);
 
+            if (deferred.contains(element))
+                return;
+
             for (IElement child : ((IElementImplExtension)element).getChildrenFromBody_(
                 newBody))
             {
@@ -401,7 +420,7 @@ public class ElementChangeRecorder
             deltaBuilder.changed(element, flags);
         }
 
-        if (depth == maxDepth)
+        if (depth == maxDepth || deferred.contains(element))
             return;
 
         IElement[] children;
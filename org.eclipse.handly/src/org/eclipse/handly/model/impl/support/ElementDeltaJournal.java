@@ -0,0 +1,724 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.model.impl.support;
+
+import static org.eclipse.handly.model.IElementDeltaConstants.F_MOVED_FROM;
+import static org.eclipse.handly.model.IElementDeltaConstants.F_MOVED_TO;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.handly.context.IContext;
+import org.eclipse.handly.internal.Activator;
+import org.eclipse.handly.model.ElementDeltas;
+import org.eclipse.handly.model.Elements;
+import org.eclipse.handly.model.IElement;
+import org.eclipse.handly.model.IElementChangeEvent;
+import org.eclipse.handly.model.IElementChangeListener;
+import org.eclipse.handly.model.IElementDelta;
+import org.eclipse.handly.model.IElementHandleFactory;
+
+/**
+ * An append-only journal of element change events. Each recorded event
+ * is assigned a monotonically increasing sequence number, which allows
+ * consumers that fall behind (e.g., after a restart) to catch up
+ * incrementally by {@link #readSince(long, Consumer) reading} the events
+ * recorded since the last sequence number they have seen.
+ * <p>
+ * The journal is fed by registering it as an element change listener
+ * with the model's {@link NotificationManager}. Delta trees are stored
+ * in a compact binary form that includes element handle mementos, delta
+ * kinds and flags, and moved from/to elements. Marker deltas and resource
+ * deltas are not stored. Deltas for elements that are unable to provide
+ * a {@link Elements#getHandleMemento(IElement) handle memento} are omitted.
+ * </p>
+ * <p>
+ * The journal is stored as a sequence of segment files in a given directory.
+ * When the current segment exceeds the {@link #setMaxSegmentSize(long)
+ * maximum segment size}, a new segment is started; the oldest segments
+ * are deleted when there are more than the {@link #setMaxSegmentCount(int)
+ * maximum number} of segments.
+ * </p>
+ * <p>
+ * An instance of this class is safe for use by multiple threads.
+ * </p>
+ *
+ * @since 1.5
+ */
+public class ElementDeltaJournal
+    implements IElementChangeListener
+{
+    /**
+     * The default maximum size of a journal segment, in bytes.
+     */
+    public static final long DEFAULT_MAX_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * The default maximum number of journal segments.
+     */
+    public static final int DEFAULT_MAX_SEGMENT_COUNT = 64;
+
+    private static final String SEGMENT_SUFFIX = ".journal"; //$NON-NLS-1$
+    private static final int MAGIC = 0x48444a31; // "HDJ1"
+    private static final int HEADER_SIZE = 4;
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    private static final int KIND_MASK = 0x0f;
+    private static final int HAS_MOVED_FROM = 0x10;
+    private static final int HAS_MOVED_TO = 0x20;
+
+    private final Path directory;
+    private final IElementHandleFactory handleFactory;
+    private final ElementDelta.Factory deltaFactory;
+    private long maxSegmentSize = DEFAULT_MAX_SEGMENT_SIZE;
+    private int maxSegmentCount = DEFAULT_MAX_SEGMENT_COUNT;
+    private final List<Long> segments = new ArrayList<>(); // first sequence numbers, ascending
+    private long lastSequence;
+    private OutputStream out;
+    private long segmentSize;
+    private boolean closed;
+
+    /**
+     * Opens a journal stored in the given directory, creating the directory
+     * if necessary. The element handle factory and the delta factory are
+     * obtained from the given model context.
+     *
+     * @param directory the journal directory (not <code>null</code>)
+     * @param modelContext the model context (not <code>null</code>). It must
+     *  provide an {@link IElementHandleFactory}; if it provides no {@link
+     *  ElementDelta.Factory}, deltas read from the journal will be instances
+     *  of <code>ElementDelta</code>
+     * @throws CoreException if the journal could not be opened
+     */
+    public ElementDeltaJournal(Path directory, IContext modelContext)
+        throws CoreException
+    {
+        if (directory == null)
+            throw new IllegalArgumentException();
+        this.directory = directory;
+        this.handleFactory = modelContext.get(IElementHandleFactory.class);
+        if (handleFactory == null)
+            throw new IllegalArgumentException();
+        ElementDelta.Factory factory = modelContext.get(
+            ElementDelta.Factory.class);
+        if (factory == null)
+            factory = element -> new ElementDelta(element);
+        this.deltaFactory = factory;
+        try
+        {
+            open();
+        }
+        catch (IOException e)
+        {
+            throw newCoreException(e);
+        }
+    }
+
+    /**
+     * Returns the maximum size of a journal segment, in bytes.
+     *
+     * @return the maximum segment size
+     */
+    public synchronized long getMaxSegmentSize()
+    {
+        return maxSegmentSize;
+    }
+
+    /**
+     * Sets the maximum size of a journal segment, in bytes. When the current
+     * segment exceeds this size, a new segment is started.
+     *
+     * @param maxSegmentSize the maximum segment size (&gt; 0)
+     */
+    public synchronized void setMaxSegmentSize(long maxSegmentSize)
+    {
+        if (maxSegmentSize <= 0)
+            throw new IllegalArgumentException();
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+    /**
+     * Returns the maximum number of journal segments.
+     *
+     * @return the maximum segment count
+     */
+    public synchronized int getMaxSegmentCount()
+    {
+        return maxSegmentCount;
+    }
+
+    /**
+     * Sets the maximum number of journal segments. When a new segment is
+     * started and the number of segments exceeds this value, the oldest
+     * segments are deleted.
+     *
+     * @param maxSegmentCount the maximum segment count (&gt; 0)
+     */
+    public synchronized void setMaxSegmentCount(int maxSegmentCount)
+    {
+        if (maxSegmentCount <= 0)
+            throw new IllegalArgumentException();
+        this.maxSegmentCount = maxSegmentCount;
+    }
+
+    /**
+     * Returns the sequence number of the last event recorded in this journal,
+     * or <code>0</code> if no event has ever been recorded.
+     *
+     * @return the last sequence number
+     */
+    public synchronized long getLastSequence()
+    {
+        return lastSequence;
+    }
+
+    /**
+     * Returns the sequence number of the oldest event still available in this
+     * journal. If no events are available, returns the sequence number that
+     * will be assigned to the next recorded event.
+     *
+     * @return the first available sequence number
+     */
+    public synchronized long getFirstSequence()
+    {
+        if (segments.isEmpty())
+            return lastSequence + 1;
+        return segments.get(0);
+    }
+
+    /**
+     * Records the given event in this journal. Failures are logged.
+     */
+    @Override
+    public void elementChanged(IElementChangeEvent event)
+    {
+        try
+        {
+            append(event);
+        }
+        catch (IOException e)
+        {
+            Activator.logError(e);
+        }
+    }
+
+    /**
+     * Reads the events recorded in this journal after the given sequence
+     * number, in order, and passes them to the given consumer. The delivered
+     * events are instances of {@link Record}.
+     * <p>
+     * If some of the requested events are no longer available (i.e.,
+     * <code>sequence &lt; getFirstSequence() - 1</code>), this method
+     * returns <code>false</code> without reading any events; the consumer
+     * should then fall back to a full rescan of the model.
+     * </p>
+     *
+     * @param sequence the sequence number of the last event the consumer
+     *  has seen, or <code>0</code> to read all available events
+     * @param consumer the event consumer (not <code>null</code>)
+     * @return <code>true</code> if all events recorded after the given
+     *  sequence number have been delivered, and <code>false</code> if
+     *  some of them are no longer available
+     * @throws CoreException if the journal could not be read, or if it is
+     *  corrupt, i.e. some of the requested events could not be read back.
+     *  Some events may already have been delivered to the consumer in that
+     *  case; the consumer should then fall back to a full rescan of the model
+     */
+    public boolean readSince(long sequence, Consumer<? super Record> consumer)
+        throws CoreException
+    {
+        if (consumer == null)
+            throw new IllegalArgumentException();
+        List<Long> segmentsToRead;
+        long last;
+        synchronized (this)
+        {
+            if (sequence >= lastSequence)
+                return true;
+            if (sequence < getFirstSequence() - 1)
+                return false;
+            try
+            {
+                if (out != null)
+                    out.flush();
+            }
+            catch (IOException e)
+            {
+                throw newCoreException(e);
+            }
+            segmentsToRead = new ArrayList<>();
+            for (int i = 0, n = segments.size(); i < n; i++)
+            {
+                long first = segments.get(i);
+                long next = (i + 1 < n) ? segments.get(i + 1) : Long.MAX_VALUE;
+                if (next > sequence + 1)
+                    segmentsToRead.add(first);
+            }
+            last = lastSequence;
+        }
+        long expected = sequence + 1; // the next sequence number to deliver
+        try
+        {
+            for (long first : segmentsToRead)
+            {
+                if (expected > last)
+                    break;
+                try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(segmentPath(
+                        first)))))
+                {
+                    readHeader(in);
+                    byte[] payload;
+                    // records after the last one are not read, since they
+                    // may still be being written
+                    while (expected <= last && (payload = readRecord(
+                        in)) != null)
+                    {
+                        long recordSequence = readSequence(payload);
+                        if (recordSequence < expected)
+                            continue;
+                        if (recordSequence > expected)
+                            throw newCorruptionException(expected);
+                        expected++;
+                        Record record = decode(payload);
+                        if (record != null)
+                            consumer.accept(record);
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw newCoreException(e);
+        }
+        if (expected <= last)
+            throw newCorruptionException(expected);
+        return true;
+    }
+
+    /**
+     * Closes this journal. Events received after the journal has been closed
+     * are ignored.
+     *
+     * @throws CoreException if the journal could not be closed properly
+     */
+    public synchronized void close() throws CoreException
+    {
+        try
+        {
+            closeSegment();
+        }
+        catch (IOException e)
+        {
+            throw newCoreException(e);
+        }
+        closed = true;
+    }
+
+    private synchronized void append(IElementChangeEvent event)
+        throws IOException
+    {
+        if (closed)
+            return;
+        long sequence = lastSequence + 1;
+        byte[] payload = encode(sequence, event);
+        if (payload.length > MAX_RECORD_SIZE)
+            throw new IOException(
+                "Element change event is too large to be journaled"); //$NON-NLS-1$
+        if (out == null)
+            openSegment(sequence);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        DataOutputStream dout = new DataOutputStream(out);
+        dout.writeInt(payload.length);
+        dout.write(payload);
+        dout.writeInt((int)crc.getValue());
+        dout.flush();
+        lastSequence = sequence;
+        segmentSize += payload.length + 8;
+        if (segmentSize >= maxSegmentSize)
+            closeSegment();
+    }
+
+    private void open() throws IOException
+    {
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+            "*" + SEGMENT_SUFFIX)) //$NON-NLS-1$
+        {
+            for (Path path : stream)
+            {
+                String name = path.getFileName().toString();
+                try
+                {
+                    segments.add(Long.parseLong(name.substring(0,
+                        name.length() - SEGMENT_SUFFIX.length())));
+                }
+                catch (NumberFormatException e)
+                {
+                    // not a segment
+                }
+            }
+        }
+        Collections.sort(segments);
+        while (!segments.isEmpty())
+        {
+            long first = segments.get(segments.size() - 1);
+            long last = recoverSegment(first);
+            if (last >= first)
+            {
+                lastSequence = last;
+                return;
+            }
+            // empty segment
+            Files.deleteIfExists(segmentPath(first));
+            segments.remove(segments.size() - 1);
+            lastSequence = first - 1;
+        }
+    }
+
+    /*
+     * Scans the given segment, truncates a partially written or otherwise
+     * invalid record at the tail (if any) together with everything after it,
+     * and returns the last sequence number in the segment.
+     */
+    private long recoverSegment(long first) throws IOException
+    {
+        Path path = segmentPath(first);
+        long last = first - 1;
+        long validSize = HEADER_SIZE;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+            Files.newInputStream(path))))
+        {
+            readHeader(in);
+            byte[] payload;
+            while ((payload = readRecord(in)) != null)
+            {
+                last = readSequence(payload);
+                validSize += payload.length + 8;
+            }
+        }
+        catch (IOException e)
+        {
+            if (last < first)
+                return last; // treat as empty
+        }
+        try (FileChannel channel = FileChannel.open(path,
+            StandardOpenOption.WRITE))
+        {
+            if (channel.size() > validSize)
+                channel.truncate(validSize);
+        }
+        return last;
+    }
+
+    private void openSegment(long first) throws IOException
+    {
+        segments.add(first);
+        out = new BufferedOutputStream(Files.newOutputStream(segmentPath(
+            first), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+        new DataOutputStream(out).writeInt(MAGIC);
+        segmentSize = HEADER_SIZE;
+        while (segments.size() > maxSegmentCount)
+        {
+            Files.deleteIfExists(segmentPath(segments.remove(0)));
+        }
+    }
+
+    private void closeSegment() throws IOException
+    {
+        if (out != null)
+        {
+            try
+            {
+                out.close();
+            }
+            finally
+            {
+                out = null;
+            }
+        }
+    }
+
+    private Path segmentPath(long first)
+    {
+        return directory.resolve(String.format("%019d", first) //$NON-NLS-1$
+            + SEGMENT_SUFFIX);
+    }
+
+    private static void readHeader(DataInputStream in) throws IOException
+    {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a journal segment"); //$NON-NLS-1$
+    }
+
+    /*
+     * Returns the next record payload, or null if the end of the segment
+     * has been reached. Throws an IOException if the next record is
+     * incomplete or invalid.
+     */
+    private static byte[] readRecord(DataInputStream in) throws IOException
+    {
+        int length;
+        try
+        {
+            length = in.readInt();
+        }
+        catch (EOFException e)
+        {
+            return null;
+        }
+        if (length < 0 || length > MAX_RECORD_SIZE)
+            throw new IOException("Invalid journal record length"); //$NON-NLS-1$
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        int checksum = in.readInt();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int)crc.getValue() != checksum)
+            throw new IOException("Journal record checksum mismatch"); //$NON-NLS-1$
+        return payload;
+    }
+
+    private byte[] encode(long sequence, IElementChangeEvent event)
+        throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream dout = new DataOutputStream(bytes);
+        writeVarLong(dout, sequence);
+        writeVarLong(dout, event.getType());
+        writeDeltas(dout, event.getDeltas(), new HashMap<>());
+        dout.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void encodeDelta(DataOutputStream out, IElementDelta delta,
+        Map<String, Integer> strings) throws IOException
+    {
+        writeString(out, Elements.getHandleMemento(ElementDeltas.getElement(
+            delta)), strings);
+        long flags = ElementDeltas.getFlags(delta);
+        String movedFrom = null, movedTo = null;
+        if ((flags & F_MOVED_FROM) != 0)
+            movedFrom = memento(ElementDeltas.getMovedFromElement(delta));
+        if ((flags & F_MOVED_TO) != 0)
+            movedTo = memento(ElementDeltas.getMovedToElement(delta));
+        int header = ElementDeltas.getKind(delta) & KIND_MASK;
+        if (movedFrom != null)
+            header |= HAS_MOVED_FROM;
+        if (movedTo != null)
+            header |= HAS_MOVED_TO;
+        out.writeByte(header);
+        writeVarLong(out, flags);
+        if (movedFrom != null)
+            writeString(out, movedFrom, strings);
+        if (movedTo != null)
+            writeString(out, movedTo, strings);
+        writeDeltas(out, ElementDeltas.getAffectedChildren(delta), strings);
+    }
+
+    private static void writeDeltas(DataOutputStream out,
+        IElementDelta[] deltas, Map<String, Integer> strings)
+        throws IOException
+    {
+        List<IElementDelta> encodable = new ArrayList<>(deltas.length);
+        for (IElementDelta delta : deltas)
+        {
+            if (memento(ElementDeltas.getElement(delta)) != null)
+                encodable.add(delta);
+        }
+        writeVarLong(out, encodable.size());
+        for (IElementDelta delta : encodable)
+        {
+            encodeDelta(out, delta, strings);
+        }
+    }
+
+    private static String memento(IElement element)
+    {
+        if (element == null)
+            return null;
+        return Elements.getHandleMemento(element);
+    }
+
+    /*
+     * Returns null if none of the deltas in the record could be recreated.
+     */
+    private Record decode(byte[] payload) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+            payload));
+        long sequence = readVarLong(in);
+        int type = (int)readVarLong(in);
+        int count = (int)readVarLong(in);
+        List<String> strings = new ArrayList<>();
+        List<IElementDelta> deltas = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            ElementDelta delta = decodeDelta(in, strings);
+            if (delta != null)
+                deltas.add(delta);
+        }
+        if (deltas.isEmpty())
+            return null;
+        return new Record(sequence, type, deltas.toArray(
+            ElementDeltas.EMPTY_ARRAY));
+    }
+
+    private ElementDelta decodeDelta(DataInputStream in, List<String> strings)
+        throws IOException
+    {
+        IElement element = handleFactory.createFromHandleMemento(readString(
+            in, strings));
+        int header = in.readUnsignedByte();
+        long flags = readVarLong(in);
+        IElement movedFrom = null, movedTo = null;
+        if ((header & HAS_MOVED_FROM) != 0)
+            movedFrom = handleFactory.createFromHandleMemento(readString(in,
+                strings));
+        if ((header & HAS_MOVED_TO) != 0)
+            movedTo = handleFactory.createFromHandleMemento(readString(in,
+                strings));
+        int childCount = (int)readVarLong(in);
+        List<ElementDelta> children = new ArrayList<>(childCount);
+        for (int i = 0; i < childCount; i++)
+        {
+            ElementDelta child = decodeDelta(in, strings);
+            if (child != null)
+                children.add(child);
+        }
+        if (element == null)
+            return null; // consume the subtree, but drop it
+        ElementDelta delta = deltaFactory.newDelta(element);
+        delta.setKind_(header & KIND_MASK);
+        delta.setFlags_(flags);
+        delta.setMovedFromElement_(movedFrom);
+        delta.setMovedToElement_(movedTo);
+        delta.setAffectedChildren_(children.toArray(
+            new ElementDelta[children.size()]));
+        return delta;
+    }
+
+    private static long readSequence(byte[] payload) throws IOException
+    {
+        return readVarLong(new DataInputStream(new ByteArrayInputStream(
+            payload)));
+    }
+
+    private static void writeString(DataOutputStream out, String s,
+        Map<String, Integer> strings) throws IOException
+    {
+        Integer index = strings.get(s);
+        if (index != null)
+        {
+            writeVarLong(out, index + 1);
+            return;
+        }
+        strings.put(s, strings.size());
+        writeVarLong(out, 0);
+        out.writeUTF(s);
+    }
+
+    private static String readString(DataInputStream in, List<String> strings)
+        throws IOException
+    {
+        int ref = (int)readVarLong(in);
+        if (ref > 0)
+            return strings.get(ref - 1);
+        String s = in.readUTF();
+        strings.add(s);
+        return s;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value)
+        throws IOException
+    {
+        while ((value & ~0x7fL) != 0)
+        {
+            out.writeByte((int)((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int)value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = in.readUnsignedByte();
+            value |= (long)(b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed journal record"); //$NON-NLS-1$
+    }
+
+    private static CoreException newCoreException(IOException e)
+    {
+        return new CoreException(Activator.createErrorStatus(e.getMessage(),
+            e));
+    }
+
+    private static CoreException newCorruptionException(long sequence)
+    {
+        return new CoreException(Activator.createErrorStatus(
+            "Corrupt journal: could not read event " + sequence, null)); //$NON-NLS-1$
+    }
+
+    /**
+     * An element change event read from the journal.
+     */
+    public static final class Record
+        extends ElementChangeEvent
+    {
+        private final long sequence;
+
+        private Record(long sequence, int type, IElementDelta[] deltas)
+        {
+            super(type, deltas);
+            this.sequence = sequence;
+        }
+
+        /**
+         * Returns the sequence number of this event.
+         *
+         * @return the sequence number
+         */
+        public long getSequence()
+        {
+            return sequence;
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014, 2018 1C-Soft LLC and others.
+ * Copyright (c) 2014, 2020 1C-Soft LLC and others.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -19,12 +19,14 @@ import static org.eclipse.handly.model.impl.IElementImplExtension.CloseHint.PARE
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.handly.buffer.IBuffer;
 import org.eclipse.handly.context.IContext;
 import org.eclipse.handly.model.IElement;
 import org.eclipse.handly.model.ISourceFile;
 import org.eclipse.handly.model.impl.IElementImplExtension;
+import org.eclipse.handly.snapshot.ISnapshot;
 
 /**
  * Manages element handle/body relationships for a Handly-based model.
@@ -44,8 +46,10 @@ public class ElementManager
     // Temporary cache of newly opened elements
     private ThreadLocal<TemporaryCache> temporaryCache = new ThreadLocal<>();
 
-    private Map<ISourceFileImplSupport, WorkingCopyInfo> workingCopyInfos =
-        new HashMap<>();
+    // Accessed without the element manager lock; see putWorkingCopyInfoIfAbsent
+    // and releaseWorkingCopyInfo for the rules of reference counting
+    private final ConcurrentHashMap<ISourceFileImplSupport,
+        WorkingCopyInfo> workingCopyInfos = new ConcurrentHashMap<>();
 
     /**
      * Constructs an element manager with the given body cache.
@@ -63,7 +67,6 @@ public class ElementManager
 
     /**
      * Returns the working copies currently managed by this manager.
-     * Performs atomically.
      * <p>
      * Note that the result may immediately become stale if other threads can
      * create or destroy working copies that are managed by this manager.
@@ -72,7 +75,7 @@ public class ElementManager
      * @return the working copies currently managed by this manager
      *  (never <code>null</code>)
      */
-    public final synchronized ISourceFile[] getWorkingCopies()
+    public final ISourceFile[] getWorkingCopies()
     {
         return workingCopyInfos.keySet().toArray(NO_WORKING_COPIES);
     }
@@ -227,6 +230,89 @@ public class ElementManager
         }
     }
 
+    /**
+     * Builds the {@link SourceElementBody#setDeferredChildren(
+     * IDeferredChildrenBuilder) deferred} children of the given element
+     * and registers their bodies in the same cache as the given body of
+     * the element: the temporary cache, or the body cache associated with
+     * this manager. Does nothing if the given body has no deferred children.
+     * <p>
+     * The children are built outside the element manager lock; if another
+     * thread happens to build the children of the same body concurrently,
+     * only one of the results is installed. Installs the result atomically.
+     * </p>
+     *
+     * @param element the element whose children are to be built
+     *  (not <code>null</code>)
+     * @param body a body of the element (not <code>null</code>)
+     */
+    void materialize(IElementImplSupport element, Object body)
+    {
+        if (!(body instanceof SourceElementBody))
+            return;
+        SourceElementBody sourceBody = (SourceElementBody)body;
+        IDeferredChildrenBuilder builder = sourceBody.getDeferredChildren();
+        if (builder == null)
+            return;
+
+        Map<IElement, Object> newElements = new HashMap<>();
+        IElement[] children = builder.buildChildren(newElements);
+        ISnapshot snapshot = sourceBody.getSnapshot();
+        if (snapshot != null)
+        {
+            for (IElement child : children)
+            {
+                Object childBody = newElements.get(child);
+                if (childBody instanceof SourceElementBody)
+                    ((SourceElementBody)childBody).setSnapshot(snapshot,
+                        newElements);
+            }
+        }
+
+        synchronized (this)
+        {
+            if (sourceBody.getDeferredChildren() != builder)
+                return; // already built by another thread
+
+            TemporaryCache tempCache = temporaryCache.get();
+            if (tempCache == null || !tempCache.putAll(element, body,
+                newElements))
+            {
+                // a body that is not registered (any more) gets its children,
+                // but their bodies are not cached, just like for a closed body
+                if (cache.peek(element) == body)
+                    cache.putAll(newElements);
+            }
+            // the children must be set before the deferral is canceled
+            sourceBody.setChildren(children);
+            sourceBody.setDeferredChildren(null);
+        }
+    }
+
+    /**
+     * Informs the body cache associated with this manager that a batch
+     * of model operations is about to begin. Performs atomically.
+     *
+     * @see IBodyCache#beginBatch()
+     * @see #endBatch()
+     */
+    synchronized void beginBatch()
+    {
+        cache.beginBatch();
+    }
+
+    /**
+     * Informs the body cache associated with this manager that a batch
+     * of model operations has ended. Performs atomically.
+     *
+     * @see IBodyCache#endBatch()
+     * @see #beginBatch()
+     */
+    synchronized void endBatch()
+    {
+        cache.endBatch();
+    }
+
     void pushTemporaryCache(Map<IElement, Object> newElements)
     {
         TemporaryCache parent = temporaryCache.get();
@@ -250,6 +336,12 @@ public class ElementManager
      * count of the working copy info associated with the source file. Performs
      * atomically.
      * <p>
+     * Acquiring an existing working copy info is lock-free. Associating
+     * a new working copy info with the source file is done under the element
+     * manager lock, so that it cannot interleave with the removal of a
+     * previous working copy for the same source file.
+     * </p>
+     * <p>
      * Each successful call to this method must ultimately be followed
      * by exactly one call to <code>releaseWorkingCopyInfo</code>.
      * </p>
@@ -269,26 +361,33 @@ public class ElementManager
             throw new IllegalArgumentException();
         if (info == null)
             throw new IllegalArgumentException();
+        WorkingCopyInfo oldInfo = getWorkingCopyInfo(sourceFile);
+        if (oldInfo != null)
+            return oldInfo;
         IBuffer buffer = info.getBuffer();
         buffer.addRef();
+        WorkingCopyInfo[] result = new WorkingCopyInfo[1];
         boolean releaseBuffer = true;
         try
         {
             synchronized (this)
             {
-                WorkingCopyInfo oldInfo = workingCopyInfos.get(sourceFile);
-                if (oldInfo != null)
-                    oldInfo.refCount++;
-                else
+                workingCopyInfos.compute(sourceFile, (key, value) ->
                 {
-                    if (info.refCount != 0)
+                    // note: the last reference to a value is released along
+                    // with the removal of its entry, so the value is in use
+                    if (value != null && value.tryAddRef())
+                    {
+                        result[0] = value;
+                        return value;
+                    }
+                    if (!info.initRefCount())
                         throw new IllegalArgumentException();
-                    workingCopyInfos.put(sourceFile, info);
-                    info.refCount = 1;
-                    releaseBuffer = false;
-                }
-                return oldInfo;
+                    return info;
+                });
             }
+            releaseBuffer = (result[0] != null);
+            return result[0];
         }
         finally
         {
@@ -300,7 +399,7 @@ public class ElementManager
     /**
      * Returns the working copy info for the given source file, incrementing
      * the reference count for the info. Returns <code>null</code> if the
-     * source file has no working copy info. Performs atomically.
+     * source file has no working copy info. Performs atomically; lock-free.
      * <p>
      * Each successful call to this method that did not return
      * <code>null</code> must ultimately be followed by exactly
@@ -312,25 +411,25 @@ public class ElementManager
      *  or <code>null</code> if the source file has no working copy info
      * @see #releaseWorkingCopyInfo(ISourceFileImplSupport)
      */
-    synchronized WorkingCopyInfo getWorkingCopyInfo(
-        ISourceFileImplSupport sourceFile)
+    WorkingCopyInfo getWorkingCopyInfo(ISourceFileImplSupport sourceFile)
     {
         WorkingCopyInfo info = workingCopyInfos.get(sourceFile);
-        if (info != null)
-            info.refCount++;
-        return info;
+        if (info != null && info.tryAddRef())
+            return info;
+        // if the reference count of the info has dropped to zero,
+        // the info is being removed; consider it gone
+        return null;
     }
 
     /**
      * Returns the working copy info for the given source file without
-     * incrementing the reference count for the info.
+     * incrementing the reference count for the info. Lock-free.
      *
      * @param sourceFile the source file whose working copy info is to be returned
      * @return the working copy info for the given source file,
      *  or <code>null</code> if the source file has no working copy info
      */
-    synchronized WorkingCopyInfo peekAtWorkingCopyInfo(
-        ISourceFileImplSupport sourceFile)
+    WorkingCopyInfo peekAtWorkingCopyInfo(ISourceFileImplSupport sourceFile)
     {
         return workingCopyInfos.get(sourceFile);
     }
@@ -340,6 +439,15 @@ public class ElementManager
      * the given source file. If there are no remaining references, removes the
      * working copy info and releases the working copy buffer. Has no effect if
      * there was no working copy info for the source file. Performs atomically.
+     * <p>
+     * Releasing a reference other than the last one is lock-free. Releasing
+     * the last reference atomically removes the working copy info and then
+     * {@link ISourceFileImplSupport#remove_(IContext) removes} the source
+     * file under the element manager lock. Hence, the source file is no
+     * longer a working copy while it is being removed, and a new working
+     * copy info cannot be associated with the source file until the removal
+     * is complete.
+     * </p>
      *
      * @param sourceFile the source file whose working copy info is to be released
      * @return the working copy info for the given source file,
@@ -347,26 +455,35 @@ public class ElementManager
      */
     WorkingCopyInfo releaseWorkingCopyInfo(ISourceFileImplSupport sourceFile)
     {
-        WorkingCopyInfo infoToDispose = null;
+        WorkingCopyInfo info = workingCopyInfos.get(sourceFile);
+        if (info == null)
+            return null;
+        if (info.tryReleaseNonLast())
+            return info;
+        WorkingCopyInfo[] result = new WorkingCopyInfo[1];
+        boolean[] dispose = new boolean[1];
         try
         {
             synchronized (this)
             {
-                WorkingCopyInfo info = workingCopyInfos.get(sourceFile);
-                if (info != null && --info.refCount == 0)
+                workingCopyInfos.computeIfPresent(sourceFile, (key, value) ->
                 {
-                    infoToDispose = info;
-
-                    workingCopyInfos.remove(sourceFile);
+                    result[0] = value;
+                    if (value.release() > 0)
+                        return value;
+                    dispose[0] = true;
+                    return null;
+                });
+                if (dispose[0])
                     sourceFile.remove_(EMPTY_CONTEXT);
-                }
-                return info;
             }
+            return result[0];
         }
         finally
         {
-            if (infoToDispose != null)
+            if (dispose[0])
             {
+                WorkingCopyInfo infoToDispose = result[0];
                 IBuffer buffer = infoToDispose.getBuffer();
                 try
                 {
@@ -399,5 +516,21 @@ public class ElementManager
                 body = parent.get(element);
             return body;
         }
+
+        /*
+         * Puts the given element handle/body relationships into the level
+         * of this cache that contains the given body for the given element.
+         * Returns false if there is no such level.
+         */
+        boolean putAll(IElement element, Object body,
+            Map<IElement, Object> elements)
+        {
+            if (newElements.get(element) == body)
+            {
+                newElements.putAll(elements);
+                return true;
+            }
+            return parent != null && parent.putAll(element, body, elements);
+        }
     }
 }
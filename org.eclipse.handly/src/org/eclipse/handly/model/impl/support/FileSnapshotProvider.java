@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.model.impl.support;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.handly.snapshot.ISnapshot;
+import org.eclipse.handly.snapshot.ISnapshotProvider;
+import org.eclipse.handly.snapshot.NonExpiringSnapshot;
+
+/**
+ * A provider of file snapshots that read the file contents on demand.
+ * If the contents could not be read because of an I/O error,
+ * {@link #getNonExpiringSnapshot()} reports the error rather than
+ * retrying in vain.
+ *
+ * @param <T> the type of snapshots
+ */
+final class FileSnapshotProvider<T extends ISnapshot>
+    implements ISnapshotProvider
+{
+    private final Supplier<T> snapshotSupplier;
+    private final Function<? super T, IStatus> statusFunction;
+
+    /**
+     * Constructs a new file snapshot provider.
+     *
+     * @param snapshotSupplier takes a new snapshot (not <code>null</code>)
+     * @param statusFunction returns the status of reading the contents
+     *  of a given snapshot (not <code>null</code>)
+     */
+    FileSnapshotProvider(Supplier<T> snapshotSupplier,
+        Function<? super T, IStatus> statusFunction)
+    {
+        if (snapshotSupplier == null)
+            throw new IllegalArgumentException();
+        if (statusFunction == null)
+            throw new IllegalArgumentException();
+        this.snapshotSupplier = snapshotSupplier;
+        this.statusFunction = statusFunction;
+    }
+
+    @Override
+    public T getSnapshot()
+    {
+        return snapshotSupplier.get();
+    }
+
+    @Override
+    public NonExpiringSnapshot getNonExpiringSnapshot()
+    {
+        return new NonExpiringSnapshot(new ISnapshotProvider()
+        {
+            private T lastSnapshot;
+
+            @Override
+            public ISnapshot getSnapshot()
+            {
+                // the last snapshot has expired: fail if it could not be read
+                if (lastSnapshot != null)
+                {
+                    IStatus status = statusFunction.apply(lastSnapshot);
+                    if (!status.isOK())
+                        throw new IllegalStateException(new CoreException(
+                            status));
+                }
+                return lastSnapshot = snapshotSupplier.get();
+            }
+        });
+    }
+}
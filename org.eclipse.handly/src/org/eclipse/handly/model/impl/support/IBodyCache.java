@@ -80,4 +80,38 @@ public interface IBodyCache
      * @param element the element whose body is to be removed from the cache
      */
     void remove(IElement element);
+
+    /**
+     * Informs this cache that a batch of model operations is about to begin.
+     * Calls to this method may be nested; each call must ultimately be followed
+     * by exactly one call to {@link #endBatch()}.
+     * <p>
+     * Caches that can evict bodies on overflow are encouraged to defer
+     * evictions until the end of the outermost batch, within a reasonable
+     * memory limit.
+     * </p>
+     * <p>
+     * This implementation does nothing.
+     * </p>
+     *
+     * @since 1.5
+     * @see ElementCache#deferEviction()
+     */
+    default void beginBatch()
+    {
+    }
+
+    /**
+     * Informs this cache that a batch of model operations has ended.
+     * <p>
+     * This implementation does nothing.
+     * </p>
+     *
+     * @since 1.5
+     * @see #beginBatch()
+     * @see ElementCache#resumeEviction()
+     */
+    default void endBatch()
+    {
+    }
 }
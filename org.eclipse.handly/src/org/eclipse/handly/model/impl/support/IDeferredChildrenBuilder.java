@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.model.impl.support;
+
+import java.util.Map;
+
+import org.eclipse.handly.model.IElement;
+
+/**
+ * Builds the children of a source element on demand, the first time they
+ * are needed. Lets a structure builder skip the inner structure of a source
+ * construct when building the structure of a source file.
+ * <p>
+ * A deferred children builder must capture everything it needs to build
+ * the children, e.g. the corresponding AST node or the source text and range
+ * to re-parse. It may be invoked in any thread, at any time while the body
+ * it has been {@link SourceElementBody#setDeferredChildren(
+ * IDeferredChildrenBuilder) set} on is in use. It may be invoked more than
+ * once for the same body if multiple threads need the children concurrently,
+ * in which case all but one of the results will be discarded.
+ * </p>
+ *
+ * @since 1.5
+ * @see SourceElementBody#setDeferredChildren(IDeferredChildrenBuilder)
+ */
+public interface IDeferredChildrenBuilder
+{
+    /**
+     * Creates and initializes bodies for each of the children of the source
+     * element and their descendants. Uses the given map to associate the
+     * created bodies with their respective elements. The bodies for the
+     * children may in turn {@link SourceElementBody#setDeferredChildren(
+     * IDeferredChildrenBuilder) defer} building their own children.
+     * <p>
+     * Implementations must not throw exceptions; if the children cannot be
+     * built, an empty array should be returned.
+     * </p>
+     *
+     * @param newElements the map to populate with the created bodies
+     *  (never <code>null</code>)
+     * @return the children of the source element (not <code>null</code>)
+     */
+    IElement[] buildChildren(Map<IElement, Object> newElements);
+}
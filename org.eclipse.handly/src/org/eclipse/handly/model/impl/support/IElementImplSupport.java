@@ -38,6 +38,7 @@ import org.eclipse.handly.model.Elements;
 import org.eclipse.handly.model.IElement;
 import org.eclipse.handly.model.IModel;
 import org.eclipse.handly.model.impl.IElementImplExtension;
+import org.eclipse.handly.model.impl.support.ReconcileProfile.Phase;
 import org.eclipse.handly.util.IndentPolicy;
 import org.eclipse.handly.util.Property;
 import org.eclipse.handly.util.ToStringOptions.FormatStyle;
@@ -303,7 +304,11 @@ public interface IElementImplSupport
             }
 
             if (context.getOrDefault(FORCE_OPEN))
+            {
+                long startTime = System.nanoTime();
                 elementManager.put(this, newElements);
+                ReconcileProfiler.record(context, Phase.PUT, startTime);
+            }
             else
             {
                 Object existingBody = elementManager.putIfAbsent(this,
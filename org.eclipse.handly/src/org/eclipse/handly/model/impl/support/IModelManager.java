@@ -12,7 +12,12 @@
  *******************************************************************************/
 package org.eclipse.handly.model.impl.support;
 
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.ICoreRunnable;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.handly.model.IModel;
+import org.eclipse.handly.model.Models;
 
 /**
  * The central point for an element to access information and services
@@ -38,6 +43,61 @@ public interface IModelManager
      */
     ElementManager getElementManager();
 
+    /**
+     * Runs the given action as a batch of model operations. Within the batch,
+     * element change events fired on the current thread are accumulated and
+     * merged, so that listeners are notified once at the end of the outermost
+     * batch; eviction of bodies from the body cache is deferred until the end
+     * of the outermost batch, within the memory limit imposed by the cache.
+     * Batches may be nested.
+     * <p>
+     * This implementation uses the element manager and, if it is an instance
+     * of {@link NotificationManager}, the notification manager registered in
+     * the model context.
+     * </p>
+     *
+     * @param action the action to run (not <code>null</code>)
+     * @param monitor a progress monitor, or <code>null</code>
+     *  if progress reporting is not desired. The caller must not rely on
+     *  {@link IProgressMonitor#done()} having been called by the receiver
+     * @throws CoreException if the action fails
+     * @throws OperationCanceledException if the action is canceled
+     * @since 1.5
+     * @see NotificationManager#beginBatch()
+     * @see IBodyCache#beginBatch()
+     */
+    default void runInBatch(ICoreRunnable action, IProgressMonitor monitor)
+        throws CoreException
+    {
+        if (action == null)
+            throw new IllegalArgumentException();
+        INotificationManager notificationManager = Models.getModelContext(
+            getModel()).get(INotificationManager.class);
+        NotificationManager batchingManager = null;
+        if (notificationManager instanceof NotificationManager)
+            batchingManager = (NotificationManager)notificationManager;
+        ElementManager elementManager = getElementManager();
+        if (batchingManager != null)
+            batchingManager.beginBatch();
+        try
+        {
+            elementManager.beginBatch();
+            try
+            {
+                action.run(monitor);
+            }
+            finally
+            {
+                elementManager.endBatch();
+            }
+        }
+        finally
+        {
+            if (batchingManager != null)
+                batchingManager.endBatch();
+        }
+    }
+
     /**
      * Provides access to the model manager.
      * <p>
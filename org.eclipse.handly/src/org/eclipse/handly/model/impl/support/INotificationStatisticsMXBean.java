@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.model.impl.support;
+
+/**
+ * Management interface for dispatch time statistics of a notification manager.
+ *
+ * @since 1.5
+ * @see NotificationManager#registerMBean(String)
+ */
+public interface INotificationStatisticsMXBean
+{
+    /**
+     * Returns dispatch time statistics for each currently registered
+     * element change listener that has received at least one event.
+     *
+     * @return the listener statistics (never <code>null</code>)
+     */
+    ListenerStatistics[] getListenerStatistics();
+
+    /**
+     * Resets dispatch time statistics for all listeners.
+     */
+    void resetListenerStatistics();
+
+    /**
+     * Returns the dispatch time, in milliseconds, above which a warning
+     * about a slow listener is logged, or <code>0</code> if no warnings
+     * are logged.
+     *
+     * @return the slow listener threshold, in milliseconds
+     */
+    long getSlowListenerThreshold();
+
+    /**
+     * Sets the dispatch time, in milliseconds, above which a warning about
+     * a slow listener is logged. A value of <code>0</code> disables warnings.
+     *
+     * @param threshold the slow listener threshold, in milliseconds (&gt;= 0)
+     */
+    void setSlowListenerThreshold(long threshold);
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014, 2018 1C-Soft LLC and others.
+ * Copyright (c) 2014, 2020 1C-Soft LLC and others.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -15,6 +15,7 @@ package org.eclipse.handly.model.impl.support;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.handly.context.IContext;
+import org.eclipse.handly.model.IElement;
 import org.eclipse.handly.model.impl.ISourceConstructImplExtension;
 
 /**
@@ -48,6 +49,38 @@ public interface ISourceConstructImplSupport
             && ISourceElementImplSupport.super.defaultEquals_(obj);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If there is no cached body for this element, this implementation
+     * checks whether building the children of the parent element has been
+     * {@link SourceElementBody#hasDeferredChildren() deferred} and, if so,
+     * builds the children of the parent and looks for the body again.
+     * </p>
+     */
+    @Override
+    default Object findBody_()
+    {
+        Object body = ISourceElementImplSupport.super.findBody_();
+        if (body == null)
+        {
+            IElement p = getParent_();
+            if (p instanceof ISourceElementImplSupport)
+            {
+                ISourceElementImplSupport parent = (ISourceElementImplSupport)p;
+                Object parentBody = parent.findBody_();
+                if (parentBody instanceof SourceElementBody
+                    && ((SourceElementBody)parentBody).hasDeferredChildren())
+                {
+                    parent.getElementManager_().materialize(parent,
+                        parentBody);
+                    body = ISourceElementImplSupport.super.findBody_();
+                }
+            }
+        }
+        return body;
+    }
+
     /**
      * Returns whether this element exists in the model.
      * <p>
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014, 2018 1C-Soft LLC and others.
+ * Copyright (c) 2014, 2020 1C-Soft LLC and others.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -22,6 +22,7 @@ import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.handly.context.IContext;
 import org.eclipse.handly.model.Elements;
+import org.eclipse.handly.model.IElement;
 import org.eclipse.handly.model.ISourceElement;
 import org.eclipse.handly.model.ISourceElementInfo;
 import org.eclipse.handly.model.impl.ISourceElementImpl;
@@ -43,12 +44,35 @@ import org.eclipse.handly.util.TextRange;
 public interface ISourceElementImplSupport
     extends IElementImplSupport, ISourceElementImpl
 {
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This implementation obtains the body for this element via {@link
+     * #getBody_(IContext, IProgressMonitor)}, builds the children of the
+     * element if building them has been {@link
+     * SourceElementBody#hasDeferredChildren() deferred}, and returns
+     * the children from the body.
+     * </p>
+     * @throws CoreException {@inheritDoc}
+     * @throws OperationCanceledException {@inheritDoc}
+     */
+    @Override
+    default IElement[] getChildren_(IContext context, IProgressMonitor monitor)
+        throws CoreException
+    {
+        Object body = getBody_(context, monitor);
+        getElementManager_().materialize(this, body);
+        return getChildrenFromBody_(body);
+    }
+
     /**
      * {@inheritDoc}
      * <p>
      * This implementation delegates to {@link #getBody_(IContext,
      * IProgressMonitor)}; it is assumed that the body implements
-     * {@link ISourceElementInfo}.
+     * {@link ISourceElementInfo}. If building the children of the element
+     * has been {@link SourceElementBody#hasDeferredChildren() deferred},
+     * they are built before the body is returned.
      * </p>
      * @throws CoreException {@inheritDoc}
      * @throws OperationCanceledException {@inheritDoc}
@@ -57,7 +81,9 @@ public interface ISourceElementImplSupport
     default ISourceElementInfo getSourceElementInfo_(IContext context,
         IProgressMonitor monitor) throws CoreException
     {
-        return (ISourceElementInfo)getBody_(context, monitor);
+        Object body = getBody_(context, monitor);
+        getElementManager_().materialize(this, body);
+        return (ISourceElementInfo)body;
     }
 
     /**
@@ -127,6 +153,7 @@ public interface ISourceElementImplSupport
             if (snapshot != null)
                 context = with(of(BASE_SNAPSHOT, snapshot), context);
         }
+        getElementManager_().materialize(this, info);
         ISourceElement[] children = info.getChildren();
         SubMonitor loopMonitor = SubMonitor.convert(monitor, children.length);
         for (ISourceElement child : children)
@@ -15,12 +15,16 @@ package org.eclipse.handly.model.impl.support;
 import static org.eclipse.handly.context.Contexts.of;
 import static org.eclipse.handly.context.Contexts.with;
 import static org.eclipse.handly.model.Elements.CREATE_BUFFER;
+import static org.eclipse.handly.model.Elements.NOTIFICATION_EXECUTOR;
 import static org.eclipse.handly.model.IElementDeltaConstants.CHANGED;
 import static org.eclipse.handly.model.IElementDeltaConstants.F_WORKING_COPY;
 import static org.eclipse.handly.util.ToStringOptions.FORMAT_STYLE;
 import static org.eclipse.handly.util.ToStringOptions.FormatStyle.MEDIUM;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -31,10 +35,12 @@ import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SafeRunner;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.handly.buffer.IBuffer;
 import org.eclipse.handly.buffer.ICoreTextFileBufferProvider;
 import org.eclipse.handly.buffer.TextFileBuffer;
+import org.eclipse.handly.buffer.TextFileBufferPool;
 import org.eclipse.handly.context.Context;
 import org.eclipse.handly.context.IContext;
 import org.eclipse.handly.internal.Activator;
@@ -47,6 +53,8 @@ import org.eclipse.handly.model.impl.IElementImplExtension;
 import org.eclipse.handly.model.impl.IReconcileStrategy;
 import org.eclipse.handly.model.impl.ISourceFileImplExtension;
 import org.eclipse.handly.model.impl.IWorkingCopyCallback;
+import org.eclipse.handly.model.impl.support.ReconcileProfile.Phase;
+import org.eclipse.handly.snapshot.ContentDigest;
 import org.eclipse.handly.snapshot.ISnapshot;
 import org.eclipse.handly.snapshot.ISnapshotProvider;
 import org.eclipse.handly.snapshot.NonExpiringSnapshot;
@@ -54,6 +62,7 @@ import org.eclipse.handly.snapshot.TextFileSnapshot;
 import org.eclipse.handly.snapshot.TextFileStoreSnapshot;
 import org.eclipse.handly.util.Property;
 import org.eclipse.handly.util.TextRange;
+import org.eclipse.handly.util.TextReplacement;
 
 /**
  * A "trait-like" interface providing a skeletal implementation of {@link
@@ -161,6 +170,48 @@ public interface ISourceFileImplSupport
         }
     }
 
+    /**
+     * Specifies the maximum number of recent structure build results
+     * to keep for a working copy. Default value: <code>0</code>.
+     * <p>
+     * If positive, the working copy keeps a cache of recent results of {@link
+     * #buildSourceStructure_(IContext, IProgressMonitor) building} its
+     * structure, keyed by the {@link ContentDigest digest} of the source
+     * contents. When the working copy is reconciled with contents that match
+     * a cached result, e.g. on undo, redo, or revert, the cached structure is
+     * reinstalled without rebuilding it. This requires that the element bodies
+     * remain valid after they have been removed from the body cache, which is
+     * why the cache is disabled by default.
+     * </p>
+     *
+     * @see #becomeWorkingCopy_(IContext, IProgressMonitor)
+     * @see #RECONCILE_CACHE_TTL
+     * @since 1.5
+     */
+    Property<Integer> RECONCILE_CACHE_SIZE = Property.get(
+        ISourceFileImplSupport.class.getName() + ".reconcileCacheSize", //$NON-NLS-1$
+        Integer.class).withDefault(0);
+
+    /**
+     * Specifies the time to live, in milliseconds, of a structure build result
+     * kept for a working copy. Default value: <code>60000</code>.
+     *
+     * @see #RECONCILE_CACHE_SIZE
+     * @since 1.5
+     */
+    Property<Long> RECONCILE_CACHE_TTL = Property.get(
+        ISourceFileImplSupport.class.getName() + ".reconcileCacheTtl", //$NON-NLS-1$
+        Long.class).withDefault(60000L);
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * In addition to the options described above, this implementation
+     * supports the {@link #RECONCILE_CACHE_SIZE} and {@link
+     * #RECONCILE_CACHE_TTL} options, which may be specified either
+     * in the given context or in the model context.
+     * </p>
+     */
     @Override
     default boolean becomeWorkingCopy_(IContext context,
         IProgressMonitor monitor) throws CoreException
@@ -184,6 +235,12 @@ public interface ISourceFileImplSupport
             newWorkingCopyContext_(context), new ReconcileStrategy(this),
             callback);
 
+        IContext options = with(context, Elements.getModelContext(this));
+        int cacheSize = options.getOrDefault(RECONCILE_CACHE_SIZE);
+        if (cacheSize > 0)
+            info.reconcileCache = new ReconcileCache(cacheSize,
+                options.getOrDefault(RECONCILE_CACHE_TTL));
+
         return WorkingCopyHelper.becomeWorkingCopy(this, info, monitor);
     }
 
@@ -201,10 +258,17 @@ public interface ISourceFileImplSupport
         if (info == null)
             throw new IllegalStateException("Not a working copy: " + toString_( //$NON-NLS-1$
                 of(FORMAT_STYLE, MEDIUM)));
-        if (info.isDisposed() && info.created)
+        if (info.isDisposed())
         {
-            workingCopyModeChanged_();
-            return true;
+            ReconcileProfiler profiler = Elements.getModelContext(this).get(
+                ReconcileProfiler.class);
+            if (profiler != null)
+                profiler.remove(this);
+            if (info.created)
+            {
+                workingCopyModeChanged_();
+                return true;
+            }
         }
         return false;
     }
@@ -433,6 +497,13 @@ public interface ISourceFileImplSupport
      * underlying file in the workspace, of the corresponding <code>IFileStore</code>
      * (if any). If there is neither underlying <code>IFile</code> nor
      * corresponding <code>IFileStore</code>, an assertion error is thrown.
+     * The snapshots taken by the provider read the file contents on demand,
+     * so that taking a snapshot just to compare it with another snapshot
+     * of the file is cheap. If the file contents could not be read because
+     * of an I/O error, the provider's {@link
+     * ISnapshotProvider#getNonExpiringSnapshot() getNonExpiringSnapshot}
+     * throws an <code>IllegalStateException</code> whose cause is a <code>
+     * CoreException</code> describing the error.
      * </p>
      *
      * @return a snapshot provider for the underlying file's stored contents
@@ -442,7 +513,7 @@ public interface ISourceFileImplSupport
     {
         IFile file = getFile_();
         if (file != null)
-            return () ->
+            return new FileSnapshotProvider<>(() ->
             {
                 TextFileSnapshot result = new TextFileSnapshot(file,
                     TextFileSnapshot.Layer.FILESYSTEM);
@@ -451,32 +522,22 @@ public interface ISourceFileImplSupport
                     throw new IllegalStateException(
                         newDoesNotExistException_());
                 }
-                if (result.getContents() == null && !result.getStatus().isOK())
-                {
-                    throw new IllegalStateException(new CoreException(
-                        result.getStatus()));
-                }
                 return result;
-            };
+            }, TextFileSnapshot::getStatus);
 
         IFileStore fileStore = getFileStore_();
         if (fileStore != null)
-            return () ->
+            return new FileSnapshotProvider<>(() ->
             {
-                TextFileStoreSnapshot result = new TextFileStoreSnapshot(
-                    fileStore);
+                TextFileStoreSnapshot result =
+                    TextFileStoreSnapshot.newLazySnapshot(fileStore, null);
                 if (!result.exists())
                 {
                     throw new IllegalStateException(
                         newDoesNotExistException_());
                 }
-                if (result.getContents() == null && !result.getStatus().isOK())
-                {
-                    throw new IllegalStateException(new CoreException(
-                        result.getStatus()));
-                }
                 return result;
-            };
+            }, TextFileStoreSnapshot::getStatus);
 
         throw new AssertionError("Please override this method"); //$NON-NLS-1$
     }
@@ -510,11 +571,13 @@ public interface ISourceFileImplSupport
      * This implementation returns a buffer opened for the underlying
      * <code>IFile</code> or, if this source file has no underlying file
      * in the workspace, for the corresponding <code>IFileStore</code> (if any).
-     * If there is neither underlying <code>IFile</code> nor corresponding
-     * <code>IFileStore</code>, an assertion error is thrown.
+     * The buffer is obtained from the {@link TextFileBufferPool#getDefault()
+     * default} buffer pool. If there is neither underlying <code>IFile</code>
+     * nor corresponding <code>IFileStore</code>, an assertion error is thrown.
      * If <code>CREATE_BUFFER</code> is <code>false</code> in the given context
      * and there is currently no buffer opened for the file, <code>null</code>
-     * is returned.
+     * is returned; an idle buffer kept by the pool does not count as opened
+     * and is never returned in this case.
      * </p>
      *
      * @param context the operation context (not <code>null</code>)
@@ -532,6 +595,7 @@ public interface ISourceFileImplSupport
     {
         ICoreTextFileBufferProvider provider;
         IFile file = getFile_();
+        IFileStore fileStore = null;
         if (file != null)
         {
             provider = ICoreTextFileBufferProvider.forLocation(
@@ -540,7 +604,7 @@ public interface ISourceFileImplSupport
         }
         else
         {
-            IFileStore fileStore = getFileStore_();
+            fileStore = getFileStore_();
             if (fileStore != null)
             {
                 provider = ICoreTextFileBufferProvider.forFileStore(fileStore,
@@ -549,12 +613,22 @@ public interface ISourceFileImplSupport
             else
                 throw new AssertionError("Please override this method"); //$NON-NLS-1$
         }
-        if (!context.getOrDefault(CREATE_BUFFER)
-            && provider.getBuffer() == null)
+        TextFileBufferPool pool = TextFileBufferPool.getDefault();
+        if (!context.getOrDefault(CREATE_BUFFER))
         {
-            return null;
+            // an idle buffer kept connected by the pool is not opened
+            if (file != null)
+                pool.evict(file.getFullPath(), LocationKind.IFILE);
+            else
+                pool.evict(fileStore);
+            if (provider.getBuffer() == null)
+                return null;
+            return new TextFileBuffer(provider, monitor);
         }
-        return new TextFileBuffer(provider, monitor);
+        if (file != null)
+            return pool.acquire(file.getFullPath(), LocationKind.IFILE,
+                monitor);
+        return pool.acquire(fileStore, monitor);
     }
 
     /**
@@ -602,13 +676,26 @@ public interface ISourceFileImplSupport
     /**
      * This implementation delegates to {@link #buildSourceStructure_(IContext,
      * IProgressMonitor)} with an appropriately augmented context. In particular,
-     * if the given context contains neither {@link #SOURCE_CONTENTS} nor {@link
-     * #SOURCE_AST}, it is augmented with {@link #SOURCE_CONTENTS} and the
-     * corresponding {@link #SOURCE_SNAPSHOT} obtained from the underlying
-     * file's {@link #getFileSnapshotProvider_() stored contents}. Also,
+     * if the given context contains none of {@link #SOURCE_CONTENTS}, {@link
+     * #SOURCE_CHARS} or {@link #SOURCE_AST}, it is augmented with {@link
+     * #SOURCE_CONTENTS}, {@link #SOURCE_CHARS} and the corresponding {@link
+     * #SOURCE_SNAPSHOT} obtained from the underlying file's {@link
+     * #getFileSnapshotProvider_() stored contents}. If the context contains
+     * only one of <code>SOURCE_CONTENTS</code> or <code>SOURCE_CHARS</code>,
+     * it is augmented with the other one, so that implementations of
+     * <code>buildSourceStructure_</code> may use either. A string for
+     * <code>SOURCE_CONTENTS</code> is only created on demand. Also,
      * performs some post-processing of created {@link SourceElementBody}s
      * to complete their initialization, such as setting the source snapshot
      * on which they are based.
+     * <p>
+     * Since 1.5, if this source file is a working copy with a positive
+     * {@link #RECONCILE_CACHE_SIZE}, this implementation reuses the bodies
+     * recently built from the same source contents, if any, instead of
+     * delegating to <code>buildSourceStructure_</code>. No elements are
+     * {@link #publishElement_(IElement, IContext) published} to the {@link
+     * #STRUCTURE_CONSUMER} in that case.
+     * </p>
      *
      * @throws CoreException {@inheritDoc}
      * @throws OperationCanceledException {@inheritDoc}
@@ -617,8 +704,9 @@ public interface ISourceFileImplSupport
     default void buildStructure_(IContext context, IProgressMonitor monitor)
         throws CoreException
     {
-        if (!context.containsKey(SOURCE_CONTENTS) && !context.containsKey(
-            SOURCE_AST))
+        boolean hasContents = context.containsKey(SOURCE_CONTENTS);
+        boolean hasChars = context.containsKey(SOURCE_CHARS);
+        if (!hasContents && !hasChars && !context.containsKey(SOURCE_AST))
         {
             if (isWorkingCopy_())
                 throw new AssertionError();
@@ -629,7 +717,7 @@ public interface ISourceFileImplSupport
             {
                 try
                 {
-                    snapshot = new NonExpiringSnapshot(provider);
+                    snapshot = provider.getNonExpiringSnapshot();
                 }
                 catch (IllegalStateException e)
                 {
@@ -640,25 +728,68 @@ public interface ISourceFileImplSupport
                         e.getMessage(), e));
                 }
             }
-            context = with(of(SOURCE_CONTENTS, snapshot.getContents()), of(
-                SOURCE_SNAPSHOT, snapshot.getWrappedSnapshot()), context);
+            Context context2 = new Context();
+            context2.bind(SOURCE_CHARS).to(snapshot.getCharSequence());
+            context2.bind(SOURCE_CONTENTS).toSupplier(snapshot::getContents);
+            context2.bind(SOURCE_SNAPSHOT).to(snapshot.getWrappedSnapshot());
+            context = with(context2, context);
+        }
+        else if (hasChars && !hasContents)
+        {
+            // compatibility path for models that require a source string
+            CharSequence chars = context.get(SOURCE_CHARS);
+            context = with(new Context().bind(SOURCE_CONTENTS).toSupplier(
+                () -> chars == null ? null : chars.toString()), context);
+        }
+        else if (hasContents && !hasChars)
+        {
+            context = with(of(SOURCE_CHARS, context.get(SOURCE_CONTENTS)),
+                context);
         }
-
-        buildSourceStructure_(context, monitor);
 
         Map<IElement, Object> newElements = context.get(NEW_ELEMENTS);
+
+        ReconcileCache cache = null;
+        ContentDigest digest = null;
+        WorkingCopyInfo info = getElementManager_().peekAtWorkingCopyInfo(
+            this);
+        if (info != null && info.reconcileCache != null)
+        {
+            digest = ReconcileCache.getContentDigest(context);
+            if (digest != null)
+                cache = info.reconcileCache;
+        }
+        Map<IElement, Object> cachedElements = null;
+        if (cache != null)
+            cachedElements = cache.get(digest);
+        if (cachedElements != null)
+            newElements.putAll(cachedElements); // reinstall a recent structure
+        else
+        {
+            long startTime = System.nanoTime();
+            buildSourceStructure_(context, monitor);
+            ReconcileProfiler.record(context, Phase.BUILD, startTime);
+            if (cache != null)
+                cache.put(digest, newElements);
+        }
+
         Object body = newElements.get(this);
         if (body instanceof SourceElementBody)
         {
             SourceElementBody thisBody = (SourceElementBody)body;
 
-            String source = context.get(SOURCE_CONTENTS);
+            CharSequence source = context.get(SOURCE_CHARS);
             if (source != null)
                 thisBody.setFullRange(new TextRange(0, source.length()));
 
             ISnapshot snapshot = context.get(SOURCE_SNAPSHOT);
-            if (snapshot != null)
+            if (snapshot != null || cachedElements != null)
+            {
+                long startTime = System.nanoTime();
                 thisBody.setSnapshot(snapshot, newElements);
+                ReconcileProfiler.record(context, Phase.SET_SNAPSHOT,
+                    startTime);
+            }
         }
     }
 
@@ -679,6 +810,19 @@ public interface ISourceFileImplSupport
         ISourceFileImplSupport.class.getName() + ".sourceContents", //$NON-NLS-1$
         String.class);
 
+    /**
+     * Specifies the source text as a character sequence. Unlike {@link
+     * #SOURCE_CONTENTS}, this option allows to pass the source text without
+     * creating a string copy of it, e.g. when it is backed by a rope.
+     *
+     * @see #buildSourceStructure_(IContext, IProgressMonitor)
+     * @see ISnapshot#getCharSequence()
+     * @since 1.5
+     */
+    Property<CharSequence> SOURCE_CHARS = Property.get(
+        ISourceFileImplSupport.class.getName() + ".sourceChars", //$NON-NLS-1$
+        CharSequence.class);
+
     /**
      * Specifies the source snapshot.
      *
@@ -688,6 +832,38 @@ public interface ISourceFileImplSupport
         ISourceFileImplSupport.class.getName() + ".sourceSnapshot", //$NON-NLS-1$
         ISnapshot.class);
 
+    /**
+     * Specifies the text replacements that have transformed the source text
+     * on which the current structure of the source file is based into the
+     * source text to use, in the order they were made.
+     *
+     * @see #buildSourceStructure_(IContext, IProgressMonitor)
+     * @since 1.5
+     */
+    Property<List<TextReplacement>> SOURCE_EDITS =
+        new Property<List<TextReplacement>>(
+            ISourceFileImplSupport.class.getName() + ".sourceEdits") //$NON-NLS-1$
+        {
+        };
+
+    /**
+     * Specifies a consumer of the top-level elements of the source file
+     * to be published progressively while the structure is being built.
+     * The option may be given when opening the source file or reconciling
+     * a working copy. It is only effective if the structure is actually
+     * being built and the implementation of {@link #buildSourceStructure_(
+     * IContext, IProgressMonitor) buildSourceStructure_} {@link
+     * #publishElement_(IElement, IContext) publishes} the top-level elements.
+     * In any case, the complete structure is installed in the body cache
+     * atomically, after it has been built.
+     *
+     * @see #buildSourceStructure_(IContext, IProgressMonitor)
+     * @since 1.5
+     */
+    Property<IStructureConsumer> STRUCTURE_CONSUMER = Property.get(
+        ISourceFileImplSupport.class.getName() + ".structureConsumer", //$NON-NLS-1$
+        IStructureConsumer.class);
+
     /**
      * Creates and initializes bodies for this element and for each
      * of its descendant elements according to options specified in the
@@ -707,10 +883,15 @@ public interface ISourceFileImplSupport
      * {@link #SOURCE_CONTENTS} - Specifies the source string to use when
      * building the structure.
      * </li>
+     * <li>
+     * {@link #SOURCE_CHARS} - Specifies the source text to use when
+     * building the structure as a character sequence.
+     * </li>
      * </ul>
      * <p>
-     * At least one of <code>SOURCE_AST</code> or <code>SOURCE_CONTENTS</code>
-     * must have a non-null value in the given context.
+     * At least one of <code>SOURCE_AST</code>, <code>SOURCE_CONTENTS</code>
+     * or <code>SOURCE_CHARS</code> must have a non-null value in the given
+     * context.
      * </p>
      * <p>
      * The given context may provide additional data that this method can use,
@@ -720,7 +901,27 @@ public interface ISourceFileImplSupport
      * <li>
      * {@link #SOURCE_SNAPSHOT} - Specifies the source snapshot from which
      * <code>SOURCE_AST</code> was created or <code>SOURCE_CONTENTS</code>
-     * was obtained. The snapshot may expire.
+     * or <code>SOURCE_CHARS</code> was obtained. The snapshot may expire.
+     * </li>
+     * <li>
+     * {@link #SOURCE_EDITS} - Specifies the text replacements that have
+     * transformed the source text on which the current structure of this
+     * source file is based into the source text to use when building the
+     * structure, in the order they were made. This option may only be present
+     * when reconciling a working copy. Implementations may use it to build
+     * the structure incrementally, e.g., by re-parsing only the top-level
+     * constructs affected by the replacements and creating bodies with
+     * {@link TextReplacement#adjust(TextRange, List) adjusted} text ranges
+     * for the other constructs based on their {@link #peekAtBody_() current}
+     * bodies. Note that the current bodies must not be modified or reused.
+     * Building the structure from scratch is always a valid fallback.
+     * </li>
+     * <li>
+     * {@link #STRUCTURE_CONSUMER} - Specifies a consumer of the top-level
+     * elements. Implementations that may take a long time to build the
+     * structure, e.g. for large generated sources, are encouraged to {@link
+     * #publishElement_(IElement, IContext) publish} each top-level element
+     * as soon as it has been completely built.
      * </li>
      * </ul>
      *
@@ -734,6 +935,45 @@ public interface ISourceFileImplSupport
     void buildSourceStructure_(IContext context, IProgressMonitor monitor)
         throws CoreException;
 
+    /**
+     * Publishes the given top-level element to the {@link #STRUCTURE_CONSUMER}
+     * specified in the given context, if any. This method is intended to be
+     * called by {@link #buildSourceStructure_(IContext, IProgressMonitor)
+     * buildSourceStructure_} as soon as the body of the element and the bodies
+     * of its descendants have been completely built and put into the {@link
+     * #NEW_ELEMENTS} map; they must not be modified afterwards.
+     * <p>
+     * This implementation does nothing if there is no structure consumer
+     * in the given context. Otherwise, it sets the {@link #SOURCE_SNAPSHOT}
+     * specified in the context on the {@link SourceElementBody}s of the
+     * element and its descendants, and passes a copy of their element
+     * handle/body relationships to the consumer. Exceptions thrown by
+     * the consumer are logged.
+     * </p>
+     *
+     * @param element a top-level element of this source file
+     *  (not <code>null</code>)
+     * @param context the context passed to <code>buildSourceStructure_</code>
+     *  (not <code>null</code>)
+     * @since 1.5
+     */
+    default void publishElement_(IElement element, IContext context)
+    {
+        IStructureConsumer consumer = context.get(STRUCTURE_CONSUMER);
+        if (consumer == null)
+            return;
+        Map<IElement, Object> newElements = context.get(NEW_ELEMENTS);
+        Object body = newElements.get(element);
+        if (body == null)
+            throw new IllegalArgumentException();
+        ISnapshot snapshot = context.get(SOURCE_SNAPSHOT);
+        if (snapshot != null && body instanceof SourceElementBody)
+            ((SourceElementBody)body).setSnapshot(snapshot, newElements);
+        Map<IElement, Object> bodies = new HashMap<>();
+        StructurePublisher.collectBodies(element, newElements, bodies);
+        SafeRunner.run(() -> consumer.elementBuilt(this, element, bodies));
+    }
+
     /**
      * {@inheritDoc}
      * <p>
@@ -768,6 +1008,11 @@ public interface ISourceFileImplSupport
      * to be used by clients for purposes other than returning from an
      * implementation of {@link ISourceFileImplSupport#getReconcileOperation_()}.
      * </p>
+     * <p>
+     * Since 1.5, if a {@link ReconcileProfiler} is registered in the model
+     * context, the duration of each phase of the reconcile operation is
+     * recorded and the resulting profile is added to the profiler.
+     * </p>
      *
      * @see NotifyingReconcileOperation
      */
@@ -818,10 +1063,15 @@ public interface ISourceFileImplSupport
          * {@link #SOURCE_CONTENTS} - Specifies the source string to use when
          * reconciling.
          * </li>
+         * <li>
+         * {@link #SOURCE_CHARS} - Specifies the source text to use when
+         * reconciling as a character sequence.
+         * </li>
          * </ul>
          * <p>
-         * At least one of <code>SOURCE_AST</code> or <code>SOURCE_CONTENTS</code>
-         * must have a non-null value in the given context.
+         * At least one of <code>SOURCE_AST</code>, <code>SOURCE_CONTENTS</code>
+         * or <code>SOURCE_CHARS</code> must have a non-null value in the given
+         * context.
          * </p>
          * <p>
          * The given context may provide additional data that this method can use,
@@ -831,7 +1081,13 @@ public interface ISourceFileImplSupport
          * <li>
          * {@link #SOURCE_SNAPSHOT} - Specifies the source snapshot from which
          * <code>SOURCE_AST</code> was created or <code>SOURCE_CONTENTS</code>
-         * was obtained. The snapshot may expire.
+         * or <code>SOURCE_CHARS</code> was obtained. The snapshot may expire.
+         * </li>
+         * <li>
+         * {@link #SOURCE_EDITS} - Specifies the text replacements that have
+         * transformed the source text on which the current structure of the
+         * working copy is based into the source text to use when reconciling,
+         * in the order they were made.
          * </li>
          * </ul>
          * <p>
@@ -930,10 +1186,15 @@ public interface ISourceFileImplSupport
          * {@link #SOURCE_CONTENTS} - Specifies the source string to use when
          * reconciling.
          * </li>
+         * <li>
+         * {@link #SOURCE_CHARS} - Specifies the source text to use when
+         * reconciling as a character sequence.
+         * </li>
          * </ul>
          * <p>
-         * At least one of <code>SOURCE_AST</code> or <code>SOURCE_CONTENTS</code>
-         * must have a non-null value in the given context.
+         * At least one of <code>SOURCE_AST</code>, <code>SOURCE_CONTENTS</code>
+         * or <code>SOURCE_CHARS</code> must have a non-null value in the given
+         * context.
          * </p>
          * <p>
          * The given context may provide additional data that this method can use,
@@ -943,7 +1204,13 @@ public interface ISourceFileImplSupport
          * <li>
          * {@link #SOURCE_SNAPSHOT} - Specifies the source snapshot from which
          * <code>SOURCE_AST</code> was created or <code>SOURCE_CONTENTS</code>
-         * was obtained. The snapshot may expire.
+         * or <code>SOURCE_CHARS</code> was obtained. The snapshot may expire.
+         * </li>
+         * <li>
+         * {@link #SOURCE_EDITS} - Specifies the text replacements that have
+         * transformed the source text on which the current structure of the
+         * working copy is based into the source text to use when reconciling,
+         * in the order they were made.
          * </li>
          * </ul>
          * <p>
@@ -964,7 +1231,7 @@ public interface ISourceFileImplSupport
             IProgressMonitor monitor) throws CoreException
         {
             if (context.get(SOURCE_AST) == null && context.get(
-                SOURCE_CONTENTS) == null)
+                SOURCE_CONTENTS) == null && context.get(SOURCE_CHARS) == null)
             {
                 throw new IllegalArgumentException();
             }
@@ -1028,6 +1295,9 @@ public interface ISourceFileImplSupport
          * the resulting delta using an element {@link #newChangeRecorder()
          * change recorder}, and sends out a <code>POST_RECONCILE</code> event
          * using the notification manager registered in the model context.
+         * Since 1.5, if the given context specifies a {@link
+         * Elements#NOTIFICATION_EXECUTOR NOTIFICATION_EXECUTOR}, the event
+         * is sent out via that executor.
          * </p>
          * <p>
          * Since 1.1, no delta will be built and no event will be sent
@@ -1044,18 +1314,33 @@ public interface ISourceFileImplSupport
                 super.reconcile(context, monitor);
             else
             {
+                long startTime = System.nanoTime();
                 ElementChangeRecorder recorder = newChangeRecorder();
                 recorder.beginRecording(sourceFile);
+                ReconcileProfiler.record(context, Phase.DIFF, startTime);
 
                 super.reconcile(context, monitor);
 
+                startTime = System.nanoTime();
                 IElementDelta delta = recorder.endRecording().getDelta();
+                ReconcileProfiler.record(context, Phase.DIFF, startTime);
                 if (delta != null && ElementDeltas.getKind(delta) == CHANGED)
                 {
-                    Elements.getModelContext(sourceFile).get(
-                        INotificationManager.class).fireElementChangeEvent(
-                            new ElementChangeEvent(
-                                ElementChangeEvent.POST_RECONCILE, delta));
+                    INotificationManager notificationManager =
+                        Elements.getModelContext(sourceFile).get(
+                            INotificationManager.class);
+                    ElementChangeEvent event = new ElementChangeEvent(
+                        ElementChangeEvent.POST_RECONCILE, delta);
+                    Executor executor = context.get(NOTIFICATION_EXECUTOR);
+                    startTime = System.nanoTime();
+                    if (executor == null)
+                        notificationManager.fireElementChangeEvent(event);
+                    else
+                        executor.execute(
+                            () -> notificationManager.fireElementChangeEvent(
+                                event));
+                    ReconcileProfiler.record(context, Phase.NOTIFY,
+                        startTime);
                 }
             }
         }
@@ -1127,6 +1412,36 @@ public interface ISourceFileImplSupport
     }
 }
 
+class StructurePublisher
+{
+    /*
+     * Puts the bodies of the given element and its descendants found
+     * in the given source map into the given target map.
+     */
+    static void collectBodies(IElement element, Map<IElement, Object> source,
+        Map<IElement, Object> target)
+    {
+        Object body = source.get(element);
+        if (body == null)
+            return;
+        target.put(element, body);
+        IElement[] children;
+        if (element instanceof IElementImplExtension)
+            children = ((IElementImplExtension)element).getChildrenFromBody_(
+                body);
+        else if (body instanceof Body)
+            children = ((Body)body).getChildren();
+        else
+            return;
+        for (IElement child : children)
+            collectBodies(child, source, target);
+    }
+
+    private StructurePublisher()
+    {
+    }
+}
+
 abstract class WorkingCopyHelper
 {
     static boolean becomeWorkingCopy(ISourceFileImplSupport sourceFile,
@@ -1269,7 +1584,7 @@ class ReconcileStrategy
         throws CoreException
     {
         if (context.get(SOURCE_AST) == null && context.get(
-            SOURCE_CONTENTS) == null)
+            SOURCE_CONTENTS) == null && context.get(SOURCE_CHARS) == null)
         {
             throw new IllegalArgumentException();
         }
@@ -1291,14 +1606,41 @@ class ReconcileStrategy
                 SOURCE_AST));
 
         if (context.containsKey(SOURCE_CONTENTS))
-            context2.bind(ISourceFileImplSupport.SOURCE_CONTENTS).to(
-                context.get(SOURCE_CONTENTS));
+            context2.bind(ISourceFileImplSupport.SOURCE_CONTENTS).toSupplier(
+                () -> context.get(SOURCE_CONTENTS));
+
+        if (context.containsKey(SOURCE_CHARS))
+            context2.bind(ISourceFileImplSupport.SOURCE_CHARS).to(context.get(
+                SOURCE_CHARS));
 
         if (context.containsKey(SOURCE_SNAPSHOT))
             context2.bind(ISourceFileImplSupport.SOURCE_SNAPSHOT).to(
                 context.get(SOURCE_SNAPSHOT));
 
+        if (context.containsKey(SOURCE_EDITS) && info.created)
+            context2.bind(ISourceFileImplSupport.SOURCE_EDITS).to(context.get(
+                SOURCE_EDITS));
+
+        ReconcileProfiler profiler = Elements.getModelContext(sourceFile).get(
+            ReconcileProfiler.class);
+        ReconcileProfiler.Recording recording = null;
+        if (profiler != null)
+        {
+            recording = new ReconcileProfiler.Recording();
+            context2.bind(ReconcileProfiler.RECORDING).to(recording);
+        }
+        long timestamp = System.currentTimeMillis();
+        long startTime = System.nanoTime();
+
         sourceFile.getReconcileOperation_().reconcile(with(context2, context),
             monitor);
+
+        if (recording != null)
+        {
+            long snapshotDuration = context.getOrDefault(SNAPSHOT_DURATION);
+            recording.add(Phase.SNAPSHOT, snapshotDuration);
+            profiler.add(recording.toProfile(sourceFile, timestamp,
+                System.nanoTime() - startTime + snapshotDuration));
+        }
     }
 }
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.model.impl.support;
+
+import java.util.Map;
+
+import org.eclipse.handly.model.IElement;
+import org.eclipse.handly.model.ISourceFile;
+
+/**
+ * Receives the top-level elements of a source file one by one, as soon as
+ * each of them has been built, while the structure of the source file is
+ * still being built. Lets clients such as an outline start presenting the
+ * structure of a large source file without waiting for the whole structure.
+ *
+ * @since 1.5
+ * @see ISourceFileImplSupport#STRUCTURE_CONSUMER
+ */
+public interface IStructureConsumer
+{
+    /**
+     * Informs this consumer that the given top-level element of the given
+     * source file has been built. The elements are published in the order
+     * they are built, which is usually the order of the children of the
+     * source file.
+     * <p>
+     * This method is invoked in the thread that builds the structure
+     * and should return quickly, e.g. by handing the element over to the
+     * UI thread. Until the structure of the source file has been installed
+     * in the body cache, the published element does not exist in the model:
+     * clients can only use the given bodies to present it.
+     * </p>
+     *
+     * @param sourceFile the source file whose structure is being built
+     *  (never <code>null</code>)
+     * @param element a top-level element of the source file
+     *  (never <code>null</code>)
+     * @param bodies a new map that contains the bodies of the element and
+     *  of its descendants (never <code>null</code>). The map may be retained
+     *  by the consumer; the bodies <b>must not</b> be modified
+     */
+    void elementBuilt(ISourceFile sourceFile, IElement element,
+        Map<IElement, Object> bodies);
+}
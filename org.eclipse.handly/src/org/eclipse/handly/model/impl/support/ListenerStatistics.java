@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.model.impl.support;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * A snapshot of dispatch time statistics for an element change listener.
+ * Immutable. All times are in nanoseconds.
+ *
+ * @since 1.5
+ * @see NotificationManager#getListenerStatistics()
+ */
+public final class ListenerStatistics
+{
+    private final String listenerClass;
+    private final long count;
+    private final long totalTime;
+    private final long maxTime;
+    private final long p99Time;
+
+    /**
+     * Constructs a listener statistics snapshot with the given values.
+     *
+     * @param listenerClass the name of the listener class
+     * @param count the number of dispatched events
+     * @param totalTime the total dispatch time
+     * @param maxTime the maximum dispatch time
+     * @param p99Time the 99th percentile of dispatch time
+     */
+    @ConstructorProperties({ "listenerClass", "count", "totalTime", "maxTime",
+        "p99Time" })
+    public ListenerStatistics(String listenerClass, long count, long totalTime,
+        long maxTime, long p99Time)
+    {
+        this.listenerClass = listenerClass;
+        this.count = count;
+        this.totalTime = totalTime;
+        this.maxTime = maxTime;
+        this.p99Time = p99Time;
+    }
+
+    /**
+     * Returns the name of the listener class.
+     *
+     * @return the listener class name
+     */
+    public String getListenerClass()
+    {
+        return listenerClass;
+    }
+
+    /**
+     * Returns the number of events dispatched to the listener.
+     *
+     * @return the number of dispatched events
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Returns the total time spent by the listener processing events.
+     *
+     * @return the total dispatch time, in nanoseconds
+     */
+    public long getTotalTime()
+    {
+        return totalTime;
+    }
+
+    /**
+     * Returns the maximum time spent by the listener processing an event.
+     *
+     * @return the maximum dispatch time, in nanoseconds
+     */
+    public long getMaxTime()
+    {
+        return maxTime;
+    }
+
+    /**
+     * Returns an estimate of the 99th percentile of time spent by the listener
+     * processing an event. The relative error of the estimate is within 25%.
+     *
+     * @return the 99th percentile of dispatch time, in nanoseconds
+     */
+    public long getP99Time()
+    {
+        return p99Time;
+    }
+
+    @Override
+    public String toString()
+    {
+        return listenerClass + " [count=" + count + ", totalTime=" + totalTime //$NON-NLS-1$ //$NON-NLS-2$
+            + ", maxTime=" + maxTime + ", p99Time=" + p99Time + ']'; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+}
@@ -21,6 +21,8 @@ class Messages
         "org.eclipse.handly.model.impl.support.messages"; //$NON-NLS-1$
 
     public static String Element_does_not_exist__0;
+    public static String NotificationManager_Slow_listener__0__1;
+    public static String SourceFileLoader_Problems_loading_source_files;
 
     static
     {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2016, 2018 1C-Soft LLC.
+ * Copyright (c) 2016, 2020 1C-Soft LLC.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -12,24 +12,64 @@
  *******************************************************************************/
 package org.eclipse.handly.model.impl.support;
 
+import java.lang.management.ManagementFactory;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.ISafeRunnable;
 import org.eclipse.core.runtime.SafeRunner;
+import org.eclipse.handly.internal.Activator;
+import org.eclipse.handly.model.ElementDeltas;
+import org.eclipse.handly.model.Elements;
+import org.eclipse.handly.model.IElement;
 import org.eclipse.handly.model.IElementChangeEvent;
 import org.eclipse.handly.model.IElementChangeListener;
+import org.eclipse.handly.model.IElementDelta;
 
 /**
  * Default implementation of {@link INotificationManager}. Thread-safe.
  * <p>
+ * Since 1.5, this implementation records dispatch time statistics
+ * for each registered listener and can optionally log a warning when
+ * a listener takes too long to process an event. The statistics are
+ * available via the {@link INotificationStatisticsMXBean} interface,
+ * which can also be {@link #registerMBean(String) exposed} as a platform
+ * MXBean.
+ * </p>
+ * <p>
  * Clients can use this class as it stands or subclass it
  * as circumstances warrant.
  * </p>
  */
 public class NotificationManager
-    implements INotificationManager
+    implements INotificationManager, INotificationStatisticsMXBean
 {
     private final ElementChangeListenerList listenerList =
         new ElementChangeListenerList();
 
+    /*
+     * Has an entry for each registered listener (and only for registered
+     * listeners), so that removed listeners are not retained.
+     * Listener registration is guarded by the map's lock.
+     */
+    private final Map<IElementChangeListener, DispatchStats> dispatchStats =
+        new IdentityHashMap<>();
+
+    private volatile long slowListenerThreshold;
+
+    private ObjectName mbeanName;
+
+    private final ThreadLocal<Batch> currentBatch = new ThreadLocal<>();
+
     /**
      * Adds the given element change listener.
      * Has no effect if an identical listener is already registered.
@@ -40,7 +80,7 @@ public class NotificationManager
      */
     public void addElementChangeListener(IElementChangeListener listener)
     {
-        listenerList.add(listener, Integer.MAX_VALUE);
+        addElementChangeListener(listener, Integer.MAX_VALUE);
     }
 
     /**
@@ -61,7 +101,11 @@ public class NotificationManager
     public void addElementChangeListener(IElementChangeListener listener,
         int eventMask)
     {
-        listenerList.add(listener, eventMask);
+        synchronized (dispatchStats)
+        {
+            listenerList.add(listener, eventMask);
+            dispatchStats.computeIfAbsent(listener, k -> new DispatchStats());
+        }
     }
 
     /**
@@ -72,18 +116,217 @@ public class NotificationManager
      */
     public void removeElementChangeListener(IElementChangeListener listener)
     {
-        listenerList.remove(listener);
+        synchronized (dispatchStats)
+        {
+            listenerList.remove(listener);
+            dispatchStats.remove(listener);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.5
+     */
+    @Override
+    public ListenerStatistics[] getListenerStatistics()
+    {
+        List<ListenerStatistics> result = new ArrayList<>();
+        synchronized (dispatchStats)
+        {
+            for (Map.Entry<IElementChangeListener, DispatchStats> entry : dispatchStats.entrySet())
+            {
+                ListenerStatistics statistics = entry.getValue().snapshot(
+                    entry.getKey().getClass().getName());
+                if (statistics.getCount() > 0)
+                    result.add(statistics);
+            }
+        }
+        return result.toArray(new ListenerStatistics[result.size()]);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.5
+     */
+    @Override
+    public void resetListenerStatistics()
+    {
+        synchronized (dispatchStats)
+        {
+            dispatchStats.replaceAll((k, v) -> new DispatchStats());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.5
+     */
+    @Override
+    public long getSlowListenerThreshold()
+    {
+        return slowListenerThreshold;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @since 1.5
+     */
+    @Override
+    public void setSlowListenerThreshold(long threshold)
+    {
+        if (threshold < 0)
+            throw new IllegalArgumentException();
+        this.slowListenerThreshold = threshold;
+    }
+
+    /**
+     * Registers this notification manager as a platform MXBean under the name
+     * <code>org.eclipse.handly:type=NotificationManager,name=</code><i>name</i>.
+     * Has no effect if this manager is already registered.
+     *
+     * @param name the name that identifies this notification manager,
+     *  e.g. the model name (not <code>null</code>)
+     * @throws CoreException if the MXBean could not be registered
+     * @since 1.5
+     * @see #unregisterMBean()
+     */
+    public synchronized void registerMBean(String name) throws CoreException
+    {
+        if (name == null)
+            throw new IllegalArgumentException();
+        if (mbeanName != null)
+            return;
+        try
+        {
+            ObjectName objectName = new ObjectName(
+                "org.eclipse.handly:type=NotificationManager,name=" //$NON-NLS-1$
+                    + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                objectName);
+            mbeanName = objectName;
+        }
+        catch (JMException e)
+        {
+            throw new CoreException(Activator.createErrorStatus(
+                e.getMessage(), e));
+        }
+    }
+
+    /**
+     * Unregisters this notification manager as a platform MXBean.
+     * Has no effect if this manager is not registered.
+     *
+     * @since 1.5
+     * @see #registerMBean(String)
+     */
+    public synchronized void unregisterMBean()
+    {
+        if (mbeanName == null)
+            return;
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                mbeanName);
+        }
+        catch (JMException e)
+        {
+            Activator.logError(e);
+        }
+        finally
+        {
+            mbeanName = null;
+        }
+    }
+
+    /**
+     * Begins a batch of notifications on the current thread. Until the end
+     * of the outermost batch, element change events fired on the current
+     * thread are not sent out to listeners; instead, they are accumulated
+     * and their top-level deltas are merged. Calls to this method may be
+     * nested; each call must ultimately be followed by exactly one call to
+     * {@link #endBatch()}.
+     * <p>
+     * Note that deltas of events fired within a batch may be modified
+     * as a result of the merge.
+     * </p>
+     *
+     * @since 1.5
+     * @see #isBatching()
+     */
+    public void beginBatch()
+    {
+        Batch batch = currentBatch.get();
+        if (batch == null)
+            currentBatch.set(batch = new Batch());
+        batch.depth++;
     }
 
+    /**
+     * Ends a batch of notifications on the current thread. When the outermost
+     * batch is ended, sends out the accumulated changes to listeners as one
+     * event per event type.
+     *
+     * @throws IllegalStateException if there is no batch on the current thread
+     * @since 1.5
+     * @see #beginBatch()
+     */
+    public void endBatch()
+    {
+        Batch batch = currentBatch.get();
+        if (batch == null)
+            throw new IllegalStateException();
+        if (--batch.depth > 0)
+            return;
+        currentBatch.remove();
+        for (IElementChangeEvent event : batch.getEvents())
+        {
+            fireElementChangeEvent(event);
+        }
+    }
+
+    /**
+     * Returns whether there is a batch of notifications on the current thread.
+     *
+     * @return <code>true</code> if a batch is in progress on the current
+     *  thread, and <code>false</code> otherwise
+     * @since 1.5
+     * @see #beginBatch()
+     */
+    public boolean isBatching()
+    {
+        return currentBatch.get() != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If a batch is in progress on the current thread, this implementation
+     * accumulates the given event until the end of the outermost batch.
+     * </p>
+     *
+     * @see #beginBatch()
+     */
     @Override
     public void fireElementChangeEvent(IElementChangeEvent event)
     {
+        Batch batch = currentBatch.get();
+        if (batch != null)
+        {
+            batch.add(event);
+            return;
+        }
         int eventType = event.getType();
         ElementChangeListenerList.Entry[] entries = listenerList.getEntries();
         for (ElementChangeListenerList.Entry entry : entries)
         {
             if ((eventType & entry.getEventMask()) != 0)
             {
+                IElementChangeListener listener = entry.getListener();
+                long start = System.nanoTime();
                 SafeRunner.run(new ISafeRunnable()
                 {
                     public void handleException(Throwable exception)
@@ -93,10 +336,172 @@ public class NotificationManager
 
                     public void run() throws Exception
                     {
-                        entry.getListener().elementChanged(event);
+                        listener.elementChanged(event);
                     }
                 });
+                listenerDispatched(listener, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private void listenerDispatched(IElementChangeListener listener,
+        long nanos)
+    {
+        DispatchStats stats;
+        synchronized (dispatchStats)
+        {
+            // the listener may have been removed while being dispatched
+            stats = dispatchStats.get(listener);
+        }
+        if (stats != null)
+            stats.record(nanos);
+
+        long threshold = slowListenerThreshold;
+        if (threshold > 0 && nanos > TimeUnit.MILLISECONDS.toNanos(threshold))
+        {
+            Activator.logWarning(MessageFormat.format(
+                Messages.NotificationManager_Slow_listener__0__1,
+                listener.getClass().getName(), TimeUnit.NANOSECONDS.toMillis(
+                    nanos)));
+        }
+    }
+
+    /*
+     * Dispatch time statistics for a listener. Uses a log-linear histogram
+     * with four sub-buckets per power of two to estimate percentiles.
+     */
+    private static class DispatchStats
+    {
+        private static final int BUCKET_COUNT = 252;
+
+        private long count;
+        private long totalTime;
+        private long maxTime;
+        private final long[] histogram = new long[BUCKET_COUNT];
+
+        synchronized void record(long nanos)
+        {
+            if (nanos < 0)
+                nanos = 0;
+            count++;
+            totalTime += nanos;
+            if (nanos > maxTime)
+                maxTime = nanos;
+            histogram[bucketIndex(nanos)]++;
+        }
+
+        synchronized ListenerStatistics snapshot(String listenerClass)
+        {
+            return new ListenerStatistics(listenerClass, count, totalTime,
+                maxTime, percentile(0.99));
+        }
+
+        private long percentile(double p)
+        {
+            if (count == 0)
+                return 0;
+            long rank = (long)Math.ceil(p * count);
+            long cumulative = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++)
+            {
+                cumulative += histogram[i];
+                if (cumulative >= rank)
+                    return Math.min(bucketUpperBound(i), maxTime);
+            }
+            return maxTime;
+        }
+
+        private static int bucketIndex(long value)
+        {
+            if (value < 4)
+                return (int)value;
+            int log = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int)(value >>> (log - 2)) & 3;
+            return (log - 1) * 4 + sub;
+        }
+
+        private static long bucketUpperBound(int index)
+        {
+            if (index < 4)
+                return index;
+            int log = index / 4 + 1;
+            int sub = index % 4;
+            return ((5L + sub) << (log - 2)) - 1;
+        }
+    }
+
+    private static class Batch
+    {
+        int depth;
+        private final Map<Integer, List<IElementDelta>> deltas =
+            new LinkedHashMap<>();
+
+        void add(IElementChangeEvent event)
+        {
+            List<IElementDelta> list = deltas.computeIfAbsent(event.getType(),
+                k -> new ArrayList<>());
+            for (IElementDelta delta : event.getDeltas())
+            {
+                merge(list, delta);
+            }
+        }
+
+        List<IElementChangeEvent> getEvents()
+        {
+            List<IElementChangeEvent> result = new ArrayList<>(deltas.size());
+            for (Map.Entry<Integer, List<IElementDelta>> entry : deltas.entrySet())
+            {
+                List<IElementDelta> list = new ArrayList<>(
+                    entry.getValue().size());
+                for (IElementDelta delta : entry.getValue())
+                {
+                    if (!ElementDeltas.isEmpty(delta))
+                        list.add(delta);
+                }
+                if (!list.isEmpty())
+                    result.add(new ElementChangeEvent(entry.getKey(),
+                        list.toArray(new IElementDelta[list.size()])));
+            }
+            return result;
+        }
+
+        private static void merge(List<IElementDelta> list, IElementDelta delta)
+        {
+            if (delta instanceof ElementDelta)
+            {
+                ElementDelta d = (ElementDelta)delta;
+                IElement element = d.getElement_();
+                for (int i = 0; i < list.size(); i++)
+                {
+                    IElementDelta existing = list.get(i);
+                    if (!(existing instanceof ElementDelta))
+                        continue;
+                    ElementDelta e = (ElementDelta)existing;
+                    IElement existingElement = e.getElement_();
+                    if (Elements.equalsAndSameParentChain(existingElement,
+                        element))
+                    {
+                        e.mergeWith_(d);
+                        return;
+                    }
+                    if (Elements.isAncestorOf(existingElement, element))
+                    {
+                        e.insertSubTree_(d);
+                        return;
+                    }
+                    if (Elements.isAncestorOf(element, existingElement))
+                    {
+                        // re-root the existing delta preserving the order of changes
+                        ElementDelta root = d.newDelta_(element);
+                        root.insertSubTree_(e);
+                        root.mergeWith_(d);
+                        list.remove(i);
+                        merge(list, root);
+                        return;
+                    }
+                }
             }
+            list.add(delta);
         }
     }
 }
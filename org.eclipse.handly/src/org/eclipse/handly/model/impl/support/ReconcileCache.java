@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.model.impl.support;
+
+import static org.eclipse.handly.model.impl.support.ISourceFileImplSupport.SOURCE_CHARS;
+import static org.eclipse.handly.model.impl.support.ISourceFileImplSupport.SOURCE_SNAPSHOT;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.handly.context.IContext;
+import org.eclipse.handly.model.IElement;
+import org.eclipse.handly.snapshot.ContentDigest;
+import org.eclipse.handly.snapshot.ISnapshot;
+import org.eclipse.handly.snapshot.Snapshot;
+import org.eclipse.handly.util.BoundedLruCache;
+
+/**
+ * A small cache of recent structure build results for a working copy,
+ * keyed by the digest of the source contents the structure was built from.
+ * Lets reconciling reinstall a previously built structure when the working
+ * copy returns to recent contents, e.g. on undo, redo, or revert.
+ * <p>
+ * Equal digests are taken to imply equal contents. Entries expire after
+ * the given time to live has elapsed since they were last stored.
+ * An entry is also dropped as soon as the deferred children of one of its
+ * bodies have been built, since the bodies for the children are not part
+ * of the entry.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+final class ReconcileCache
+{
+    private final BoundedLruCache<ContentDigest, Entry> entries;
+    private final long timeToLive; // in nanoseconds
+
+    /**
+     * Constructs a new reconcile cache with the given maximum size
+     * and time to live.
+     *
+     * @param maxSize the maximum number of cached results (positive)
+     * @param timeToLive the time to live of cached results in milliseconds
+     *  (positive)
+     */
+    ReconcileCache(int maxSize, long timeToLive)
+    {
+        if (timeToLive <= 0)
+            throw new IllegalArgumentException();
+        this.entries = new BoundedLruCache<>(maxSize);
+        this.timeToLive = TimeUnit.MILLISECONDS.toNanos(timeToLive);
+    }
+
+    /**
+     * Returns the element handle/body relationships built from the contents
+     * with the given digest, or <code>null</code> if there is no such result
+     * in the cache or it has expired.
+     *
+     * @param digest not <code>null</code>
+     * @return a new map containing the cached element handle/body
+     *  relationships, or <code>null</code> if none
+     */
+    Map<IElement, Object> get(ContentDigest digest)
+    {
+        return get(digest, System.nanoTime());
+    }
+
+    synchronized Map<IElement, Object> get(ContentDigest digest, long now)
+    {
+        Entry entry = entries.get(digest);
+        if (entry == null)
+            return null;
+        if (now - entry.expirationTime >= 0 || entry.isMaterialized())
+        {
+            entries.remove(digest);
+            return null;
+        }
+        return new HashMap<>(entry.newElements);
+    }
+
+    /**
+     * Stores the element handle/body relationships built from the contents
+     * with the given digest. Also removes expired results from the cache.
+     *
+     * @param digest not <code>null</code>
+     * @param newElements not <code>null</code>
+     */
+    void put(ContentDigest digest, Map<IElement, Object> newElements)
+    {
+        put(digest, newElements, System.nanoTime());
+    }
+
+    synchronized void put(ContentDigest digest,
+        Map<IElement, Object> newElements, long now)
+    {
+        entries.snapshot().forEach((key, entry) ->
+        {
+            if (now - entry.expirationTime >= 0)
+                entries.remove(key);
+        });
+        entries.put(digest, new Entry(new HashMap<>(newElements), now
+            + timeToLive));
+    }
+
+    /**
+     * Returns the digest of the source contents specified in the given
+     * structure building context.
+     *
+     * @param context not <code>null</code>
+     * @return the content digest, or <code>null</code> if the source
+     *  contents are not available
+     */
+    static ContentDigest getContentDigest(IContext context)
+    {
+        ISnapshot snapshot = context.get(SOURCE_SNAPSHOT);
+        if (snapshot instanceof Snapshot)
+        {
+            ContentDigest digest = ((Snapshot)snapshot).getContentDigest();
+            if (digest != null)
+                return digest;
+        }
+        CharSequence chars = context.get(SOURCE_CHARS);
+        if (chars != null)
+            return ContentDigest.of(chars);
+        return null;
+    }
+
+    /**
+     * Returns the number of results in the cache, including expired ones.
+     *
+     * @return the number of cached results
+     */
+    synchronized int size()
+    {
+        return entries.size();
+    }
+
+    private static class Entry
+    {
+        final Map<IElement, Object> newElements;
+        final long expirationTime;
+        private final List<SourceElementBody> deferredBodies =
+            new ArrayList<>();
+
+        Entry(Map<IElement, Object> newElements, long expirationTime)
+        {
+            this.newElements = newElements;
+            this.expirationTime = expirationTime;
+            for (Object body : newElements.values())
+            {
+                if (body instanceof SourceElementBody
+                    && ((SourceElementBody)body).hasDeferredChildren())
+                    deferredBodies.add((SourceElementBody)body);
+            }
+        }
+
+        /*
+         * Returns whether the deferred children of any of the bodies
+         * have been built since the entry was created.
+         */
+        boolean isMaterialized()
+        {
+            for (SourceElementBody body : deferredBodies)
+            {
+                if (!body.hasDeferredChildren())
+                    return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.model.impl.support;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.handly.model.ISourceFile;
+
+/**
+ * Records how long each phase of a reconcile operation took.
+ * Instances of this class are immutable.
+ *
+ * @since 1.5
+ * @see ReconcileProfiler
+ */
+public final class ReconcileProfile
+{
+    /**
+     * The phases of a reconcile operation.
+     */
+    public enum Phase
+    {
+        /**
+         * Taking the source snapshot.
+         */
+        SNAPSHOT,
+
+        /**
+         * Building the source structure.
+         *
+         * @see ISourceFileImplSupport#buildSourceStructure_(
+         *  org.eclipse.handly.context.IContext,
+         *  org.eclipse.core.runtime.IProgressMonitor)
+         */
+        BUILD,
+
+        /**
+         * Propagating the source snapshot to the new bodies.
+         */
+        SET_SNAPSHOT,
+
+        /**
+         * Putting the new bodies into the body cache, including closing
+         * the old children.
+         */
+        PUT,
+
+        /**
+         * Recording the changes and building the delta.
+         *
+         * @see ElementChangeRecorder
+         */
+        DIFF,
+
+        /**
+         * Sending out the change notification to listeners.
+         */
+        NOTIFY
+    }
+
+    private final ISourceFile sourceFile;
+    private final long timestamp;
+    private final long totalDuration;
+    private final long[] durations;
+
+    ReconcileProfile(ISourceFile sourceFile, long timestamp,
+        long totalDuration, long[] durations)
+    {
+        if (sourceFile == null)
+            throw new IllegalArgumentException();
+        if (durations.length != Phase.values().length)
+            throw new IllegalArgumentException();
+        this.sourceFile = sourceFile;
+        this.timestamp = timestamp;
+        this.totalDuration = totalDuration;
+        this.durations = durations.clone();
+    }
+
+    /**
+     * Returns the source file that was reconciled.
+     *
+     * @return the reconciled source file (never <code>null</code>)
+     */
+    public ISourceFile getSourceFile()
+    {
+        return sourceFile;
+    }
+
+    /**
+     * Returns the time the reconcile operation started, in milliseconds
+     * since the epoch.
+     *
+     * @return the start time of the reconcile operation
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    /**
+     * Returns how long the given phase of the reconcile operation took,
+     * in nanoseconds. Returns zero if the phase did not occur.
+     *
+     * @param phase not <code>null</code>
+     * @return the duration of the given phase
+     */
+    public long getDuration(Phase phase)
+    {
+        return durations[phase.ordinal()];
+    }
+
+    /**
+     * Returns how long the whole reconcile operation took, in nanoseconds.
+     * The total duration includes the time not attributed to any phase.
+     *
+     * @return the total duration of the reconcile operation
+     */
+    public long getTotalDuration()
+    {
+        return totalDuration;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append(sourceFile);
+        builder.append(": total="); //$NON-NLS-1$
+        builder.append(TimeUnit.NANOSECONDS.toMicros(totalDuration));
+        for (Phase phase : Phase.values())
+        {
+            builder.append(", "); //$NON-NLS-1$
+            builder.append(phase.name().toLowerCase(Locale.ENGLISH));
+            builder.append('=');
+            builder.append(TimeUnit.NANOSECONDS.toMicros(getDuration(phase)));
+        }
+        builder.append(" (us)"); //$NON-NLS-1$
+        return builder.toString();
+    }
+}
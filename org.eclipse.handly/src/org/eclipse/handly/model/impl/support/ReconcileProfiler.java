@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.model.impl.support;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.handly.context.IContext;
+import org.eclipse.handly.model.Elements;
+import org.eclipse.handly.model.ISourceFile;
+import org.eclipse.handly.model.impl.support.ReconcileProfile.Phase;
+import org.eclipse.handly.util.Property;
+
+/**
+ * Keeps the {@link ReconcileProfile profiles} of recent reconcile operations.
+ * Profiling is opt-in: if an instance of this class is registered in the model
+ * context, the working copies of {@link ISourceFileImplSupport} record the
+ * duration of each phase of every reconcile operation and add the resulting
+ * profile to the profiler. The profiler keeps the given number of the most
+ * recent profiles for each source file, until the source file is no longer
+ * a working copy.
+ * <p>
+ * An instance of this class is safe for use by multiple threads.
+ * </p>
+ *
+ * @since 1.5
+ * @see ISourceFileImplSupport.ReconcileOperation
+ */
+public final class ReconcileProfiler
+{
+    /*
+     * Specifies the recording of the current reconcile operation.
+     */
+    static final Property<Recording> RECORDING = Property.get(
+        ReconcileProfiler.class.getName() + ".recording", Recording.class); //$NON-NLS-1$
+
+    private final int historySize;
+    private final Map<ISourceFile, Deque<ReconcileProfile>> profiles =
+        new LinkedHashMap<>();
+
+    /**
+     * Creates a new profiler that keeps the given number of the most recent
+     * reconcile profiles for each source file.
+     *
+     * @param historySize a positive number
+     */
+    public ReconcileProfiler(int historySize)
+    {
+        if (historySize < 1)
+            throw new IllegalArgumentException();
+        this.historySize = historySize;
+    }
+
+    /**
+     * Returns the most recent reconcile profiles for the given source file,
+     * from the oldest to the newest.
+     *
+     * @param sourceFile not <code>null</code>
+     * @return the profiles for the source file (never <code>null</code>)
+     */
+    public synchronized List<ReconcileProfile> getProfiles(
+        ISourceFile sourceFile)
+    {
+        Deque<ReconcileProfile> deque = profiles.get(sourceFile);
+        if (deque == null)
+            return Collections.emptyList();
+        return new ArrayList<>(deque);
+    }
+
+    /**
+     * Returns the most recent reconcile profiles for all source files.
+     * The profiles for each source file are ordered from the oldest
+     * to the newest.
+     *
+     * @return the profiles (never <code>null</code>)
+     */
+    public synchronized List<ReconcileProfile> getProfiles()
+    {
+        List<ReconcileProfile> result = new ArrayList<>();
+        for (Deque<ReconcileProfile> deque : profiles.values())
+            result.addAll(deque);
+        return result;
+    }
+
+    /**
+     * Removes all of the profiles from this profiler.
+     */
+    public synchronized void clear()
+    {
+        profiles.clear();
+    }
+
+    /**
+     * Writes all of the profiles kept by this profiler to the given output
+     * in the CSV format. The first line contains the column names; each of the
+     * following lines describes a profile: the source file, the start time
+     * in milliseconds since the epoch, the total duration and the duration
+     * of each {@link Phase phase} in microseconds.
+     *
+     * @param out not <code>null</code>
+     * @throws IOException if an I/O error occurs
+     */
+    public void exportCsv(Appendable out) throws IOException
+    {
+        out.append("file,timestamp,total"); //$NON-NLS-1$
+        for (Phase phase : Phase.values())
+            out.append(',').append(phase.name().toLowerCase(Locale.ENGLISH));
+        out.append('\n');
+        for (ReconcileProfile profile : getProfiles())
+        {
+            out.append(csvField(toPath(profile.getSourceFile())));
+            out.append(',').append(Long.toString(profile.getTimestamp()));
+            out.append(',').append(Long.toString(toMicros(
+                profile.getTotalDuration())));
+            for (Phase phase : Phase.values())
+                out.append(',').append(Long.toString(toMicros(
+                    profile.getDuration(phase))));
+            out.append('\n');
+        }
+    }
+
+    /*
+     * Removes the profiles for the given source file. Called when
+     * the source file ceases to be a working copy.
+     */
+    synchronized void remove(ISourceFile sourceFile)
+    {
+        profiles.remove(sourceFile);
+    }
+
+        synchronized void add(ReconcileProfile profile)
+    {
+        Deque<ReconcileProfile> deque = profiles.computeIfAbsent(
+            profile.getSourceFile(), k -> new ArrayDeque<>(historySize));
+        if (deque.size() == historySize)
+            deque.removeFirst();
+        deque.addLast(profile);
+    }
+
+    /**
+     * Adds the time elapsed since the given start time to the duration of
+     * the given phase in the recording specified in the given context, if any.
+     *
+     * @param context not <code>null</code>
+     * @param phase not <code>null</code>
+     * @param startTime the start time of the phase as returned by
+     *  {@link System#nanoTime()}
+     */
+    static void record(IContext context, Phase phase, long startTime)
+    {
+        Recording recording = context.get(RECORDING);
+        if (recording != null)
+            recording.add(phase, System.nanoTime() - startTime);
+    }
+
+    private static String toPath(ISourceFile sourceFile)
+    {
+        IFile file = Elements.getFile(sourceFile);
+        if (file != null)
+            return file.getFullPath().toString();
+        return Elements.getName(sourceFile);
+    }
+
+    private static String csvField(String value)
+    {
+        if (value == null)
+            return ""; //$NON-NLS-1$
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf(
+            '\n') < 0)
+            return value;
+        return '"' + value.replace("\"", "\"\"") + '"'; //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    private static long toMicros(long nanos)
+    {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /*
+     * Accumulates the phase durations of a reconcile operation.
+     * Used by the reconciling thread only.
+     */
+    static final class Recording
+    {
+        private final long[] durations = new long[Phase.values().length];
+
+        void add(Phase phase, long duration)
+        {
+            durations[phase.ordinal()] += duration;
+        }
+
+        ReconcileProfile toProfile(ISourceFile sourceFile, long timestamp,
+            long totalDuration)
+        {
+            return new ReconcileProfile(sourceFile, timestamp, totalDuration,
+                durations);
+        }
+    }
+}
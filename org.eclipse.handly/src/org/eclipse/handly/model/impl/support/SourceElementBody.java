@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014, 2018 1C-Soft LLC and others.
+ * Copyright (c) 2014, 2020 1C-Soft LLC and others.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -49,11 +49,14 @@ public class SourceElementBody
 {
     private static final InternalProperty[] NO_PROPERTIES =
         new InternalProperty[0];
+    private static final ISourceConstruct[] NO_CHILDREN =
+        new ISourceConstruct[0];
 
     private ISnapshot snapshot;
     private InternalProperty[] properties = NO_PROPERTIES;
     private TextRange fullRange;
     private TextRange identifyingRange;
+    private volatile IDeferredChildrenBuilder deferredChildren;
 
     /**
      * Returns the child elements for this body.
@@ -62,6 +65,14 @@ public class SourceElementBody
      * the array given in the most recent call to {@link #setChildren(IElement[])
      * setChildren} if that type is assignable to <code>ISourceConstruct[]</code>.
      * </p>
+     * <p>
+     * Note that the result of this method is incomplete while building
+     * the children is {@link #hasDeferredChildren() deferred}: an empty array
+     * is returned in that case, even if the children are being built by
+     * another thread. Element handle-based methods such as {@link
+     * org.eclipse.handly.model.Elements#getChildren(IElement)
+     * Elements.getChildren} build the deferred children on demand.
+     * </p>
      *
      * @return the child elements for this body (never <code>null</code>).
      *  Clients <b>must not</b> modify the returned array.
@@ -69,6 +80,10 @@ public class SourceElementBody
     @Override
     public ISourceConstruct[] getChildren()
     {
+        // the children are set before the deferral is canceled, so reading
+        // the deferral first ensures that the children are seen in full
+        if (deferredChildren != null)
+            return NO_CHILDREN;
         IElement[] children = super.getChildren();
         if (children instanceof ISourceConstruct[])
             return (ISourceConstruct[])children;
@@ -134,6 +149,53 @@ public class SourceElementBody
         }
     }
 
+    /**
+     * Defers building the children of the element until they are needed.
+     * The given builder will be used to build the children the first time
+     * they are requested via the element handle, e.g. by {@link
+     * org.eclipse.handly.model.Elements#getChildren(IElement)
+     * Elements.getChildren}, or when the body of one of the descendant
+     * elements is requested.
+     * <p>
+     * This method may only be called while this body is being initialized,
+     * before it is put into the body cache; the children of this body must
+     * not be set. Note that a deferred children builder may prevent the
+     * reuse of the bodies built from the same source contents.
+     * </p>
+     * <p>
+     * The changes in the inner structure of an element are not reported in
+     * the delta if the children of the element have not been built before
+     * the change: no client can have observed them.
+     * </p>
+     *
+     * @param builder the deferred children builder, or <code>null</code>
+     *  to cancel the deferral
+     * @since 1.5
+     */
+    public void setDeferredChildren(IDeferredChildrenBuilder builder)
+    {
+        this.deferredChildren = builder;
+    }
+
+    /**
+     * Returns whether building the children of the element is currently
+     * deferred.
+     *
+     * @return <code>true</code> if the children have not been built yet,
+     *  and <code>false</code> otherwise
+     * @since 1.5
+     * @see #setDeferredChildren(IDeferredChildrenBuilder)
+     */
+    public boolean hasDeferredChildren()
+    {
+        return deferredChildren != null;
+    }
+
+    IDeferredChildrenBuilder getDeferredChildren()
+    {
+        return deferredChildren;
+    }
+
     /**
      * Sets the source snapshot on which this object is based.
      *
@@ -0,0 +1,321 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.model.impl.support;
+
+import static org.eclipse.handly.context.Contexts.of;
+import static org.eclipse.handly.context.Contexts.with;
+import static org.eclipse.handly.model.impl.support.IElementImplSupport.NEW_ELEMENTS;
+import static org.eclipse.handly.model.impl.support.ISourceFileImplSupport.SOURCE_CHARS;
+import static org.eclipse.handly.model.impl.support.ISourceFileImplSupport.SOURCE_SNAPSHOT;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.handly.context.IContext;
+import org.eclipse.handly.internal.Activator;
+import org.eclipse.handly.internal.WorkerThreads;
+import org.eclipse.handly.model.IElement;
+import org.eclipse.handly.model.ISourceFile;
+import org.eclipse.handly.snapshot.ISnapshotProvider;
+import org.eclipse.handly.snapshot.NonExpiringSnapshot;
+
+/**
+ * Opens a number of source files at once, e.g. to warm up the model
+ * when a project is opened or before a model-wide search.
+ * <p>
+ * The loader reads the stored contents of the source files in parallel
+ * using a bounded pool of I/O threads and hands the snapshots off to a pool
+ * of parsing threads, which build the structure of the source files and
+ * install the bodies into the body cache, unless the source files have been
+ * opened meanwhile. The number of snapshots that have been read but not yet
+ * parsed is bounded, which bounds the memory taken by in-flight contents.
+ * </p>
+ * <p>
+ * Source files that are working copies or are already open are skipped.
+ * Source files that do not extend {@link ISourceFileImplSupport} are skipped
+ * too.
+ * </p>
+ * <p>
+ * An instance of this class may be reused, but must not be used by multiple
+ * threads at the same time.
+ * </p>
+ *
+ * @since 1.5
+ */
+public class SourceFileLoader
+{
+    private int ioThreadCount = Math.max(4,
+        Runtime.getRuntime().availableProcessors());
+    private int parsingThreadCount =
+        Runtime.getRuntime().availableProcessors();
+    private int maxPendingSnapshots = 64;
+
+    /**
+     * Returns the number of threads used for reading source files.
+     *
+     * @return the number of I/O threads
+     */
+    public int getIoThreadCount()
+    {
+        return ioThreadCount;
+    }
+
+    /**
+     * Sets the number of threads used for reading source files. Reading
+     * benefits from more threads than there are processors when the storage
+     * can serve multiple requests concurrently.
+     *
+     * @param count a positive number
+     */
+    public void setIoThreadCount(int count)
+    {
+        if (count < 1)
+            throw new IllegalArgumentException();
+        ioThreadCount = count;
+    }
+
+    /**
+     * Returns the number of threads used for building the structure
+     * of source files.
+     *
+     * @return the number of parsing threads
+     */
+    public int getParsingThreadCount()
+    {
+        return parsingThreadCount;
+    }
+
+    /**
+     * Sets the number of threads used for building the structure
+     * of source files.
+     *
+     * @param count a positive number
+     */
+    public void setParsingThreadCount(int count)
+    {
+        if (count < 1)
+            throw new IllegalArgumentException();
+        parsingThreadCount = count;
+    }
+
+    /**
+     * Returns the maximum number of source file snapshots that may be read
+     * but not yet parsed at any given time.
+     *
+     * @return the maximum number of pending snapshots
+     */
+    public int getMaxPendingSnapshots()
+    {
+        return maxPendingSnapshots;
+    }
+
+    /**
+     * Sets the maximum number of source file snapshots that may be read
+     * but not yet parsed at any given time.
+     *
+     * @param max a positive number
+     */
+    public void setMaxPendingSnapshots(int max)
+    {
+        if (max < 1)
+            throw new IllegalArgumentException();
+        maxPendingSnapshots = max;
+    }
+
+    /**
+     * Opens the given source files. Failure to open a source file does not
+     * prevent other source files from being opened; instead, it is reported
+     * in the returned status.
+     *
+     * @param sourceFiles the source files to open (not <code>null</code>)
+     * @param context the operation context passed to <code>buildStructure_</code>
+     *  (not <code>null</code>)
+     * @param monitor a progress monitor, or <code>null</code>
+     *  if progress reporting is not desired. The caller must not rely on
+     *  {@link IProgressMonitor#done()} having been called by the receiver
+     * @return OK status if all of the source files have been opened or
+     *  skipped, or a multi-status describing the failures
+     * @throws OperationCanceledException if this method is canceled
+     */
+    public IStatus load(Collection<? extends ISourceFile> sourceFiles,
+        IContext context, IProgressMonitor monitor)
+    {
+        if (context == null)
+            throw new IllegalArgumentException();
+
+        List<ISourceFileImplSupport> toLoad = new ArrayList<>();
+        for (ISourceFile sourceFile : sourceFiles)
+        {
+            if (sourceFile instanceof ISourceFileImplSupport)
+            {
+                ISourceFileImplSupport impl = (ISourceFileImplSupport)sourceFile;
+                if (!impl.isWorkingCopy_() && impl.peekAtBody_() == null)
+                    toLoad.add(impl);
+            }
+        }
+
+        SubMonitor subMonitor = SubMonitor.convert(monitor, toLoad.size());
+        MultiStatus result = new MultiStatus(Activator.PLUGIN_ID, 0,
+            Messages.SourceFileLoader_Problems_loading_source_files, null);
+        Semaphore pending = new Semaphore(maxPendingSnapshots);
+        ExecutorService ioExecutor = Executors.newFixedThreadPool(
+            ioThreadCount, WorkerThreads.newThreadFactory(
+                "Handly Source File Loader I/O")); //$NON-NLS-1$
+        ExecutorService parsingExecutor = Executors.newFixedThreadPool(
+            parsingThreadCount, WorkerThreads.newThreadFactory(
+                "Handly Source File Loader Parsing")); //$NON-NLS-1$
+        List<CompletableFuture<Void>> futures = new ArrayList<>(
+            toLoad.size());
+        try
+        {
+            for (ISourceFileImplSupport sourceFile : toLoad)
+            {
+                while (!pending.tryAcquire(100, TimeUnit.MILLISECONDS))
+                {
+                    if (subMonitor.isCanceled())
+                        throw new OperationCanceledException();
+                }
+                if (subMonitor.isCanceled())
+                {
+                    pending.release();
+                    throw new OperationCanceledException();
+                }
+                futures.add(CompletableFuture.supplyAsync(() -> read(
+                    sourceFile), ioExecutor).thenAcceptAsync(
+                        snapshot -> parse(sourceFile, snapshot, context),
+                        parsingExecutor).whenComplete((r, e) ->
+                        {
+                            pending.release();
+                            if (e != null)
+                                addFailure(result, sourceFile, e);
+                        }));
+            }
+            for (CompletableFuture<Void> future : futures)
+            {
+                try
+                {
+                    future.join();
+                }
+                catch (CompletionException e)
+                {
+                    // already reported
+                }
+                subMonitor.split(1);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new OperationCanceledException();
+        }
+        finally
+        {
+            for (CompletableFuture<Void> future : futures)
+                future.cancel(false);
+            ioExecutor.shutdownNow();
+            parsingExecutor.shutdownNow();
+        }
+        synchronized (result)
+        {
+            return result.isOK() ? Status.OK_STATUS : result;
+        }
+    }
+
+    private static NonExpiringSnapshot read(ISourceFileImplSupport sourceFile)
+    {
+        if (sourceFile.peekAtBody_() != null)
+            return null; // already open
+        try (ISnapshotProvider provider = sourceFile.getFileSnapshotProvider_())
+        {
+            return provider.getNonExpiringSnapshot();
+        }
+    }
+
+    private static void parse(ISourceFileImplSupport sourceFile,
+        NonExpiringSnapshot snapshot, IContext context)
+    {
+        if (snapshot == null || sourceFile.peekAtBody_() != null)
+            return; // already open
+        try
+        {
+            NullProgressMonitor monitor = new NullProgressMonitor();
+            sourceFile.openParent_(context, monitor);
+            sourceFile.validateExistence_(context);
+
+            ElementManager elementManager = sourceFile.getElementManager_();
+            Map<IElement, Object> newElements = new HashMap<>();
+            elementManager.pushTemporaryCache(newElements);
+            try
+            {
+                sourceFile.buildStructure_(with(of(NEW_ELEMENTS, newElements),
+                    of(SOURCE_CHARS, snapshot.getCharSequence()), of(
+                        SOURCE_SNAPSHOT, snapshot.getWrappedSnapshot()),
+                    context), monitor);
+            }
+            finally
+            {
+                elementManager.popTemporaryCache();
+            }
+
+            if (newElements.get(sourceFile) == null)
+            {
+                throw new AssertionError(MessageFormat.format(
+                    "No body for {0}. Incorrect {1}#buildStructure_ implementation?", //$NON-NLS-1$
+                    sourceFile.toString(),
+                    sourceFile.getClass().getSimpleName()));
+            }
+            elementManager.putIfAbsent(sourceFile, newElements);
+        }
+        catch (CoreException e)
+        {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static void addFailure(MultiStatus result,
+        ISourceFileImplSupport sourceFile, Throwable e)
+    {
+        if (e instanceof CompletionException && e.getCause() != null)
+            e = e.getCause();
+        if (e instanceof IllegalStateException
+            && e.getCause() instanceof CoreException)
+            e = e.getCause();
+        IStatus status;
+        if (e instanceof CoreException)
+            status = ((CoreException)e).getStatus();
+        else
+            status = Activator.createErrorStatus(e.getMessage(), e);
+        synchronized (result)
+        {
+            result.add(status);
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014, 2017 1C-Soft LLC and others.
+ * Copyright (c) 2014, 2020 1C-Soft LLC and others.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -20,6 +20,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -42,7 +43,12 @@ final class WorkingCopyInfo
     final IWorkingCopyCallback callback;
     final InitTask initTask = new InitTask();
     volatile boolean created; // whether wc was created (from the model POV)
-    int refCount;
+    ReconcileCache reconcileCache; // null if the cache is disabled
+    /*
+     * Positive while the info is in use; drops to zero only while the info
+     * is being removed from the element manager; -1 after disposal.
+     */
+    final AtomicInteger refCount = new AtomicInteger();
 
     /**
      * Constructs a new working copy info with the given parameters.
@@ -94,11 +100,12 @@ final class WorkingCopyInfo
      */
     void dispose()
     {
-        if (refCount > 0)
-            throw new IllegalStateException();
-        if (refCount < 0)
+        if (!refCount.compareAndSet(0, -1))
+        {
+            if (refCount.get() > 0)
+                throw new IllegalStateException();
             return; // already disposed
-        refCount = -1;
+        }
         if (initTask.isDone())
             callback.onDispose(); // don't call onDispose if onInit has not been called
     }
@@ -111,7 +118,67 @@ final class WorkingCopyInfo
      */
     boolean isDisposed()
     {
-        return refCount < 0;
+        return refCount.get() < 0;
+    }
+
+    /**
+     * Sets the reference count of this working copy info to one, provided
+     * that the info has never been in use.
+     *
+     * @return <code>true</code> if the reference count has been set;
+     *  <code>false</code> otherwise
+     */
+    boolean initRefCount()
+    {
+        return refCount.compareAndSet(0, 1);
+    }
+
+    /**
+     * Increments the reference count of this working copy info, provided
+     * that the info is in use. Lock-free.
+     *
+     * @return <code>true</code> if the reference count has been incremented;
+     *  <code>false</code> if the info is no longer in use
+     */
+    boolean tryAddRef()
+    {
+        for (;;)
+        {
+            int count = refCount.get();
+            if (count <= 0)
+                return false;
+            if (refCount.compareAndSet(count, count + 1))
+                return true;
+        }
+    }
+
+    /**
+     * Decrements the reference count of this working copy info, provided
+     * that this does not release the last reference. Lock-free.
+     *
+     * @return <code>true</code> if the reference count has been decremented;
+     *  <code>false</code> if the last reference would be released
+     */
+    boolean tryReleaseNonLast()
+    {
+        for (;;)
+        {
+            int count = refCount.get();
+            if (count <= 1)
+                return false;
+            if (refCount.compareAndSet(count, count - 1))
+                return true;
+        }
+    }
+
+    /**
+     * Decrements the reference count of this working copy info.
+     *
+     * @return the remaining number of references
+     */
+    int release()
+    {
+        return refCount.decrementAndGet();
     }
 
     /**
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.snapshot;
+
+/**
+ * A 128-bit non-cryptographic digest of character contents, together with
+ * the length of the contents. Equal contents always have equal digests;
+ * unequal contents have equal digests with a negligible probability,
+ * so equal digests do not guarantee equal contents.
+ * <p>
+ * The digest is based on the MurmurHash3 (x64, 128-bit) algorithm applied
+ * to the UTF-16 code units of the contents. Instances of this class are
+ * immutable and can be used as hash keys.
+ * </p>
+ *
+ * @since 1.5
+ * @see Snapshot#getContentDigest()
+ */
+public final class ContentDigest
+{
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final long h1, h2;
+    private final int length;
+
+    /**
+     * Computes the digest of the given character contents.
+     *
+     * @param contents not <code>null</code>
+     * @return the digest of the given contents (never <code>null</code>)
+     */
+    public static ContentDigest of(CharSequence contents)
+    {
+        int length = contents.length();
+        long h1 = 0, h2 = 0;
+        int i = 0;
+        for (int end = length - 7; i < end; i += 8)
+        {
+            long k1 = pack(contents, i);
+            long k2 = pack(contents, i + 4);
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+        if (i < length)
+        {
+            long k1 = 0, k2 = 0;
+            for (int j = 0; i + j < length; j++)
+            {
+                long c = contents.charAt(i + j);
+                if (j < 4)
+                    k1 |= c << (16 * j);
+                else
+                    k2 |= c << (16 * (j - 4));
+            }
+            h2 ^= mixK2(k2);
+            h1 ^= mixK1(k1);
+        }
+        long byteLength = 2L * length;
+        h1 ^= byteLength;
+        h2 ^= byteLength;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+        h1 += h2;
+        h2 += h1;
+        return new ContentDigest(h1, h2, length);
+    }
+
+    /**
+     * Returns the length of the contents this digest was computed for.
+     *
+     * @return the length of the contents
+     */
+    public int getLength()
+    {
+        return length;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return (int)h1;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof ContentDigest))
+            return false;
+        ContentDigest other = (ContentDigest)obj;
+        return h1 == other.h1 && h2 == other.h2 && length == other.length;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%016x%016x", h1, h2); //$NON-NLS-1$
+    }
+
+    private ContentDigest(long h1, long h2, int length)
+    {
+        this.h1 = h1;
+        this.h2 = h2;
+        this.length = length;
+    }
+
+    private static long pack(CharSequence contents, int index)
+    {
+        return contents.charAt(index) | (long)contents.charAt(index + 1) << 16
+            | (long)contents.charAt(index + 2) << 32 | (long)contents.charAt(
+                index + 3) << 48;
+    }
+
+    private static long mixK1(long k1)
+    {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static long mixK2(long k2)
+    {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        return k2;
+    }
+
+    private static long fmix(long k)
+    {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
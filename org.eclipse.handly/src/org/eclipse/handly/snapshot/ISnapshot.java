@@ -50,6 +50,26 @@ public interface ISnapshot
      */
     String getContents();
 
+    /**
+     * Returns the contents of the snapshot as a character sequence.
+     * This is the same contents as returned by {@link #getContents()},
+     * but snapshots backed by a suitable data structure may return it
+     * without creating a string copy. The returned sequence is immutable
+     * and safe for use by multiple threads. Expired snapshots return
+     * <code>null</code>.
+     * <p>
+     * This implementation returns {@link #getContents()}.
+     * </p>
+     *
+     * @return the contents of the snapshot, or <code>null</code> if
+     *  the snapshot has expired
+     * @since 1.5
+     */
+    default CharSequence getCharSequence()
+    {
+        return getContents();
+    }
+
     /**
      * Indicates whether some other snapshot is "equal to" this one.
      * <p>
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014, 2016 1C-Soft LLC and others.
+ * Copyright (c) 2014, 2020 1C-Soft LLC and others.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -37,11 +37,10 @@ public interface ISnapshotProvider
      * Returns the current snapshot of the underlying resource or buffer.
      * The returned snapshot may immediately become stale or expire.
      * <p>
-     * Note that it is possible to obtain a {@link
-     * NonExpiringSnapshot#NonExpiringSnapshot(ISnapshotProvider) non-expiring}
-     * snapshot from the provider, although protractedly holding on non-expiring
-     * snapshots is not recommended as they may potentially consume large amount
-     * of space.
+     * Note that it is possible to obtain a {@link #getNonExpiringSnapshot()
+     * non-expiring} snapshot from the provider, although protractedly holding
+     * on non-expiring snapshots is not recommended as they may potentially
+     * consume large amount of space.
      * </p>
      *
      * @return the current snapshot (never <code>null</code>)
@@ -49,6 +48,26 @@ public interface ISnapshotProvider
      */
     ISnapshot getSnapshot();
 
+    /**
+     * Returns the current snapshot of the underlying resource or buffer
+     * together with its contents, wrapped in a non-expiring snapshot.
+     * <p>
+     * Implementations are encouraged to capture the snapshot and its contents
+     * atomically, e.g. under the lock that guards modifications of the
+     * underlying document, so that the snapshot cannot expire before its
+     * contents are obtained. The default implementation takes snapshots
+     * from this provider until it gets one that has not expired yet.
+     * </p>
+     *
+     * @return the current non-expiring snapshot (never <code>null</code>)
+     * @throws IllegalStateException if no snapshot can be taken at this time
+     * @since 1.5
+     */
+    default NonExpiringSnapshot getNonExpiringSnapshot()
+    {
+        return new NonExpiringSnapshot(this);
+    }
+
     default void addRef()
     {
     }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014, 2018 1C-Soft LLC and others.
+ * Copyright (c) 2014, 2020 1C-Soft LLC and others.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -20,12 +20,18 @@ package org.eclipse.handly.snapshot;
  * Protractedly holding on to non-expiring snapshots is not recommended,
  * as they may potentially consume large amount of space.
  * </p>
+ * <p>
+ * Since 1.5, the {@link #getContentDigest() digest} of the contents is
+ * computed on creation and cached on both this snapshot and the wrapped
+ * snapshot.
+ * </p>
  */
 public final class NonExpiringSnapshot
     extends Snapshot
 {
     private final ISnapshot wrapped;
-    private final String contents;
+    private final CharSequence contents;
+    private volatile String contentsString;
 
     /**
      * Takes a snapshot from the given provider and wraps it in a new
@@ -38,23 +44,68 @@ public final class NonExpiringSnapshot
      */
     public NonExpiringSnapshot(ISnapshotProvider provider)
     {
-        // get a snapshot and make sure it has not expired yet
+        this(provider, null);
+    }
+
+    /**
+     * Takes a snapshot from the given provider while holding the given lock
+     * and wraps it in a new non-expiring snapshot.
+     * <p>
+     * If the provider guarantees that its snapshots cannot expire while
+     * the lock is held (e.g., the lock guards all modifications of the
+     * underlying document), the snapshot and its contents are captured
+     * atomically, in a single attempt. Otherwise, this constructor behaves
+     * just like {@link #NonExpiringSnapshot(ISnapshotProvider)} and retries
+     * until it obtains a snapshot that has not expired yet.
+     * </p>
+     *
+     * @param provider a snapshot provider from which a snapshot is to be taken
+     *  (not <code>null</code>)
+     * @param lock the lock to hold while taking the snapshot,
+     *  or <code>null</code> if none
+     * @throws IllegalStateException if the snapshot could not be created
+     *  because of an inappropriate state of the snapshot provider
+     * @since 1.5
+     * @see ISnapshotProvider#getNonExpiringSnapshot()
+     */
+    public NonExpiringSnapshot(ISnapshotProvider provider, Object lock)
+    {
         ISnapshot snapshot = null;
-        String contents = null;
-        for (int i = 0; i < 30 && contents == null; i++)
+        CharSequence contents = null;
+        if (lock != null)
         {
-            snapshot = provider.getSnapshot();
-            contents = snapshot.getContents();
+            synchronized (lock)
+            {
+                snapshot = provider.getSnapshot();
+                contents = snapshot.getCharSequence();
+            }
         }
         if (contents == null)
         {
-            throw new IllegalStateException(
-                "Could not get a non-expired snapshot. Ill-behaved snapshot provider?"); //$NON-NLS-1$
+            // get a snapshot and make sure it has not expired yet
+            for (int i = 0; i < 30 && contents == null; i++)
+            {
+                snapshot = provider.getSnapshot();
+                contents = snapshot.getCharSequence();
+            }
+            if (contents == null)
+            {
+                throw new IllegalStateException(
+                    "Could not get a non-expired snapshot. Ill-behaved snapshot provider?"); //$NON-NLS-1$
+            }
         }
 
         // wrap the snapshot and store its contents
         this.wrapped = snapshot;
         this.contents = contents;
+
+        // the contents are at hand, so cache their digest here and on
+        // the wrapped snapshot; comparisons of these snapshots with other
+        // snapshots that have a cached digest can then use the digests
+        ContentDigest digest = ContentDigest.of(contents);
+        cacheContentDigest(digest);
+        if (snapshot instanceof Snapshot)
+            ((Snapshot)snapshot).cacheContentDigest(digest);
     }
 
     /**
@@ -69,6 +120,24 @@ public final class NonExpiringSnapshot
      */
     @Override
     public String getContents()
+    {
+        String result = contentsString;
+        if (result == null)
+            contentsString = result = contents.toString();
+        return result;
+    }
+
+    /**
+     * Returns the cached contents of the wrapped snapshot as a character
+     * sequence. Unlike {@link #getContents()}, this method never copies
+     * the contents.
+     *
+     * @return the cached contents of the wrapped snapshot
+     *  (never <code>null</code>)
+     * @since 1.5
+     */
+    @Override
+    public CharSequence getCharSequence()
     {
         return contents;
     }
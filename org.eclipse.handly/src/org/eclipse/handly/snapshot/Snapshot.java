@@ -19,6 +19,8 @@ package org.eclipse.handly.snapshot;
 public abstract class Snapshot
     implements ISnapshot
 {
+    private volatile ContentDigest contentDigest;
+
     @Override
     public final boolean isEqualTo(ISnapshot other)
     {
@@ -32,10 +34,58 @@ public abstract class Snapshot
             prediction = otherSnapshot.predictEquality(this);
         if (prediction != null)
             return prediction.booleanValue();
+        // use the digests only if they have already been computed (e.g.,
+        // by a NonExpiringSnapshot): computing them would take longer than
+        // comparing the contents
+        ContentDigest digest = contentDigest;
+        ContentDigest otherDigest = otherSnapshot.contentDigest;
+        if (digest != null && otherDigest != null && !digest.equals(
+            otherDigest))
+            return false;
         String otherContents = other.getContents();
         return otherContents != null && otherContents.equals(getContents());
     }
 
+    /**
+     * Returns the digest of the contents of this snapshot. The digest is
+     * computed on the first request and cached for the lifetime of this
+     * snapshot, since the contents of a snapshot never change.
+     * <p>
+     * Unequal digests imply unequal contents, which lets {@link
+     * #isEqualTo(ISnapshot)} avoid comparing the contents character by
+     * character if the digests of both snapshots have already been computed
+     * and are not equal. A {@link NonExpiringSnapshot} computes the digest
+     * of its contents, and caches it on the wrapped snapshot as well, when
+     * it is created.
+     * </p>
+     *
+     * @return the content digest, or <code>null</code> if the digest has not
+     *  been computed yet and the snapshot has expired
+     * @since 1.5
+     */
+    public final ContentDigest getContentDigest()
+    {
+        ContentDigest result = contentDigest;
+        if (result == null)
+        {
+            String contents = getContents();
+            if (contents == null)
+                return null;
+            contentDigest = result = ContentDigest.of(contents);
+        }
+        return result;
+    }
+
+    /*
+     * Caches the given digest of the contents of this snapshot,
+     * unless a digest has already been cached.
+     */
+    final void cacheContentDigest(ContentDigest digest)
+    {
+        if (contentDigest == null)
+            contentDigest = digest;
+    }
+
     /**
      * Predicts whether this snapshot is {@link #isEqualTo(ISnapshot) equal} to
      * the given snapshot without actually obtaining snapshot {@link #getContents()
@@ -102,8 +102,7 @@ public final class TextFileSnapshot
             {
                 Activator.logError(e);
             }
-            return charset == null ? new TextFileStoreSnapshot(fileStore)
-                : new TextFileStoreSnapshot(fileStore, charset);
+            return TextFileStoreSnapshot.newLazySnapshot(fileStore, charset);
         }
         return new TextFileSnapshotWs(file);
     }
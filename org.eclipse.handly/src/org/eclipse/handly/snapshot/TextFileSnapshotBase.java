@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2014, 2018 1C-Soft LLC and others.
+ * Copyright (c) 2014, 2020 1C-Soft LLC and others.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -12,9 +12,22 @@
  *******************************************************************************/
 package org.eclipse.handly.snapshot;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.StandardOpenOption;
 
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Platform;
@@ -79,6 +92,83 @@ abstract class TextFileSnapshotBase
         return null;
     }
 
+    static String getCharset(ByteBuffer contents, String fileName)
+        throws IOException
+    {
+        return getCharset(new ByteBufferInputStream(contents.duplicate()),
+            fileName);
+    }
+
+    /*
+     * Reads the contents of the given local file with a single channel open
+     * into a heap buffer sized by the file length. The returned buffer
+     * is ready for reading.
+     */
+    static ByteBuffer readFile(File file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size >= Integer.MAX_VALUE)
+                throw new IOException("File is too large: " + file); //$NON-NLS-1$
+
+            // one extra byte lets us see the end of file without reallocating
+            ByteBuffer buffer = ByteBuffer.allocate((int)size + 1);
+            while (channel.read(buffer) >= 0)
+            {
+                if (!buffer.hasRemaining()) // the file has grown meanwhile
+                {
+                    ByteBuffer larger = ByteBuffer.allocate(Math.max(
+                        buffer.capacity() * 2, DEFAULT_READING_SIZE));
+                    flip(buffer);
+                    larger.put(buffer);
+                    buffer = larger;
+                }
+            }
+            flip(buffer);
+            return buffer;
+        }
+    }
+
+    /*
+     * Decodes the given bytes using the given charset, replacing malformed
+     * input and unmappable characters as InputStreamReader would do.
+     * Like getInputStreamAsCharArray, does not keep the UTF-8 BOM character.
+     */
+    static String decode(ByteBuffer bytes, String charset) throws IOException
+    {
+        Charset cs;
+        try
+        {
+            cs = Charset.forName(charset);
+        }
+        catch (IllegalCharsetNameException | UnsupportedCharsetException e)
+        {
+            throw new UnsupportedEncodingException(charset);
+        }
+        CharsetDecoder decoder = cs.newDecoder().onMalformedInput(
+            CodingErrorAction.REPLACE).onUnmappableCharacter(
+                CodingErrorAction.REPLACE);
+        CharBuffer chars = decoder.decode(bytes);
+        if (chars.hasRemaining() && chars.get(0) == 0xFEFF
+            && StandardCharsets.UTF_8.equals(cs))
+        {
+            ((Buffer)chars).position(1); // see flip(ByteBuffer)
+        }
+        return chars.toString();
+    }
+
+    /*
+     * Invokes Buffer.flip() rather than the covariant override in ByteBuffer,
+     * which does not exist on Java 8, so that the code compiled with a later
+     * JDK still runs on Java 8.
+     */
+    private static void flip(ByteBuffer buffer)
+    {
+        ((Buffer)buffer).flip();
+    }
+
     static char[] getInputStreamAsCharArray(InputStream stream,
         InputStreamReader reader) throws IOException
     {
@@ -126,4 +216,41 @@ abstract class TextFileSnapshotBase
         }
         return contents;
     }
+
+    private static class ByteBufferInputStream
+        extends InputStream
+    {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read()
+        {
+            if (!buffer.hasRemaining())
+                return -1;
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+        {
+            if (len == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available()
+        {
+            return buffer.remaining();
+        }
+    }
 }
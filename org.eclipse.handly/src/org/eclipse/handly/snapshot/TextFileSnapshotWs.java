@@ -12,15 +12,18 @@
  *******************************************************************************/
 package org.eclipse.handly.snapshot;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.handly.internal.Activator;
@@ -34,8 +37,8 @@ final class TextFileSnapshotWs
 {
     private final IFile file;
     private final long modificationStamp;
-    private Reference<String> contents;
-    private String charset;
+    private Reference<String> contents; // guarded by this
+    private String charset; // guarded by this
     private volatile IStatus status = Status.OK_STATUS;
 
     /**
@@ -70,7 +73,6 @@ final class TextFileSnapshotWs
         {
             try
             {
-                cacheCharset();
                 String currentContents = readContents();
                 if (isCurrent()) // still current
                     contents = new SoftReference<String>(result =
@@ -119,7 +121,7 @@ final class TextFileSnapshotWs
             && status.isOK();
     }
 
-    private void cacheCharset() throws CoreException
+    private synchronized void cacheCharset() throws CoreException
     {
         if (charset == null)
             charset = getCharset(file);
@@ -145,8 +147,32 @@ final class TextFileSnapshotWs
         return charset;
     }
 
-    private String readContents() throws CoreException
+    private synchronized String readContents() throws CoreException
     {
+        File localFile = getLocalFile();
+        if (localFile != null)
+        {
+            try
+            {
+                ByteBuffer bytes = readFile(localFile);
+                if (charset == null)
+                {
+                    String charset = file.getCharset(false);
+                    if (charset == null) // sniff the charset from the same buffer
+                        charset = getCharset(bytes, file.getName());
+                    if (charset == null)
+                        charset = file.getParent().getDefaultCharset();
+                    this.charset = charset;
+                }
+                return decode(bytes, charset);
+            }
+            catch (IOException e)
+            {
+                // fall through to report the failure as the workspace does
+            }
+        }
+
+        cacheCharset();
         try (
             InputStream stream = file.getContents(false);
             InputStreamReader reader = new InputStreamReader(stream, charset))
@@ -160,6 +186,20 @@ final class TextFileSnapshotWs
         }
     }
 
+    /*
+     * Returns the local file to be read directly, bypassing the workspace,
+     * or null if the contents must be obtained via IFile.getContents,
+     * e.g. if the file is not local or is out of sync with the file system
+     * (in the latter case getContents will fail as before).
+     */
+    private File getLocalFile()
+    {
+        IPath location = file.getLocation();
+        if (location == null || !file.isSynchronized(IResource.DEPTH_ZERO))
+            return null;
+        return location.toFile();
+    }
+
     /*
      * For testing purposes only.
      */
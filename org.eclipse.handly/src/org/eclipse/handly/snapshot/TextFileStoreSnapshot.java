@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2016, 2019 1C-Soft LLC.
+ * Copyright (c) 2016, 2020 1C-Soft LLC.
  *
  * This program and the accompanying materials are made available under
  * the terms of the Eclipse Public License 2.0 which is available at
@@ -12,10 +12,13 @@
  *******************************************************************************/
 package org.eclipse.handly.snapshot;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Objects;
 
 import org.eclipse.core.filebuffers.ITextFileBufferManager;
 import org.eclipse.core.filesystem.EFS;
@@ -27,14 +30,22 @@ import org.eclipse.handly.internal.Activator;
 
 /**
  * A snapshot of a text {@link IFileStore}. Thread-safe.
+ * <p>
+ * By default, the snapshot reads the contents of the file store at the moment
+ * it is constructed. A {@link #newLazySnapshot(IFileStore, Charset) lazy}
+ * snapshot records just the modification time of the file store when
+ * constructed and reads the contents on demand.
+ * </p>
  */
 public final class TextFileStoreSnapshot
     extends TextFileSnapshotBase
 {
     private final IFileStore fileStore;
+    private final String charset; // null if the charset is to be detected
     private final long lastModified;
-    private final IStatus status;
+    private volatile IStatus status = Status.OK_STATUS;
     private String contents;
+    private boolean pending; // whether the contents are yet to be read
 
     /**
      * Constructs a new snapshot of the given text file store. The snapshot may
@@ -45,7 +56,7 @@ public final class TextFileStoreSnapshot
      */
     public TextFileStoreSnapshot(IFileStore fileStore)
     {
-        this(fileStore, (String)null);
+        this(fileStore, (String)null, false);
     }
 
     /**
@@ -57,41 +68,65 @@ public final class TextFileStoreSnapshot
      */
     public TextFileStoreSnapshot(IFileStore fileStore, Charset charset)
     {
-        this(fileStore, charset.name());
+        this(fileStore, charset.name(), false);
     }
 
-    private TextFileStoreSnapshot(IFileStore fileStore, String charset)
+    /**
+     * Returns a new snapshot of the given text file store that will read
+     * the file store's contents on the first {@link #getContents()} request
+     * rather than on construction. This makes the snapshot cheap to take
+     * when the caller only needs to know whether the file {@link #exists()
+     * exists} or whether the snapshot {@link #isEqualTo(ISnapshot) is equal}
+     * to another snapshot of the same file store, which can be decided on the
+     * basis of modification time alone if the file store has been modified
+     * in between.
+     * <p>
+     * Staleness detection works in the same way as for a snapshot that reads
+     * the contents on construction: if the file store has been modified since
+     * the snapshot was taken, the snapshot expires and its contents will not
+     * be read.
+     * </p>
+     *
+     * @param fileStore must not be <code>null</code>
+     * @param charset the charset for decoding the file store's contents,
+     *  or <code>null</code> if the charset is to be detected (a default
+     *  charset may be used if a more specific charset could not be detected)
+     * @return a new lazy snapshot (never <code>null</code>)
+     * @since 1.5
+     */
+    public static TextFileStoreSnapshot newLazySnapshot(IFileStore fileStore,
+        Charset charset)
+    {
+        return new TextFileStoreSnapshot(fileStore, charset == null ? null
+            : charset.name(), true);
+    }
+
+    private TextFileStoreSnapshot(IFileStore fileStore, String charset,
+        boolean lazy)
     {
         if (fileStore == null)
             throw new IllegalArgumentException();
         this.fileStore = fileStore;
+        this.charset = charset;
         this.lastModified = getLastModified(fileStore);
         if (this.lastModified == EFS.NONE)
-        {
-            this.status = Status.OK_STATUS;
             this.contents = ""; //$NON-NLS-1$
-        }
+        else if (lazy)
+            this.pending = true;
         else
-        {
-            IStatus status = Status.OK_STATUS;
-            String contents = null;
-            try
-            {
-                contents = readContents(fileStore, charset);
-            }
-            catch (CoreException e)
-            {
-                Activator.logError(e);
-                status = Activator.createErrorStatus(e.getMessage(), e);
-            }
-            this.status = status;
-            this.contents = contents;
-        }
+            loadContents();
     }
 
     @Override
     public synchronized String getContents()
     {
+        if (pending)
+        {
+            pending = false;
+            if (lastModified == getLastModified(fileStore))
+                loadContents();
+        }
+
         if (contents != null && lastModified != getLastModified(fileStore))
             contents = null;
 
@@ -116,12 +151,48 @@ public final class TextFileStoreSnapshot
         if (lastModified != getLastModified(fileStore) || !status.isOK())
             return false; // expired
 
+        if (other instanceof TextFileStoreSnapshot)
+        {
+            TextFileStoreSnapshot otherSnapshot = (TextFileStoreSnapshot)other;
+            // equal modification times do not imply equal contents, since
+            // the resolution of modification time may be as coarse as seconds
+            if (fileStore.equals(otherSnapshot.fileStore) && Objects.equals(
+                charset, otherSnapshot.charset)
+                && otherSnapshot.status.isOK()
+                && lastModified != otherSnapshot.lastModified)
+            {
+                return false;
+            }
+        }
+
         return null;
     }
 
+    private void loadContents()
+    {
+        try
+        {
+            contents = readContents(fileStore, charset);
+        }
+        catch (CoreException e)
+        {
+            Activator.logError(e);
+            status = Activator.createErrorStatus(e.getMessage(), e);
+        }
+    }
+
     private static String readContents(IFileStore fileStore, String charset)
         throws CoreException
     {
+        File file = fileStore.toLocalFile(EFS.NONE, null);
+        if (file != null)
+        {
+            String contents = readLocalContents(file, fileStore.getName(),
+                charset);
+            if (contents != null)
+                return contents;
+        }
+
         if (charset == null)
             charset = detectCharset(fileStore);
         try (
@@ -137,6 +208,31 @@ public final class TextFileStoreSnapshot
         }
     }
 
+    /*
+     * Returns null if the file could not be read directly; the caller
+     * should then read it via the file store to report the failure.
+     */
+    private static String readLocalContents(File file, String fileName,
+        String charset)
+    {
+        try
+        {
+            ByteBuffer bytes = readFile(file);
+            if (charset == null)
+            {
+                // sniff the charset from the same buffer
+                charset = getCharset(bytes, fileName);
+                if (charset == null)
+                    charset = ITextFileBufferManager.DEFAULT.getDefaultEncoding();
+            }
+            return decode(bytes, charset);
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+    }
+
     private static String detectCharset(IFileStore fileStore)
         throws CoreException
     {
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2020 1C-Soft LLC.
+ *
+ * This program and the accompanying materials are made available under
+ * the terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     Vladimir Piskarev (1C) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.handly.util;
+
+import java.util.List;
+
+/**
+ * Describes the replacement of a certain range in a text with another text.
+ * A text replacement is a value object.
+ *
+ * @since 1.5
+ */
+public final class TextReplacement
+{
+    private final int offset;
+    private final int length;
+    private final String text;
+
+    /**
+     * Constructs a text replacement with the given offset, length, and text.
+     *
+     * @param offset the offset of the replaced range (0-based)
+     * @param length the length of the replaced range (non-negative)
+     * @param text the replacing text (not <code>null</code>)
+     */
+    public TextReplacement(int offset, int length, String text)
+    {
+        if (offset < 0)
+            throw new IllegalArgumentException();
+        if (length < 0)
+            throw new IllegalArgumentException();
+        if (text == null)
+            throw new IllegalArgumentException();
+        this.offset = offset;
+        this.length = length;
+        this.text = text;
+    }
+
+    /**
+     * Returns the 0-based index of the first character of the replaced range.
+     *
+     * @return the offset of the replaced range
+     */
+    public int getOffset()
+    {
+        return offset;
+    }
+
+    /**
+     * Returns the number of characters in the replaced range.
+     *
+     * @return the length of the replaced range
+     */
+    public int getLength()
+    {
+        return length;
+    }
+
+    /**
+     * Returns the replacing text.
+     *
+     * @return the replacing text (never <code>null</code>)
+     */
+    public String getText()
+    {
+        return text;
+    }
+
+    /**
+     * Returns the text range that has been replaced.
+     *
+     * @return the replaced range (never <code>null</code>)
+     */
+    public TextRange getRange()
+    {
+        return new TextRange(offset, length);
+    }
+
+    /**
+     * Returns the position of the given text range after this replacement
+     * has been applied to the text. A range that ends at or before the start
+     * of the replaced range is not affected by the replacement; a range that
+     * starts at or after the end of the replaced range is shifted by the
+     * difference in length between the replacing text and the replaced range.
+     * Any other range is affected by the replacement, in which case
+     * <code>null</code> is returned.
+     *
+     * @param range a text range (not <code>null</code>)
+     * @return the adjusted range, or <code>null</code> if the given range
+     *  is affected by this replacement
+     */
+    public TextRange adjust(TextRange range)
+    {
+        if (range.getEndOffset() <= offset)
+            return range;
+        if (range.getOffset() >= offset + length)
+        {
+            int delta = text.length() - length;
+            if (delta == 0)
+                return range;
+            return new TextRange(range.getOffset() + delta, range.getLength());
+        }
+        return null;
+    }
+
+    /**
+     * Returns the position of the given text range after the given
+     * replacements have been applied to the text in sequence.
+     *
+     * @param range a text range (not <code>null</code>)
+     * @param replacements the replacements in the order they were applied
+     *  (not <code>null</code>)
+     * @return the adjusted range, or <code>null</code> if the given range
+     *  is affected by one of the replacements
+     * @see #adjust(TextRange)
+     */
+    public static TextRange adjust(TextRange range,
+        List<TextReplacement> replacements)
+    {
+        for (TextReplacement replacement : replacements)
+        {
+            range = replacement.adjust(range);
+            if (range == null)
+                return null;
+        }
+        return range;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + offset;
+        result = prime * result + length;
+        result = prime * result + text.hashCode();
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        TextReplacement other = (TextReplacement)obj;
+        if (offset != other.offset)
+            return false;
+        if (length != other.length)
+            return false;
+        return text.equals(other.text);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "[offset=" + offset + ", length=" + length + ", text=" + text //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            + ']';
+    }
+}